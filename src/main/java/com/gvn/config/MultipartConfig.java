@@ -0,0 +1,43 @@
+package com.gvn.config;
+
+import com.gvn.service.FileStorageService;
+import jakarta.servlet.MultipartConfigElement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@Configuration
+@EnableConfigurationProperties(MultipartProperties.class)
+@Slf4j
+public class MultipartConfig {
+    
+    public static final String INCOMING_DIR = ".incoming";
+    
+    @Value("${app.file.upload-dir:uploads}")
+    private String uploadDir;
+    
+    /**
+     * Spool multipart parts inside the upload directory unless a location is configured.
+     * Parts then live on the same filesystem as their destination, so storing one is a rename.
+     */
+    @Bean
+    public MultipartConfigElement multipartConfigElement(MultipartProperties properties) throws IOException {
+        MultipartConfigElement config = properties.createMultipartConfig();
+        if (properties.getLocation() != null && !properties.getLocation().isBlank()) {
+            return config;
+        }
+        
+        Path incoming = FileStorageService.resolveBasePath(uploadDir).resolve(INCOMING_DIR);
+        Files.createDirectories(incoming);
+        log.info("Spooling multipart uploads to: {}", incoming);
+        return new MultipartConfigElement(incoming.toString(), config.getMaxFileSize(),
+                config.getMaxRequestSize(), config.getFileSizeThreshold());
+    }
+}
@@ -1,12 +1,22 @@
 package com.gvn.config;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.info.InfoEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfigurationSource;
@@ -16,18 +26,61 @@ import org.springframework.web.cors.CorsConfigurationSource;
 @RequiredArgsConstructor
 public class SecurityConfig {
     
+    private static final String ACTUATOR_ROLE = "ACTUATOR";
+    
     @Lazy
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
     
     private final CorsConfigurationSource corsConfigurationSource;
     
+    /**
+     * Actuator: health and info are public (probes), everything else (metrics, storage
+     * usage per user) needs the operator's HTTP Basic credentials
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain actuatorSecurityFilterChain(HttpSecurity http) throws Exception {
+        http
+                .securityMatcher(EndpointRequest.toAnyEndpoint())
+                .csrf(csrf -> csrf.disable())
+                .authorizeHttpRequests(auth -> auth
+                        .requestMatchers(EndpointRequest.to(HealthEndpoint.class, InfoEndpoint.class)).permitAll()
+                        .anyRequest().hasRole(ACTUATOR_ROLE)
+                )
+                .httpBasic(Customizer.withDefaults())
+                .sessionManagement(session ->
+                        session.sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                );
+        
+        return http.build();
+    }
+    
+    /**
+     * The single actuator operator; with no password configured there is none and the
+     * protected endpoints always answer 401
+     */
+    @Bean
+    public UserDetailsService actuatorUserDetailsService(@Value("${app.actuator.username:actuator}") String username,
+                                                         @Value("${app.actuator.password:}") String password,
+                                                         PasswordEncoder passwordEncoder) {
+        InMemoryUserDetailsManager users = new InMemoryUserDetailsManager();
+        if (password != null && !password.isBlank()) {
+            users.createUser(User.withUsername(username)
+                    .password(passwordEncoder.encode(password))
+                    .roles(ACTUATOR_ROLE)
+                    .build());
+        }
+        return users;
+    }
+    
     @Bean
+    @Order(2)
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
                 .csrf(csrf -> csrf.disable())
                 .cors(cors -> cors.configurationSource(corsConfigurationSource))
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/api/v1/auth/**", "/api/v1/files/**", "/actuator/**").permitAll()
+                        .requestMatchers("/api/v1/auth/**", "/api/v1/files/**").permitAll()
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> 
@@ -0,0 +1,26 @@
+package com.gvn.config;
+
+import com.gvn.service.StorageUsageService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/storage: bytes and files per upload area and for the largest users.
+ * Lists user ids, so it is only served to the actuator operator (see SecurityConfig).
+ */
+@Component
+@Endpoint(id = "storage")
+@RequiredArgsConstructor
+public class StorageUsageEndpoint {
+    
+    private final StorageUsageService storageUsageService;
+    
+    @ReadOperation
+    public Map<String, Object> usage() {
+        return storageUsageService.report();
+    }
+}
@@ -1,18 +1,14 @@
 package com.gvn.config;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 
@@ -20,26 +16,6 @@ import java.util.List;
 @Slf4j
 public class WebConfig implements WebMvcConfigurer {
     
-    @Value("${app.file.upload-dir:uploads}")
-    private String uploadDir;
-    
-    @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // Resolve absolute path for file serving
-        Path basePath = Paths.get(uploadDir);
-        if (!basePath.isAbsolute()) {
-            basePath = Paths.get(System.getProperty("user.dir"), uploadDir).toAbsolutePath();
-        }
-        
-        String fileLocation = "file:" + basePath.toString() + "/";
-        log.info("Configuring file serving from: {}", fileLocation);
-        
-        // Serve uploaded files with cache control for better performance
-        registry.addResourceHandler("/api/v1/files/**")
-                .addResourceLocations(fileLocation)
-                .setCachePeriod(3600); // Cache for 1 hour
-    }
-    
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/api/v1/**")
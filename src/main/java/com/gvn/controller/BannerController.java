@@ -3,13 +3,17 @@ package com.gvn.controller;
 import com.gvn.dto.response.ApiResponse;
 import com.gvn.dto.response.BannerResponse;
 import com.gvn.service.BannerService;
+import com.gvn.service.BannerStatsService;
+import com.gvn.service.UserProfileService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,17 +24,20 @@ import java.util.UUID;
 public class BannerController {
     
     private final BannerService bannerService;
+    private final BannerStatsService bannerStatsService;
+    private final UserProfileService userProfileService;
     
     /**
      * GET /api/v1/banners
-     * Retrieve all active banners ordered by display_order
+     * Retrieve all live banners (active, inside their campaign window and targeted at the
+     * current user's segment) ordered by display_order
      * 
      * @return List of active banners
      */
     @GetMapping
     public ResponseEntity<ApiResponse<List<BannerResponse>>> getBanners() {
         try {
-            List<BannerResponse> banners = bannerService.getActiveBanners();
+            List<BannerResponse> banners = bannerService.getActiveBanners(userProfileService.getCurrentUserOrNull());
             return ResponseEntity.ok(
                     ApiResponse.success(banners, "Banners retrieved successfully")
             );
@@ -49,12 +56,15 @@ public class BannerController {
      * GET /api/v1/banners/all
      * Retrieve all banners (including inactive) - for admin use
      * 
+     * @param include_stats Attach impression/click totals (default: false)
      * @return List of all banners
      */
     @GetMapping("/all")
-    public ResponseEntity<ApiResponse<List<BannerResponse>>> getAllBanners() {
+    public ResponseEntity<ApiResponse<List<BannerResponse>>> getAllBanners(
+            @RequestParam(value = "include_stats", required = false, defaultValue = "false") boolean includeStats
+    ) {
         try {
-            List<BannerResponse> banners = bannerService.getAllBanners();
+            List<BannerResponse> banners = bannerService.getAllBanners(includeStats);
             return ResponseEntity.ok(
                     ApiResponse.success(banners, "All banners retrieved successfully")
             );
@@ -69,6 +79,38 @@ public class BannerController {
         }
     }
     
+    /**
+     * POST /api/v1/banners/{id}/impression
+     * Track a banner impression (counted in memory, flushed to banner_stats in batches)
+     * 
+     * @param id Banner ID
+     * @return Success message
+     */
+    @PostMapping("/{id}/impression")
+    public ResponseEntity<ApiResponse<Object>> trackImpression(@PathVariable UUID id) {
+        if (!bannerStatsService.recordImpression(id)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error("Banner not found with id: " + id, 404));
+        }
+        return ResponseEntity.ok(ApiResponse.success(null, "Impression recorded"));
+    }
+    
+    /**
+     * POST /api/v1/banners/{id}/click
+     * Track a banner click (counted in memory, flushed to banner_stats in batches)
+     * 
+     * @param id Banner ID
+     * @return Success message
+     */
+    @PostMapping("/{id}/click")
+    public ResponseEntity<ApiResponse<Object>> trackClick(@PathVariable UUID id) {
+        if (!bannerStatsService.recordClick(id)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error("Banner not found with id: " + id, 404));
+        }
+        return ResponseEntity.ok(ApiResponse.success(null, "Click recorded"));
+    }
+    
     /**
      * GET /api/v1/banners/{id}
      * Get banner by ID
@@ -107,6 +149,9 @@ public class BannerController {
      * @param link_url Optional link URL
      * @param display_order Display order (default: 0)
      * @param is_active Active status (default: true)
+     * @param start_at Campaign start, ISO date-time (optional)
+     * @param end_at Campaign end, ISO date-time, exclusive (optional)
+     * @param targeting_rules JSON targeting rule (optional, default: everyone)
      * @return Created banner
      */
     @PostMapping
@@ -115,7 +160,12 @@ public class BannerController {
             @RequestParam("image") MultipartFile image,
             @RequestParam(value = "link_url", required = false) String linkUrl,
             @RequestParam(value = "display_order", required = false) Integer displayOrder,
-            @RequestParam(value = "is_active", required = false) Boolean isActive
+            @RequestParam(value = "is_active", required = false) Boolean isActive,
+            @RequestParam(value = "start_at", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startAt,
+            @RequestParam(value = "end_at", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endAt,
+            @RequestParam(value = "targeting_rules", required = false) String targetingRules
     ) {
         try {
             // Validate required fields
@@ -135,7 +185,8 @@ public class BannerController {
                         .body(ApiResponse.error("Banner image exceeds maximum size of 10MB", 400));
             }
             
-            BannerResponse banner = bannerService.createBanner(title, image, linkUrl, displayOrder, isActive);
+            BannerResponse banner = bannerService.createBanner(title, image, linkUrl, displayOrder, isActive,
+                    startAt, endAt, targetingRules);
             return ResponseEntity.status(HttpStatus.CREATED)
                     .body(ApiResponse.success(banner, "Banner created successfully"));
         } catch (RuntimeException e) {
@@ -159,6 +210,10 @@ public class BannerController {
      * @param link_url Link URL (optional)
      * @param display_order Display order (optional)
      * @param is_active Active status (optional)
+     * @param start_at Campaign start, ISO date-time (optional)
+     * @param end_at Campaign end, ISO date-time, exclusive (optional)
+     * @param clear_schedule Remove the campaign window (default: false)
+     * @param targeting_rules JSON targeting rule (optional, empty string removes targeting)
      * @return Updated banner
      */
     @PutMapping("/{id}")
@@ -168,7 +223,13 @@ public class BannerController {
             @RequestParam(value = "image", required = false) MultipartFile image,
             @RequestParam(value = "link_url", required = false) String linkUrl,
             @RequestParam(value = "display_order", required = false) Integer displayOrder,
-            @RequestParam(value = "is_active", required = false) Boolean isActive
+            @RequestParam(value = "is_active", required = false) Boolean isActive,
+            @RequestParam(value = "start_at", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startAt,
+            @RequestParam(value = "end_at", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endAt,
+            @RequestParam(value = "clear_schedule", required = false, defaultValue = "false") boolean clearSchedule,
+            @RequestParam(value = "targeting_rules", required = false) String targetingRules
     ) {
         try {
             // Validate file size if image is provided
@@ -180,7 +241,8 @@ public class BannerController {
                 }
             }
             
-            BannerResponse banner = bannerService.updateBanner(id, title, image, linkUrl, displayOrder, isActive);
+            BannerResponse banner = bannerService.updateBanner(id, title, image, linkUrl, displayOrder, isActive,
+                    startAt, endAt, clearSchedule, targetingRules);
             return ResponseEntity.ok(
                     ApiResponse.success(banner, "Banner updated successfully")
             );
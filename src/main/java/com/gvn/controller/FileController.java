@@ -0,0 +1,39 @@
+package com.gvn.controller;
+
+import com.gvn.service.FileServingService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/v1/files")
+@RequiredArgsConstructor
+@Slf4j
+public class FileController {
+    
+    private static final String PREFIX = "/api/v1/files/";
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+    
+    private final FileServingService fileServingService;
+    
+    /**
+     * GET|HEAD /api/v1/files/**
+     * Serve an uploaded file (supports Range, ETag/Last-Modified revalidation)
+     */
+    @RequestMapping(value = "/**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void getFile(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = URL_PATH_HELPER.getPathWithinApplication(request);
+        if (!path.startsWith(PREFIX)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        fileServingService.serve(path.substring(PREFIX.length()), request, response);
+    }
+}
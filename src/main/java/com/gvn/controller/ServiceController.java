@@ -5,7 +5,9 @@ import com.gvn.dto.response.AvailableServiceResponse;
 import com.gvn.dto.response.CategoryResponse;
 import com.gvn.dto.response.OptionResponse;
 import com.gvn.dto.response.ServiceResponse;
+import com.gvn.dto.response.SpriteSheetResponse;
 import com.gvn.entity.User;
+import com.gvn.service.IconSpriteService;
 import com.gvn.service.ServiceService;
 import com.gvn.service.UserProfileService;
 import lombok.RequiredArgsConstructor;
@@ -25,6 +27,7 @@ public class ServiceController {
     
     private final ServiceService serviceService;
     private final UserProfileService userProfileService;
+    private final IconSpriteService iconSpriteService;
     
     /**
      * GET /api/v1/services/get-all-category
@@ -48,6 +51,28 @@ public class ServiceController {
         }
     }
     
+    /**
+     * GET /api/v1/services/category-sprite
+     * Get the sprite sheet of active category icons and each category's position in it
+     */
+    @GetMapping("/category-sprite")
+    public ResponseEntity<ApiResponse<SpriteSheetResponse>> getCategorySprite() {
+        try {
+            SpriteSheetResponse sprite = iconSpriteService.getCategorySprite();
+            if (sprite == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.error("Sprite sheet not built yet", 404));
+            }
+            return ResponseEntity.ok(
+                    ApiResponse.success(sprite, "Success")
+            );
+        } catch (Exception e) {
+            log.error("Unexpected error retrieving category sprite: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Internal server error", 500));
+        }
+    }
+    
     /**
      * GET /api/v1/services/get-service-by-category
      * Get services by category ID
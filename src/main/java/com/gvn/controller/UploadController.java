@@ -0,0 +1,145 @@
+package com.gvn.controller;
+
+import com.gvn.dto.request.CreateUploadRequest;
+import com.gvn.dto.response.ApiResponse;
+import com.gvn.dto.response.UploadSessionResponse;
+import com.gvn.exception.ConflictException;
+import com.gvn.exception.NotFoundException;
+import com.gvn.service.ResumableUploadService;
+import com.gvn.service.UserProfileService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.UUID;
+
+/**
+ * Resumable uploads: create, send chunks at an offset, complete.
+ * The returned upload_id replaces a multipart part in applicant-register / partner-profile.
+ */
+@RestController
+@RequestMapping("/api/v1/uploads")
+@RequiredArgsConstructor
+@Slf4j
+public class UploadController {
+
+    private final ResumableUploadService resumableUploadService;
+    private final UserProfileService userProfileService;
+
+    /**
+     * POST /api/v1/uploads
+     * Start an upload of the given total size
+     */
+    @PostMapping
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> createUpload(
+            @Valid @RequestBody CreateUploadRequest request
+    ) {
+        try {
+            UUID userId = userProfileService.getCurrentUser().getId();
+            UploadSessionResponse response = resumableUploadService.create(userId, request);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(ApiResponse.success(response, "Upload created successfully"));
+        } catch (RuntimeException e) {
+            log.error("Error creating upload: ", e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage(), 400));
+        } catch (Exception e) {
+            log.error("Unexpected error creating upload: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to create upload", 500));
+        }
+    }
+
+    /**
+     * GET /api/v1/uploads/{id}
+     * Current offset, to resume after a dropped connection
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> getUpload(@PathVariable UUID id) {
+        try {
+            UUID userId = userProfileService.getCurrentUser().getId();
+            UploadSessionResponse response = resumableUploadService.getStatus(id, userId);
+            return ResponseEntity.ok(ApiResponse.success(response, "Upload retrieved successfully"));
+        } catch (RuntimeException e) {
+            log.error("Error getting upload {}: {}", id, e.getMessage());
+            return errorResponse(e);
+        } catch (Exception e) {
+            log.error("Unexpected error getting upload: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to retrieve upload", 500));
+        }
+    }
+
+    /**
+     * PATCH /api/v1/uploads/{id} with header Upload-Offset and the chunk as the raw body
+     */
+    @PatchMapping(value = "/{id}", consumes = {"application/octet-stream", "application/offset+octet-stream"})
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> appendChunk(
+            @PathVariable UUID id,
+            @RequestHeader("Upload-Offset") long offset,
+            HttpServletRequest request
+    ) {
+        try {
+            UUID userId = userProfileService.getCurrentUser().getId();
+            UploadSessionResponse response = resumableUploadService.append(id, userId, offset, request.getInputStream());
+            return ResponseEntity.ok(ApiResponse.success(response, "Chunk received"));
+        } catch (RuntimeException e) {
+            log.error("Error appending to upload {}: {}", id, e.getMessage());
+            return errorResponse(e);
+        } catch (Exception e) {
+            log.error("Unexpected error appending to upload: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to write chunk", 500));
+        }
+    }
+
+    /**
+     * POST /api/v1/uploads/{id}/complete
+     */
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> completeUpload(@PathVariable UUID id) {
+        try {
+            UUID userId = userProfileService.getCurrentUser().getId();
+            UploadSessionResponse response = resumableUploadService.complete(id, userId);
+            return ResponseEntity.ok(ApiResponse.success(response, "Upload completed successfully"));
+        } catch (RuntimeException e) {
+            log.error("Error completing upload {}: {}", id, e.getMessage());
+            return errorResponse(e);
+        } catch (Exception e) {
+            log.error("Unexpected error completing upload: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to complete upload", 500));
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<ApiResponse<Object>> abortUpload(@PathVariable UUID id) {
+        try {
+            UUID userId = userProfileService.getCurrentUser().getId();
+            resumableUploadService.abort(id, userId);
+            return ResponseEntity.ok(ApiResponse.success(null, "Upload deleted successfully"));
+        } catch (RuntimeException e) {
+            log.error("Error deleting upload {}: {}", id, e.getMessage());
+            return errorResponse(e);
+        } catch (Exception e) {
+            log.error("Unexpected error deleting upload: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to delete upload", 500));
+        }
+    }
+
+    private static <T> ResponseEntity<ApiResponse<T>> errorResponse(RuntimeException e) {
+        String message = e.getMessage() != null ? e.getMessage() : "Upload request failed";
+        if (e instanceof NotFoundException) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ApiResponse.error(message, 404));
+        }
+        if (e instanceof ConflictException) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ApiResponse.error(message, 409));
+        }
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ApiResponse.error(message, 400));
+    }
+}
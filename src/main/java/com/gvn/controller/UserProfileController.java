@@ -5,6 +5,7 @@ import com.gvn.dto.request.UpdateProfileRequest;
 import com.gvn.dto.response.ApiResponse;
 import com.gvn.dto.response.UserResponse;
 import com.gvn.service.UserProfileService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,6 +14,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
+import java.util.UUID;
+
 @RestController
 @RequestMapping("/api/v1/user")
 @RequiredArgsConstructor
@@ -59,7 +63,7 @@ public class UserProfileController {
         }
     }
     
-    @PutMapping("/profile/avatar")
+    @PutMapping(value = "/profile/avatar", consumes = "multipart/form-data")
     public ResponseEntity<ApiResponse<UserResponse>> updateAvatar(
             @RequestParam("image") MultipartFile image
     ) {
@@ -82,6 +86,37 @@ public class UserProfileController {
         }
     }
     
+    /**
+     * PUT /api/v1/user/profile/avatar with a raw image body (Content-Type: image/jpeg|png|webp|gif)
+     * Streams the body straight into storage without multipart spooling
+     */
+    @PutMapping(value = "/profile/avatar", consumes = {"image/jpeg", "image/png", "image/webp", "image/gif"})
+    public ResponseEntity<ApiResponse<UserResponse>> updateAvatarRaw(HttpServletRequest request) {
+        try {
+            if (request.getContentLengthLong() == 0) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(ApiResponse.error("Image file is required", 400));
+            }
+            
+            String extension = switch (request.getContentType().split(";")[0].trim().toLowerCase()) {
+                case "image/jpeg" -> ".jpg";
+                case "image/png" -> ".png";
+                case "image/webp" -> ".webp";
+                default -> ".gif";
+            };
+            UserResponse updatedProfile = userProfileService.updateAvatar(request.getInputStream(), extension);
+            return ResponseEntity.ok(ApiResponse.success(updatedProfile, "Avatar updated successfully"));
+        } catch (RuntimeException e) {
+            log.error("Error updating avatar: ", e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage(), 400));
+        } catch (Exception e) {
+            log.error("Unexpected error updating avatar: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to update avatar", 500));
+        }
+    }
+    
     @DeleteMapping("/profile/avatar")
     public ResponseEntity<ApiResponse<Object>> deleteAvatar() {
         try {
@@ -136,6 +171,11 @@ public class UserProfileController {
         }
     }
     
+    /**
+     * POST /api/v1/user/applicant-register
+     * Documents are multipart parts or ids of finalized resumable uploads (/api/v1/uploads):
+     * cccd_front_upload_id, cccd_back_upload_id, health_certificate_upload_ids
+     */
     @PostMapping("/applicant-register")
     public ResponseEntity<ApiResponse<UserResponse>> registerAsPartner(
             @RequestParam("full_name") String fullName,
@@ -144,33 +184,38 @@ public class UserProfileController {
             @RequestParam("address") String address,
             @RequestParam("cccd") String cccd,
             @RequestParam("years_of_experience") Integer yearsOfExperience,
-            @RequestParam("cccd_front_image") MultipartFile cccdFrontImage,
-            @RequestParam("cccd_back_image") MultipartFile cccdBackImage,
-            @RequestParam(value = "health_certificates", required = false) MultipartFile[] healthCertificates
+            @RequestParam(value = "cccd_front_image", required = false) MultipartFile cccdFrontImage,
+            @RequestParam(value = "cccd_back_image", required = false) MultipartFile cccdBackImage,
+            @RequestParam(value = "health_certificates", required = false) MultipartFile[] healthCertificates,
+            @RequestParam(value = "cccd_front_upload_id", required = false) UUID cccdFrontUploadId,
+            @RequestParam(value = "cccd_back_upload_id", required = false) UUID cccdBackUploadId,
+            @RequestParam(value = "health_certificate_upload_ids", required = false) List<UUID> healthCertificateUploadIds
     ) {
         try {
             log.info("Received applicant registration request. Full name: {}, CCCD: {}", fullName, cccd);
             
             // Validate required images
-            if (cccdFrontImage == null || cccdFrontImage.isEmpty()) {
+            boolean hasFrontImage = cccdFrontImage != null && !cccdFrontImage.isEmpty();
+            boolean hasBackImage = cccdBackImage != null && !cccdBackImage.isEmpty();
+            if (!hasFrontImage && cccdFrontUploadId == null) {
                 log.warn("CCCD front image is missing");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                         .body(ApiResponse.error("CCCD front image is required", 400));
             }
-            if (cccdBackImage == null || cccdBackImage.isEmpty()) {
+            if (!hasBackImage && cccdBackUploadId == null) {
                 log.warn("CCCD back image is missing");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                         .body(ApiResponse.error("CCCD back image is required", 400));
             }
             
-            // Validate file sizes (10MB = 10 * 1024 * 1024 bytes)
+            // Validate file sizes (10MB = 10 * 1024 * 1024 bytes); resumable uploads are checked at creation
             long maxFileSize = 10 * 1024 * 1024; // 10MB
-            if (cccdFrontImage.getSize() > maxFileSize) {
+            if (hasFrontImage && cccdFrontImage.getSize() > maxFileSize) {
                 log.warn("CCCD front image too large: {} bytes", cccdFrontImage.getSize());
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                         .body(ApiResponse.error("CCCD front image exceeds maximum size of 10MB", 400));
             }
-            if (cccdBackImage.getSize() > maxFileSize) {
+            if (hasBackImage && cccdBackImage.getSize() > maxFileSize) {
                 log.warn("CCCD back image too large: {} bytes", cccdBackImage.getSize());
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                         .body(ApiResponse.error("CCCD back image exceeds maximum size of 10MB", 400));
@@ -188,12 +233,14 @@ public class UserProfileController {
             }
             
             log.info("File validation passed. Front: {} bytes, Back: {} bytes, Health certs: {}", 
-                    cccdFrontImage.getSize(), cccdBackImage.getSize(), 
-                    healthCertificates != null ? healthCertificates.length : 0);
+                    hasFrontImage ? cccdFrontImage.getSize() : 0, hasBackImage ? cccdBackImage.getSize() : 0, 
+                    healthCertificateUploadIds != null ? healthCertificateUploadIds.size()
+                            : healthCertificates != null ? healthCertificates.length : 0);
             
             UserResponse response = userProfileService.registerAsPartner(
                     fullName, gender, birthday, address, cccd, yearsOfExperience,
-                    cccdFrontImage, cccdBackImage, healthCertificates
+                    cccdFrontImage, cccdBackImage, healthCertificates,
+                    cccdFrontUploadId, cccdBackUploadId, healthCertificateUploadIds
             );
             log.info("Partner registration completed successfully");
             return ResponseEntity.ok(ApiResponse.success(response, "Partner registration submitted successfully"));
@@ -223,12 +270,16 @@ public class UserProfileController {
             @RequestParam("years_of_experience") Integer yearsOfExperience,
             @RequestParam(value = "cccd_front_image", required = false) MultipartFile cccdFrontImage,
             @RequestParam(value = "cccd_back_image", required = false) MultipartFile cccdBackImage,
-            @RequestParam(value = "health_certificates", required = false) MultipartFile[] healthCertificates
+            @RequestParam(value = "health_certificates", required = false) MultipartFile[] healthCertificates,
+            @RequestParam(value = "cccd_front_upload_id", required = false) UUID cccdFrontUploadId,
+            @RequestParam(value = "cccd_back_upload_id", required = false) UUID cccdBackUploadId,
+            @RequestParam(value = "health_certificate_upload_ids", required = false) List<UUID> healthCertificateUploadIds
     ) {
         try {
             UserResponse response = userProfileService.updatePartnerProfile(
                     fullName, gender, birthday, address, cccd, yearsOfExperience,
-                    cccdFrontImage, cccdBackImage, healthCertificates
+                    cccdFrontImage, cccdBackImage, healthCertificates,
+                    cccdFrontUploadId, cccdBackUploadId, healthCertificateUploadIds
             );
             return ResponseEntity.ok(ApiResponse.success(response, "Partner profile updated successfully"));
         } catch (RuntimeException e) {
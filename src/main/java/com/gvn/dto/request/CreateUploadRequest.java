@@ -0,0 +1,23 @@
+package com.gvn.dto.request;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CreateUploadRequest {
+    
+    @NotNull(message = "Size is required")
+    @Positive(message = "Size must be positive")
+    private Long size; // Total bytes the client will send
+    
+    private String file_name; // Only the extension is kept
+    
+    private String content_type;
+}
@@ -1,10 +1,13 @@
 package com.gvn.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Data
@@ -15,8 +18,22 @@ public class BannerResponse {
     private UUID id;
     private String title;
     private String image_url;
+    @JsonRawValue
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String image_variants; // srcset-style map: {"1x": url, "2x": url, "3x": url}
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String image_placeholder; // BlurHash to render while the image loads
     private String link_url;
     private Integer display_order;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LocalDateTime start_at; // Admin responses only
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LocalDateTime end_at; // Admin responses only
+    @JsonRawValue
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String targeting_rules; // Stored JSON rule tree, admin responses only
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private BannerStatsResponse stats; // Admin listing only
     
     public static BannerResponse fromBanner(com.gvn.entity.Banner banner) {
         if (banner == null) {
@@ -26,8 +43,50 @@ public class BannerResponse {
                 .id(banner.getId())
                 .title(banner.getTitle())
                 .image_url(banner.getImageUrl())
+                .image_variants(banner.getImageVariants())
+                .image_placeholder(banner.getImagePlaceholder())
                 .link_url(banner.getLinkUrl())
                 .display_order(banner.getDisplayOrder())
+                .start_at(banner.getStartAt())
+                .end_at(banner.getEndAt())
+                .targeting_rules(banner.getTargetingRules())
+                .build();
+    }
+    
+    public static BannerResponse fromView(com.gvn.repository.projection.BannerView view) {
+        if (view == null) {
+            return null;
+        }
+        return BannerResponse.builder()
+                .id(view.id())
+                .title(view.title())
+                .image_url(view.imageUrl())
+                .image_variants(view.imageVariants())
+                .image_placeholder(view.imagePlaceholder())
+                .link_url(view.linkUrl())
+                .display_order(view.displayOrder())
+                .start_at(view.startAt())
+                .end_at(view.endAt())
+                .targeting_rules(view.targetingRules())
+                .build();
+    }
+    
+    /**
+     * Public listing form: what a client needs to render the banner, without the campaign
+     * window or the targeting rules
+     */
+    public static BannerResponse publicFromView(com.gvn.repository.projection.BannerView view) {
+        if (view == null) {
+            return null;
+        }
+        return BannerResponse.builder()
+                .id(view.id())
+                .title(view.title())
+                .image_url(view.imageUrl())
+                .image_variants(view.imageVariants())
+                .image_placeholder(view.imagePlaceholder())
+                .link_url(view.linkUrl())
+                .display_order(view.displayOrder())
                 .build();
     }
 }
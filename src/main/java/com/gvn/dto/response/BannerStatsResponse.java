@@ -0,0 +1,24 @@
+package com.gvn.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BannerStatsResponse {
+    private Long impressions;
+    private Long clicks;
+    private Double click_through_rate;
+    
+    public static BannerStatsResponse of(long impressions, long clicks) {
+        return BannerStatsResponse.builder()
+                .impressions(impressions)
+                .clicks(clicks)
+                .click_through_rate(impressions > 0 ? (double) clicks / impressions : 0.0)
+                .build();
+    }
+}
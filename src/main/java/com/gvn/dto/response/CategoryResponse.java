@@ -1,5 +1,7 @@
 package com.gvn.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,6 +15,9 @@ public class CategoryResponse {
     private Integer id;
     private String name;
     private String icon;
+    @JsonRawValue
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String icon_variants; // srcset-style map: {"1x": url, "2x": url, "3x": url}
     private Integer display_order;
     
     public static CategoryResponse fromCategory(com.gvn.entity.Category category) {
@@ -23,7 +28,21 @@ public class CategoryResponse {
                 .id(category.getId())
                 .name(category.getName())
                 .icon(category.getIcon())
+                .icon_variants(category.getIconVariants())
                 .display_order(category.getDisplayOrder())
                 .build();
     }
+    
+    public static CategoryResponse fromView(com.gvn.repository.projection.CategoryView view) {
+        if (view == null) {
+            return null;
+        }
+        return CategoryResponse.builder()
+                .id(view.id())
+                .name(view.name())
+                .icon(view.icon())
+                .icon_variants(view.iconVariants())
+                .display_order(view.displayOrder())
+                .build();
+    }
 }
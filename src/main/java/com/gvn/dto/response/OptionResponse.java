@@ -26,4 +26,16 @@ public class OptionResponse {
                 .display_order(option.getDisplayOrder())
                 .build();
     }
+    
+    public static OptionResponse fromView(com.gvn.repository.projection.OptionView view) {
+        if (view == null) {
+            return null;
+        }
+        return OptionResponse.builder()
+                .id(view.id())
+                .name(view.name())
+                .value(view.value())
+                .display_order(view.displayOrder())
+                .build();
+    }
 }
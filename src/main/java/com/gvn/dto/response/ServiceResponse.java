@@ -1,5 +1,7 @@
 package com.gvn.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -15,6 +17,9 @@ public class ServiceResponse {
     private String name;
     private String short_description;
     private String icon;
+    @JsonRawValue
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String icon_variants; // srcset-style map: {"1x": url, "2x": url, "3x": url}
     private Integer category_id;
     
     public static ServiceResponse fromService(com.gvn.entity.Service service) {
@@ -27,7 +32,23 @@ public class ServiceResponse {
                 .name(service.getName())
                 .short_description(service.getShortDescription())
                 .icon(service.getIcon())
+                .icon_variants(service.getIconVariants())
                 .category_id(service.getCategory() != null ? service.getCategory().getId() : null)
                 .build();
     }
+    
+    public static ServiceResponse fromView(com.gvn.repository.projection.ServiceView view) {
+        if (view == null) {
+            return null;
+        }
+        return ServiceResponse.builder()
+                .id(view.id())
+                .code(view.code())
+                .name(view.name())
+                .short_description(view.shortDescription())
+                .icon(view.icon())
+                .icon_variants(view.iconVariants())
+                .category_id(view.categoryId())
+                .build();
+    }
 }
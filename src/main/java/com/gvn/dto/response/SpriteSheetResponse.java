@@ -0,0 +1,35 @@
+package com.gvn.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SpriteSheetResponse {
+    private String version; // Content hash; changes whenever the sheet does
+    private String image_url;
+    private Integer width;
+    private Integer height;
+    private Integer cell_size;
+    @JsonRawValue
+    private String icons; // {"<id>": {"x": 0, "y": 0, "w": 96, "h": 96}}; missing ids use their own icon URL
+    
+    public static SpriteSheetResponse fromSpriteSheet(com.gvn.entity.SpriteSheet sheet) {
+        if (sheet == null) {
+            return null;
+        }
+        return SpriteSheetResponse.builder()
+                .version(sheet.getContentHash())
+                .image_url(sheet.getImageUrl())
+                .width(sheet.getWidth())
+                .height(sheet.getHeight())
+                .cell_size(sheet.getCellSize())
+                .icons(sheet.getIcons())
+                .build();
+    }
+}
@@ -0,0 +1,32 @@
+package com.gvn.dto.response;
+
+import com.gvn.entity.UploadSession;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSessionResponse {
+    private UUID upload_id;
+    private Long size;
+    private Long offset; // Next byte the server expects
+    private Boolean completed;
+    private LocalDateTime expires_at;
+    
+    public static UploadSessionResponse from(UploadSession session) {
+        return UploadSessionResponse.builder()
+                .upload_id(session.getId())
+                .size(session.getSize())
+                .offset(session.getReceivedBytes())
+                .completed(session.getCompleted())
+                .expires_at(session.getExpiresAt())
+                .build();
+    }
+}
@@ -1,5 +1,7 @@
 package com.gvn.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import com.gvn.entity.PartnerProfile;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -7,6 +9,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
 
 @Data
@@ -22,6 +25,11 @@ public class UserResponse {
     private String address;
     private String phone;
     private String avatar_url;
+    @JsonRawValue
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String avatar_variants; // {"64": url, "128": url, "512": url}
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String avatar_placeholder; // BlurHash to render while the avatar loads
     private Boolean has_partner_profile;
     private PartnerProfileResponse partner_profile;
     
@@ -31,6 +39,13 @@ public class UserResponse {
     @Builder
     public static class PartnerProfileResponse {
         private String profile_status;
+        // Identity documents: signed URLs that expire after a few minutes
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String cccd_front_image_url;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String cccd_back_image_url;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private List<String> health_certificates_urls;
     }
     
     public static PartnerProfileResponse fromPartnerProfile(PartnerProfile partnerProfile) {
@@ -41,5 +56,13 @@ public class UserResponse {
                 .profile_status(partnerProfile.getProfileStatus().name().toLowerCase())
                 .build();
     }
+    
+    public static PartnerProfileResponse fromProfileStatus(PartnerProfile.ProfileStatus profileStatus) {
+        if (profileStatus == null) {
+            return null;
+        }
+        return PartnerProfileResponse.builder()
+                .profile_status(profileStatus.name().toLowerCase())
+                .build();
+    }
 }
-
@@ -27,6 +27,12 @@ public class Banner {
     @Column(name = "image_url", nullable = false)
     private String imageUrl;
     
+    @Column(name = "image_variants", columnDefinition = "TEXT")
+    private String imageVariants; // JSON map of density (1x/2x/3x) to URL, filled in the background
+    
+    @Column(name = "image_placeholder", length = 64)
+    private String imagePlaceholder; // BlurHash of the image, filled in the background
+    
     @Column(name = "link_url")
     private String linkUrl; // Optional - can be null or empty
     
@@ -38,6 +44,15 @@ public class Banner {
     @Builder.Default
     private Boolean isActive = true;
     
+    @Column(name = "start_at")
+    private LocalDateTime startAt; // Optional - campaign start, null = immediately
+    
+    @Column(name = "end_at")
+    private LocalDateTime endAt; // Optional - campaign end (exclusive), null = never
+    
+    @Column(name = "targeting_rules", columnDefinition = "TEXT")
+    private String targetingRules; // Optional - JSON rule tree, null = everyone
+    
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     
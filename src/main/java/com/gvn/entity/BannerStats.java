@@ -0,0 +1,39 @@
+package com.gvn.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "banner_stats",
+       uniqueConstraints = @UniqueConstraint(name = "uk_banner_stats_banner_bucket",
+                                             columnNames = {"banner_id", "bucket_start"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BannerStats {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+    
+    @Column(name = "banner_id", nullable = false)
+    private UUID bannerId;
+    
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart; // Start of the hour the counts belong to
+    
+    @Column(name = "impressions", nullable = false)
+    @Builder.Default
+    private Long impressions = 0L;
+    
+    @Column(name = "clicks", nullable = false)
+    @Builder.Default
+    private Long clicks = 0L;
+}
@@ -26,6 +26,9 @@ public class Category {
     @Column(name = "icon")
     private String icon;
     
+    @Column(name = "icon_variants", columnDefinition = "TEXT")
+    private String iconVariants; // JSON map of density (1x/2x/3x) to URL, filled in the background
+    
     @Column(name = "display_order", nullable = false)
     @Builder.Default
     private Integer displayOrder = 0;
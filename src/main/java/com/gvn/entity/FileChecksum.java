@@ -0,0 +1,48 @@
+package com.gvn.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "file_checksums", indexes = {
+        @Index(name = "idx_file_checksums_unit", columnList = "unit"),
+        @Index(name = "idx_file_checksums_status", columnList = "status")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FileChecksum {
+    
+    public static final String STATUS_OK = "ok";
+    public static final String STATUS_MISMATCH = "mismatch";
+    public static final String STATUS_MISSING = "missing";
+    public static final String STATUS_QUARANTINED = "quarantined";
+    
+    @Id
+    @Column(name = "path", length = 512)
+    private String path; // Relative path as stored on disk
+    
+    @Column(name = "unit", nullable = false, length = 512)
+    private String unit; // Scrub unit: directory down to the first shard level (e.g. avatars/ab)
+    
+    @Column(name = "size", nullable = false)
+    private Long size; // Bytes on disk expected for the file
+    
+    @Column(name = "crc32c", nullable = false)
+    private Long crc32c;
+    
+    @Column(name = "status", nullable = false, length = 16)
+    private String status;
+    
+    @Column(name = "recorded_at", nullable = false)
+    private LocalDateTime recordedAt;
+    
+    @Column(name = "verified_at")
+    private LocalDateTime verifiedAt;
+}
@@ -0,0 +1,57 @@
+package com.gvn.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "packed_files", indexes = @Index(name = "idx_packed_files_pack", columnList = "pack"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PackedFile {
+    
+    public static final String COMPRESSION_NONE = "none";
+    public static final String COMPRESSION_DEFLATE = "deflate";
+    
+    @Id
+    @Column(name = "path", length = 512)
+    private String path; // Relative path the file had on disk
+    
+    @Column(name = "pack", nullable = false)
+    private String pack; // Pack file name under .packs
+    
+    @Column(name = "pack_offset", nullable = false)
+    private Long offset; // Position of the stored bytes in the pack
+    
+    @Column(name = "stored_length", nullable = false)
+    private Long storedLength;
+    
+    @Column(name = "size", nullable = false)
+    private Long size; // Bytes the file had on disk
+    
+    @Column(name = "compression", nullable = false, length = 16)
+    private String compression;
+    
+    @Column(name = "encrypted", nullable = false)
+    private Boolean encrypted; // Stored as written by FileEncryption (never compressed)
+    
+    @Column(name = "crc32c", nullable = false)
+    private Long crc32c; // Of the stored bytes
+    
+    @Column(name = "last_modified", nullable = false)
+    private Long lastModified; // Original mtime (epoch millis), keeps ETag and Last-Modified stable
+    
+    @Column(name = "packed_at")
+    private LocalDateTime packedAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        packedAt = LocalDateTime.now();
+    }
+}
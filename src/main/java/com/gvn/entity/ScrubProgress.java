@@ -0,0 +1,34 @@
+package com.gvn.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "scrub_progress")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ScrubProgress {
+    
+    @Id
+    @Column(name = "id", length = 64)
+    private String id; // One row per scrubbed store
+    
+    @Column(name = "pass_started_at")
+    private LocalDateTime passStartedAt;
+    
+    @Column(name = "pass_finished_at")
+    private LocalDateTime passFinishedAt; // Null while a pass is in progress
+    
+    @Column(name = "last_unit", length = 512)
+    private String lastUnit; // Every unit up to and including this one is done in the current pass
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -32,6 +32,9 @@ public class Service {
     @Column(name = "icon")
     private String icon;
     
+    @Column(name = "icon_variants", columnDefinition = "TEXT")
+    private String iconVariants; // JSON map of density (1x/2x/3x) to URL, filled in the background
+    
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "category_id", nullable = false)
     private Category category;
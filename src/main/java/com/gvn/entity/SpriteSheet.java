@@ -0,0 +1,51 @@
+package com.gvn.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "sprite_sheets")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SpriteSheet {
+    
+    public static final String CATEGORIES = "categories";
+    
+    @Id
+    @Column(name = "name", length = 64)
+    private String name; // Which icon set (e.g. categories)
+    
+    @Column(name = "image_url", nullable = false)
+    private String imageUrl; // Content-addressed PNG, safe to cache forever
+    
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash; // SHA-256 of the PNG, the sheet's version
+    
+    @Column(name = "width", nullable = false)
+    private Integer width;
+    
+    @Column(name = "height", nullable = false)
+    private Integer height;
+    
+    @Column(name = "cell_size", nullable = false)
+    private Integer cellSize;
+    
+    @Column(name = "icons", nullable = false, columnDefinition = "TEXT")
+    private String icons; // JSON map of id to {"x", "y", "w", "h"} in the sheet
+    
+    @Column(name = "built_at")
+    private LocalDateTime builtAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        builtAt = LocalDateTime.now();
+    }
+}
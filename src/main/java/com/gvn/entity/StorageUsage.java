@@ -0,0 +1,37 @@
+package com.gvn.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "storage_usage", indexes = @Index(name = "idx_storage_usage_scope_bytes", columnList = "scope, bytes"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StorageUsage {
+    
+    public static final String SCOPE_AREA = "area";
+    public static final String SCOPE_USER = "user";
+    
+    @Id
+    @Column(name = "usage_key", length = 255)
+    private String usageKey; // "<scope>:<area or user id>", e.g. "area:avatars"
+    
+    @Column(name = "scope", nullable = false, length = 16)
+    private String scope;
+    
+    @Column(name = "bytes", nullable = false)
+    private Long bytes;
+    
+    @Column(name = "files", nullable = false)
+    private Long files;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,37 @@
+package com.gvn.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "stored_blobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StoredBlob {
+    
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash; // Hex SHA-256 of the content
+    
+    @Column(name = "size", nullable = false)
+    private Long size;
+    
+    @Column(name = "ref_count", nullable = false)
+    @Builder.Default
+    private Integer refCount = 0; // Number of stored_files rows pointing at this blob
+    
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
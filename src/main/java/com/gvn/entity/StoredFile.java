@@ -0,0 +1,36 @@
+package com.gvn.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "stored_files", indexes = @Index(name = "idx_stored_files_content_hash", columnList = "content_hash"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StoredFile {
+    
+    @Id
+    @Column(name = "path", length = 512)
+    private String path; // Relative path as returned by FileStorageService.storeFile
+    
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+    
+    @Column(name = "size", nullable = false)
+    private Long size;
+    
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -11,7 +11,9 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_avatar_pending_since", columnList = "avatar_pending_since")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -44,7 +46,16 @@ public class User {
     private String address;
     
     @Column(name = "avatar_url")
-    private String avatarUrl;
+    private String avatarUrl; // Original upload until processed, then the largest normalized variant
+    
+    @Column(name = "avatar_variants", columnDefinition = "TEXT")
+    private String avatarVariants; // JSON map of size (64/128/512) to URL, filled in the background
+    
+    @Column(name = "avatar_placeholder", length = 64)
+    private String avatarPlaceholder; // BlurHash of the avatar, filled in the background
+    
+    @Column(name = "avatar_pending_since")
+    private LocalDateTime avatarPendingSince; // Upload time while the avatar awaits normalization, then null
     
     @Column(name = "has_partner_profile")
     @Builder.Default
@@ -0,0 +1,11 @@
+package com.gvn.exception;
+
+/**
+ * The request is valid but clashes with the resource's current state (HTTP 409)
+ */
+public class ConflictException extends RuntimeException {
+    
+    public ConflictException(String message) {
+        super(message);
+    }
+}
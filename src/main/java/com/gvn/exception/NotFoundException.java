@@ -0,0 +1,11 @@
+package com.gvn.exception;
+
+/**
+ * The requested resource does not exist or does not belong to the caller (HTTP 404)
+ */
+public class NotFoundException extends RuntimeException {
+    
+    public NotFoundException(String message) {
+        super(message);
+    }
+}
@@ -1,10 +1,16 @@
 package com.gvn.repository;
 
 import com.gvn.entity.Banner;
+import com.gvn.repository.projection.BannerView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -19,4 +25,30 @@ public interface BannerRepository extends JpaRepository<Banner, UUID> {
      * Find all banners ordered by display_order ascending
      */
     List<Banner> findAllByOrderByDisplayOrderAsc();
+    
+    /**
+     * Flat projection of all banners ordered by display_order ascending
+     */
+    @Query("SELECT new com.gvn.repository.projection.BannerView(" +
+           "b.id, b.title, b.imageUrl, b.imageVariants, b.imagePlaceholder, b.linkUrl, b.displayOrder, b.isActive, b.startAt, b.endAt, b.targetingRules) " +
+           "FROM Banner b ORDER BY b.displayOrder ASC")
+    List<BannerView> findAllViews();
+    
+    /**
+     * Flat projection of a single banner
+     */
+    @Query("SELECT new com.gvn.repository.projection.BannerView(" +
+           "b.id, b.title, b.imageUrl, b.imageVariants, b.imagePlaceholder, b.linkUrl, b.displayOrder, b.isActive, b.startAt, b.endAt, b.targetingRules) " +
+           "FROM Banner b WHERE b.id = :id")
+    Optional<BannerView> findViewById(@Param("id") UUID id);
+    
+    /**
+     * Store generated image variants and placeholder, only if the banner still points at the same image
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Banner b SET b.imageVariants = :variants, b.imagePlaceholder = :placeholder " +
+           "WHERE b.id = :id AND b.imageUrl = :imageUrl")
+    int updateImageVariants(@Param("id") UUID id, @Param("imageUrl") String imageUrl,
+                            @Param("variants") String variants, @Param("placeholder") String placeholder);
 }
@@ -0,0 +1,21 @@
+package com.gvn.repository;
+
+import com.gvn.entity.BannerStats;
+import com.gvn.repository.projection.BannerStatsView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface BannerStatsRepository extends JpaRepository<BannerStats, UUID> {
+    
+    /**
+     * Lifetime totals per banner (sum over all hour buckets)
+     */
+    @Query("SELECT new com.gvn.repository.projection.BannerStatsView(s.bannerId, SUM(s.impressions), SUM(s.clicks)) " +
+           "FROM BannerStats s GROUP BY s.bannerId")
+    List<BannerStatsView> findTotals();
+}
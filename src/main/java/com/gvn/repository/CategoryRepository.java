@@ -1,10 +1,16 @@
 package com.gvn.repository;
 
 import com.gvn.entity.Category;
+import com.gvn.repository.projection.CategoryView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface CategoryRepository extends JpaRepository<Category, Integer> {
@@ -13,4 +19,38 @@ public interface CategoryRepository extends JpaRepository<Category, Integer> {
      * Find all active categories ordered by display_order ascending
      */
     List<Category> findByIsActiveTrueOrderByDisplayOrderAsc();
+    
+    /**
+     * Flat projection of all active categories ordered by display_order ascending
+     */
+    @Query("SELECT new com.gvn.repository.projection.CategoryView(c.id, c.name, c.icon, c.iconVariants, c.displayOrder) " +
+           "FROM Category c WHERE c.isActive = true ORDER BY c.displayOrder ASC")
+    List<CategoryView> findActiveViews();
+    
+    /**
+     * Flat projection of a single category
+     */
+    @Query("SELECT new com.gvn.repository.projection.CategoryView(c.id, c.name, c.icon, c.iconVariants, c.displayOrder) " +
+           "FROM Category c WHERE c.id = :id")
+    Optional<CategoryView> findViewById(@Param("id") Integer id);
+    
+    /**
+     * Case-insensitive name check (lower(name) lookup instead of loading all categories)
+     */
+    @Query("SELECT COUNT(c) > 0 FROM Category c WHERE LOWER(c.name) = LOWER(:name)")
+    boolean existsByNameIgnoreCase(@Param("name") String name);
+    
+    /**
+     * Case-insensitive name check excluding the given category
+     */
+    @Query("SELECT COUNT(c) > 0 FROM Category c WHERE LOWER(c.name) = LOWER(:name) AND c.id <> :id")
+    boolean existsByNameIgnoreCaseAndIdNot(@Param("name") String name, @Param("id") Integer id);
+    
+    /**
+     * Store generated icon variants, only if the category still points at the same icon
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Category c SET c.iconVariants = :variants WHERE c.id = :id AND c.icon = :icon")
+    int updateIconVariants(@Param("id") Integer id, @Param("icon") String icon, @Param("variants") String variants);
 }
@@ -0,0 +1,26 @@
+package com.gvn.repository;
+
+import com.gvn.entity.PackedFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface PackedFileRepository extends JpaRepository<PackedFile, String> {
+
+    List<PackedFile> findByPackOrderByOffsetAsc(String pack);
+
+    /**
+     * Move an entry to the pack compaction copied it into, unless it was deleted meanwhile
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE PackedFile p SET p.pack = :toPack, p.offset = :offset WHERE p.path = :path AND p.pack = :fromPack")
+    int relocate(@Param("path") String path, @Param("fromPack") String fromPack,
+                 @Param("toPack") String toPack, @Param("offset") Long offset);
+}
@@ -3,6 +3,8 @@ package com.gvn.repository;
 import com.gvn.entity.PartnerProfile;
 import com.gvn.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -11,5 +13,10 @@ import java.util.UUID;
 @Repository
 public interface PartnerProfileRepository extends JpaRepository<PartnerProfile, UUID> {
     Optional<PartnerProfile> findByUser(User user);
+    
+    /**
+     * Select only the profile status for a user (no entity or user join load)
+     */
+    @Query("SELECT p.profileStatus FROM PartnerProfile p WHERE p.user.id = :userId")
+    Optional<PartnerProfile.ProfileStatus> findProfileStatusByUserId(@Param("userId") UUID userId);
 }
-
@@ -25,4 +25,9 @@ public interface PartnerServiceRepository extends JpaRepository<PartnerService,
      * Find all partner services by service
      */
     List<PartnerService> findByServiceId(Integer serviceId);
+    
+    /**
+     * Count partner services by service (no entity load)
+     */
+    long countByServiceId(Integer serviceId);
 }
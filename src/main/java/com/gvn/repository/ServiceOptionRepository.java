@@ -1,7 +1,10 @@
 package com.gvn.repository;
 
 import com.gvn.entity.ServiceOption;
+import com.gvn.repository.projection.OptionView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -15,4 +18,13 @@ public interface ServiceOptionRepository extends JpaRepository<ServiceOption, St
     List<ServiceOption> findBySourceAndServiceIdAndIsActiveTrueOrderByDisplayOrderAsc(
             String source, Integer serviceId
     );
+    
+    /**
+     * Flat projection of active options by source and service_id ordered by display_order
+     */
+    @Query("SELECT new com.gvn.repository.projection.OptionView(o.id, o.name, o.value, o.displayOrder) " +
+           "FROM ServiceOption o " +
+           "WHERE o.source = :source AND o.service.id = :serviceId AND o.isActive = true " +
+           "ORDER BY o.displayOrder ASC")
+    List<OptionView> findActiveViews(@Param("source") String source, @Param("serviceId") Integer serviceId);
 }
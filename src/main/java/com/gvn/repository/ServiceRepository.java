@@ -1,11 +1,17 @@
 package com.gvn.repository;
 
 import com.gvn.entity.Service;
+import com.gvn.repository.projection.ServiceView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 @Repository
 public interface ServiceRepository extends JpaRepository<Service, Integer> {
@@ -24,4 +30,49 @@ public interface ServiceRepository extends JpaRepository<Service, Integer> {
      * Find service by code
      */
     Optional<Service> findByCode(String code);
+    
+    /**
+     * Find service id by code (no entity load)
+     */
+    @Query("SELECT s.id FROM Service s WHERE s.code = :code")
+    Optional<Integer> findIdByCode(@Param("code") String code);
+    
+    /**
+     * Count active services in a category
+     */
+    long countByCategoryIdAndIsActiveTrue(Integer categoryId);
+    
+    /**
+     * Flat projection of a single service
+     */
+    @Query("SELECT new com.gvn.repository.projection.ServiceView(" +
+           "s.id, s.code, s.name, s.shortDescription, s.icon, s.iconVariants, s.category.id) " +
+           "FROM Service s WHERE s.id = :id")
+    Optional<ServiceView> findViewById(@Param("id") Integer id);
+    
+    /**
+     * Flat projection of active services by category ordered by name
+     */
+    @Query("SELECT new com.gvn.repository.projection.ServiceView(" +
+           "s.id, s.code, s.name, s.shortDescription, s.icon, s.iconVariants, s.category.id) " +
+           "FROM Service s WHERE s.category.id = :categoryId AND s.isActive = true ORDER BY s.name ASC")
+    List<ServiceView> findActiveViewsByCategoryId(@Param("categoryId") Integer categoryId);
+    
+    /**
+     * Flat projection of the active services a partner offers, in one query, ordered by name
+     */
+    @Query("SELECT new com.gvn.repository.projection.ServiceView(" +
+           "s.id, s.code, s.name, s.shortDescription, s.icon, s.iconVariants, s.category.id) " +
+           "FROM PartnerService ps JOIN ps.service s " +
+           "WHERE ps.user.id = :userId AND ps.isActive = true AND s.isActive = true " +
+           "ORDER BY s.name ASC")
+    List<ServiceView> findActiveViewsForPartner(@Param("userId") UUID userId);
+    
+    /**
+     * Store generated icon variants, only if the service still points at the same icon
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Service s SET s.iconVariants = :variants WHERE s.id = :id AND s.icon = :icon")
+    int updateIconVariants(@Param("id") Integer id, @Param("icon") String icon, @Param("variants") String variants);
 }
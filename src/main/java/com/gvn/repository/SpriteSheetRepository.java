@@ -0,0 +1,9 @@
+package com.gvn.repository;
+
+import com.gvn.entity.SpriteSheet;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SpriteSheetRepository extends JpaRepository<SpriteSheet, String> {
+}
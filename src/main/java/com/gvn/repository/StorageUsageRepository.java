@@ -0,0 +1,15 @@
+package com.gvn.repository;
+
+import com.gvn.entity.StorageUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StorageUsageRepository extends JpaRepository<StorageUsage, String> {
+    
+    List<StorageUsage> findByScopeOrderByUsageKey(String scope);
+    
+    List<StorageUsage> findTop20ByScopeOrderByBytesDesc(String scope);
+}
@@ -0,0 +1,39 @@
+package com.gvn.repository;
+
+import com.gvn.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+    
+    List<UploadSession> findTop500ByExpiresAtBefore(LocalDateTime time);
+    
+    long countByUserIdAndExpiresAtAfter(UUID userId, LocalDateTime time);
+    
+    /**
+     * Record bytes [offset, position) as received, if everything before offset already was
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UploadSession u SET u.receivedBytes = :position " +
+           "WHERE u.id = :id AND u.completed = false AND u.receivedBytes >= :offset AND u.receivedBytes < :position")
+    int advanceReceivedBytes(@Param("id") UUID id, @Param("offset") long offset, @Param("position") long position);
+    
+    /**
+     * Mark the upload complete, if every declared byte has been received
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UploadSession u SET u.completed = true " +
+           "WHERE u.id = :id AND u.completed = false AND u.receivedBytes >= u.size")
+    int markCompleted(@Param("id") UUID id);
+}
@@ -1,6 +1,7 @@
 package com.gvn.repository;
 
 import com.gvn.entity.User;
+import com.gvn.repository.projection.UserWithPartnerStatus;
 import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -8,7 +9,10 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -32,11 +36,47 @@ public interface UserRepository extends JpaRepository<User, UUID> {
     @Query(value = "SELECT EXISTS(SELECT 1 FROM users WHERE phone_number = :phoneNumber)", nativeQuery = true)
     boolean existsByPhoneNumber(@Param("phoneNumber") String phoneNumber);
     
+    /**
+     * Login lookup: the user and their partner status in one statement, bypassing caches like findByPhoneNumber
+     */
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.cacheable", value = "false"),
+        @QueryHint(name = "jakarta.persistence.cache.retrieveMode", value = "BYPASS"),
+        @QueryHint(name = "jakarta.persistence.cache.storeMode", value = "BYPASS")
+    })
+    @Query("SELECT new com.gvn.repository.projection.UserWithPartnerStatus(u, p.profileStatus) " +
+           "FROM User u LEFT JOIN PartnerProfile p ON p.user = u WHERE u.phoneNumber = :phoneNumber")
+    Optional<UserWithPartnerStatus> findWithPartnerStatusByPhoneNumber(@Param("phoneNumber") String phoneNumber);
+    
+    /**
+     * The user and their partner status in one statement
+     */
+    @Query("SELECT new com.gvn.repository.projection.UserWithPartnerStatus(u, p.profileStatus) " +
+           "FROM User u LEFT JOIN PartnerProfile p ON p.user = u WHERE u.id = :id")
+    Optional<UserWithPartnerStatus> findWithPartnerStatusById(@Param("id") UUID id);
+    
     // Native query delete to ensure immediate database deletion
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Query(value = "DELETE FROM users WHERE phone_number = :phoneNumber", nativeQuery = true)
     void deleteByPhoneNumber(@Param("phoneNumber") String phoneNumber);
     
     Optional<User> findByEmail(String email);
+    
+    /**
+     * Swap a processed avatar in, unless the user replaced or removed it meanwhile
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.avatarUrl = :avatarUrl, u.avatarVariants = :variants, " +
+           "u.avatarPlaceholder = :placeholder, u.avatarPendingSince = NULL " +
+           "WHERE u.id = :id AND u.avatarUrl = :originalUrl")
+    int updateAvatarVariants(@Param("id") UUID id, @Param("originalUrl") String originalUrl,
+                             @Param("avatarUrl") String avatarUrl, @Param("variants") String variants,
+                             @Param("placeholder") String placeholder);
+    
+    /**
+     * Avatars still awaiting normalization that were uploaded within the given window
+     */
+    List<User> findTop100ByAvatarPendingSinceBetweenOrderByAvatarPendingSinceAsc(LocalDateTime from, LocalDateTime to);
 }
 
@@ -0,0 +1,13 @@
+package com.gvn.repository.projection;
+
+import java.util.UUID;
+
+/**
+ * Aggregated impression/click totals for a banner
+ */
+public record BannerStatsView(
+        UUID bannerId,
+        Long impressions,
+        Long clicks
+) {
+}
@@ -0,0 +1,31 @@
+package com.gvn.repository.projection;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Flat read-only projection of a banner row (no managed entity)
+ */
+public record BannerView(
+        UUID id,
+        String title,
+        String imageUrl,
+        String imageVariants,
+        String imagePlaceholder,
+        String linkUrl,
+        Integer displayOrder,
+        Boolean isActive,
+        LocalDateTime startAt,
+        LocalDateTime endAt,
+        String targetingRules
+) {
+    
+    /**
+     * Whether the banner is published and its campaign window contains the given instant
+     */
+    public boolean isLiveAt(LocalDateTime instant) {
+        return Boolean.TRUE.equals(isActive)
+                && (startAt == null || !instant.isBefore(startAt))
+                && (endAt == null || instant.isBefore(endAt));
+    }
+}
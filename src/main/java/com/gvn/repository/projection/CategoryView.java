@@ -0,0 +1,13 @@
+package com.gvn.repository.projection;
+
+/**
+ * Flat read-only projection of a category row (no managed entity)
+ */
+public record CategoryView(
+        Integer id,
+        String name,
+        String icon,
+        String iconVariants,
+        Integer displayOrder
+) {
+}
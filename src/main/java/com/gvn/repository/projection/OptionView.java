@@ -0,0 +1,12 @@
+package com.gvn.repository.projection;
+
+/**
+ * Flat read-only projection of a service option row
+ */
+public record OptionView(
+        String id,
+        String name,
+        String value,
+        Integer displayOrder
+) {
+}
@@ -0,0 +1,15 @@
+package com.gvn.repository.projection;
+
+/**
+ * Flat read-only projection of a service row; category is exposed by id only
+ */
+public record ServiceView(
+        Integer id,
+        String code,
+        String name,
+        String shortDescription,
+        String icon,
+        String iconVariants,
+        Integer categoryId
+) {
+}
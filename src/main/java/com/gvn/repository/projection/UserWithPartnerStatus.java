@@ -0,0 +1,14 @@
+package com.gvn.repository.projection;
+
+import com.gvn.entity.PartnerProfile;
+import com.gvn.entity.User;
+
+/**
+ * A user together with their partner profile status, loaded in one statement
+ * @param partnerStatus null if the user has no partner profile
+ */
+public record UserWithPartnerStatus(
+        User user,
+        PartnerProfile.ProfileStatus partnerStatus
+) {
+}
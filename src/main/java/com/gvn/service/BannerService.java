@@ -1,15 +1,21 @@
 package com.gvn.service;
 
 import com.gvn.dto.response.BannerResponse;
+import com.gvn.dto.response.BannerStatsResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gvn.entity.Banner;
+import com.gvn.entity.User;
 import com.gvn.repository.BannerRepository;
+import com.gvn.repository.projection.BannerView;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -20,19 +26,24 @@ public class BannerService {
     
     private final BannerRepository bannerRepository;
     private final FileStorageService fileStorageService;
+    private final BannerTimeline bannerTimeline;
+    private final BannerStatsService bannerStatsService;
+    private final ObjectMapper objectMapper;
+    private final ImageVariantService imageVariantService;
     
     /**
-     * Get all active banners ordered by display_order
-     * @return List of active banners sorted by display_order ascending
+     * Get all live banners (active, inside their campaign window and targeted at the user)
+     * ordered by display_order. Served from the in-memory timeline - no database access
+     * @param user Current user, or null for anonymous
+     * @return List of live banners sorted by display_order ascending
      */
-    @Transactional(readOnly = true)
-    public List<BannerResponse> getActiveBanners() {
+    public List<BannerResponse> getActiveBanners(User user) {
         try {
-            List<Banner> banners = bannerRepository.findByIsActiveTrueOrderByDisplayOrderAsc();
+            List<BannerView> banners = bannerTimeline.getLiveBanners(user);
             log.debug("Retrieved {} active banners", banners.size());
             
             return banners.stream()
-                    .map(BannerResponse::fromBanner)
+                    .map(BannerResponse::publicFromView)
                     .collect(Collectors.toList());
         } catch (Exception e) {
             log.error("Error retrieving banners: ", e);
@@ -42,15 +53,22 @@ public class BannerService {
     
     /**
      * Get all banners (including inactive) ordered by display_order
+     * @param includeStats Attach impression/click totals
      * @return List of all banners sorted by display_order ascending
      */
     @Transactional(readOnly = true)
-    public List<BannerResponse> getAllBanners() {
+    public List<BannerResponse> getAllBanners(boolean includeStats) {
         try {
-            List<Banner> banners = bannerRepository.findAllByOrderByDisplayOrderAsc();
-            return banners.stream()
-                    .map(BannerResponse::fromBanner)
+            List<BannerView> banners = bannerRepository.findAllViews();
+            List<BannerResponse> responses = banners.stream()
+                    .map(BannerResponse::fromView)
                     .collect(Collectors.toList());
+            if (includeStats) {
+                Map<UUID, BannerStatsResponse> totals = bannerStatsService.getTotals();
+                responses.forEach(banner -> banner.setStats(
+                        totals.getOrDefault(banner.getId(), BannerStatsResponse.of(0, 0))));
+            }
+            return responses;
         } catch (Exception e) {
             log.error("Error retrieving all banners: ", e);
             throw new RuntimeException("Failed to retrieve banners: " + e.getMessage());
@@ -64,9 +82,9 @@ public class BannerService {
      */
     @Transactional(readOnly = true)
     public BannerResponse getBannerById(UUID id) {
-        Banner banner = bannerRepository.findById(id)
+        BannerView banner = bannerRepository.findViewById(id)
                 .orElseThrow(() -> new RuntimeException("Banner not found with id: " + id));
-        return BannerResponse.fromBanner(banner);
+        return BannerResponse.fromView(banner);
     }
     
     /**
@@ -76,11 +94,15 @@ public class BannerService {
      * @param linkUrl Optional link URL
      * @param displayOrder Display order
      * @param isActive Active status
+     * @param startAt Optional campaign start
+     * @param endAt Optional campaign end (exclusive)
+     * @param targetingRules Optional JSON targeting rule
      * @return Created banner
      */
     @Transactional
     public BannerResponse createBanner(String title, MultipartFile imageFile, 
-                                      String linkUrl, Integer displayOrder, Boolean isActive) {
+                                      String linkUrl, Integer displayOrder, Boolean isActive,
+                                      LocalDateTime startAt, LocalDateTime endAt, String targetingRules) {
         try {
             // Validate required fields
             if (title == null || title.trim().isEmpty()) {
@@ -89,6 +111,8 @@ public class BannerService {
             if (imageFile == null || imageFile.isEmpty()) {
                 throw new RuntimeException("Banner image is required");
             }
+            validateSchedule(startAt, endAt);
+            String normalizedRules = normalizeTargetingRules(targetingRules);
             
             // Store banner image
             String imagePath = fileStorageService.storeFile(imageFile, "banners");
@@ -101,9 +125,14 @@ public class BannerService {
                     .linkUrl(linkUrl != null && !linkUrl.trim().isEmpty() ? linkUrl.trim() : null)
                     .displayOrder(displayOrder != null ? displayOrder : 0)
                     .isActive(isActive != null ? isActive : true)
+                    .startAt(startAt)
+                    .endAt(endAt)
+                    .targetingRules(normalizedRules)
                     .build();
             
             Banner savedBanner = bannerRepository.save(banner);
+            bannerTimeline.reloadAfterCommit();
+            scheduleImageVariants(savedBanner.getId(), imagePath, imageUrl);
             log.info("Banner created successfully: {}", savedBanner.getId());
             
             return BannerResponse.fromBanner(savedBanner);
@@ -121,11 +150,17 @@ public class BannerService {
      * @param linkUrl Link URL (optional)
      * @param displayOrder Display order (optional)
      * @param isActive Active status (optional)
+     * @param startAt Campaign start (optional)
+     * @param endAt Campaign end, exclusive (optional)
+     * @param clearSchedule Remove the campaign window before applying startAt/endAt
+     * @param targetingRules JSON targeting rule (optional, empty string removes targeting)
      * @return Updated banner
      */
     @Transactional
     public BannerResponse updateBanner(UUID id, String title, MultipartFile imageFile,
-                                      String linkUrl, Integer displayOrder, Boolean isActive) {
+                                      String linkUrl, Integer displayOrder, Boolean isActive,
+                                      LocalDateTime startAt, LocalDateTime endAt, boolean clearSchedule,
+                                      String targetingRules) {
         try {
             Banner banner = bannerRepository.findById(id)
                     .orElseThrow(() -> new RuntimeException("Banner not found with id: " + id));
@@ -137,17 +172,22 @@ public class BannerService {
             
             // Update image if provided
             if (imageFile != null && !imageFile.isEmpty()) {
-                // Delete old image
+                // Delete old image and its variants
                 if (banner.getImageUrl() != null) {
+                    imageVariantService.deleteVariants(banner.getImageVariants(), banner.getImageUrl());
                     String oldPath = extractPathFromUrl(banner.getImageUrl());
                     if (oldPath != null) {
                         fileStorageService.deleteFile(oldPath);
                     }
                 }
                 
-                // Store new image
+                // Store new image; variants are generated in the background after commit
                 String imagePath = fileStorageService.storeFile(imageFile, "banners");
-                banner.setImageUrl(fileStorageService.getFileUrl(imagePath));
+                String imageUrl = fileStorageService.getFileUrl(imagePath);
+                banner.setImageUrl(imageUrl);
+                banner.setImageVariants(null);
+                banner.setImagePlaceholder(null);
+                scheduleImageVariants(banner.getId(), imagePath, imageUrl);
             }
             
             // Update link URL if provided
@@ -165,7 +205,26 @@ public class BannerService {
                 banner.setIsActive(isActive);
             }
             
+            // Update campaign window if provided
+            if (clearSchedule) {
+                banner.setStartAt(null);
+                banner.setEndAt(null);
+            }
+            if (startAt != null) {
+                banner.setStartAt(startAt);
+            }
+            if (endAt != null) {
+                banner.setEndAt(endAt);
+            }
+            validateSchedule(banner.getStartAt(), banner.getEndAt());
+            
+            // Update targeting if provided (compiled here so bad rules are rejected at publish time)
+            if (targetingRules != null) {
+                banner.setTargetingRules(normalizeTargetingRules(targetingRules));
+            }
+            
             Banner updatedBanner = bannerRepository.save(banner);
+            bannerTimeline.reloadAfterCommit();
             log.info("Banner updated successfully: {}", updatedBanner.getId());
             
             return BannerResponse.fromBanner(updatedBanner);
@@ -185,8 +244,9 @@ public class BannerService {
             Banner banner = bannerRepository.findById(id)
                     .orElseThrow(() -> new RuntimeException("Banner not found with id: " + id));
             
-            // Delete banner image file
+            // Delete banner image file and its variants
             if (banner.getImageUrl() != null) {
+                imageVariantService.deleteVariants(banner.getImageVariants(), banner.getImageUrl());
                 String imagePath = extractPathFromUrl(banner.getImageUrl());
                 if (imagePath != null) {
                     fileStorageService.deleteFile(imagePath);
@@ -195,6 +255,7 @@ public class BannerService {
             
             // Delete banner from database
             bannerRepository.delete(banner);
+            bannerTimeline.reloadAfterCommit();
             log.info("Banner deleted successfully: {}", id);
         } catch (Exception e) {
             log.error("Error deleting banner: ", e);
@@ -202,6 +263,42 @@ public class BannerService {
         }
     }
     
+    /**
+     * Generate responsive variants after commit and record them on the banner
+     */
+    private void scheduleImageVariants(UUID bannerId, String imagePath, String imageUrl) {
+        imageVariantService.generateAfterCommit(imagePath, ImageVariantService.Kind.BANNER, (variants, placeholder) -> {
+            if (bannerRepository.updateImageVariants(bannerId, imageUrl, variants, placeholder) > 0) {
+                bannerTimeline.reload();
+            }
+        });
+    }
+    
+    /**
+     * Validate that a campaign window, if fully specified, ends after it starts
+     */
+    private void validateSchedule(LocalDateTime startAt, LocalDateTime endAt) {
+        if (startAt != null && endAt != null && !endAt.isAfter(startAt)) {
+            throw new RuntimeException("Banner end_at must be after start_at");
+        }
+    }
+    
+    /**
+     * Compile a targeting rule to validate it, returning its compact JSON form
+     * @return Normalized JSON, or null when no targeting is requested
+     */
+    private String normalizeTargetingRules(String targetingRules) {
+        if (targetingRules == null || targetingRules.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            BannerTargeting.compile(targetingRules, objectMapper);
+            return objectMapper.readTree(targetingRules).toString();
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid targeting rule: " + e.getMessage());
+        }
+    }
+    
     /**
      * Extract relative path from full URL
      * @param url Full URL (e.g., /api/v1/files/banners/image.jpg)
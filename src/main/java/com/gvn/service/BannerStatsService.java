@@ -0,0 +1,183 @@
+package com.gvn.service;
+
+import com.gvn.dto.response.BannerStatsResponse;
+import com.gvn.repository.BannerStatsRepository;
+import com.gvn.repository.projection.BannerStatsView;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Banner impression/click tracking.
+ *
+ * Tracking calls only bump striped in-memory counters (one LongAdder pair per banner
+ * and hour bucket). A periodic flush drains them into banner_stats with a single
+ * batched upsert, so write load grows with banners x hours rather than with views.
+ * A past bucket's counters are dropped only after a whole flush cycle without counts,
+ * and drained once more after removal, so a caller that looked them up just before the
+ * hour turned still has its increment flushed.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BannerStatsService {
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO banner_stats (id, banner_id, bucket_start, impressions, clicks) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (banner_id, bucket_start) DO UPDATE SET " +
+            "impressions = banner_stats.impressions + EXCLUDED.impressions, " +
+            "clicks = banner_stats.clicks + EXCLUDED.clicks";
+
+    private final BannerStatsRepository bannerStatsRepository;
+    private final BannerTimeline bannerTimeline;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<BucketKey, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Record one impression of a published banner
+     * @return false if the banner is unknown
+     */
+    public boolean recordImpression(UUID bannerId) {
+        if (!bannerTimeline.isPublished(bannerId)) {
+            return false;
+        }
+        countersFor(bannerId).impressions.increment();
+        return true;
+    }
+
+    /**
+     * Record one click on a published banner
+     * @return false if the banner is unknown
+     */
+    public boolean recordClick(UUID bannerId) {
+        if (!bannerTimeline.isPublished(bannerId)) {
+            return false;
+        }
+        countersFor(bannerId).clicks.increment();
+        return true;
+    }
+
+    /**
+     * Lifetime totals per banner: flushed rows plus counts still pending in memory
+     */
+    public Map<UUID, BannerStatsResponse> getTotals() {
+        Map<UUID, long[]> totals = new HashMap<>();
+        for (BannerStatsView view : bannerStatsRepository.findTotals()) {
+            totals.put(view.bannerId(), new long[] {
+                    view.impressions() != null ? view.impressions() : 0L,
+                    view.clicks() != null ? view.clicks() : 0L
+            });
+        }
+        counters.forEach((key, value) -> {
+            long[] total = totals.computeIfAbsent(key.bannerId(), id -> new long[2]);
+            total[0] += value.impressions.sum();
+            total[1] += value.clicks.sum();
+        });
+
+        Map<UUID, BannerStatsResponse> result = new HashMap<>();
+        totals.forEach((bannerId, total) -> result.put(bannerId, BannerStatsResponse.of(total[0], total[1])));
+        return result;
+    }
+
+    /**
+     * Drain in-memory counters into banner_stats with one batched upsert
+     */
+    @Scheduled(fixedDelayString = "${app.banner.stats-flush-ms:30000}")
+    public void flush() {
+        flush(LocalDateTime.now());
+    }
+
+    synchronized void flush(LocalDateTime now) {
+        LocalDateTime currentBucket = bucketOf(now);
+        List<BucketKey> keys = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        List<long[]> drained = new ArrayList<>();
+
+        for (Map.Entry<BucketKey, Counters> entry : counters.entrySet()) {
+            BucketKey key = entry.getKey();
+            Counters value = entry.getValue();
+            // sumThenReset swaps each stripe to zero individually, so concurrent increments are never lost
+            long impressions = value.impressions.sumThenReset();
+            long clicks = value.clicks.sumThenReset();
+            if (impressions == 0 && clicks == 0) {
+                if (!key.bucketStart().isBefore(currentBucket)) {
+                    continue;
+                }
+                if (!value.idle) {
+                    // Kept one more cycle for increments from callers that looked it up before the hour turned
+                    value.idle = true;
+                    continue;
+                }
+                counters.remove(key, value);
+                // Anything that landed between the drain above and the removal
+                impressions = value.impressions.sumThenReset();
+                clicks = value.clicks.sumThenReset();
+                if (impressions == 0 && clicks == 0) {
+                    continue;
+                }
+            } else {
+                value.idle = false;
+            }
+            keys.add(key);
+            drained.add(new long[] {impressions, clicks});
+            rows.add(new Object[] {
+                    UUID.randomUUID(), key.bannerId(), Timestamp.valueOf(key.bucketStart()), impressions, clicks
+            });
+        }
+
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+            log.debug("Flushed banner stats for {} banner/hour buckets", rows.size());
+        } catch (Exception e) {
+            log.error("Error flushing banner stats, keeping counts for retry: ", e);
+            for (int i = 0; i < keys.size(); i++) {
+                Counters value = counters.computeIfAbsent(keys.get(i), k -> new Counters());
+                value.impressions.add(drained.get(i)[0]);
+                value.clicks.add(drained.get(i)[1]);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private Counters countersFor(UUID bannerId) {
+        BucketKey key = new BucketKey(bannerId, bucketOf(LocalDateTime.now()));
+        return counters.computeIfAbsent(key, k -> new Counters());
+    }
+
+    private static LocalDateTime bucketOf(LocalDateTime instant) {
+        return instant.truncatedTo(ChronoUnit.HOURS);
+    }
+
+    private record BucketKey(UUID bannerId, LocalDateTime bucketStart) {
+    }
+
+    private static final class Counters {
+        private final LongAdder impressions = new LongAdder();
+        private final LongAdder clicks = new LongAdder();
+        // Drained empty by the last flush (only touched by flush)
+        private boolean idle;
+    }
+}
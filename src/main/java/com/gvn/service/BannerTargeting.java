@@ -0,0 +1,215 @@
+package com.gvn.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gvn.entity.PartnerProfile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Banner targeting rules and their compiler.
+ *
+ * Rules are stored as JSON on the banner and compiled once (at publish time and when the
+ * banner timeline is loaded) into a predicate tree evaluated against an {@link Audience}
+ * built from the authenticated principal. Supported nodes:
+ *
+ * <pre>
+ * {"all": [rule, ...]}                     every child matches
+ * {"any": [rule, ...]}                     at least one child matches
+ * {"not": rule}                            child does not match
+ * {"user_type": "partner" | [...]}         User.userType in set (case-insensitive)
+ * {"has_partner_profile": true}            User.hasPartnerProfile equals value
+ * {"profile_status": "verified" | [...]}   partner profile status in set
+ * {"account_age_days": {"gte": 0, "lt": 30}} account age range, either bound optional
+ * </pre>
+ */
+public final class BannerTargeting {
+
+    /**
+     * Attributes a rule can look at; everything comes from the cached principal
+     */
+    public record Audience(String userType, boolean hasPartnerProfile,
+                           PartnerProfile.ProfileStatus profileStatus, long accountAgeDays) {
+
+        public static final Audience ANONYMOUS = new Audience(null, false, null, 0);
+    }
+
+    /**
+     * Compiled predicate node
+     */
+    @FunctionalInterface
+    public interface Rule {
+        boolean matches(Audience audience);
+    }
+
+    /**
+     * Compiled rule plus the facts needed to build segment keys for it
+     */
+    public record Compiled(Rule rule, boolean usesProfileStatus, SortedSet<Long> ageThresholds) {
+
+        public static final Compiled ALWAYS = new Compiled(audience -> true, false, Collections.emptySortedSet());
+    }
+
+    private BannerTargeting() {
+    }
+
+    /**
+     * Compile a JSON rule; null or blank means the banner targets everyone
+     * @throws IllegalArgumentException if the rule is malformed
+     */
+    public static Compiled compile(String json, ObjectMapper objectMapper) {
+        if (json == null || json.isBlank()) {
+            return Compiled.ALWAYS;
+        }
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Targeting rule is not valid JSON");
+        }
+        Compiler compiler = new Compiler();
+        Rule rule = compiler.compile(root);
+        return new Compiled(rule, compiler.usesProfileStatus,
+                Collections.unmodifiableSortedSet(compiler.ageThresholds));
+    }
+
+    private static final class Compiler {
+
+        private boolean usesProfileStatus;
+        private final SortedSet<Long> ageThresholds = new TreeSet<>();
+
+        Rule compile(JsonNode node) {
+            if (node == null || !node.isObject() || node.size() != 1) {
+                throw new IllegalArgumentException("Each targeting rule must be an object with exactly one key");
+            }
+            Map.Entry<String, JsonNode> entry = node.fields().next();
+            String key = entry.getKey();
+            JsonNode value = entry.getValue();
+            return switch (key) {
+                case "all" -> {
+                    List<Rule> children = compileChildren(key, value);
+                    yield audience -> {
+                        for (Rule child : children) {
+                            if (!child.matches(audience)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    };
+                }
+                case "any" -> {
+                    List<Rule> children = compileChildren(key, value);
+                    yield audience -> {
+                        for (Rule child : children) {
+                            if (child.matches(audience)) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    };
+                }
+                case "not" -> {
+                    Rule child = compile(value);
+                    yield audience -> !child.matches(audience);
+                }
+                case "user_type" -> {
+                    Set<String> userTypes = new HashSet<>();
+                    for (String text : textValues(key, value)) {
+                        userTypes.add(text.toLowerCase(Locale.ROOT));
+                    }
+                    yield audience -> audience.userType() != null
+                            && userTypes.contains(audience.userType().toLowerCase(Locale.ROOT));
+                }
+                case "has_partner_profile" -> {
+                    if (!value.isBoolean()) {
+                        throw new IllegalArgumentException("has_partner_profile must be a boolean");
+                    }
+                    boolean expected = value.booleanValue();
+                    yield audience -> audience.hasPartnerProfile() == expected;
+                }
+                case "profile_status" -> {
+                    Set<PartnerProfile.ProfileStatus> statuses = EnumSet.noneOf(PartnerProfile.ProfileStatus.class);
+                    for (String text : textValues(key, value)) {
+                        try {
+                            statuses.add(PartnerProfile.ProfileStatus.valueOf(text.toUpperCase(Locale.ROOT)));
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException("Unknown profile_status: " + text);
+                        }
+                    }
+                    usesProfileStatus = true;
+                    yield audience -> audience.profileStatus() != null && statuses.contains(audience.profileStatus());
+                }
+                case "account_age_days" -> compileAgeRange(value);
+                default -> throw new IllegalArgumentException("Unknown targeting rule: " + key);
+            };
+        }
+
+        private Rule compileAgeRange(JsonNode value) {
+            if (!value.isObject() || value.isEmpty()) {
+                throw new IllegalArgumentException("account_age_days must be an object with gte and/or lt");
+            }
+            long gte = Long.MIN_VALUE;
+            long lt = Long.MAX_VALUE;
+            Iterator<String> names = value.fieldNames();
+            while (names.hasNext()) {
+                String name = names.next();
+                JsonNode bound = value.get(name);
+                if (!bound.canConvertToLong()) {
+                    throw new IllegalArgumentException("account_age_days." + name + " must be a number");
+                }
+                switch (name) {
+                    case "gte" -> gte = bound.longValue();
+                    case "lt" -> lt = bound.longValue();
+                    default -> throw new IllegalArgumentException("Unknown account_age_days bound: " + name);
+                }
+            }
+            if (gte != Long.MIN_VALUE) {
+                ageThresholds.add(gte);
+            }
+            if (lt != Long.MAX_VALUE) {
+                ageThresholds.add(lt);
+            }
+            long min = gte;
+            long max = lt;
+            return audience -> audience.accountAgeDays() >= min && audience.accountAgeDays() < max;
+        }
+
+        private List<Rule> compileChildren(String key, JsonNode value) {
+            if (!value.isArray() || value.isEmpty()) {
+                throw new IllegalArgumentException(key + " must be a non-empty array");
+            }
+            List<Rule> children = new ArrayList<>();
+            for (JsonNode child : value) {
+                children.add(compile(child));
+            }
+            return List.copyOf(children);
+        }
+
+        private List<String> textValues(String key, JsonNode value) {
+            List<String> values = new ArrayList<>();
+            if (value.isTextual()) {
+                values.add(value.textValue());
+            } else if (value.isArray() && !value.isEmpty()) {
+                for (JsonNode item : value) {
+                    if (!item.isTextual()) {
+                        throw new IllegalArgumentException(key + " values must be strings");
+                    }
+                    values.add(item.textValue());
+                }
+            } else {
+                throw new IllegalArgumentException(key + " must be a string or a non-empty array of strings");
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.gvn.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gvn.entity.PartnerProfile;
+import com.gvn.entity.User;
+import com.gvn.repository.BannerRepository;
+import com.gvn.repository.projection.BannerView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory activation timeline for banner campaigns.
+ *
+ * All published banners are held in memory together with the sorted list of their
+ * start/end instants. The currently live set is an immutable snapshot that is valid
+ * until the next boundary; the first read at or after that boundary computes the next
+ * snapshot from memory and swaps it in atomically, so campaigns switch at their exact
+ * times and reads never hit the database.
+ *
+ * The timeline is reloaded after every banner write commits, and periodically as a
+ * safety net for writes made by other nodes.
+ *
+ * Targeting rules are compiled when the timeline is built. Per-request filtering is
+ * cached per segment key (the only audience attributes any rule can distinguish), so a
+ * targeted read costs a map lookup, like an untargeted one.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BannerTimeline {
+
+    private final BannerRepository bannerRepository;
+    private final PartnerStatusCache partnerStatusCache;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload();
+    }
+
+    @Scheduled(fixedDelayString = "${app.banner.timeline-refresh-ms:60000}",
+               initialDelayString = "${app.banner.timeline-refresh-ms:60000}")
+    public void scheduledReload() {
+        reload();
+    }
+
+    /**
+     * Rebuild the timeline from the database and swap it in
+     */
+    public void reload() {
+        try {
+            Timeline timeline = Timeline.of(bannerRepository.findAllViews(), objectMapper);
+            current.set(timeline.snapshotAt(LocalDateTime.now()));
+            log.debug("Banner timeline reloaded: {} published banners, {} boundaries",
+                    timeline.banners.size(), timeline.boundaries.size());
+        } catch (Exception e) {
+            // Keep serving the previous snapshot
+            log.error("Error reloading banner timeline: ", e);
+        }
+    }
+
+    /**
+     * Reload once the current transaction commits (immediately if there is none)
+     */
+    public void reloadAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reload();
+                }
+            });
+        } else {
+            reload();
+        }
+    }
+
+    /**
+     * Banners live right now and targeted at the given user, ordered by display_order ascending
+     * @param user Authenticated principal, or null for an anonymous audience
+     */
+    public List<BannerView> getLiveBanners(User user) {
+        LocalDateTime now = LocalDateTime.now();
+        Snapshot snapshot = snapshotAt(now);
+        if (!snapshot.timeline.targeted) {
+            return snapshot.live;
+        }
+        BannerTargeting.Audience audience = audienceOf(user, snapshot.timeline, now);
+        SegmentKey key = snapshot.timeline.segmentOf(audience);
+        return snapshot.segments.computeIfAbsent(key, k -> snapshot.timeline.filter(snapshot.live, audience));
+    }
+
+    private Snapshot snapshotAt(LocalDateTime now) {
+        Snapshot snapshot = current.get();
+        if (snapshot.covers(now)) {
+            return snapshot;
+        }
+        // Crossed a boundary: compute the next snapshot from memory and publish it.
+        // A lost CAS only means another thread already advanced the snapshot.
+        Snapshot next = snapshot.timeline.snapshotAt(now);
+        current.compareAndSet(snapshot, next);
+        return next;
+    }
+
+    /**
+     * Whether the banner is published (active), regardless of its campaign window
+     */
+    public boolean isPublished(UUID bannerId) {
+        return current.get().timeline.ids.contains(bannerId);
+    }
+
+    private BannerTargeting.Audience audienceOf(User user, Timeline timeline, LocalDateTime now) {
+        if (user == null) {
+            return BannerTargeting.Audience.ANONYMOUS;
+        }
+        boolean hasPartnerProfile = Boolean.TRUE.equals(user.getHasPartnerProfile());
+        // Only look up the status when some rule can observe it
+        PartnerProfile.ProfileStatus profileStatus = null;
+        if (timeline.usesProfileStatus && hasPartnerProfile) {
+            profileStatus = partnerStatusCache.getStatus(user.getId()).orElse(null);
+        }
+        long accountAgeDays = user.getCreatedAt() != null
+                ? ChronoUnit.DAYS.between(user.getCreatedAt(), now)
+                : 0;
+        return new BannerTargeting.Audience(user.getUserType(), hasPartnerProfile, profileStatus, accountAgeDays);
+    }
+
+    /**
+     * Immutable set of published banners plus their sorted activation/expiry instants
+     */
+    private static final class Timeline {
+
+        private static final Timeline EMPTY = new Timeline(List.of(), List.of(), Map.of());
+
+        private final List<BannerView> banners;
+        private final List<LocalDateTime> boundaries;
+        private final Set<UUID> ids;
+        private final Map<UUID, BannerTargeting.Rule> rules;
+        private final boolean targeted;
+        private final boolean usesProfileStatus;
+        private final long[] ageThresholds;
+
+        private Timeline(List<BannerView> banners, List<LocalDateTime> boundaries,
+                         Map<UUID, BannerTargeting.Compiled> compiled) {
+            this.banners = banners;
+            this.boundaries = boundaries;
+            this.ids = banners.stream().map(BannerView::id).collect(Collectors.toUnmodifiableSet());
+
+            Map<UUID, BannerTargeting.Rule> compiledRules = new HashMap<>();
+            SortedSet<Long> thresholds = new TreeSet<>();
+            boolean profileStatus = false;
+            for (Map.Entry<UUID, BannerTargeting.Compiled> entry : compiled.entrySet()) {
+                compiledRules.put(entry.getKey(), entry.getValue().rule());
+                thresholds.addAll(entry.getValue().ageThresholds());
+                profileStatus |= entry.getValue().usesProfileStatus();
+            }
+            this.rules = Map.copyOf(compiledRules);
+            this.targeted = !compiledRules.isEmpty();
+            this.usesProfileStatus = profileStatus;
+            this.ageThresholds = thresholds.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        static Timeline of(List<BannerView> views, ObjectMapper objectMapper) {
+            List<BannerView> published = new ArrayList<>();
+            Map<UUID, BannerTargeting.Compiled> compiled = new HashMap<>();
+            TreeSet<LocalDateTime> instants = new TreeSet<>();
+            for (BannerView view : views) {
+                if (!Boolean.TRUE.equals(view.isActive())) {
+                    continue;
+                }
+                if (view.targetingRules() != null && !view.targetingRules().isBlank()) {
+                    try {
+                        compiled.put(view.id(), BannerTargeting.compile(view.targetingRules(), objectMapper));
+                    } catch (IllegalArgumentException e) {
+                        // Rules are validated on publish; a bad stored rule hides the banner rather than showing it to everyone
+                        log.error("Invalid targeting rule on banner {}: {}", view.id(), e.getMessage());
+                        compiled.put(view.id(), new BannerTargeting.Compiled(
+                                audience -> false, false, new TreeSet<>()));
+                    }
+                }
+                published.add(view);
+                if (view.startAt() != null) {
+                    instants.add(view.startAt());
+                }
+                if (view.endAt() != null) {
+                    instants.add(view.endAt());
+                }
+            }
+            published.sort(Comparator.comparing(BannerView::displayOrder));
+            return new Timeline(List.copyOf(published), List.copyOf(instants), compiled);
+        }
+
+        /**
+         * Reduce an audience to the attributes the compiled rules can tell apart.
+         * Age only matters relative to the rule thresholds, so it becomes the count of
+         * thresholds it has reached.
+         */
+        SegmentKey segmentOf(BannerTargeting.Audience audience) {
+            int ageBucket = 0;
+            while (ageBucket < ageThresholds.length && audience.accountAgeDays() >= ageThresholds[ageBucket]) {
+                ageBucket++;
+            }
+            String userType = audience.userType() != null ? audience.userType().toLowerCase() : null;
+            return new SegmentKey(userType, audience.hasPartnerProfile(),
+                    usesProfileStatus ? audience.profileStatus() : null, ageBucket);
+        }
+
+        List<BannerView> filter(List<BannerView> live, BannerTargeting.Audience audience) {
+            return live.stream()
+                    .filter(banner -> {
+                        BannerTargeting.Rule rule = rules.get(banner.id());
+                        return rule == null || rule.matches(audience);
+                    })
+                    .toList();
+        }
+
+        Snapshot snapshotAt(LocalDateTime instant) {
+            List<BannerView> live = banners.stream()
+                    .filter(banner -> banner.isLiveAt(instant))
+                    .toList();
+
+            // Binary search the sorted event list for the surrounding boundaries
+            int index = indexOfFirstAfter(instant);
+            LocalDateTime validFrom = index > 0 ? boundaries.get(index - 1) : LocalDateTime.MIN;
+            LocalDateTime validUntil = index < boundaries.size() ? boundaries.get(index) : LocalDateTime.MAX;
+            return new Snapshot(this, live, validFrom, validUntil, new ConcurrentHashMap<>());
+        }
+
+        private int indexOfFirstAfter(LocalDateTime instant) {
+            int low = 0;
+            int high = boundaries.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (boundaries.get(mid).isAfter(instant)) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Audience attributes that determine which targeted banners are shown
+     */
+    private record SegmentKey(String userType, boolean hasPartnerProfile,
+                              PartnerProfile.ProfileStatus profileStatus, int ageBucket) {
+    }
+
+    /**
+     * Live banners for the interval [validFrom, validUntil), with per-segment filtered lists
+     */
+    private record Snapshot(Timeline timeline, List<BannerView> live,
+                            LocalDateTime validFrom, LocalDateTime validUntil,
+                            ConcurrentHashMap<SegmentKey, List<BannerView>> segments) {
+
+        static final Snapshot EMPTY = new Snapshot(Timeline.EMPTY, List.of(), LocalDateTime.MIN, LocalDateTime.MAX,
+                new ConcurrentHashMap<>());
+
+        boolean covers(LocalDateTime instant) {
+            return !instant.isBefore(validFrom) && instant.isBefore(validUntil);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.gvn.service;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * BlurHash encoder (https://blurha.sh): a short base-83 string holding the average colour
+ * and a few low-frequency cosine components of an image, which clients decode into a
+ * blurred placeholder while the real image loads.
+ *
+ * The image is first downscaled to at most SAMPLE_WIDTH pixels wide; the components of a
+ * placeholder are unaffected and the transform stays a few thousand multiplications.
+ * Transparent pixels are flattened onto white.
+ */
+final class BlurHash {
+
+    private static final String ALPHABET =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+    private static final int SAMPLE_WIDTH = 32;
+
+    private static final double[] SRGB_TO_LINEAR = new double[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double value = i / 255.0;
+            SRGB_TO_LINEAR[i] = value <= 0.04045 ? value / 12.92 : Math.pow((value + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private BlurHash() {
+    }
+
+    /**
+     * @param componentsX Horizontal components (1-9)
+     * @param componentsY Vertical components (1-9)
+     */
+    static String encode(BufferedImage image, int componentsX, int componentsY) {
+        BufferedImage sample = image.getWidth() > SAMPLE_WIDTH
+                ? ImageVariantService.resizeToWidth(image, SAMPLE_WIDTH)
+                : image;
+        int width = sample.getWidth();
+        int height = sample.getHeight();
+        int[] pixels = sample.getRGB(0, 0, width, height, null, 0, width);
+        double[] red = new double[pixels.length];
+        double[] green = new double[pixels.length];
+        double[] blue = new double[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            int alpha = argb >>> 24;
+            red[i] = SRGB_TO_LINEAR[flatten((argb >> 16) & 0xff, alpha)];
+            green[i] = SRGB_TO_LINEAR[flatten((argb >> 8) & 0xff, alpha)];
+            blue[i] = SRGB_TO_LINEAR[flatten(argb & 0xff, alpha)];
+        }
+
+        double[][] factors = new double[componentsX * componentsY][];
+        for (int j = 0; j < componentsY; j++) {
+            double[] cosY = cosines(j, height);
+            for (int i = 0; i < componentsX; i++) {
+                double[] cosX = cosines(i, width);
+                double normalisation = i == 0 && j == 0 ? 1 : 2;
+                double r = 0;
+                double g = 0;
+                double b = 0;
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        double basis = cosX[x] * cosY[y];
+                        int index = y * width + x;
+                        r += basis * red[index];
+                        g += basis * green[index];
+                        b += basis * blue[index];
+                    }
+                }
+                double scale = normalisation / (width * height);
+                factors[j * componentsX + i] = new double[] {r * scale, g * scale, b * scale};
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        encode83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+        double maximum = 1;
+        if (factors.length > 1) {
+            double actualMaximum = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (double component : factors[k]) {
+                    actualMaximum = Math.max(actualMaximum, Math.abs(component));
+                }
+            }
+            int quantisedMaximum = (int) Math.max(0, Math.min(82, Math.floor(actualMaximum * 166 - 0.5)));
+            maximum = (quantisedMaximum + 1) / 166.0;
+            encode83(hash, quantisedMaximum, 1);
+        } else {
+            encode83(hash, 0, 1);
+        }
+        double[] dc = factors[0];
+        encode83(hash, (linearToSrgb(dc[0]) << 16) + (linearToSrgb(dc[1]) << 8) + linearToSrgb(dc[2]), 4);
+        for (int k = 1; k < factors.length; k++) {
+            double[] ac = factors[k];
+            encode83(hash, quantiseAc(ac[0], maximum) * 19 * 19 + quantiseAc(ac[1], maximum) * 19
+                    + quantiseAc(ac[2], maximum), 2);
+        }
+        return hash.toString();
+    }
+
+    private static int flatten(int channel, int alpha) {
+        return alpha == 255 ? channel : (channel * alpha + 255 * (255 - alpha)) / 255;
+    }
+
+    private static double[] cosines(int component, int size) {
+        double[] values = new double[size];
+        for (int p = 0; p < size; p++) {
+            values[p] = Math.cos(Math.PI * component * p / size);
+        }
+        return values;
+    }
+
+    private static int linearToSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308
+                ? (int) Math.round(v * 12.92 * 255)
+                : (int) Math.round((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255);
+    }
+
+    private static int quantiseAc(double value, double maximum) {
+        double scaled = Math.signum(value) * Math.sqrt(Math.abs(value / maximum));
+        return (int) Math.max(0, Math.min(18, Math.floor(scaled * 9 + 9.5)));
+    }
+
+    private static void encode83(StringBuilder hash, int value, int length) {
+        for (int i = 1; i <= length; i++) {
+            int digit = (value / (int) Math.pow(83, length - i)) % 83;
+            hash.append(ALPHABET.charAt(digit));
+        }
+    }
+}
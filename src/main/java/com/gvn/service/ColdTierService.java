@@ -0,0 +1,352 @@
+package com.gvn.service;
+
+import com.gvn.entity.PackedFile;
+import com.gvn.repository.PackedFileRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Moves identity documents of long-verified partners from individual files into packs
+ * (see PackStore), cutting the inode count and per-file block slack of a store that is
+ * written once and rarely read again.
+ *
+ * Candidates are the documents referenced by partner profiles VERIFIED for at least
+ * min-age-days whose files are at least as old. They are appended to a new pack per run
+ * (rotated at max-pack-bytes) in batches: the pack is fsynced, every entry is read back
+ * and checked against its CRC, the batch is indexed in packed_files and only then are
+ * the loose files removed. A crash at any point leaves each file readable, loose or
+ * packed; a file deleted while it was being packed has its index entry dropped again.
+ *
+ * Stored paths and URLs do not change. Runs only for the local storage backend.
+ *
+ * Each run then compacts packs whose deleted entries (erased on delete, see PackStore)
+ * take up at least compact-dead-ratio of the file: live entries are copied as stored into
+ * a new pack, checked against their CRC, made durable and relocated in the index, and the
+ * old pack is retired and deleted by the following run.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ColdTierService {
+
+    private static final Pattern FILE_URL = Pattern.compile(Pattern.quote("/api/v1/files/") + "([^\"\\s,\\]}]+)");
+    private static final String CANDIDATES_SQL =
+            "SELECT cccd_front_image_url, cccd_back_image_url, health_certificates_urls FROM partner_profiles " +
+            "WHERE profile_status = 'VERIFIED' AND updated_at < ?";
+    private static final DateTimeFormatter PACK_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int FETCH_SIZE = 1000;
+
+    private final PackStore packStore;
+    private final PackedFileRepository packedFileRepository;
+    private final FileStorageService fileStorageService;
+    private final ContentAddressedStore contentAddressedStore;
+    private final FileIntegrityService fileIntegrityService;
+    private final FileEncryption fileEncryption;
+    private final HotFileCache hotFileCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.file.cold-tier.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.file.cold-tier.min-age-days:180}")
+    private long minAgeDays;
+
+    @Value("${app.file.cold-tier.max-pack-bytes:268435456}")
+    private long maxPackBytes;
+
+    @Value("${app.file.cold-tier.max-files-per-run:20000}")
+    private int maxFilesPerRun;
+
+    @Value("${app.file.cold-tier.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.file.cold-tier.compact-dead-ratio:0.3}")
+    private double compactDeadRatio;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Scheduled(cron = "${app.file.cold-tier.cron:0 30 4 * * *}")
+    public void scheduledPack() {
+        if (enabled) {
+            pack();
+        }
+    }
+
+    /**
+     * Pack eligible documents
+     * @return Number of files packed, or -1 if the run did not happen
+     */
+    public int pack() {
+        if (!fileStorageService.isLocalStorage()) {
+            log.debug("Cold tiering skipped: storage backend is not local");
+            return -1;
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.info("Cold tiering already running, skipping");
+            return -1;
+        }
+        long start = System.nanoTime();
+        Run run = new Run();
+        try {
+            Instant cutoff = Instant.now().minus(Duration.ofDays(minAgeDays));
+            for (String relativePath : candidates(cutoff)) {
+                packOne(run, relativePath, cutoff);
+            }
+            run.commit();
+        } catch (Exception e) {
+            log.error("Cold tiering failed: ", e);
+        } finally {
+            run.close();
+        }
+        try {
+            compact();
+        } catch (Exception e) {
+            log.error("Pack compaction failed: ", e);
+        } finally {
+            running.set(false);
+        }
+        log.info("Cold tiering packed {} files ({} -> {} bytes) into {} packs in {} ms",
+                run.files, run.bytes, run.storedBytes, run.packs,
+                Duration.ofNanos(System.nanoTime() - start).toMillis());
+        return run.files;
+    }
+
+    /**
+     * Loose documents referenced by partners verified before the cutoff, up to max-files-per-run
+     */
+    private Set<String> candidates(Instant cutoff) {
+        Set<String> paths = new LinkedHashSet<>();
+        // The driver only streams with a fetch size inside a transaction
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(FETCH_SIZE);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.executeWithoutResult(status -> streaming.query(CANDIDATES_SQL, resultSet -> {
+            while (paths.size() < maxFilesPerRun && resultSet.next()) {
+                for (int i = 1; i <= 3; i++) {
+                    String value = resultSet.getString(i);
+                    Matcher matcher = FILE_URL.matcher(value != null ? value : "");
+                    while (matcher.find()) {
+                        String path = matcher.group(1);
+                        // Packed ones are no longer on disk, so each run gets further
+                        if (packStore.covers(path) && isCold(fileStorageService.locate(path), cutoff)) {
+                            paths.add(path);
+                        }
+                    }
+                }
+            }
+            return null;
+        }, Timestamp.from(cutoff)));
+        return paths;
+    }
+
+    /**
+     * Whether a loose file exists at relativePath and was last written before the cutoff
+     */
+    private boolean isCold(String relativePath, Instant cutoff) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(fileStorageService.resolvePath(relativePath),
+                    BasicFileAttributes.class);
+            return attributes.isRegularFile() && !attributes.lastModifiedTime().toInstant().isAfter(cutoff);
+        } catch (IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void packOne(Run run, String path, Instant cutoff) throws IOException {
+        String relativePath = fileStorageService.locate(path);
+        Path file = fileStorageService.resolvePath(relativePath);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // Deleted since it was listed
+            return;
+        }
+        if (!attributes.isRegularFile() || attributes.lastModifiedTime().toInstant().isAfter(cutoff)) {
+            return;
+        }
+        if (packedFileRepository.existsById(relativePath)) {
+            // Indexed by a run that stopped before removing the loose copy
+            removeLoose(relativePath, file);
+            return;
+        }
+        if (run.writer == null || run.writer.size() >= maxPackBytes) {
+            run.rotate();
+        }
+        boolean encrypted = fileEncryption.mayBeEncrypted(relativePath) && fileEncryption.isEncryptedFile(file);
+        run.batch.add(run.writer.append(relativePath, file, attributes.lastModifiedTime().toMillis(), encrypted));
+        if (run.batch.size() >= batchSize) {
+            run.commit();
+        }
+    }
+
+    private void removeLoose(String relativePath, Path file) throws IOException {
+        hotFileCache.invalidate(relativePath);
+        fileIntegrityService.forget(relativePath);
+        // Deduplicated files drop their blob reference
+        if (!contentAddressedStore.release(fileStorageService.resolvePath(""), file, relativePath)) {
+            Files.deleteIfExists(file);
+        }
+        Files.deleteIfExists(fileStorageService.resolvePath(relativePath + FileStorageService.GZIP_SUFFIX));
+    }
+
+    /**
+     * Rewrite packs with too many deleted entries (called with the running flag held, so no
+     * pack is being written)
+     */
+    private void compact() throws IOException {
+        long freed = packStore.deleteRetired();
+        int compacted = 0;
+        long reclaimable = 0;
+        for (String pack : packStore.packNames()) {
+            long size = Files.size(packStore.packPath(pack));
+            List<PackedFile> entries = packedFileRepository.findByPackOrderByOffsetAsc(pack);
+            long dead = size - PackStore.liveBytes(entries);
+            if (size == 0 || dead < size * compactDeadRatio) {
+                continue;
+            }
+            if (entries.isEmpty() || compactPack(pack, entries)) {
+                packStore.retire(pack);
+                compacted++;
+                reclaimable += dead;
+            }
+        }
+        if (compacted > 0 || freed > 0) {
+            log.info("Pack compaction retired {} packs ({} dead bytes) and deleted {} bytes of packs retired earlier",
+                    compacted, reclaimable, freed);
+        }
+    }
+
+    /**
+     * Copy the live entries of a pack into a new one and relocate them
+     * @return false if the pack has to stay (an entry no longer reads back)
+     */
+    private boolean compactPack(String pack, List<PackedFile> entries) throws IOException {
+        String name = LocalDateTime.now().format(PACK_NAME) + "-compact-" + UUID.randomUUID().toString().substring(0, 8)
+                + ".pack";
+        List<PackedFile> copies = new ArrayList<>();
+        PackStore.Writer writer = packStore.create(name);
+        try (writer; FileChannel source = FileChannel.open(packStore.packPath(pack), StandardOpenOption.READ)) {
+            for (PackedFile entry : entries) {
+                try {
+                    copies.add(writer.copy(entry, source));
+                } catch (IOException e) {
+                    // An entry deleted since it was listed has been erased; anything else is damage
+                    if (packedFileRepository.existsById(entry.getPath())) {
+                        throw e;
+                    }
+                }
+            }
+            writer.force();
+            for (PackedFile copy : copies) {
+                if (!writer.verify(copy)) {
+                    throw new IOException("Copy of " + copy.getPath() + " in " + name + " does not read back");
+                }
+            }
+        } catch (IOException e) {
+            log.error("Cannot compact pack {}; keeping it: {}", pack, e.getMessage());
+            Files.deleteIfExists(packStore.packPath(name));
+            return false;
+        }
+        int moved = packStore.relocate(pack, copies);
+        log.info("Compacted pack {} into {} ({} live entries)", pack, name, moved);
+        return true;
+    }
+
+    /**
+     * State of one run: the pack being written and its entries not yet indexed
+     */
+    private final class Run {
+
+        private PackStore.Writer writer;
+        private final List<PackedFile> batch = new ArrayList<>();
+        private int files;
+        private int packs;
+        private long bytes;
+        private long storedBytes;
+
+        void rotate() throws IOException {
+            commit();
+            close();
+            writer = packStore.create(LocalDateTime.now().format(PACK_NAME) + "-" + (packs + 1) + ".pack");
+            packs++;
+        }
+
+        /**
+         * Make the batch durable, index it and remove the loose copies
+         */
+        void commit() throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            writer.force();
+            List<PackedFile> verified = new ArrayList<>();
+            for (PackedFile entry : batch) {
+                if (writer.verify(entry)) {
+                    verified.add(entry);
+                } else {
+                    log.error("Packed copy of {} in {} does not read back; keeping the loose file",
+                            entry.getPath(), writer.name());
+                }
+            }
+            batch.clear();
+            packedFileRepository.saveAll(verified);
+            for (PackedFile entry : verified) {
+                Path file = fileStorageService.resolvePath(entry.getPath());
+                if (Files.exists(file)) {
+                    removeLoose(entry.getPath(), file);
+                    files++;
+                    bytes += entry.getSize();
+                    storedBytes += entry.getStoredLength();
+                } else {
+                    // Deleted while it was being packed
+                    packedFileRepository.deleteById(entry.getPath());
+                }
+            }
+        }
+
+        void close() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+                if (writer.size() == 0) {
+                    Files.deleteIfExists(packStore.packPath(writer.name()));
+                }
+            } catch (IOException e) {
+                log.warn("Failed to close pack {}: {}", writer.name(), e.getMessage());
+            }
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.gvn.service;
+
+import com.gvn.entity.StoredFile;
+import com.gvn.repository.StoredFileRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Content-addressed blob store used by FileStorageService when deduplication is enabled.
+ *
+ * Uploads are hashed with SHA-256 while they stream into a temp file (multipart parts
+ * already moved onto the upload filesystem are hashed in place). Every stored path
+ * is a hard link to {@code .blobs/<aa>/<hash>}, so identical uploads share one copy on
+ * disk and in the page cache while each keeps its own public path. stored_blobs counts
+ * the paths per hash and the blob is removed when its last path is deleted.
+ *
+ * Reference counts are written in the caller's transaction when there is one (staged
+ * uploads are promoted just before it commits), so a rollback takes them back with the
+ * rest of its changes and no second pooled connection is needed per upload. A blob that
+ * was created for a transaction that rolls back is removed again unless some committed
+ * path references it by then.
+ *
+ * There are no JVM locks. Every file operation on a blob runs after the ref-count upsert
+ * or decrement in the same transaction, so it holds that hash's stored_blobs row lock:
+ * concurrent uploads and deletes of the same content serialize in the database (on every
+ * node, with its deadlock detection) instead of in this process. A blob missing while
+ * references remain only costs deduplication, as every stored path is its own hard link
+ * (or copy); the next upload of that content recreates it.
+ */
+@Component
+@Slf4j
+public class ContentAddressedStore {
+
+    public static final String BLOB_DIR = ".blobs";
+    public static final String TEMP_DIR = ".tmp";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String INCREMENT_SQL =
+            "INSERT INTO stored_blobs (content_hash, size, ref_count, created_at) VALUES (?, ?, 1, now()) " +
+            "ON CONFLICT (content_hash) DO UPDATE SET ref_count = stored_blobs.ref_count + 1";
+    private static final String DECREMENT_SQL =
+            "UPDATE stored_blobs SET ref_count = ref_count - 1 WHERE content_hash = ? RETURNING ref_count";
+    private static final String DELETE_UNREFERENCED_SQL =
+            "DELETE FROM stored_blobs WHERE content_hash = ? AND ref_count <= 0";
+    private static final String REFERENCED_SQL =
+            "SELECT EXISTS(SELECT 1 FROM stored_blobs WHERE content_hash = ? AND ref_count > 0)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StoredFileRepository storedFileRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public ContentAddressedStore(JdbcTemplate jdbcTemplate, StoredFileRepository storedFileRepository,
+                                 PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.storedFileRepository = storedFileRepository;
+        // Joins the caller's transaction, starts one otherwise
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Store the stream at target, sharing its bytes with an identical blob if one exists
+     * @param basePath Upload directory
+     * @param target Absolute destination path (must not exist)
+     * @param relativePath Destination path relative to the upload directory
+     * @return Number of bytes stored
+     */
+    public long store(InputStream input, Path basePath, Path target, String relativePath) throws IOException {
+        Path tempDir = basePath.resolve(TEMP_DIR);
+        Files.createDirectories(tempDir);
+        Path temp = Files.createTempFile(tempDir, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size = 0;
+            try (InputStream in = new DigestInputStream(input, digest);
+                 OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, bytesRead);
+                    size += bytesRead;
+                }
+            }
+            if (size == 0) {
+                throw new IOException("File was not written correctly: " + target);
+            }
+
+            commit(temp, HexFormat.of().formatHex(digest.digest()), size, basePath, target, relativePath);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Store a file already staged on the upload filesystem (e.g. a moved multipart part).
+     * The file is hashed in place and then moved into the blob store or discarded.
+     * @return Number of bytes stored
+     */
+    public long storeFile(Path staged, Path basePath, Path target, String relativePath) throws IOException {
+        try {
+            MessageDigest digest = sha256();
+            long size = 0;
+            try (FileChannel channel = FileChannel.open(staged, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                int bytesRead;
+                while ((bytesRead = channel.read(buffer)) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                    size += bytesRead;
+                }
+            }
+            if (size == 0) {
+                throw new IOException("File was not written correctly: " + target);
+            }
+            commit(staged, HexFormat.of().formatHex(digest.digest()), size, basePath, target, relativePath);
+            return size;
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * Record the reference, then link target to the blob for hash (creating the blob from
+     * temp if it is missing) while the reference's row lock is held
+     */
+    private void commit(Path temp, String hash, long size, Path basePath, Path target,
+                        String relativePath) throws IOException {
+        Path blob = blobPath(basePath, hash);
+        boolean[] created = new boolean[1];
+        boolean[] linked = new boolean[1];
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update(INCREMENT_SQL, hash, size);
+                try {
+                    created[0] = createBlob(temp, blob);
+                    link(blob, target);
+                    linked[0] = true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                storedFileRepository.save(StoredFile.builder()
+                        .path(relativePath)
+                        .contentHash(hash)
+                        .size(size)
+                        .build());
+            });
+        } catch (RuntimeException e) {
+            // Nothing else can have linked a blob created here: the row lock is still ours
+            if (linked[0]) {
+                Files.deleteIfExists(target);
+            }
+            if (created[0]) {
+                Files.deleteIfExists(blob);
+            }
+            if (e instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Failed to record stored file: " + e.getMessage(), e);
+        }
+        if (created[0]) {
+            removeOnRollback(blob, hash);
+        } else {
+            log.debug("Deduplicated upload {} against blob {}", relativePath, hash);
+        }
+    }
+
+    /**
+     * Link temp in as the blob unless one exists already
+     * @return true if this call created the blob
+     */
+    private static boolean createBlob(Path temp, Path blob) throws IOException {
+        Files.createDirectories(blob.getParent());
+        try {
+            Files.createLink(blob, temp);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // No hard links on this filesystem: copy, which also refuses an existing blob
+            try {
+                Files.copy(temp, blob);
+                return true;
+            } catch (FileAlreadyExistsException exists) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Delete a new blob again if the transaction that recorded it rolls back
+     */
+    private void removeOnRollback(Path blob, String hash) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                try {
+                    // An identical upload committed meanwhile links the same blob. One still in
+                    // flight may lose it here; its own path is unaffected and the blob is recreated.
+                    if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(REFERENCED_SQL, Boolean.class, hash))) {
+                        Files.deleteIfExists(blob);
+                        log.debug("Deleted blob {} of a rolled back upload", hash);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to delete blob {} of a rolled back upload: {}", hash, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Drop the reference held by a stored path, deleting the blob if it was the last one
+     * @return false if the path is not tracked here (stored before deduplication was enabled)
+     */
+    public boolean release(Path basePath, Path target, String relativePath) throws IOException {
+        Optional<StoredFile> storedFile = storedFileRepository.findById(relativePath);
+        if (storedFile.isEmpty()) {
+            return false;
+        }
+        String hash = storedFile.get().getContentHash();
+        Path blob = blobPath(basePath, hash);
+        transactionTemplate.executeWithoutResult(status -> {
+            storedFileRepository.deleteById(relativePath);
+            List<Integer> counts = jdbcTemplate.queryForList(DECREMENT_SQL, Integer.class, hash);
+            int count = counts.isEmpty() ? 0 : counts.get(0);
+            if (count <= 0) {
+                jdbcTemplate.update(DELETE_UNREFERENCED_SQL, hash);
+                // Still under the row lock, so no upload can be linking this blob right now
+                try {
+                    Files.deleteIfExists(blob);
+                    log.debug("Deleted unreferenced blob {}", hash);
+                } catch (IOException e) {
+                    log.warn("Failed to delete unreferenced blob {}: {}", hash, e.getMessage());
+                }
+            }
+        });
+        Files.deleteIfExists(target);
+        return true;
+    }
+
+    private static Path blobPath(Path basePath, String hash) {
+        return basePath.resolve(BLOB_DIR).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static void link(Path blob, Path target) throws IOException {
+        try {
+            Files.createLink(target, blob);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // No hard links on this filesystem: keep a private copy, counts still apply
+            Files.copy(blob, target);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,481 @@
+package com.gvn.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encryption at rest for uploads in sensitive areas (identity documents).
+ *
+ * Files are written as a header followed by fixed-size AES-256-GCM segments:
+ * <pre>
+ *   "GVE1" | segment size (4) | nonce prefix (7) | key nonce (12) | wrapped data key (32 + 16 tag)
+ *   segment 0 | segment 1 | ... | last segment       (each: ciphertext + 16-byte tag)
+ * </pre>
+ * Every file has its own random data key, wrapped (AES-GCM) by the master key with the
+ * header fields as associated data. A segment's nonce is the file's nonce prefix, the
+ * segment index and a last-segment flag, so segments cannot be reordered, dropped or the
+ * file truncated without failing authentication. Segments are encrypted while the upload
+ * streams to disk and a range read decrypts only the segments it covers.
+ *
+ * AES-GCM is the JDK provider's, which HotSpot compiles to AES-NI/CLMUL intrinsics.
+ * Files written before encryption was enabled stay plaintext and are recognised by the
+ * missing magic.
+ */
+@Component
+@Slf4j
+public class FileEncryption {
+
+    private static final byte[] MAGIC = {'G', 'V', 'E', '1'};
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int KEY_LENGTH = 32;
+    private static final int TAG_LENGTH = 16;
+    private static final int NONCE_LENGTH = 12;
+    private static final int NONCE_PREFIX_LENGTH = 7;
+    // Bytes covered by the key wrap as associated data: magic, segment size, nonce prefix
+    private static final int HEADER_FIELDS_LENGTH = MAGIC.length + 4 + NONCE_PREFIX_LENGTH;
+    static final int HEADER_LENGTH = HEADER_FIELDS_LENGTH + NONCE_LENGTH + KEY_LENGTH + TAG_LENGTH;
+
+    private final boolean enabled;
+    private final SecretKey masterKey;
+    private final List<String> areas;
+    private final int segmentSize;
+    private final SecureRandom random = new SecureRandom();
+
+    public FileEncryption(@Value("${app.file.encryption.enabled:false}") boolean enabled,
+                          @Value("${app.file.encryption.master-key:}") String masterKey,
+                          @Value("${app.file.encryption.areas:documents}") String[] areas,
+                          @Value("${app.file.encryption.segment-size:65536}") int segmentSize) {
+        this.masterKey = masterKey == null || masterKey.isBlank() ? null : masterKeyOf(masterKey.trim());
+        if (enabled && this.masterKey == null) {
+            throw new IllegalStateException("app.file.encryption.master-key is required when encryption is enabled");
+        }
+        if (segmentSize < 4096 || segmentSize > 16 * 1024 * 1024) {
+            throw new IllegalStateException("app.file.encryption.segment-size must be between 4KB and 16MB");
+        }
+        this.enabled = enabled;
+        this.areas = Arrays.stream(areas).map(String::trim).filter(area -> !area.isEmpty())
+                .map(area -> area.endsWith("/") ? area : area + "/").toList();
+        this.segmentSize = segmentSize;
+    }
+
+    private static SecretKey masterKeyOf(String base64) {
+        byte[] key = Base64.getDecoder().decode(base64);
+        if (key.length != KEY_LENGTH) {
+            throw new IllegalStateException("app.file.encryption.master-key must be 32 bytes, base64-encoded");
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * Whether a new upload at this path is to be written encrypted
+     */
+    public boolean encryptsNewFiles(String relativePath) {
+        return enabled && inArea(relativePath);
+    }
+
+    /**
+     * Whether the file at this path can be an encrypted one (check with isEncryptedFile)
+     */
+    public boolean mayBeEncrypted(String relativePath) {
+        return masterKey != null && inArea(relativePath);
+    }
+
+    private boolean inArea(String relativePath) {
+        for (String area : areas) {
+            if (relativePath.startsWith(area)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a stored file starts with the encrypted-file header
+     */
+    public boolean isEncryptedFile(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return isEncrypted(channel, 0, channel.size());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the length bytes at offset of a channel (e.g. a pack entry) start with the
+     * encrypted-file header
+     */
+    public boolean isEncrypted(FileChannel channel, long offset, long length) throws IOException {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        readFully(channel, magic, offset);
+        return Arrays.equals(magic.array(), MAGIC);
+    }
+
+    /**
+     * Encrypt input into a new file at target (removed again if anything fails)
+     * @return Number of plaintext bytes written
+     */
+    public long encryptTo(InputStream input, Path target) throws IOException {
+        try (OutputStream file = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW);
+             OutputStream output = encrypt(file)) {
+            return input.transferTo(output);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    /**
+     * Stream that encrypts what is written to it into output, segment by segment.
+     * The last segment is written on close(), which also closes output.
+     */
+    public OutputStream encrypt(OutputStream output) throws IOException {
+        byte[] dataKey = new byte[KEY_LENGTH];
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        byte[] keyNonce = new byte[NONCE_LENGTH];
+        random.nextBytes(dataKey);
+        random.nextBytes(noncePrefix);
+        random.nextBytes(keyNonce);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(MAGIC).putInt(segmentSize).put(noncePrefix).put(keyNonce);
+        try {
+            Cipher wrap = Cipher.getInstance(CIPHER);
+            wrap.init(Cipher.ENCRYPT_MODE, masterKey(), new GCMParameterSpec(TAG_LENGTH * 8, keyNonce));
+            wrap.updateAAD(header.array(), 0, HEADER_FIELDS_LENGTH);
+            header.put(wrap.doFinal(dataKey));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to wrap data key: " + e.getMessage(), e);
+        }
+        output.write(header.array());
+        return new EncryptingOutputStream(output, new SecretKeySpec(dataKey, "AES"), noncePrefix, segmentSize);
+    }
+
+    /**
+     * Plaintext size of an encrypted file
+     */
+    public long plaintextLength(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return plaintextLength(channel, 0, channel.size());
+        }
+    }
+
+    /**
+     * Plaintext size of an encrypted file stored as the length bytes at offset of a channel
+     */
+    public long plaintextLength(FileChannel channel, long offset, long length) throws IOException {
+        return openHeader(channel, offset, length).plaintextLength();
+    }
+
+    /**
+     * Sequential plaintext of an encrypted file
+     */
+    public InputStream decrypt(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return decrypt(channel, 0, channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sequential plaintext of an encrypted file stored as the length bytes at offset of a
+     * channel; closing the stream closes the channel
+     */
+    public InputStream decrypt(FileChannel channel, long offset, long length) throws IOException {
+        return new DecryptingInputStream(channel, openHeader(channel, offset, length));
+    }
+
+    /**
+     * Write plaintext bytes [start, end) of an encrypted file, decrypting only the segments
+     * that overlap the range
+     */
+    public void decryptRange(Path path, long start, long end, OutputStream output) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            decryptRange(channel, 0, channel.size(), start, end, output);
+        }
+    }
+
+    /**
+     * Range decryption of an encrypted file stored as the length bytes at offset of a channel
+     */
+    public void decryptRange(FileChannel channel, long offset, long length, long start, long end,
+                             OutputStream output) throws IOException {
+        Header header = openHeader(channel, offset, length);
+        SegmentReader reader = new SegmentReader(channel, header);
+        long first = start / header.segmentSize();
+        long last = (end - 1) / header.segmentSize();
+        for (long index = first; index <= last; index++) {
+            int count = reader.read(index);
+            long segmentStart = index * header.segmentSize();
+            int from = (int) Math.max(0, start - segmentStart);
+            int to = (int) Math.min(count, end - segmentStart);
+            output.write(reader.plaintext, from, to - from);
+        }
+    }
+
+    private Header openHeader(FileChannel channel, long offset, long length) throws IOException {
+        if (length < HEADER_LENGTH) {
+            throw new IOException("Encrypted file is truncated");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(channel, buffer, offset);
+        byte[] header = buffer.array();
+        if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+            throw new IOException("Not an encrypted file");
+        }
+        int segmentSize = buffer.getInt(MAGIC.length);
+        if (segmentSize <= 0) {
+            throw new IOException("Invalid segment size in encrypted file header");
+        }
+        byte[] noncePrefix = Arrays.copyOfRange(header, MAGIC.length + 4, HEADER_FIELDS_LENGTH);
+        byte[] keyNonce = Arrays.copyOfRange(header, HEADER_FIELDS_LENGTH, HEADER_FIELDS_LENGTH + NONCE_LENGTH);
+        byte[] dataKey;
+        try {
+            Cipher unwrap = Cipher.getInstance(CIPHER);
+            unwrap.init(Cipher.DECRYPT_MODE, masterKey(), new GCMParameterSpec(TAG_LENGTH * 8, keyNonce));
+            unwrap.updateAAD(header, 0, HEADER_FIELDS_LENGTH);
+            dataKey = unwrap.doFinal(header, HEADER_FIELDS_LENGTH + NONCE_LENGTH, KEY_LENGTH + TAG_LENGTH);
+        } catch (AEADBadTagException e) {
+            throw new IOException("Encrypted file header failed authentication (wrong master key or tampered)");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to unwrap data key: " + e.getMessage(), e);
+        }
+
+        long ciphertext = length - HEADER_LENGTH;
+        long segments = (ciphertext + segmentSize + TAG_LENGTH - 1) / (segmentSize + TAG_LENGTH);
+        if (segments == 0 || ciphertext - segments * TAG_LENGTH < (segments - 1) * segmentSize) {
+            throw new IOException("Encrypted file is truncated");
+        }
+        return new Header(new SecretKeySpec(dataKey, "AES"), segmentSize, noncePrefix, segments,
+                ciphertext - segments * TAG_LENGTH, offset, offset + length);
+    }
+
+    private SecretKey masterKey() throws IOException {
+        if (masterKey == null) {
+            throw new IOException("app.file.encryption.master-key is not configured");
+        }
+        return masterKey;
+    }
+
+    /**
+     * Nonce of one segment: file prefix (7) | segment index (4) | last-segment flag (1)
+     */
+    private static GCMParameterSpec segmentNonce(byte[] noncePrefix, long index, boolean last) {
+        byte[] nonce = Arrays.copyOf(noncePrefix, NONCE_LENGTH);
+        ByteBuffer.wrap(nonce, NONCE_PREFIX_LENGTH, 4).putInt((int) index);
+        nonce[NONCE_LENGTH - 1] = (byte) (last ? 1 : 0);
+        return new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Encrypted file is truncated");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * @param offset Position of the encrypted file in its channel
+     * @param end    Position just after it
+     */
+    private record Header(SecretKey dataKey, int segmentSize, byte[] noncePrefix, long segments,
+                          long plaintextLength, long offset, long end) {
+    }
+
+    /**
+     * Buffers one segment of plaintext; a full segment is only sealed once more data
+     * follows, so the final one (possibly full, possibly empty) is sealed as last on close
+     */
+    private static final class EncryptingOutputStream extends FilterOutputStream {
+
+        private final SecretKey dataKey;
+        private final byte[] noncePrefix;
+        private final byte[] plaintext;
+        private final byte[] ciphertext;
+        private final Cipher cipher;
+        private int filled;
+        private long index;
+        private boolean closed;
+
+        EncryptingOutputStream(OutputStream output, SecretKey dataKey, byte[] noncePrefix, int segmentSize)
+                throws IOException {
+            super(output);
+            this.dataKey = dataKey;
+            this.noncePrefix = noncePrefix;
+            this.plaintext = new byte[segmentSize];
+            this.ciphertext = new byte[segmentSize + TAG_LENGTH];
+            try {
+                this.cipher = Cipher.getInstance(CIPHER);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("AES-GCM unavailable", e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (filled == plaintext.length) {
+                    seal(false);
+                }
+                int count = Math.min(length, plaintext.length - filled);
+                System.arraycopy(buffer, offset, plaintext, filled, count);
+                filled += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void flush() {
+            // Segments are written whole; nothing to push early
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                seal(true);
+            } finally {
+                out.close();
+            }
+        }
+
+        private void seal(boolean last) throws IOException {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, dataKey, segmentNonce(noncePrefix, index, last));
+                int length = cipher.doFinal(plaintext, 0, filled, ciphertext, 0);
+                out.write(ciphertext, 0, length);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to encrypt segment " + index + ": " + e.getMessage(), e);
+            }
+            index++;
+            filled = 0;
+        }
+    }
+
+    /**
+     * Positional reader decrypting one segment at a time into a reused buffer
+     */
+    private static final class SegmentReader {
+
+        private final FileChannel channel;
+        private final Header header;
+        private final Cipher cipher;
+        private final ByteBuffer ciphertext;
+        private final byte[] plaintext;
+
+        SegmentReader(FileChannel channel, Header header) throws IOException {
+            this.channel = channel;
+            this.header = header;
+            this.ciphertext = ByteBuffer.allocate(header.segmentSize() + TAG_LENGTH);
+            this.plaintext = new byte[header.segmentSize()];
+            try {
+                this.cipher = Cipher.getInstance(CIPHER);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("AES-GCM unavailable", e);
+            }
+        }
+
+        /**
+         * Decrypt segment index into plaintext
+         * @return Number of plaintext bytes in the segment
+         */
+        int read(long index) throws IOException {
+            boolean last = index == header.segments() - 1;
+            long position = header.offset() + HEADER_LENGTH + index * (header.segmentSize() + TAG_LENGTH);
+            int length = (int) Math.min(header.segmentSize() + TAG_LENGTH, header.end() - position);
+            ciphertext.clear().limit(length);
+            readFully(channel, ciphertext, position);
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, header.dataKey(), segmentNonce(header.noncePrefix(), index, last));
+                return cipher.doFinal(ciphertext.array(), 0, length, plaintext, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Encrypted file segment " + index + " failed authentication");
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to decrypt segment " + index + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static final class DecryptingInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final SegmentReader reader;
+        private final long segments;
+        private long next;
+        private int position;
+        private int limit;
+
+        DecryptingInputStream(FileChannel channel, Header header) throws IOException {
+            this.channel = channel;
+            this.reader = new SegmentReader(channel, header);
+            this.segments = header.segments();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (next == segments) {
+                    return -1;
+                }
+                limit = reader.read(next++);
+                position = 0;
+            }
+            int count = Math.min(length, limit - position);
+            System.arraycopy(reader.plaintext, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.gvn.service;
+
+import com.gvn.entity.FileChecksum;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Checksums of stored uploads, recorded when a file reaches its final place.
+ *
+ * The CRC32C of the bytes on disk is computed on the upload executor right after the file
+ * lands (it is still in the page cache) and stored in file_checksums together with the
+ * size the upload was expected to have, so a file cut short while it was written (disk
+ * full) is flagged at once. IntegrityScrubber re-hashes the store against these rows.
+ * Local storage backend only.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FileIntegrityService {
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO file_checksums (path, unit, size, crc32c, status, recorded_at) VALUES (?, ?, ?, ?, ?, now()) " +
+            "ON CONFLICT (path) DO UPDATE SET unit = EXCLUDED.unit, size = EXCLUDED.size, " +
+            "crc32c = EXCLUDED.crc32c, status = EXCLUDED.status, recorded_at = now(), verified_at = NULL";
+    private static final String DELETE_SQL = "DELETE FROM file_checksums WHERE path = ?";
+    private static final String RENAME_SQL = "UPDATE file_checksums SET path = ?, unit = ? WHERE path = ?";
+
+    private static final int HASH_BUFFER_SIZE = 1024 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UploadExecutor uploadExecutor;
+    private final StorageBackend storageBackend;
+
+    @Value("${app.file.upload-dir:uploads}")
+    private String uploadDir;
+
+    @Value("${app.file.scrub.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Hash a file that just reached relativePath and record it, on the upload executor
+     * @param expectedSize Bytes the file should have on disk
+     */
+    public void recordLater(String relativePath, long expectedSize) {
+        if (!enabled || !storageBackend.isLocal()) {
+            return;
+        }
+        uploadExecutor.submit(() -> {
+            record(relativePath, expectedSize);
+            return null;
+        }).exceptionally(e -> {
+            log.warn("Failed to record checksum of {}: {}", relativePath, e.getMessage());
+            return null;
+        });
+    }
+
+    private void record(String relativePath, long expectedSize) throws IOException {
+        Path path = resolve(relativePath);
+        long[] actual;
+        try {
+            actual = hash(path, null);
+        } catch (NoSuchFileException e) {
+            // Deleted again before we got to it
+            return;
+        }
+        String status = FileChecksum.STATUS_OK;
+        if (actual[0] != expectedSize) {
+            log.error("Upload {} is {} bytes on disk, expected {}", relativePath, actual[0], expectedSize);
+            status = FileChecksum.STATUS_MISMATCH;
+        }
+        // Expected size, so the scrubber keeps reporting a short file
+        jdbcTemplate.update(UPSERT_SQL, relativePath, unitOf(relativePath), expectedSize, actual[1], status);
+    }
+
+    /**
+     * Record a checksum computed by the scrubber for a file uploaded before checksums existed
+     */
+    void recordBaseline(String relativePath, long size, long crc32c) {
+        jdbcTemplate.update(UPSERT_SQL, relativePath, unitOf(relativePath), size, crc32c, FileChecksum.STATUS_OK);
+    }
+
+    /**
+     * Drop the checksum of a deleted file
+     */
+    public void forget(String relativePath) {
+        if (!enabled || !storageBackend.isLocal()) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(DELETE_SQL, relativePath);
+        } catch (RuntimeException e) {
+            // Only leaves a row the scrubber will report as missing
+            log.warn("Failed to drop checksum of {}: {}", relativePath, e.getMessage());
+        }
+    }
+
+    /**
+     * Follow a file moved to a new path
+     */
+    public void renamed(String oldPath, String newPath) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(RENAME_SQL, newPath, unitOf(newPath), oldPath);
+        } catch (RuntimeException e) {
+            // The scrubber reports the old path missing and takes a new baseline
+            log.warn("Failed to move checksum of {} to {}: {}", oldPath, newPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Size and CRC32C of a file, reading it through an optional I/O budget
+     * @return {size, crc32c}
+     */
+    static long[] hash(Path path, IoBudget budget) throws IOException {
+        CRC32C crc = new CRC32C();
+        long size = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int read;
+            while (true) {
+                buffer.clear();
+                read = channel.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+                if (budget != null) {
+                    budget.acquire(read);
+                }
+                buffer.flip();
+                crc.update(buffer);
+                size += read;
+            }
+        }
+        return new long[] {size, crc.getValue()};
+    }
+
+    /**
+     * Scrub unit of a stored path: its directory down to the first shard level
+     * ({@code avatars/ab/cd/x.jpg} -> {@code avatars/ab}); unsharded files belong to their directory
+     */
+    static String unitOf(String relativePath) {
+        int slash = relativePath.lastIndexOf('/');
+        String directory = slash >= 0 ? relativePath.substring(0, slash) : "";
+        int last = directory.lastIndexOf('/');
+        if (last > 0 && isShard(directory.substring(last + 1))) {
+            String parent = directory.substring(0, last);
+            int previous = parent.lastIndexOf('/');
+            if (previous > 0 && isShard(parent.substring(previous + 1))) {
+                return parent;
+            }
+        }
+        return directory;
+    }
+
+    static boolean isShard(String name) {
+        return name.length() == 2
+                && Character.digit(name.charAt(0), 16) >= 0
+                && Character.digit(name.charAt(1), 16) >= 0;
+    }
+
+    Path resolve(String relativePath) {
+        Path basePath = FileStorageService.resolveBasePath(uploadDir);
+        Path path = basePath.resolve(relativePath).normalize();
+        if (!path.startsWith(basePath)) {
+            throw new IllegalArgumentException("Path escapes upload directory: " + relativePath);
+        }
+        return path;
+    }
+
+    /**
+     * Shared read-rate limit: callers reserve bytes and sleep until the budget allows them
+     */
+    static final class IoBudget {
+
+        private final double nanosPerByte;
+        private long nextFree = System.nanoTime();
+
+        IoBudget(long bytesPerSecond) {
+            this.nanosPerByte = 1e9 / Math.max(1, bytesPerSecond);
+        }
+
+        void acquire(long bytes) throws IOException {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                // Idle time does not bank a burst beyond one second's worth
+                nextFree = Math.max(nextFree, now - 1_000_000_000L);
+                wait = nextFree - now;
+                nextFree += (long) (bytes * nanosPerByte);
+            }
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for I/O budget");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.gvn.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import com.gvn.entity.PackedFile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Serves stored uploads for GET/HEAD /api/v1/files/**.
+ *
+ * Upload names are unique and never rewritten, so responses are marked immutable for a
+ * year and carry Last-Modified plus a weak ETag (size + mtime, which does not prove the
+ * bytes are identical); revalidations become 304s. A single byte range is honoured; an
+ * If-Range needs a strong validator, so only its date form can keep a range. Bodies go through
+ * Tomcat's sendfile when the connector offers it, otherwise FileChannel.transferTo.
+ * Small files in hot areas (icons, banners) are served from HotFileCache without
+ * touching the filesystem. Compressible types are answered with their precompressed
+ * gzip sibling when the client accepts it (Vary: Accept-Encoding).
+ *
+ * Files in private areas (identity documents) are only served for a valid signed URL
+ * (see SignedUrlService), and are cached privately for no longer than the URL lives.
+ * Encrypted ones are decrypted segment by segment, only over the requested range.
+ * Documents moved into packs (see ColdTierService) are read from the pack at their
+ * indexed offset and keep their validators.
+ *
+ * With an object-store backend the client is redirected to a short-lived presigned URL
+ * instead, so the bytes never pass through the application.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FileServingService {
+
+    public static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    // Below this size a plain write is cheaper than handing the file to the poller
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Value("${app.storage.presign-ttl-seconds:300}")
+    private long presignTtlSeconds;
+
+    private final FileStorageService fileStorageService;
+    private final HotFileCache hotFileCache;
+    private final SignedUrlService signedUrlService;
+    private final FileEncryption fileEncryption;
+    private final PackStore packStore;
+
+    /**
+     * Write the stored file at relativePath (status, headers and, for GET, the body)
+     */
+    public void serve(String relativePath, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!isPublicPath(relativePath)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String cacheControl = CACHE_CONTROL;
+        if (signedUrlService.isPrivate(relativePath)) {
+            String expires = request.getParameter("expires");
+            if (!signedUrlService.verify(relativePath, expires, request.getParameter("scope"), request.getParameter("sig"))) {
+                response.sendError(HttpServletResponse.SC_FORBIDDEN);
+                return;
+            }
+            cacheControl = "private, max-age=" + SignedUrlService.secondsLeft(expires);
+        }
+        if (!fileStorageService.isLocalStorage()) {
+            redirectToBackend(relativePath, response);
+            return;
+        }
+        String fileName = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+        String contentType = request.getServletContext().getMimeType(fileName);
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        if (FileStorageService.isCompressible(relativePath)) {
+            response.setHeader("Vary", "Accept-Encoding");
+            if (acceptsGzip(request.getHeader("Accept-Encoding"))
+                    && serveLocal(relativePath + FileStorageService.GZIP_SUFFIX, contentType, "gzip", cacheControl,
+                            request, response)) {
+                return;
+            }
+        }
+        if (!serveLocal(relativePath, contentType, null, cacheControl, request, response)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    /**
+     * Serve one stored representation from the hot cache or disk
+     * @param encoding Content-Encoding of the stored bytes, or null
+     * @return false (nothing written) if there is no such file
+     */
+    private boolean serveLocal(String relativePath, String contentType, String encoding, String cacheControl,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HotFileCache.Entry cached = hotFileCache.get(relativePath);
+        if (cached == null) {
+            Path path = resolveLocalPath(relativePath);
+            if (path == null) {
+                return false;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Packs hold original representations only
+                return encoding == null && servePacked(relativePath, contentType, cacheControl, request, response);
+            }
+            if (!attributes.isRegularFile()) {
+                return false;
+            }
+            if (fileEncryption.mayBeEncrypted(relativePath) && fileEncryption.isEncryptedFile(path)) {
+                serveEncrypted(path, attributes.lastModifiedTime().toMillis(), contentType, cacheControl,
+                        request, response);
+                return true;
+            }
+
+            long length = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            cached = hotFileCache.load(relativePath, path, length, lastModified, contentType);
+            if (cached == null) {
+                if (encoding != null) {
+                    response.setHeader("Content-Encoding", encoding);
+                }
+                long[] bounds = writeHeaders(length, lastModified, etagOf(length, lastModified), contentType,
+                        cacheControl, request, response);
+                if (bounds != null) {
+                    transfer(path, bounds[0], bounds[1], request, response);
+                }
+                return true;
+            }
+        }
+        if (encoding != null) {
+            response.setHeader("Content-Encoding", encoding);
+        }
+        serveCached(cached, cacheControl, request, response);
+        return true;
+    }
+
+    /**
+     * Decrypt and send the requested range of an encrypted file (never cached or sendfile'd)
+     */
+    private void serveEncrypted(Path path, long lastModified, String contentType, String cacheControl,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length;
+        try {
+            length = fileEncryption.plaintextLength(path);
+        } catch (IOException e) {
+            log.error("Cannot read encrypted file {}: {}", path, e.getMessage());
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        long[] bounds = writeHeaders(length, lastModified, etagOf(length, lastModified), contentType,
+                cacheControl, request, response);
+        if (bounds == null) {
+            return;
+        }
+        try {
+            OutputStream output = response.getOutputStream();
+            // Each segment is written only after its tag has been verified
+            fileEncryption.decryptRange(path, bounds[0], bounds[1], output);
+            output.flush();
+        } catch (IOException e) {
+            log.debug("Encrypted file transfer interrupted for {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Send the requested range of a file that lives in a pack
+     * @return false if it is not packed either
+     */
+    private boolean servePacked(String relativePath, String contentType, String cacheControl,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<PackedFile> packed = packStore.find(relativePath);
+        if (packed.isEmpty()) {
+            return false;
+        }
+        PackedFile entry = packed.get();
+        long length;
+        try {
+            length = packStore.contentLength(entry);
+        } catch (IOException e) {
+            log.error("Cannot read packed file {} from {}: {}", relativePath, entry.getPack(), e.getMessage());
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return true;
+        }
+        long lastModified = entry.getLastModified();
+        long[] bounds = writeHeaders(length, lastModified, etagOf(length, lastModified), contentType,
+                cacheControl, request, response);
+        if (bounds == null) {
+            return true;
+        }
+        if (packStore.isRaw(entry)) {
+            // Stored bytes are the file's: a plain positional transfer (or sendfile) out of the pack
+            transfer(packStore.packPath(entry), entry.getOffset() + bounds[0], entry.getOffset() + bounds[1],
+                    request, response);
+            return true;
+        }
+        try {
+            OutputStream output = response.getOutputStream();
+            packStore.copyRange(entry, bounds[0], bounds[1], output);
+            output.flush();
+        } catch (IOException e) {
+            log.debug("Packed file transfer interrupted for {}: {}", relativePath, e.getMessage());
+        }
+        return true;
+    }
+
+    private void serveCached(HotFileCache.Entry entry, String cacheControl, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        long[] bounds = writeHeaders(entry.length(), entry.lastModified(), entry.etag(), entry.contentType(),
+                cacheControl, request, response);
+        if (bounds == null) {
+            return;
+        }
+        ByteBuffer content = entry.content().duplicate();
+        content.position((int) bounds[0]).limit((int) bounds[1]);
+        try {
+            OutputStream output = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(output);
+            while (content.hasRemaining()) {
+                target.write(content);
+            }
+            output.flush();
+        } catch (IOException e) {
+            log.debug("Cached file transfer interrupted: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Set validators, caching and range headers and handle revalidation
+     * @return {start, endExclusive} of the body to send, or null if the response is complete
+     */
+    private static long[] writeHeaders(long length, long lastModified, String etag, String contentType,
+                                       String cacheControl, HttpServletRequest request,
+                                       HttpServletResponse response) throws IOException {
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+        response.setHeader("Cache-Control", cacheControl);
+        response.setHeader("Accept-Ranges", "bytes");
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+
+        response.setContentType(contentType);
+
+        long start = 0;
+        long end = length; // exclusive
+        String range = request.getHeader("Range");
+        if (range != null && rangeApplies(request.getHeader("If-Range"), etag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return null;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+        }
+        response.setContentLengthLong(end - start);
+
+        if ("HEAD".equals(request.getMethod())) {
+            return null;
+        }
+        return new long[] {start, end};
+    }
+
+    /**
+     * Internal areas (.blobs, .tmp, ...) and traversal segments are never public
+     */
+    private static boolean isPublicPath(String relativePath) {
+        if (relativePath == null || relativePath.isEmpty()) {
+            return false;
+        }
+        for (String segment : relativePath.split("/")) {
+            if (segment.isEmpty() || segment.startsWith(".")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void redirectToBackend(String relativePath, HttpServletResponse response) throws IOException {
+        Duration ttl = Duration.ofSeconds(presignTtlSeconds);
+        Optional<String> url = fileStorageService.getPresignedUrl(relativePath, ttl);
+        if (url.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // The redirect must expire before the signature does
+        response.setHeader("Cache-Control", "private, max-age=" + Math.max(0, ttl.toSeconds() - 60));
+        response.sendRedirect(url.get());
+    }
+
+    /**
+     * Map a request path to a file under the upload directory (following files moved to
+     * the sharded layout); null if it escapes it
+     */
+    private Path resolveLocalPath(String relativePath) {
+        try {
+            return fileStorageService.resolvePath(fileStorageService.locate(relativePath));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void transfer(Path path, long start, long end, HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        long count = end - start;
+        if (count >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat writes the file with sendfile after the servlet returns
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            OutputStream output = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(output);
+            long position = start;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            output.flush();
+        } catch (IOException e) {
+            // Usually the client went away mid-download
+            log.debug("File transfer interrupted for {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Weak entity tag from size and mtime: equal for equal metadata, not a content hash
+     */
+    static String etagOf(long length, long lastModified) {
+        return "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    private static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return matchesAny(ifNoneMatch, etag);
+        }
+        long ifModifiedSince = dateHeader(request, "If-Modified-Since");
+        // HTTP dates have second precision
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static boolean rangeApplies(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            // Strong comparison (RFC 7233 §3.2): a weak tag never matches
+            return !etag.startsWith("W/") && value.equals(etag);
+        }
+        try {
+            long date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return lastModified / 1000 == date / 1000;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parse a Range header against the file length
+     * @return {start, endExclusive} for one satisfiable range, an empty array to serve the whole
+     *         file (unsupported unit, several ranges or an invalid one), or null if unsatisfiable
+     */
+    static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // Suffix range: the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length;
+            } else {
+                start = Long.parseLong(first);
+                if (last.isEmpty()) {
+                    end = length;
+                } else {
+                    long lastByte = Long.parseLong(last);
+                    if (lastByte < start) {
+                        // Syntactically invalid (RFC 7233 §2.1): ignored, not unsatisfiable
+                        return new long[0];
+                    }
+                    end = Math.min(length, lastByte + 1);
+                }
+            }
+            if (start >= length || start >= end) {
+                return null;
+            }
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows gzip (explicitly or via *), honouring q=0
+     */
+    static boolean acceptsGzip(String header) {
+        if (header == null) {
+            return false;
+        }
+        boolean accepted = false;
+        for (String part : header.split(",")) {
+            String[] params = part.trim().split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            if (!coding.equals("gzip") && !coding.equals("x-gzip") && !coding.equals("*")) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = false;
+                    }
+                }
+            }
+            if (coding.equals("*")) {
+                // Only a fallback: an explicit gzip entry wins
+                accepted = accepted || !refused;
+            } else {
+                return !refused;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Weak comparison of an If-None-Match list against etag
+     */
+    private static boolean matchesAny(String header, String etag) {
+        String opaque = opaqueTag(etag);
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || opaqueTag(value).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
@@ -1,45 +1,105 @@
 package com.gvn.service;
 
+import com.gvn.entity.PackedFile;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Stores and deletes uploads.
+ *
+ * Inside a transaction, new uploads are written to {@code .staging} and moved into place
+ * just before commit, and deletes wait until after commit (see StagedFileChanges), so the
+ * files always match what the database committed. Outside a transaction both happen at once.
+ *
+ * Compressible uploads (SVG, JSON, text) get a gzip sibling ({@code <path>.gz}) written in
+ * the background once the file is in place, which FileServingService sends to clients
+ * that accept it.
+ *
+ * Uploads in encrypted areas (identity documents, see FileEncryption) are sealed while they
+ * stream to disk and decrypted again by openFile and FileServingService.
+ *
+ * Old documents may have been moved into packs by ColdTierService; openFile and deletes
+ * fall back to the pack index (PackStore) when the loose file is gone.
+ *
+ * Every file that reaches or leaves its final place is counted in StorageUsageService,
+ * which also enforces per-user quotas before an upload is written, and gets its checksum
+ * recorded by FileIntegrityService.
+ */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class FileStorageService {
     
+    public static final String STAGING_DIR = ".staging";
+    public static final String GZIP_SUFFIX = ".gz";
+    
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS =
+            Set.of(".svg", ".json", ".txt", ".csv", ".xml", ".html", ".css", ".js");
+    
+    private final ContentAddressedStore contentAddressedStore;
+    private final UploadExecutor uploadExecutor;
+    private final StorageBackend storageBackend;
+    private final HotFileCache hotFileCache;
+    private final StorageUsageService storageUsageService;
+    private final FileEncryption fileEncryption;
+    private final FileIntegrityService fileIntegrityService;
+    private final PackStore packStore;
+    
     @Value("${app.file.upload-dir:uploads}")
     private String uploadDir;
     
+    // Deduplicate identical uploads through the content-addressed blob store
+    @Value("${app.file.content-addressed:false}")
+    private boolean contentAddressed;
+    
     // Cache resolved base path to avoid repeated resolution
     private volatile Path cachedBasePath;
-    private static final int BUFFER_SIZE = 64 * 1024; // 64KB buffer for faster I/O
-    private static final ExecutorService fileUploadExecutor = Executors.newFixedThreadPool(4);
+    
+    /**
+     * Resolve the configured upload directory (relative paths are taken from the working directory)
+     */
+    public static Path resolveBasePath(String uploadDir) {
+        Path basePath = Paths.get(uploadDir);
+        if (!basePath.isAbsolute()) {
+            basePath = Paths.get(System.getProperty("user.dir"), uploadDir).toAbsolutePath();
+        }
+        return basePath;
+    }
     
     private Path getBasePath() {
         if (cachedBasePath == null) {
             synchronized (this) {
                 if (cachedBasePath == null) {
-                    Path basePath = Paths.get(uploadDir);
-                    if (!basePath.isAbsolute()) {
-                        basePath = Paths.get(System.getProperty("user.dir"), uploadDir).toAbsolutePath();
-                    }
-                    cachedBasePath = basePath;
+                    cachedBasePath = resolveBasePath(uploadDir);
                 }
             }
         }
@@ -47,131 +107,579 @@ public class FileStorageService {
     }
     
     public String storeFile(MultipartFile file, String subdirectory) throws IOException {
+        return storeFile(file, subdirectory, currentChanges(), StorageUsageService.currentUserId());
+    }
+    
+    private String storeFile(MultipartFile file, String subdirectory, StagedFileChanges changes, UUID ownerId)
+            throws IOException {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("File is empty or null");
         }
+        storageUsageService.checkQuota(ownerId, subdirectory, file.getSize());
         
         try {
-            // Use cached base path for better performance
-            Path basePath = getBasePath();
-            
-            // Create directory if it doesn't exist (createDirectories is idempotent and fast)
-            Path uploadPath = basePath.resolve(subdirectory);
-            Files.createDirectories(uploadPath);
-            
-            // Quick check if writable (skip detailed permission checks in hot path)
-            if (!Files.isWritable(uploadPath)) {
-                log.error("Upload directory is not writable: {}", uploadPath);
-                throw new IOException("Upload directory is not writable: " + uploadPath);
-            }
-            
-            // Generate unique filename
+            // Generate unique, sharded filename
             String originalFilename = file.getOriginalFilename();
             String extension = "";
             if (originalFilename != null && originalFilename.contains(".")) {
                 extension = originalFilename.substring(originalFilename.lastIndexOf("."));
             }
-            String filename = UUID.randomUUID().toString() + extension;
-            
-            // Save file with optimized buffered I/O
-            Path filePath = uploadPath.resolve(filename);
+            String relativePath = newRelativePath(subdirectory, extension);
             
-            try (BufferedInputStream bis = new BufferedInputStream(file.getInputStream(), BUFFER_SIZE);
-                 BufferedOutputStream bos = new BufferedOutputStream(
-                     Files.newOutputStream(filePath), BUFFER_SIZE)) {
-                
-                byte[] buffer = new byte[BUFFER_SIZE];
-                int bytesRead;
-                while ((bytesRead = bis.read(buffer)) != -1) {
-                    bos.write(buffer, 0, bytesRead);
+            if (!storageBackend.isLocal()) {
+                // Object store: stream the part straight to the backend
+                try (InputStream input = file.getInputStream()) {
+                    storageBackend.put(relativePath, input, file.getSize(), file.getContentType());
                 }
-                bos.flush();
+                if (changes != null) {
+                    changes.created(relativePath);
+                }
+                return relativePath;
             }
             
-            // Quick verification
-            if (!Files.exists(filePath) || Files.size(filePath) == 0) {
-                if (Files.exists(filePath)) {
-                    Files.delete(filePath);
+            if (fileEncryption.encryptsNewFiles(relativePath)) {
+                try (InputStream input = file.getInputStream()) {
+                    storeEncrypted(input, relativePath, changes, ownerId);
                 }
-                throw new IOException("File was not written correctly: " + filePath);
+                return relativePath;
             }
             
+            // Use cached base path for better performance
+            Path basePath = getBasePath();
+            
+            if (changes != null) {
+                // Moved into place when the transaction commits
+                Path staged = stagingPath(basePath);
+                file.transferTo(staged.toFile());
+                changes.stage(relativePath, staged);
+                return relativePath;
+            }
+            
+            prepareDirectory(basePath, parentOf(relativePath));
+            Path filePath = basePath.resolve(relativePath);
+            
+            if (contentAddressed) {
+                // Move the part next to the blob store, then hash it in place (no second write)
+                Path staged = basePath.resolve(ContentAddressedStore.TEMP_DIR).resolve(UUID.randomUUID() + ".part");
+                Files.createDirectories(staged.getParent());
+                file.transferTo(staged.toFile());
+                long size = contentAddressedStore.storeFile(staged, basePath, filePath, relativePath);
+                stored(relativePath, ownerId, size);
+                precompressLater(relativePath);
+                return relativePath;
+            }
+            
+            // Tomcat renames its part file into place when it is on the same filesystem
+            // (parts are spooled to the upload dir, see MultipartConfig) and copies otherwise.
+            // The part size was counted while the request was parsed, so no re-stat is needed.
+            file.transferTo(filePath.toFile());
+            stored(relativePath, ownerId, file.getSize());
+            precompressLater(relativePath);
+            
             // Return relative URL path
-            return subdirectory + "/" + filename;
+            return relativePath;
         } catch (IOException e) {
             log.error("Error storing file (subdirectory: {}): {}", subdirectory, e.getMessage());
             throw new IOException("Failed to store file: " + e.getMessage(), e);
         }
     }
     
-    public List<String> storeMultipleFiles(MultipartFile[] files, String subdirectory) throws IOException {
-        if (files == null || files.length == 0) {
-            return new ArrayList<>();
+    /**
+     * Stream a raw request body straight into its final location (no multipart spooling)
+     * @param input Body stream, read to the end but not closed
+     * @param extension File extension including the dot, or empty
+     * @param maxBytes Upper bound on the body size (lowered to what the quota leaves)
+     * @return Relative path of the stored file
+     */
+    public String storeStream(InputStream input, String extension, String subdirectory, long maxBytes) throws IOException {
+        String relativePath = newRelativePath(subdirectory, extension);
+        UUID ownerId = StorageUsageService.currentUserId();
+        long remaining = storageUsageService.remainingQuota(ownerId, subdirectory);
+        if (remaining <= 0) {
+            storageUsageService.checkQuota(ownerId, subdirectory, 1);
         }
-        
-        // Filter valid files
-        List<MultipartFile> validFiles = new ArrayList<>();
-        for (MultipartFile file : files) {
-            if (file != null && !file.isEmpty()) {
-                validFiles.add(file);
+        InputStream bounded = remaining < maxBytes
+                ? new BoundedInputStream(input, remaining, "Storage quota exceeded: " + remaining + " bytes available")
+                : new BoundedInputStream(input, maxBytes, "File exceeds maximum size of " + maxBytes + " bytes");
+        StagedFileChanges changes = currentChanges();
+        if (!storageBackend.isLocal()) {
+            storageBackend.put(relativePath, bounded, -1, null);
+            if (changes != null) {
+                changes.created(relativePath);
             }
+            return relativePath;
         }
         
-        if (validFiles.isEmpty()) {
-            return new ArrayList<>();
+        Path basePath = getBasePath();
+        Path filePath;
+        if (changes != null) {
+            filePath = stagingPath(basePath);
+        } else {
+            prepareDirectory(basePath, parentOf(relativePath));
+            filePath = basePath.resolve(relativePath);
         }
         
-        // Parallel upload for multiple files
-        if (validFiles.size() > 1) {
-            List<CompletableFuture<String>> futures = validFiles.stream()
-                .map(file -> CompletableFuture.supplyAsync(() -> {
-                    try {
-                        return storeFile(file, subdirectory);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                }, fileUploadExecutor))
-                .collect(Collectors.toList());
-            
-            // Wait for all uploads and collect results
-            List<String> storedUrls = new ArrayList<>();
-            for (CompletableFuture<String> future : futures) {
-                try {
-                    String path = future.get();
-                    storedUrls.add(getFileUrl(path));
-                } catch (Exception e) {
-                    log.error("Error in parallel file upload: ", e);
-                    throw new IOException("Failed to upload file: " + e.getMessage(), e);
+        try {
+            long written;
+            boolean encrypted = fileEncryption.encryptsNewFiles(relativePath);
+            if (changes != null || !contentAddressed || encrypted) {
+                try (OutputStream file = Files.newOutputStream(filePath, StandardOpenOption.CREATE_NEW);
+                     OutputStream output = encrypted ? fileEncryption.encrypt(file) : file) {
+                    written = bounded.transferTo(output);
                 }
+                if (written == 0) {
+                    throw new IOException("File is empty");
+                }
+                if (changes != null) {
+                    changes.stage(relativePath, filePath);
+                }
+            } else {
+                written = contentAddressedStore.store(bounded, basePath, filePath, relativePath);
+            }
+            if (changes == null) {
+                stored(relativePath, ownerId, encrypted ? Files.size(filePath) : written);
+                precompressLater(relativePath);
+            }
+            return relativePath;
+        } catch (IOException e) {
+            Files.deleteIfExists(filePath);
+            log.error("Error storing stream (subdirectory: {}): {}", subdirectory, e.getMessage());
+            throw new IOException("Failed to store file: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Store a file already on the upload filesystem (e.g. a finished resumable upload).
+     * The bytes are hard-linked where possible; source is left for the caller to remove.
+     * @param extension File extension including the dot, or empty
+     * @return Relative path of the stored file
+     */
+    public String storeLocalFile(Path source, String extension, String subdirectory) throws IOException {
+        String relativePath = newRelativePath(subdirectory, extension);
+        UUID ownerId = StorageUsageService.currentUserId();
+        long size = Files.size(source);
+        storageUsageService.checkQuota(ownerId, subdirectory, size);
+        StagedFileChanges changes = currentChanges();
+        if (!storageBackend.isLocal()) {
+            try (InputStream input = Files.newInputStream(source)) {
+                storageBackend.put(relativePath, input, size, null);
+            }
+            if (changes != null) {
+                changes.created(relativePath);
             }
-            return storedUrls;
+            return relativePath;
+        }
+        
+        if (fileEncryption.encryptsNewFiles(relativePath)) {
+            try (InputStream input = Files.newInputStream(source)) {
+                storeEncrypted(input, relativePath, changes, ownerId);
+            }
+            return relativePath;
+        }
+        
+        Path basePath = getBasePath();
+        if (changes != null) {
+            Path staged = stagingPath(basePath);
+            linkOrCopy(source, staged);
+            changes.stage(relativePath, staged);
+            return relativePath;
+        }
+        
+        prepareDirectory(basePath, parentOf(relativePath));
+        Path filePath = basePath.resolve(relativePath);
+        if (contentAddressed) {
+            Path staged = basePath.resolve(ContentAddressedStore.TEMP_DIR).resolve(UUID.randomUUID() + ".part");
+            Files.createDirectories(staged.getParent());
+            linkOrCopy(source, staged);
+            contentAddressedStore.storeFile(staged, basePath, filePath, relativePath);
+        } else {
+            linkOrCopy(source, filePath);
+        }
+        stored(relativePath, ownerId, size);
+        precompressLater(relativePath);
+        return relativePath;
+    }
+    
+    /**
+     * Write an upload for an encrypted area: sealed while streaming to disk, never
+     * deduplicated (every file has its own key) or precompressed
+     */
+    private void storeEncrypted(InputStream input, String relativePath, StagedFileChanges changes, UUID ownerId)
+            throws IOException {
+        Path basePath = getBasePath();
+        Path target;
+        if (changes != null) {
+            target = stagingPath(basePath);
+        } else {
+            prepareDirectory(basePath, parentOf(relativePath));
+            target = basePath.resolve(relativePath);
+        }
+        fileEncryption.encryptTo(input, target);
+        if (changes != null) {
+            changes.stage(relativePath, target);
+        } else {
+            stored(relativePath, ownerId, Files.size(target));
+        }
+    }
+    
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // No hard links on this filesystem
+            Files.copy(source, target);
+        }
+    }
+    
+    private Path prepareDirectory(Path basePath, String subdirectory) throws IOException {
+        // Create directory if it doesn't exist (createDirectories is idempotent and fast)
+        Path uploadPath = basePath.resolve(subdirectory);
+        Files.createDirectories(uploadPath);
+        
+        // Quick check if writable (skip detailed permission checks in hot path)
+        if (!Files.isWritable(uploadPath)) {
+            log.error("Upload directory is not writable: {}", uploadPath);
+            throw new IOException("Upload directory is not writable: " + uploadPath);
+        }
+        return uploadPath;
+    }
+    
+    /**
+     * New upload path: {@code <subdirectory>/<xx>/<yy>/<uuid><extension>}
+     */
+    private static String newRelativePath(String subdirectory, String extension) {
+        return shardedPath(subdirectory + "/" + UUID.randomUUID() + extension);
+    }
+    
+    /**
+     * Sharded location of a stored path: two directory levels from the first four hex
+     * characters of the (UUID) file name, spreading each area over 65536 directories.
+     * Paths already sharded, or with non-hex names, are returned unchanged.
+     */
+    public static String shardedPath(String relativePath) {
+        String directory = parentOf(relativePath);
+        String name = fileName(relativePath);
+        if (name.length() < 4 || !isHex(name.substring(0, 4))) {
+            return relativePath;
+        }
+        String shard = name.substring(0, 2) + "/" + name.substring(2, 4);
+        if (directory.equals(shard) || directory.endsWith("/" + shard)) {
+            return relativePath;
+        }
+        return (directory.isEmpty() ? "" : directory + "/") + shard + "/" + name;
+    }
+    
+    private static boolean isHex(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static String parentOf(String relativePath) {
+        int slash = relativePath.lastIndexOf('/');
+        return slash >= 0 ? relativePath.substring(0, slash) : "";
+    }
+    
+    private static String fileName(String relativePath) {
+        return relativePath.substring(relativePath.lastIndexOf('/') + 1);
+    }
+    
+    /**
+     * The stored path that exists on disk: files written before sharding may have been
+     * moved to their sharded location while rows still hold the flat path
+     */
+    public String locate(String relativePath) {
+        if (!storageBackend.isLocal() || Files.exists(resolvePath(relativePath))) {
+            return relativePath;
+        }
+        String sharded = shardedPath(relativePath);
+        return !sharded.equals(relativePath) && Files.exists(resolvePath(sharded)) ? sharded : relativePath;
+    }
+    
+    private static Path stagingPath(Path basePath) throws IOException {
+        Path stagingDir = basePath.resolve(STAGING_DIR);
+        Files.createDirectories(stagingDir);
+        return stagingDir.resolve(UUID.randomUUID() + ".part");
+    }
+    
+    /**
+     * File changes of the current transaction, or null outside one
+     */
+    private StagedFileChanges currentChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        StagedFileChanges changes = (StagedFileChanges) TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            changes = new StagedFileChanges(this, uploadExecutor, StorageUsageService.currentUserId());
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(changes);
+        }
+        return changes;
+    }
+    
+    /**
+     * Move a staged upload to its final path (called just before the transaction commits)
+     */
+    void promote(Path staged, String relativePath, UUID ownerId) throws IOException {
+        Path basePath = getBasePath();
+        Path target = resolvePath(relativePath);
+        prepareDirectory(basePath, parentOf(relativePath));
+        long size;
+        if (contentAddressed && !fileEncryption.encryptsNewFiles(relativePath)) {
+            size = contentAddressedStore.storeFile(staged, basePath, target, relativePath);
         } else {
-            // Single file - no need for parallel processing
-            String path = storeFile(validFiles.get(0), subdirectory);
-            return List.of(getFileUrl(path));
+            size = Files.size(staged);
+            Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        stored(relativePath, ownerId, size);
+    }
+    
+    /**
+     * Whether files of this type are worth serving gzip-encoded
+     */
+    public static boolean isCompressible(String relativePath) {
+        int dot = relativePath.lastIndexOf('.');
+        return dot > relativePath.lastIndexOf('/')
+                && COMPRESSIBLE_EXTENSIONS.contains(relativePath.substring(dot).toLowerCase(Locale.ROOT));
+    }
+    
+    /**
+     * Account for a file that reached its final place and record its checksum
+     */
+    private void stored(String relativePath, UUID ownerId, long size) {
+        storageUsageService.recordStored(relativePath, ownerId, size);
+        fileIntegrityService.recordLater(relativePath, size);
+    }
+    
+    /**
+     * Write the gzip sibling of a stored file on the upload executor, if its type is compressible
+     */
+    void precompressLater(String relativePath) {
+        if (!storageBackend.isLocal() || !isCompressible(relativePath) || fileEncryption.mayBeEncrypted(relativePath)) {
+            return;
+        }
+        uploadExecutor.submit(() -> {
+            writeGzipSibling(relativePath);
+            return null;
+        }).exceptionally(e -> {
+            log.warn("Failed to precompress {}: {}", relativePath, e.getMessage());
+            return null;
+        });
+    }
+    
+    private void writeGzipSibling(String relativePath) throws IOException {
+        Path source = resolvePath(relativePath);
+        Path temp = stagingPath(getBasePath());
+        try {
+            try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }) {
+                Files.copy(source, output);
+            }
+            // Appears complete or not at all
+            Files.move(temp, resolvePath(relativePath + GZIP_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
         }
     }
     
+    /**
+     * Store a file on the upload executor (staged in the caller's transaction, if any)
+     * @return Future of the relative path
+     */
+    public CompletableFuture<String> storeFileAsync(MultipartFile file, String subdirectory) {
+        return storeFileAsync(file, subdirectory, currentChanges(), StorageUsageService.currentUserId());
+    }
+    
+    private CompletableFuture<String> storeFileAsync(MultipartFile file, String subdirectory,
+                                                     StagedFileChanges changes, UUID ownerId) {
+        return uploadExecutor.submit(() -> storeFile(file, subdirectory, changes, ownerId));
+    }
+    
+    public List<String> storeMultipleFiles(MultipartFile[] files, String subdirectory) throws IOException {
+        try {
+            return storeMultipleFilesAsync(files, subdirectory).join();
+        } catch (CompletionException e) {
+            log.error("Error in parallel file upload: ", e.getCause());
+            throw new IOException("Failed to upload file: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+    
+    /**
+     * Store several files concurrently; if any fails, the ones that succeeded are deleted
+     * @return Future of the file URLs, in input order
+     */
+    public CompletableFuture<List<String>> storeMultipleFilesAsync(MultipartFile[] files, String subdirectory) {
+        // Captured here: the completion below runs on an upload thread, outside the transaction
+        StagedFileChanges changes = currentChanges();
+        UUID ownerId = StorageUsageService.currentUserId();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        if (files != null) {
+            for (MultipartFile file : files) {
+                if (file != null && !file.isEmpty()) {
+                    futures.add(storeFileAsync(file, subdirectory, changes, ownerId));
+                }
+            }
+        }
+        
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, error) -> {
+                    if (error != null) {
+                        // Don't leave part of the batch behind
+                        for (CompletableFuture<String> future : futures) {
+                            if (!future.isCompletedExceptionally()) {
+                                deleteFile(future.join(), changes, ownerId);
+                            }
+                        }
+                        throw error instanceof CompletionException completion
+                                ? completion
+                                : new CompletionException(error);
+                    }
+                    return futures.stream()
+                            .map(future -> getFileUrl(future.join()))
+                            .collect(Collectors.toList());
+                });
+    }
+    
+    /**
+     * Delete a stored file; inside a transaction, only once it commits
+     * @return true if the file was deleted or scheduled for deletion
+     */
     public boolean deleteFile(String filePath) {
+        return deleteFile(filePath, currentChanges(), StorageUsageService.currentUserId());
+    }
+    
+    private boolean deleteFile(String filePath, StagedFileChanges changes, UUID ownerId) {
+        if (changes == null) {
+            return deleteNow(filePath, ownerId);
+        }
+        // An upload staged in this transaction was never visible and can go at once
+        if (!changes.discard(filePath)) {
+            changes.deleteAfterCommit(filePath);
+        }
+        return true;
+    }
+    
+    /**
+     * Delete a stored file at once
+     * @param ownerId Owner charged for the file, or null if not known
+     */
+    boolean deleteNow(String storedPath, UUID ownerId) {
+        String filePath = storedPath;
+        hotFileCache.invalidate(storedPath);
+        hotFileCache.invalidate(storedPath + GZIP_SUFFIX);
         try {
-            // Resolve absolute path - handle both relative and absolute paths
-            Path basePath = Paths.get(uploadDir);
-            if (!basePath.isAbsolute()) {
-                basePath = Paths.get(System.getProperty("user.dir"), uploadDir).toAbsolutePath();
+            if (!storageBackend.isLocal()) {
+                boolean deleted = storageBackend.delete(filePath);
+                if (deleted) {
+                    log.info("File deleted successfully: {}", filePath);
+                }
+                return deleted;
+            }
+            
+            filePath = locate(storedPath);
+            Path path = resolvePath(filePath);
+            if (isCompressible(filePath)) {
+                Files.deleteIfExists(resolvePath(filePath + GZIP_SUFFIX));
+            }
+            long size = Files.exists(path) ? Files.size(path) : 0;
+            // Also drops the index entry left by a packing run that raced with this delete
+            Optional<PackedFile> packed = packStore.remove(filePath);
+            
+            // Deduplicated files drop their blob reference; untracked (older) files are plain deletes
+            if (contentAddressed && contentAddressedStore.release(getBasePath(), path, filePath)) {
+                storageUsageService.recordDeleted(filePath, ownerId, size);
+                fileIntegrityService.forget(filePath);
+                log.info("File deleted successfully: {}", filePath);
+                return true;
             }
             
-            Path path = basePath.resolve(filePath);
             if (Files.exists(path)) {
                 Files.delete(path);
+                storageUsageService.recordDeleted(filePath, ownerId, size);
+                fileIntegrityService.forget(filePath);
                 log.info("File deleted successfully: {}", filePath);
                 return true;
             }
+            if (packed.isPresent()) {
+                // Its entry was erased from the pack; compaction reclaims the space
+                storageUsageService.recordDeleted(filePath, ownerId, packed.get().getSize());
+                log.info("Packed file deleted successfully: {}", filePath);
+                return true;
+            }
             log.debug("File does not exist: {}", path);
             return false;
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             log.error("Error deleting file: {}", filePath, e);
             return false;
+        } finally {
+            // Again once the file is gone, for a cache load that read it before the delete
+            hotFileCache.invalidate(storedPath);
+            hotFileCache.invalidate(storedPath + GZIP_SUFFIX);
+        }
+    }
+    
+    /**
+     * Open a stored file for reading, whatever the backend
+     */
+    public InputStream openFile(String relativePath) throws IOException {
+        String storedPath = locate(relativePath);
+        if (storageBackend.isLocal() && !Files.exists(resolvePath(storedPath))) {
+            Optional<PackedFile> packed = packStore.find(storedPath);
+            if (packed.isPresent()) {
+                return packStore.open(packed.get());
+            }
+        }
+        if (storageBackend.isLocal() && fileEncryption.mayBeEncrypted(storedPath)) {
+            Path path = resolvePath(storedPath);
+            if (fileEncryption.isEncryptedFile(path)) {
+                return fileEncryption.decrypt(path);
+            }
+        }
+        return storageBackend.open(storedPath);
+    }
+    
+    /**
+     * Write generated content (e.g. an image variant) under a relative path
+     */
+    public void writeFile(String relativePath, byte[] content, String contentType) throws IOException {
+        storageBackend.put(relativePath, new ByteArrayInputStream(content), content.length, contentType);
+        // Generated on a background thread: counted for its area, owners catch up at reconciliation
+        stored(relativePath, null, content.length);
+    }
+    
+    /**
+     * Whether files live on the local upload directory (as opposed to an object store)
+     */
+    public boolean isLocalStorage() {
+        return storageBackend.isLocal();
+    }
+    
+    /**
+     * Direct, time-limited download URL from the storage backend, if it supports one
+     */
+    public Optional<String> getPresignedUrl(String relativePath, Duration ttl) {
+        return storageBackend.presignedGetUrl(relativePath, ttl);
+    }
+    
+    /**
+     * Resolve a stored relative path to its absolute location under the upload directory
+     */
+    public Path resolvePath(String relativePath) {
+        Path basePath = getBasePath();
+        Path path = basePath.resolve(relativePath).normalize();
+        if (!path.startsWith(basePath)) {
+            throw new IllegalArgumentException("Path escapes upload directory: " + relativePath);
         }
+        return path;
     }
     
     public String getFileUrl(String relativePath) {
@@ -182,4 +690,50 @@ public class FileStorageService {
         // For now, return relative path that can be served by a static resource handler
         return "/api/v1/files/" + relativePath;
     }
+    
+    /**
+     * Fails the read once more than maxBytes have been consumed
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        
+        private final long maxBytes;
+        private final String limitMessage;
+        private long count;
+        
+        BoundedInputStream(InputStream input, long maxBytes, String limitMessage) {
+            super(input);
+            this.maxBytes = maxBytes;
+            this.limitMessage = limitMessage;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                count(1);
+            }
+            return value;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+        
+        @Override
+        public void close() {
+            // The caller owns the underlying stream
+        }
+        
+        private void count(long bytes) throws IOException {
+            count += bytes;
+            if (count > maxBytes) {
+                throw new IOException(limitMessage);
+            }
+        }
+    }
 }
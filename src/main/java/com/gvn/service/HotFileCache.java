@@ -0,0 +1,189 @@
+package com.gvn.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of small, hot uploads (category/service icons, banners) held in direct buffers.
+ *
+ * Upload names are never reused, so an entry stays valid until its file is deleted;
+ * FileStorageService invalidates it then. A load that raced with an invalidation re-checks
+ * that its file still exists before the entry goes in. Only paths under app.file.hot-cache.areas and
+ * files up to max-file-size are cached, within max-bytes in total. Hits and misses are
+ * published as hotfiles.cache.requests (result=hit|miss) with a hotfiles.cache.hit.ratio gauge;
+ * the gauges are bound once the cache is constructed (MeterBinder).
+ */
+@Component
+@Slf4j
+public class HotFileCache implements MeterBinder {
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long maxFileSize;
+    private final List<String> areas;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+    private long invalidations; // Bumped on every invalidate, so loads can tell they raced one
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public HotFileCache(MeterRegistry meterRegistry,
+                        @Value("${app.file.hot-cache.enabled:true}") boolean enabled,
+                        @Value("${app.file.hot-cache.max-bytes:33554432}") long maxBytes,
+                        @Value("${app.file.hot-cache.max-file-size:262144}") long maxFileSize,
+                        @Value("${app.file.hot-cache.areas:categories,services,banners}") String[] areas) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.maxFileSize = maxFileSize;
+        this.areas = Arrays.stream(areas).map(String::trim).filter(area -> !area.isEmpty())
+                .map(area -> area.endsWith("/") ? area : area + "/").toList();
+        this.hits = Counter.builder("hotfiles.cache.requests").tag("result", "hit")
+                .description("File requests served from the hot-file cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("hotfiles.cache.requests").tag("result", "miss")
+                .description("Cacheable file requests read from disk")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        Gauge.builder("hotfiles.cache.hit.ratio", this, HotFileCache::hitRatio)
+                .description("Share of cacheable file requests served from memory")
+                .register(meterRegistry);
+        Gauge.builder("hotfiles.cache.size", this, HotFileCache::size)
+                .description("Bytes held by the hot-file cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cached entry for a request path, or null (counted as a miss if the path is cacheable)
+     */
+    public Entry get(String relativePath) {
+        if (!isCacheable(relativePath)) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(relativePath);
+        }
+        (entry != null ? hits : misses).increment();
+        return entry;
+    }
+
+    /**
+     * Read a file into the cache if its path and size qualify
+     * @return The new entry, or null if the file is not cached
+     */
+    public Entry load(String relativePath, Path path, long length, long lastModified, String contentType) {
+        if (!isCacheable(relativePath) || length <= 0 || length > maxFileSize || length > maxBytes) {
+            return null;
+        }
+        long generation;
+        synchronized (this) {
+            generation = invalidations;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    // Shorter than its stat said: changing under us, leave it to the disk path
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Could not cache {}: {}", relativePath, e.getMessage());
+            return null;
+        }
+        buffer.flip();
+        Entry entry = new Entry(buffer.asReadOnlyBuffer(), length, lastModified,
+                FileServingService.etagOf(length, lastModified), contentType);
+
+        synchronized (this) {
+            // Deleted while we read: caching it now would serve it until evicted. A delete
+            // after this check is followed by another invalidate, which removes the entry.
+            if (generation != invalidations && !Files.exists(path)) {
+                return null;
+            }
+            Entry previous = entries.put(relativePath, entry);
+            totalBytes += length - (previous != null ? previous.length() : 0);
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Entry> evicted = eldest.next();
+                if (evicted.getValue() != entry) {
+                    totalBytes -= evicted.getValue().length();
+                    eldest.remove();
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Drop a path whose file was deleted (both its flat and sharded forms)
+     */
+    public void invalidate(String relativePath) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            invalidations++;
+            remove(relativePath);
+            remove(FileStorageService.shardedPath(relativePath));
+        }
+    }
+
+    private void remove(String relativePath) {
+        Entry removed = entries.remove(relativePath);
+        if (removed != null) {
+            totalBytes -= removed.length();
+        }
+    }
+
+    private boolean isCacheable(String relativePath) {
+        if (!enabled) {
+            return false;
+        }
+        for (String area : areas) {
+            if (relativePath.startsWith(area)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private synchronized long size() {
+        return totalBytes;
+    }
+
+    /**
+     * A cached file; content is read-only and shared, so take a duplicate() to write it
+     */
+    public record Entry(ByteBuffer content, long length, long lastModified, String etag, String contentType) {
+    }
+}
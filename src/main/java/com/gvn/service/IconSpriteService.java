@@ -0,0 +1,222 @@
+package com.gvn.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gvn.dto.response.SpriteSheetResponse;
+import com.gvn.entity.Category;
+import com.gvn.entity.SpriteSheet;
+import com.gvn.repository.CategoryRepository;
+import com.gvn.repository.SpriteSheetRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sprite sheet of the active category icons for the home screen, so the client loads one
+ * image for the whole grid instead of one request per category.
+ *
+ * Icons are drawn in display order into square cells (cell-size pixels, downscaled and
+ * centered, never upscaled) on a transparent PNG. The sheet is stored under a name
+ * derived from its SHA-256, so its URL can be cached forever, and sprite_sheets holds the
+ * current URL, hash and each category's rectangle. Categories whose icon is external or
+ * cannot be decoded (e.g. SVG) are left out of the sheet and keep using their icon URL.
+ *
+ * Category changes request a rebuild after commit; requests arriving while one is queued
+ * are folded into it. A rebuild that produces the same image changes nothing.
+ * Superseded sheets are no longer referenced and go with the orphan collector.
+ */
+@Service
+@Slf4j
+public class IconSpriteService {
+
+    private static final String FILE_URL_PREFIX = "/api/v1/files/";
+    private static final String SPRITE_DIR = "sprites";
+    private static final int GAP = 2; // Keeps neighbours out of filtered edge pixels
+
+    private final CategoryRepository categoryRepository;
+    private final SpriteSheetRepository spriteSheetRepository;
+    private final FileStorageService fileStorageService;
+    private final ObjectMapper objectMapper;
+    private final int cellSize;
+    private final ExecutorService executor;
+    private final AtomicBoolean queued = new AtomicBoolean();
+
+    public IconSpriteService(CategoryRepository categoryRepository,
+                             SpriteSheetRepository spriteSheetRepository,
+                             FileStorageService fileStorageService,
+                             ObjectMapper objectMapper,
+                             @Value("${app.image.sprite-cell-size:96}") int cellSize) {
+        this.categoryRepository = categoryRepository;
+        this.spriteSheetRepository = spriteSheetRepository;
+        this.fileStorageService = fileStorageService;
+        this.objectMapper = objectMapper;
+        this.cellSize = cellSize;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "icon-sprites");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Build the sheet on first start (later starts keep the stored one)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIfMissing() {
+        if (!spriteSheetRepository.existsById(SpriteSheet.CATEGORIES)) {
+            requestRebuild();
+        }
+    }
+
+    /**
+     * Rebuild once the current transaction commits (immediately if none)
+     */
+    public void rebuildAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    requestRebuild();
+                }
+            });
+        } else {
+            requestRebuild();
+        }
+    }
+
+    /**
+     * Current category sheet, or null if none has been built yet
+     */
+    public SpriteSheetResponse getCategorySprite() {
+        return spriteSheetRepository.findById(SpriteSheet.CATEGORIES)
+                .map(SpriteSheetResponse::fromSpriteSheet)
+                .orElse(null);
+    }
+
+    private void requestRebuild() {
+        if (queued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                // Changes committed from here on queue another rebuild
+                queued.set(false);
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    log.error("Error building category icon sprite: ", e);
+                }
+            });
+        }
+    }
+
+    private void rebuild() throws IOException {
+        long start = System.nanoTime();
+        Map<Integer, BufferedImage> icons = new LinkedHashMap<>();
+        for (Category category : categoryRepository.findByIsActiveTrueOrderByDisplayOrderAsc()) {
+            BufferedImage icon = loadIcon(category.getIcon());
+            if (icon != null) {
+                icons.put(category.getId(), icon);
+            }
+        }
+
+        int columns = Math.max(1, (int) Math.ceil(Math.sqrt(icons.size())));
+        int rows = Math.max(1, (icons.size() + columns - 1) / columns);
+        int pitch = cellSize + GAP;
+        BufferedImage sheet = new BufferedImage(columns * pitch - GAP, rows * pitch - GAP, BufferedImage.TYPE_INT_ARGB);
+        Map<String, Map<String, Integer>> rectangles = new LinkedHashMap<>();
+        Graphics2D graphics = sheet.createGraphics();
+        try {
+            int index = 0;
+            for (Map.Entry<Integer, BufferedImage> entry : icons.entrySet()) {
+                BufferedImage icon = entry.getValue();
+                int x = (index % columns) * pitch + (cellSize - icon.getWidth()) / 2;
+                int y = (index / columns) * pitch + (cellSize - icon.getHeight()) / 2;
+                graphics.drawImage(icon, x, y, null);
+                Map<String, Integer> rectangle = new LinkedHashMap<>();
+                rectangle.put("x", x);
+                rectangle.put("y", y);
+                rectangle.put("w", icon.getWidth());
+                rectangle.put("h", icon.getHeight());
+                rectangles.put(String.valueOf(entry.getKey()), rectangle);
+                index++;
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        byte[] png = ImageVariantService.encode(sheet, "png");
+        String hash = sha256(png);
+        SpriteSheet current = spriteSheetRepository.findById(SpriteSheet.CATEGORIES).orElse(null);
+        if (current != null && hash.equals(current.getContentHash())) {
+            log.debug("Category icon sprite unchanged");
+            return;
+        }
+        String path = SPRITE_DIR + "/categories-" + hash.substring(0, 16) + ".png";
+        fileStorageService.writeFile(path, png, "image/png");
+        SpriteSheet updated = current != null ? current : SpriteSheet.builder().name(SpriteSheet.CATEGORIES).build();
+        updated.setImageUrl(fileStorageService.getFileUrl(path));
+        updated.setContentHash(hash);
+        updated.setWidth(sheet.getWidth());
+        updated.setHeight(sheet.getHeight());
+        updated.setCellSize(cellSize);
+        updated.setIcons(objectMapper.writeValueAsString(rectangles));
+        spriteSheetRepository.save(updated);
+        log.info("Built category icon sprite {} ({} icons, {} bytes) in {} ms", path, icons.size(), png.length,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Decode a stored icon, fitted into one cell
+     * @return null for external URLs and files ImageIO cannot decode
+     */
+    private BufferedImage loadIcon(String iconUrl) {
+        if (iconUrl == null || !iconUrl.startsWith(FILE_URL_PREFIX)) {
+            return null;
+        }
+        String path = iconUrl.substring(FILE_URL_PREFIX.length());
+        try {
+            BufferedImage icon;
+            try (InputStream input = fileStorageService.openFile(path)) {
+                icon = ImageVariantService.readOriented(input, cellSize);
+            }
+            if (icon == null) {
+                return null;
+            }
+            double scale = Math.min(1.0, (double) cellSize / Math.max(icon.getWidth(), icon.getHeight()));
+            int width = Math.max(1, (int) Math.round(icon.getWidth() * scale));
+            return width < icon.getWidth() ? ImageVariantService.resizeToWidth(icon, width) : icon;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Skipping icon {} in sprite: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
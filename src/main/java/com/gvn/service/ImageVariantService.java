@@ -0,0 +1,503 @@
+package com.gvn.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Generates downscaled 1x/2x/3x variants of uploaded banner and icon images, and
+ * normalized square avatars.
+ *
+ * Work runs on a small background pool after the upload transaction commits, so the
+ * upload request still costs a single write. Variants sit next to the original as
+ * {@code <name>_w<width>.<ext>}; when the original is narrower than a target width the
+ * original itself is used for that density. The resulting srcset-style map (density to
+ * URL) is handed to a callback as JSON for persisting alongside the image URL.
+ *
+ * Avatars are decoded with subsampling, rotated per their EXIF orientation, center
+ * cropped and re-encoded as {@code <name>_<size>.jpg} for each configured size, keyed by
+ * size. Re-encoding writes no metadata, so EXIF (including location) is dropped.
+ *
+ * Banners and avatars also get a BlurHash placeholder computed from the decoded image in
+ * the same pass, which is persisted next to the variant map and rendered by clients
+ * while the image loads.
+ */
+@Service
+@Slf4j
+public class ImageVariantService {
+
+    private static final String[] DENSITIES = {"1x", "2x", "3x"};
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    // BlurHash components (x, y): banners are wide, avatars square
+    private static final int[] BANNER_PLACEHOLDER = {4, 3};
+    private static final int[] AVATAR_PLACEHOLDER = {4, 4};
+
+    private final FileStorageService fileStorageService;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final Set<String> queued = ConcurrentHashMap.newKeySet(); // Originals waiting or in progress
+
+    @Value("${app.image.banner-widths:360,720,1080}")
+    private int[] bannerWidths;
+
+    @Value("${app.image.icon-widths:48,96,144}")
+    private int[] iconWidths;
+
+    @Value("${app.image.avatar-sizes:64,128,512}")
+    private int[] avatarSizes;
+
+    public ImageVariantService(FileStorageService fileStorageService, ObjectMapper objectMapper,
+                               @Value("${app.image.variant-threads:2}") int threads) {
+        this.fileStorageService = fileStorageService;
+        this.objectMapper = objectMapper;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1000),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-variants-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public enum Kind {
+        BANNER, ICON, AVATAR
+    }
+
+    /**
+     * Schedule variant generation once the current transaction commits (immediately if none).
+     * A path that is already queued is not queued again, so callers may retry freely.
+     * @param relativePath Stored path of the original, as returned by FileStorageService.storeFile
+     * @param kind Which width set to use
+     * @param onReady Receives the variant map as JSON and the BlurHash placeholder (null for
+     *                icons); runs on the background thread
+     */
+    public void generateAfterCommit(String relativePath, Kind kind, BiConsumer<String, String> onReady) {
+        Runnable submit = () -> {
+            if (!queued.add(relativePath)) {
+                log.debug("Image variants for {} already queued", relativePath);
+                return;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        generate(relativePath, kind, onReady);
+                    } finally {
+                        queued.remove(relativePath);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                queued.remove(relativePath);
+                // Originals keep working; avatars stay pending and are retried by UserProfileService
+                log.warn("Image variant queue full, skipping variants for {}", relativePath);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit.run();
+                }
+            });
+        } else {
+            submit.run();
+        }
+    }
+
+    /**
+     * URL of the largest variant in a stored variant map (entries are written smallest first)
+     */
+    public String largestVariantUrl(String variantsJson) {
+        try {
+            Map<?, ?> variants = objectMapper.readValue(variantsJson, Map.class);
+            Object largest = null;
+            for (Object url : variants.values()) {
+                largest = url;
+            }
+            return largest instanceof String url ? url : null;
+        } catch (Exception e) {
+            log.warn("Error reading image variants: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Delete the variant files listed in a stored variant map (the original is left alone)
+     */
+    public void deleteVariants(String variantsJson, String originalUrl) {
+        if (variantsJson == null || variantsJson.isEmpty()) {
+            return;
+        }
+        try {
+            Map<?, ?> variants = objectMapper.readValue(variantsJson, Map.class);
+            for (Object url : variants.values()) {
+                if (url instanceof String variantUrl && !variantUrl.equals(originalUrl)) {
+                    String path = extractPathFromUrl(variantUrl);
+                    if (path != null) {
+                        fileStorageService.deleteFile(path);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Error deleting image variants: {}", e.getMessage());
+        }
+    }
+
+    private void generate(String relativePath, Kind kind, BiConsumer<String, String> onReady) {
+        long start = System.nanoTime();
+        try {
+            if (kind == Kind.AVATAR) {
+                generateAvatar(relativePath, onReady);
+                return;
+            }
+            BufferedImage source;
+            try (InputStream input = fileStorageService.openFile(relativePath)) {
+                source = ImageIO.read(input);
+            }
+            if (source == null) {
+                // Not a raster format ImageIO can decode (e.g. SVG) - serve the original only
+                log.debug("No image reader for {}, skipping variants", relativePath);
+                return;
+            }
+
+            String format = outputFormat(relativePath, source);
+            String base = relativePath.contains(".")
+                    ? relativePath.substring(0, relativePath.lastIndexOf('.'))
+                    : relativePath;
+            String originalUrl = fileStorageService.getFileUrl(relativePath);
+            int[] widths = kind == Kind.BANNER ? bannerWidths : iconWidths;
+
+            Map<String, String> variants = new LinkedHashMap<>();
+            for (int i = 0; i < widths.length && i < DENSITIES.length; i++) {
+                int width = widths[i];
+                if (source.getWidth() <= width) {
+                    // Never upscale - the original is already small enough for this density
+                    variants.put(DENSITIES[i], originalUrl);
+                    continue;
+                }
+                String variantPath = base + "_w" + width + "." + format;
+                fileStorageService.writeFile(variantPath, encode(resizeToWidth(source, width), format), contentType(format));
+                variants.put(DENSITIES[i], fileStorageService.getFileUrl(variantPath));
+            }
+
+            String placeholder = kind == Kind.BANNER ? placeholder(source, BANNER_PLACEHOLDER, relativePath) : null;
+            onReady.accept(objectMapper.writeValueAsString(variants), placeholder);
+            log.debug("Generated {} image variants for {} in {} ms", variants.size(), relativePath,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            log.error("Error generating image variants for {}: ", relativePath, e);
+        }
+    }
+
+    private void generateAvatar(String relativePath, BiConsumer<String, String> onReady) throws IOException {
+        int largest = 0;
+        for (int size : avatarSizes) {
+            largest = Math.max(largest, size);
+        }
+        BufferedImage source;
+        try (InputStream input = fileStorageService.openFile(relativePath)) {
+            source = readOriented(input, largest);
+        }
+        if (source == null) {
+            log.debug("No image reader for {}, keeping original avatar", relativePath);
+            return;
+        }
+
+        // Center square, flattened onto white so the JPEG encoder gets plain RGB
+        int side = Math.min(source.getWidth(), source.getHeight());
+        BufferedImage square = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = square.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, side, side);
+            graphics.drawImage(source, -(source.getWidth() - side) / 2, -(source.getHeight() - side) / 2, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        String base = relativePath.contains(".")
+                ? relativePath.substring(0, relativePath.lastIndexOf('.'))
+                : relativePath;
+        Map<String, String> variants = new LinkedHashMap<>();
+        for (int size : avatarSizes) {
+            String variantPath = base + "_" + size + ".jpg";
+            fileStorageService.writeFile(variantPath, encode(resizeToWidth(square, Math.min(size, side)), "jpg"), "image/jpeg");
+            variants.put(String.valueOf(size), fileStorageService.getFileUrl(variantPath));
+        }
+        onReady.accept(objectMapper.writeValueAsString(variants), placeholder(square, AVATAR_PLACEHOLDER, relativePath));
+    }
+
+    /**
+     * BlurHash of a decoded image; null if it cannot be computed (the image still works)
+     */
+    private static String placeholder(BufferedImage image, int[] components, String relativePath) {
+        try {
+            return BlurHash.encode(image, components[0], components[1]);
+        } catch (RuntimeException e) {
+            log.warn("Could not compute placeholder for {}: {}", relativePath, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Decode an image upright, subsampling large sources down to about twice the target size
+     * @return null if no reader can decode the file
+     */
+    static BufferedImage readOriented(InputStream source, int targetSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int factor = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / (targetSize * 2));
+                if (factor > 1) {
+                    // Skip most pixels while decoding instead of scaling a full-size bitmap
+                    param.setSourceSubsampling(factor, factor, 0, 0);
+                }
+                BufferedImage image = reader.read(0, param);
+                int orientation;
+                try {
+                    orientation = exifOrientation(reader.getImageMetadata(0));
+                } catch (IOException | RuntimeException e) {
+                    // Unusual marker layouts can break metadata parsing; the pixels are still fine
+                    orientation = 1;
+                }
+                return orient(image, orientation);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * EXIF orientation (1-8) from JPEG metadata; 1 when absent or unreadable
+     */
+    static int exifOrientation(IIOMetadata metadata) {
+        if (metadata == null || !JPEG_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+            return 1;
+        }
+        Node root = metadata.getAsTree(JPEG_METADATA_FORMAT);
+        for (Node sequence = root.getFirstChild(); sequence != null; sequence = sequence.getNextSibling()) {
+            if (!"markerSequence".equals(sequence.getNodeName())) {
+                continue;
+            }
+            for (Node marker = sequence.getFirstChild(); marker != null; marker = marker.getNextSibling()) {
+                if (marker instanceof IIOMetadataNode node && "unknown".equals(node.getNodeName())
+                        && "225".equals(node.getAttribute("MarkerTag"))
+                        && node.getUserObject() instanceof byte[] app1) {
+                    int orientation = parseExifOrientation(app1);
+                    if (orientation != 0) {
+                        return orientation;
+                    }
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Read tag 0x0112 from IFD0 of an APP1 "Exif" payload; 0 if not present
+     */
+    private static int parseExifOrientation(byte[] app1) {
+        int tiff = 6; // after "Exif\0\0"
+        if (app1.length < tiff + 8 || app1[0] != 'E' || app1[1] != 'x' || app1[2] != 'i' || app1[3] != 'f') {
+            return 0;
+        }
+        boolean littleEndian = app1[tiff] == 'I';
+        int ifd = tiff + readInt(app1, tiff + 4, littleEndian);
+        if (ifd + 2 > app1.length) {
+            return 0;
+        }
+        int entries = readShort(app1, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > app1.length) {
+                return 0;
+            }
+            if (readShort(app1, entry, littleEndian) == 0x0112) {
+                int value = readShort(app1, entry + 8, littleEndian);
+                return value >= 1 && value <= 8 ? value : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int b0 = data[offset] & 0xff;
+        int b1 = data[offset + 1] & 0xff;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] data, int offset, boolean littleEndian) {
+        int first = readShort(data, offset, littleEndian);
+        int second = readShort(data, offset + 2, littleEndian);
+        return littleEndian ? (second << 16) | first : (first << 16) | second;
+    }
+
+    /**
+     * Apply an EXIF orientation so the image is upright
+     */
+    static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation <= 1 || orientation > 8) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);   // mirror horizontal
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);  // rotate 180
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);   // mirror vertical
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);    // transpose
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);   // rotate 90 clockwise
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);  // transverse
+            default -> new AffineTransform(0, -1, 1, 0, 0, w);  // rotate 270 clockwise
+        };
+        boolean swap = orientation >= 5;
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage oriented = new BufferedImage(swap ? h : w, swap ? w : h, type);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    /**
+     * Downscale to the target width keeping aspect ratio. Halves repeatedly before the
+     * final bilinear step, which keeps quality close to area averaging for large ratios.
+     */
+    static BufferedImage resizeToWidth(BufferedImage source, int targetWidth) {
+        int targetHeight = Math.max(1, (int) Math.round((double) source.getHeight() * targetWidth / source.getWidth()));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage step = new BufferedImage(width, height, type);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!"jpg".equals(format)) {
+            if (!ImageIO.write(image, format, output)) {
+                throw new IOException("No image writer for format: " + format);
+            }
+            return output.toByteArray();
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG image writer available");
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    private static String contentType(String format) {
+        return "jpg".equals(format) ? "image/jpeg" : "image/" + format;
+    }
+
+    private static String outputFormat(String relativePath, BufferedImage source) {
+        String lower = relativePath.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) {
+            return "jpg";
+        }
+        // Keep transparency; PNG also covers GIF/BMP sources ImageIO can decode
+        return source.getColorModel().hasAlpha() || lower.endsWith(".png") ? "png" : "jpg";
+    }
+
+    private static String extractPathFromUrl(String url) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        // Remove /api/v1/files/ prefix if present
+        if (url.startsWith("/api/v1/files/")) {
+            return url.substring("/api/v1/files/".length());
+        }
+        return url;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
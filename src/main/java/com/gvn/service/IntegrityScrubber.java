@@ -0,0 +1,398 @@
+package com.gvn.service;
+
+import com.gvn.entity.FileChecksum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background integrity scrubber for the upload directory.
+ *
+ * A pass lists the store's scrub units (each area directory, and each first-level shard
+ * directory such as {@code avatars/ab}), sorts them and has a small pool of workers take
+ * them in order. A worker lists its unit's files, loads the unit's file_checksums rows and
+ * re-hashes every file older than min-age-minutes through a shared I/O budget
+ * (max-bytes-per-second). A size or CRC mismatch is reported, or moved to
+ * {@code .quarantine/<date>/<path>} when action is quarantine; files without a row (uploaded
+ * before checksums existed) get one. Once all units are done, rows no file answered to are
+ * reported missing.
+ *
+ * The last unit below which everything is done is saved in scrub_progress, so a pass cut
+ * short by a restart resumes there. Passes start interval-hours apart. Results are counted
+ * in uploads.scrub.files (result=ok|baseline|mismatch|missing) and rows keep their status;
+ * pass progress is the uploads.scrub.progress gauge. Local storage backend only.
+ */
+@Component
+@Slf4j
+public class IntegrityScrubber implements MeterBinder {
+
+    public static final String QUARANTINE_DIR = ".quarantine";
+
+    private static final String PROGRESS_ID = "uploads";
+    private static final String PROGRESS_SQL =
+            "SELECT pass_started_at, pass_finished_at, last_unit FROM scrub_progress WHERE id = ?";
+    private static final String SAVE_PROGRESS_SQL =
+            "INSERT INTO scrub_progress (id, pass_started_at, pass_finished_at, last_unit, updated_at) " +
+            "VALUES (?, ?, ?, ?, now()) ON CONFLICT (id) DO UPDATE SET pass_started_at = EXCLUDED.pass_started_at, " +
+            "pass_finished_at = EXCLUDED.pass_finished_at, last_unit = EXCLUDED.last_unit, updated_at = now()";
+    private static final String UNIT_ROWS_SQL = "SELECT path, size, crc32c FROM file_checksums WHERE unit = ?";
+    private static final String VERIFIED_SQL =
+            "UPDATE file_checksums SET status = ?, verified_at = now() WHERE path = ?";
+    private static final String UNVERIFIED_SQL =
+            "SELECT path FROM file_checksums WHERE path > ? AND recorded_at < ? AND status <> '" +
+            FileChecksum.STATUS_QUARANTINED + "' AND (verified_at IS NULL OR verified_at < ?) ORDER BY path LIMIT ?";
+
+    private final FileIntegrityService fileIntegrityService;
+    private final FileStorageService fileStorageService;
+    private final HotFileCache hotFileCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final boolean enabled;
+    private final boolean quarantine;
+    private final int parallelism;
+    private final long bytesPerSecond;
+    private final long intervalHours;
+    private final long minAgeMinutes;
+    private final int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopping;
+    private volatile double progress;
+
+    private final Map<String, Counter> results = new HashMap<>();
+
+    public IntegrityScrubber(FileIntegrityService fileIntegrityService,
+                             FileStorageService fileStorageService,
+                             HotFileCache hotFileCache,
+                             JdbcTemplate jdbcTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.file.scrub.enabled:true}") boolean enabled,
+                             @Value("${app.file.scrub.action:report}") String action,
+                             @Value("${app.file.scrub.parallelism:4}") int parallelism,
+                             @Value("${app.file.scrub.max-bytes-per-second:20971520}") long bytesPerSecond,
+                             @Value("${app.file.scrub.interval-hours:168}") long intervalHours,
+                             @Value("${app.file.scrub.min-age-minutes:60}") long minAgeMinutes,
+                             @Value("${app.file.scrub.batch-size:500}") int batchSize) {
+        this.fileIntegrityService = fileIntegrityService;
+        this.fileStorageService = fileStorageService;
+        this.hotFileCache = hotFileCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.quarantine = "quarantine".equalsIgnoreCase(action.trim());
+        this.parallelism = Math.max(1, parallelism);
+        this.bytesPerSecond = bytesPerSecond;
+        this.intervalHours = intervalHours;
+        this.minAgeMinutes = minAgeMinutes;
+        this.batchSize = batchSize;
+        for (String result : List.of("ok", "baseline", FileChecksum.STATUS_MISMATCH, FileChecksum.STATUS_MISSING)) {
+            results.put(result, Counter.builder("uploads.scrub.files").tag("result", result)
+                    .description("Files checked by the integrity scrubber")
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        Gauge.builder("uploads.scrub.progress", this, scrubber -> scrubber.progress)
+                .description("Share of scrub units done in the current pass")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start (or resume) a pass on its own thread when one is due
+     */
+    @Scheduled(initialDelayString = "${app.file.scrub.check-ms:600000}", fixedDelayString = "${app.file.scrub.check-ms:600000}")
+    public void startIfDue() {
+        if (!enabled || !fileStorageService.isLocalStorage() || running.get()) {
+            return;
+        }
+        Progress current = loadProgress();
+        boolean resuming = current != null && current.finishedAt() == null;
+        boolean due = current == null || resuming
+                || current.startedAt().plusHours(intervalHours).isBefore(LocalDateTime.now());
+        if (!due || !running.compareAndSet(false, true)) {
+            return;
+        }
+        Progress pass = resuming ? current : new Progress(LocalDateTime.now(), null, null);
+        Thread thread = new Thread(() -> {
+            try {
+                scrub(pass);
+            } catch (Exception e) {
+                log.error("Integrity scrub failed, resuming at the next check: ", e);
+            } finally {
+                running.set(false);
+            }
+        }, "integrity-scrubber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+    }
+
+    private void scrub(Progress pass) throws Exception {
+        Path basePath = fileStorageService.resolvePath("");
+        List<String> units = new ArrayList<>();
+        if (Files.isDirectory(basePath)) {
+            listUnits(basePath, basePath, units);
+        }
+        Collections.sort(units);
+        int first = 0;
+        if (pass.lastUnit() != null) {
+            // Everything up to the saved unit is done
+            while (first < units.size() && units.get(first).compareTo(pass.lastUnit()) <= 0) {
+                first++;
+            }
+            log.info("Integrity scrub resuming after {} ({} of {} units left)", pass.lastUnit(),
+                    units.size() - first, units.size());
+        } else {
+            saveProgress(pass);
+            log.info("Integrity scrub started: {} units", units.size());
+        }
+
+        FileIntegrityService.IoBudget budget = new FileIntegrityService.IoBudget(bytesPerSecond);
+        Instant minAge = Instant.now().minus(Duration.ofMinutes(minAgeMinutes));
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "integrity-scrubber-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Units are handed out in order; the saved position only advances past finished ones
+            List<Future<?>> pending = new ArrayList<>();
+            AtomicInteger done = new AtomicInteger(first);
+            for (int i = first; i < units.size(); i++) {
+                String unit = units.get(i);
+                pending.add(workers.submit(() -> {
+                    if (!stopping) {
+                        scrubUnit(basePath, unit, budget, minAge);
+                        progress = (double) done.incrementAndGet() / units.size();
+                    }
+                    return null;
+                }));
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                pending.get(i).get();
+                if (stopping) {
+                    return;
+                }
+                if ((i + 1) % 16 == 0 || i == pending.size() - 1) {
+                    saveProgress(new Progress(pass.startedAt(), null, units.get(first + i)));
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        long missing = reportMissing(basePath, pass.startedAt());
+        saveProgress(new Progress(pass.startedAt(), LocalDateTime.now(), null));
+        progress = 1;
+        log.info("Integrity scrub finished: {} units, {} missing files", units.size(), missing);
+    }
+
+    /**
+     * Units: every non-shard directory (its own files) and every first-level shard directory
+     * (its files and those of its shard subdirectories). Internal dot-directories are skipped.
+     */
+    private void listUnits(Path basePath, Path directory, List<String> units) throws IOException {
+        if (!directory.equals(basePath)) {
+            units.add(relativize(basePath, directory));
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                if (name.startsWith(".")) {
+                    continue;
+                }
+                if (!directory.equals(basePath) && FileIntegrityService.isShard(name)) {
+                    units.add(relativize(basePath, child));
+                } else {
+                    listUnits(basePath, child, units);
+                }
+            }
+        }
+    }
+
+    private void scrubUnit(Path basePath, String unit, FileIntegrityService.IoBudget budget, Instant minAge)
+            throws IOException {
+        Map<String, long[]> expected = new HashMap<>();
+        jdbcTemplate.query(UNIT_ROWS_SQL, resultSet -> {
+            expected.put(resultSet.getString(1), new long[] {resultSet.getLong(2), resultSet.getLong(3)});
+        }, unit);
+
+        Path directory = basePath.resolve(unit);
+        boolean sharded = FileIntegrityService.isShard(directory.getFileName().toString());
+        List<Object[]> verified = new ArrayList<>();
+        for (Path file : listFiles(directory, sharded)) {
+            if (stopping) {
+                return;
+            }
+            String relativePath = relativize(basePath, file);
+            if (relativePath.endsWith(FileStorageService.GZIP_SUFFIX)) {
+                // Derived from its original; rewritten from it if needed
+                continue;
+            }
+            long[] row = expected.get(relativePath);
+            String status = check(file, relativePath, row, budget, minAge);
+            if (row != null && status != null) {
+                verified.add(new Object[] {status, relativePath});
+                if (verified.size() >= batchSize) {
+                    jdbcTemplate.batchUpdate(VERIFIED_SQL, verified);
+                    verified.clear();
+                }
+            }
+        }
+        if (!verified.isEmpty()) {
+            jdbcTemplate.batchUpdate(VERIFIED_SQL, verified);
+        }
+    }
+
+    /**
+     * Re-hash one file against its row (or record a baseline)
+     * @return Status to store on the row, or null if nothing is to be updated
+     */
+    private String check(Path file, String relativePath, long[] row, FileIntegrityService.IoBudget budget,
+                         Instant minAge) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.lastModifiedTime().toInstant().isBefore(minAge)) {
+                // Just stored (its checksum may still be on the way): checked next pass
+                return null;
+            }
+            long[] actual = FileIntegrityService.hash(file, budget);
+            if (row == null) {
+                fileIntegrityService.recordBaseline(relativePath, actual[0], actual[1]);
+                results.get("baseline").increment();
+                return null;
+            }
+            if (actual[0] == row[0] && actual[1] == row[1]) {
+                results.get("ok").increment();
+                return FileChecksum.STATUS_OK;
+            }
+            results.get(FileChecksum.STATUS_MISMATCH).increment();
+            log.error("Integrity mismatch for {}: {} bytes, crc32c {} (expected {} bytes, crc32c {})",
+                    relativePath, actual[0], Long.toHexString(actual[1]), row[0], Long.toHexString(row[1]));
+            if (quarantine) {
+                moveToQuarantine(file, relativePath);
+                return FileChecksum.STATUS_QUARANTINED;
+            }
+            return FileChecksum.STATUS_MISMATCH;
+        } catch (NoSuchFileException e) {
+            // Deleted while we were looking; its row goes with it
+            return null;
+        }
+    }
+
+    private void moveToQuarantine(Path file, String relativePath) throws IOException {
+        Path target = fileStorageService.resolvePath(QUARANTINE_DIR)
+                .resolve(LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE)).resolve(relativePath);
+        Files.createDirectories(target.getParent());
+        Files.move(file, target);
+        hotFileCache.invalidate(relativePath);
+        log.warn("Moved corrupt upload {} to {}", relativePath, target);
+    }
+
+    /**
+     * Rows recorded before the pass that no file answered to
+     */
+    private long reportMissing(Path basePath, LocalDateTime passStartedAt) {
+        Timestamp startedAt = Timestamp.valueOf(passStartedAt);
+        long missing = 0;
+        String after = "";
+        while (!stopping) {
+            List<String> page = jdbcTemplate.queryForList(UNVERIFIED_SQL, String.class,
+                    after, startedAt, startedAt, batchSize);
+            List<Object[]> updates = new ArrayList<>();
+            for (String relativePath : page) {
+                if (Files.exists(fileIntegrityService.resolve(relativePath))) {
+                    // Appeared in a unit after that unit was scrubbed
+                    continue;
+                }
+                log.error("Integrity scrub: {} is referenced by a checksum but missing on disk", relativePath);
+                results.get(FileChecksum.STATUS_MISSING).increment();
+                updates.add(new Object[] {FileChecksum.STATUS_MISSING, relativePath});
+                missing++;
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate(VERIFIED_SQL, updates);
+            }
+            if (page.size() < batchSize) {
+                break;
+            }
+            after = page.get(page.size() - 1);
+        }
+        return missing;
+    }
+
+    private static List<Path> listFiles(Path directory, boolean sharded) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry)) {
+                    files.add(entry);
+                } else if (sharded && Files.isDirectory(entry)) {
+                    try (DirectoryStream<Path> nested = Files.newDirectoryStream(entry, Files::isRegularFile)) {
+                        nested.forEach(files::add);
+                    }
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Unit removed since it was listed
+        }
+        return files;
+    }
+
+    private Progress loadProgress() {
+        List<Progress> rows = jdbcTemplate.query(PROGRESS_SQL, (resultSet, rowNum) -> {
+            Timestamp finished = resultSet.getTimestamp(2);
+            return new Progress(resultSet.getTimestamp(1).toLocalDateTime(),
+                    finished != null ? finished.toLocalDateTime() : null, resultSet.getString(3));
+        }, PROGRESS_ID);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private void saveProgress(Progress progress) {
+        jdbcTemplate.update(SAVE_PROGRESS_SQL, PROGRESS_ID, Timestamp.valueOf(progress.startedAt()),
+                progress.finishedAt() != null ? Timestamp.valueOf(progress.finishedAt()) : null,
+                progress.lastUnit());
+    }
+
+    private static String relativize(Path basePath, Path file) {
+        return basePath.relativize(file).toString().replace('\\', '/');
+    }
+
+    private record Progress(LocalDateTime startedAt, LocalDateTime finishedAt, String lastUnit) {
+    }
+}
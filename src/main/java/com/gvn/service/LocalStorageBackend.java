@@ -0,0 +1,57 @@
+package com.gvn.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Stores objects as files under app.file.upload-dir
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "local", matchIfMissing = true)
+public class LocalStorageBackend implements StorageBackend {
+
+    private final Path basePath;
+
+    public LocalStorageBackend(@Value("${app.file.upload-dir:uploads}") String uploadDir) {
+        this.basePath = FileStorageService.resolveBasePath(uploadDir);
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length, String contentType) throws IOException {
+        Path path = resolve(key);
+        Files.createDirectories(path.getParent());
+        try (OutputStream output = Files.newOutputStream(path)) {
+            content.transferTo(output);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(resolve(key));
+    }
+
+    private Path resolve(String key) {
+        Path path = basePath.resolve(key).normalize();
+        if (!path.startsWith(basePath)) {
+            throw new IllegalArgumentException("Path escapes upload directory: " + key);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,377 @@
+package com.gvn.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mark-and-sweep collector for upload files no row points at any more.
+ *
+ * Mark: every file URL stored in users, partner_profiles (including the health
+ * certificate JSON), banners, categories and services - plus their variant maps - is
+ * streamed from the database into a sorted array of 64-bit path fingerprints (a hash
+ * collision can only keep an orphan, never collect a live file).
+ *
+ * Sweep: the upload tree is walked (internal dot-directories excluded) and unreferenced
+ * files older than the grace period are moved to {@code .trash/<date>/<path>} in batches
+ * with a pause between them, so the walk never saturates the disk. Trash days older than
+ * the retention period are purged; deduplicated files release their blob reference then.
+ * Staged uploads left behind by a crash mid-transaction are removed after the grace period.
+ *
+ * Runs only for the local storage backend.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrphanFileCollector {
+
+    public static final String TRASH_DIR = ".trash";
+
+    private static final String FILE_URL_PREFIX = "/api/v1/files/";
+    private static final int FETCH_SIZE = 1000;
+
+    // Every column that can hold an upload URL, or JSON containing upload URLs
+    private static final List<String> REFERENCE_QUERIES = List.of(
+            "SELECT avatar_url, avatar_variants FROM users",
+            "SELECT cccd_front_image_url, cccd_back_image_url, health_certificates_urls FROM partner_profiles",
+            "SELECT image_url, image_variants FROM banners",
+            "SELECT icon, icon_variants FROM categories",
+            "SELECT icon, icon_variants FROM services",
+            "SELECT image_url FROM sprite_sheets"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final FileStorageService fileStorageService;
+    private final ContentAddressedStore contentAddressedStore;
+    private final PlatformTransactionManager transactionManager;
+    private final HotFileCache hotFileCache;
+    private final StorageUsageService storageUsageService;
+    private final FileIntegrityService fileIntegrityService;
+
+    @Value("${app.file.orphan-gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.file.orphan-gc.grace-hours:24}")
+    private long graceHours;
+
+    @Value("${app.file.orphan-gc.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.file.orphan-gc.batch-pause-ms:1000}")
+    private long batchPauseMs;
+
+    @Value("${app.file.orphan-gc.trash-retention-days:7}")
+    private long trashRetentionDays;
+
+    @Value("${app.file.content-addressed:false}")
+    private boolean contentAddressed;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Scheduled(cron = "${app.file.orphan-gc.cron:0 30 3 * * *}")
+    public void scheduledCollect() {
+        if (enabled) {
+            collect();
+        }
+    }
+
+    /**
+     * Run one mark-and-sweep pass plus trash purge
+     * @return Number of files moved to trash, or -1 if the pass did not run
+     */
+    public long collect() {
+        if (!fileStorageService.isLocalStorage()) {
+            log.debug("Orphan collection skipped: storage backend is not local");
+            return -1;
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.info("Orphan collection already running, skipping");
+            return -1;
+        }
+        try {
+            long start = System.nanoTime();
+            Fingerprints referenced = markReferenced();
+            long moved = sweep(referenced);
+            long purged = purgeTrash() + purgeStaging();
+            log.info("Orphan collection: {} referenced files, {} orphans moved to trash, {} purged in {} ms",
+                    referenced.size(), moved, purged, Duration.ofNanos(System.nanoTime() - start).toMillis());
+            return moved;
+        } catch (Exception e) {
+            // A failed mark must never turn into a sweep
+            log.error("Orphan collection failed: ", e);
+            return -1;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Fingerprints markReferenced() {
+        Fingerprints fingerprints = new Fingerprints();
+        // The driver only streams with a fetch size inside a transaction
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(FETCH_SIZE);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.executeWithoutResult(status -> {
+            for (String query : REFERENCE_QUERIES) {
+                streaming.query(query, resultSet -> {
+                    int columns = resultSet.getMetaData().getColumnCount();
+                    for (int i = 1; i <= columns; i++) {
+                        addReferences(resultSet.getString(i), fingerprints);
+                    }
+                });
+            }
+        });
+        fingerprints.seal();
+        return fingerprints;
+    }
+
+    private void addReferences(String value, Fingerprints fingerprints) {
+        if (value == null || value.isBlank()) {
+            return;
+        }
+        String trimmed = value.trim();
+        if (trimmed.startsWith("{") || trimmed.startsWith("[")) {
+            try {
+                addJsonReferences(objectMapper.readTree(trimmed), fingerprints);
+                return;
+            } catch (IOException e) {
+                // Not JSON after all; treat as a plain URL below
+            }
+        }
+        if (trimmed.startsWith(FILE_URL_PREFIX)) {
+            String path = trimmed.substring(FILE_URL_PREFIX.length());
+            fingerprints.add(fingerprint(path));
+            // The layout migration may have moved the file before rewriting this row
+            String sharded = FileStorageService.shardedPath(path);
+            if (!sharded.equals(path)) {
+                fingerprints.add(fingerprint(sharded));
+            }
+        }
+    }
+
+    private void addJsonReferences(JsonNode node, Fingerprints fingerprints) {
+        if (node.isTextual()) {
+            addReferences(node.textValue(), fingerprints);
+        } else if (node.isContainerNode()) {
+            for (JsonNode child : node) {
+                addJsonReferences(child, fingerprints);
+            }
+        }
+    }
+
+    private long sweep(Fingerprints referenced) throws IOException {
+        Path basePath = fileStorageService.resolvePath("");
+        Instant cutoff = Instant.now().minus(Duration.ofHours(graceHours));
+        Path trashDay = basePath.resolve(TRASH_DIR).resolve(LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE));
+        List<Path> batch = new ArrayList<>();
+        long[] moved = {0};
+
+        Files.walkFileTree(basePath, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                // .blobs, .tmp, .incoming, .trash, ... are managed elsewhere
+                if (!dir.equals(basePath) && dir.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile()
+                        && attributes.lastModifiedTime().toInstant().isBefore(cutoff)
+                        && !isReferenced(referenced, relativize(basePath, file))) {
+                    batch.add(file);
+                    if (batch.size() >= batchSize) {
+                        moved[0] += moveToTrash(basePath, trashDay, batch);
+                        batch.clear();
+                        pause();
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                log.warn("Orphan collection could not read {}: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        moved[0] += moveToTrash(basePath, trashDay, batch);
+        return moved[0];
+    }
+
+    /**
+     * A gzip sibling lives as long as the file it was made from
+     */
+    private static boolean isReferenced(Fingerprints referenced, String relativePath) {
+        if (referenced.contains(fingerprint(relativePath))) {
+            return true;
+        }
+        return relativePath.endsWith(FileStorageService.GZIP_SUFFIX) && referenced.contains(fingerprint(
+                relativePath.substring(0, relativePath.length() - FileStorageService.GZIP_SUFFIX.length())));
+    }
+
+    private long moveToTrash(Path basePath, Path trashDay, List<Path> files) throws IOException {
+        long moved = 0;
+        for (Path file : files) {
+            Path target = trashDay.resolve(basePath.relativize(file));
+            String relativePath = relativize(basePath, file);
+            try {
+                long size = Files.size(file);
+                Files.createDirectories(target.getParent());
+                Files.move(file, target);
+                hotFileCache.invalidate(relativePath);
+                if (!relativePath.endsWith(FileStorageService.GZIP_SUFFIX)) {
+                    storageUsageService.recordDeleted(relativePath, null, size);
+                    fileIntegrityService.forget(relativePath);
+                }
+                moved++;
+                log.debug("Moved orphan {} to trash", file);
+            } catch (NoSuchFileException e) {
+                // Deleted concurrently
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Delete trash days older than the retention period
+     */
+    private long purgeTrash() throws IOException {
+        Path trash = fileStorageService.resolvePath(TRASH_DIR);
+        if (!Files.isDirectory(trash)) {
+            return 0;
+        }
+        String oldestKept = LocalDate.now().minusDays(trashRetentionDays).format(DateTimeFormatter.BASIC_ISO_DATE);
+        long purged = 0;
+        try (DirectoryStream<Path> days = Files.newDirectoryStream(trash)) {
+            for (Path day : days) {
+                if (day.getFileName().toString().compareTo(oldestKept) < 0) {
+                    purged += purgeDay(day);
+                }
+            }
+        }
+        return purged;
+    }
+
+    private long purgeStaging() throws IOException {
+        Path staging = fileStorageService.resolvePath(FileStorageService.STAGING_DIR);
+        if (!Files.isDirectory(staging)) {
+            return 0;
+        }
+        Instant cutoff = Instant.now().minus(Duration.ofHours(graceHours));
+        long purged = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(staging)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff) && Files.deleteIfExists(file)) {
+                    purged++;
+                }
+            }
+        }
+        return purged;
+    }
+
+    private long purgeDay(Path day) throws IOException {
+        Path basePath = fileStorageService.resolvePath("");
+        long[] purged = {0};
+        Files.walkFileTree(day, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                String originalPath = relativize(day, file);
+                // Deduplicated files hold a blob reference under their original path
+                if (!contentAddressed || !contentAddressedStore.release(basePath, file, originalPath)) {
+                    Files.deleteIfExists(file);
+                }
+                purged[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return purged[0];
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(batchPauseMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String relativize(Path basePath, Path file) {
+        return basePath.relativize(file).toString().replace('\\', '/');
+    }
+
+    /**
+     * 64-bit FNV-1a of the relative path
+     */
+    static long fingerprint(String relativePath) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : relativePath.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Append-then-sort set of fingerprints: 8 bytes per reference, binary-searched
+     */
+    private static final class Fingerprints {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void seal() {
+            Arrays.sort(values, 0, size);
+        }
+
+        boolean contains(long value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,579 @@
+package com.gvn.service;
+
+import com.gvn.entity.PackedFile;
+import com.gvn.repository.PackedFileRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Append-only pack files holding cold uploads (see ColdTierService), under {@code .packs}.
+ *
+ * Each entry is a small self-describing header followed by the file's bytes, raw-deflated
+ * when that saves at least a tenth and stored as is otherwise (encrypted files always are).
+ * <pre>
+ *   "GVP1" | flags (1) | size (8) | stored length (8) | crc32c (4) | path length (2) | path
+ *   stored bytes
+ * </pre>
+ * packed_files indexes every live entry by its original path with the offset and length
+ * of its stored bytes, which are read back with positional reads: raw entries are sent
+ * straight from the pack (sendfile included), deflated ones are inflated from the start of
+ * the entry and encrypted ones decrypted segment by segment over the requested range.
+ *
+ * Deleting a packed file drops its index row and overwrites the whole entry with zeros, so
+ * a deleted document is unreadable at once. The space is reclaimed by compaction (see
+ * ColdTierService), which copies the live entries of a pack into a new one, points their
+ * rows at it and retires the old pack. Retired packs are kept until the next pass so
+ * reads that looked up the old location just before still find it.
+ */
+@Component
+@Slf4j
+public class PackStore {
+
+    public static final String PACK_DIR = ".packs";
+
+    private static final byte[] ENTRY_MAGIC = {'G', 'V', 'P', '1'};
+    private static final int FLAG_DEFLATE = 1;
+    private static final int FLAG_ENCRYPTED = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int ENTRY_HEADER_LENGTH = ENTRY_MAGIC.length + 1 + 8 + 8 + 4 + 2; // Plus the path
+    private static final String PACK_SUFFIX = ".pack";
+    private static final String RETIRED_SUFFIX = ".retired";
+
+    private final PackedFileRepository packedFileRepository;
+    private final FileEncryption fileEncryption;
+    private final List<String> areas;
+    private final String uploadDir;
+    // Serialises dropping index rows with relocating them, so no deleted entry survives a compaction
+    private final Object indexLock = new Object();
+
+    public PackStore(PackedFileRepository packedFileRepository,
+                     FileEncryption fileEncryption,
+                     @Value("${app.file.cold-tier.areas:documents}") String[] areas,
+                     @Value("${app.file.upload-dir:uploads}") String uploadDir) {
+        this.packedFileRepository = packedFileRepository;
+        this.fileEncryption = fileEncryption;
+        this.areas = Arrays.stream(areas).map(String::trim).filter(area -> !area.isEmpty())
+                .map(area -> area.endsWith("/") ? area : area + "/").toList();
+        this.uploadDir = uploadDir;
+    }
+
+    /**
+     * Whether files under this stored path may be moved into packs
+     */
+    public boolean covers(String relativePath) {
+        for (String area : areas) {
+            if (relativePath.startsWith(area)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Index entry of a packed file, by the path it was stored under (flat or sharded)
+     */
+    public Optional<PackedFile> find(String relativePath) {
+        if (!covers(relativePath)) {
+            return Optional.empty();
+        }
+        Optional<PackedFile> entry = packedFileRepository.findById(relativePath);
+        String sharded = FileStorageService.shardedPath(relativePath);
+        if (entry.isEmpty() && !sharded.equals(relativePath)) {
+            entry = packedFileRepository.findById(sharded);
+        }
+        return entry;
+    }
+
+    /**
+     * Drop the index entry of a deleted file and erase its bytes from the pack
+     * @return The entry that was dropped, if the file was packed
+     */
+    public Optional<PackedFile> remove(String relativePath) {
+        synchronized (indexLock) {
+            Optional<PackedFile> entry = find(relativePath);
+            if (entry.isPresent()) {
+                packedFileRepository.delete(entry.get());
+                erase(entry.get());
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Point the index rows of entries copied by compaction at their new pack. Entries whose
+     * file was deleted meanwhile have no row to update and their copies are erased.
+     * @param copies Entries as appended to the new pack, made durable and verified
+     * @return Number of rows moved
+     */
+    int relocate(String fromPack, List<PackedFile> copies) {
+        int moved = 0;
+        synchronized (indexLock) {
+            for (PackedFile copy : copies) {
+                if (packedFileRepository.relocate(copy.getPath(), fromPack, copy.getPack(), copy.getOffset()) > 0) {
+                    moved++;
+                } else {
+                    erase(copy);
+                }
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Overwrite an entry, header included, with zeros
+     */
+    private void erase(PackedFile entry) {
+        long start = entry.getOffset() - ENTRY_HEADER_LENGTH - entry.getPath().getBytes(StandardCharsets.UTF_8).length;
+        long end = entry.getOffset() + entry.getStoredLength();
+        try (FileChannel channel = FileChannel.open(packPath(entry), StandardOpenOption.WRITE)) {
+            ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, end - start));
+            for (long position = start; position < end; ) {
+                zeros.clear().limit((int) Math.min(zeros.capacity(), end - position));
+                position += channel.write(zeros, position);
+            }
+            channel.force(false);
+        } catch (NoSuchFileException e) {
+            // Pack already retired
+        } catch (IOException e) {
+            log.error("Failed to erase {} from pack {}: {}", entry.getPath(), entry.getPack(), e.getMessage());
+        }
+    }
+
+    /**
+     * Names of the pack files in use or being written
+     */
+    List<String> packNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        Path directory = packDirectory();
+        if (!Files.isDirectory(directory)) {
+            return names;
+        }
+        try (DirectoryStream<Path> packs = Files.newDirectoryStream(directory, "*" + PACK_SUFFIX)) {
+            for (Path pack : packs) {
+                names.add(pack.getFileName().toString());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Bytes a pack's live entries take up, headers included
+     */
+    static long liveBytes(List<PackedFile> entries) {
+        long live = 0;
+        for (PackedFile entry : entries) {
+            live += ENTRY_HEADER_LENGTH + entry.getPath().getBytes(StandardCharsets.UTF_8).length
+                    + entry.getStoredLength();
+        }
+        return live;
+    }
+
+    /**
+     * Take a pack out of use; it is deleted by the next deleteRetired()
+     */
+    void retire(String name) throws IOException {
+        Files.move(packPath(name), packPath(name + RETIRED_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Delete packs retired by an earlier pass
+     * @return Bytes freed
+     */
+    long deleteRetired() throws IOException {
+        long freed = 0;
+        Path directory = packDirectory();
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        try (DirectoryStream<Path> retired = Files.newDirectoryStream(directory, "*" + RETIRED_SUFFIX)) {
+            for (Path pack : retired) {
+                freed += Files.size(pack);
+                Files.delete(pack);
+            }
+        }
+        return freed;
+    }
+
+    public Path packPath(PackedFile entry) {
+        return packPath(entry.getPack());
+    }
+
+    Path packPath(String name) {
+        return packDirectory().resolve(name);
+    }
+
+    /**
+     * Whether an entry's stored bytes are the file's bytes (no inflating or decrypting)
+     */
+    public boolean isRaw(PackedFile entry) {
+        return !entry.getEncrypted() && PackedFile.COMPRESSION_NONE.equals(entry.getCompression());
+    }
+
+    /**
+     * Length of the content an entry is read back as
+     */
+    public long contentLength(PackedFile entry) throws IOException {
+        if (!entry.getEncrypted()) {
+            return entry.getSize();
+        }
+        try (FileChannel channel = FileChannel.open(packPath(entry), StandardOpenOption.READ)) {
+            return fileEncryption.plaintextLength(channel, entry.getOffset(), entry.getStoredLength());
+        }
+    }
+
+    /**
+     * Content of a packed file (inflated or decrypted as needed)
+     */
+    public InputStream open(PackedFile entry) throws IOException {
+        FileChannel channel = FileChannel.open(packPath(entry), StandardOpenOption.READ);
+        try {
+            if (entry.getEncrypted()) {
+                return fileEncryption.decrypt(channel, entry.getOffset(), entry.getStoredLength());
+            }
+            InputStream stored = new RegionInputStream(channel, entry.getOffset(), entry.getStoredLength());
+            if (PackedFile.COMPRESSION_DEFLATE.equals(entry.getCompression())) {
+                return new InflaterInputStream(stored, new Inflater(true), BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inf.end();
+                    }
+                };
+            }
+            return stored;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write content bytes [start, end) of a packed file
+     */
+    public void copyRange(PackedFile entry, long start, long end, OutputStream output) throws IOException {
+        if (entry.getEncrypted()) {
+            try (FileChannel channel = FileChannel.open(packPath(entry), StandardOpenOption.READ)) {
+                fileEncryption.decryptRange(channel, entry.getOffset(), entry.getStoredLength(), start, end, output);
+            }
+            return;
+        }
+        if (isRaw(entry)) {
+            try (FileChannel channel = FileChannel.open(packPath(entry), StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(output);
+                long position = entry.getOffset() + start;
+                long stop = entry.getOffset() + end;
+                while (position < stop) {
+                    long transferred = channel.transferTo(position, stop - position, target);
+                    if (transferred <= 0) {
+                        throw new IOException("Pack " + entry.getPack() + " is truncated");
+                    }
+                    position += transferred;
+                }
+            }
+            return;
+        }
+        try (InputStream input = open(entry)) {
+            input.skipNBytes(start);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = end - start;
+            while (remaining > 0) {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Packed entry " + entry.getPath() + " is truncated");
+                }
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * Start a new pack file
+     */
+    Writer create(String name) throws IOException {
+        Path directory = packDirectory();
+        Files.createDirectories(directory);
+        return new Writer(name, FileChannel.open(packPath(name),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ));
+    }
+
+    private Path packDirectory() {
+        return FileStorageService.resolveBasePath(uploadDir).resolve(PACK_DIR);
+    }
+
+    /**
+     * Appends entries to one pack; the caller indexes them once force() and verify() succeeded
+     */
+    static final class Writer implements Closeable {
+
+        private final String name;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] input = new byte[BUFFER_SIZE];
+        private final byte[] output = new byte[BUFFER_SIZE];
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private long position;
+
+        private Writer(String name, FileChannel channel) {
+            this.name = name;
+            this.channel = channel;
+        }
+
+        /**
+         * Append a file to the pack
+         * @param encrypted Whether the file was written by FileEncryption (stored without compressing)
+         * @return Its index entry (not saved)
+         */
+        PackedFile append(String relativePath, Path source, long lastModified, boolean encrypted) throws IOException {
+            byte[] path = relativePath.getBytes(StandardCharsets.UTF_8);
+            long entryStart = position;
+            long dataStart = entryStart + ENTRY_HEADER_LENGTH + path.length;
+            long size = Files.size(source);
+
+            CRC32C crc = new CRC32C();
+            long stored = encrypted ? -1 : writeDeflated(source, dataStart, crc);
+            boolean deflated = !encrypted && stored <= size - size / 10;
+            if (!deflated) {
+                // Not worth it (or ciphertext): overwrite with the bytes as they are
+                channel.truncate(dataStart);
+                crc.reset();
+                stored = writeRaw(source, dataStart, crc);
+                if (stored != size) {
+                    throw new IOException("Upload " + relativePath + " changed while it was packed");
+                }
+            }
+
+            writeHeader(entryStart, path, (deflated ? FLAG_DEFLATE : 0) | (encrypted ? FLAG_ENCRYPTED : 0),
+                    size, stored, crc.getValue());
+            position = dataStart + stored;
+
+            return PackedFile.builder()
+                    .path(relativePath)
+                    .pack(name)
+                    .offset(dataStart)
+                    .storedLength(stored)
+                    .size(size)
+                    .compression(deflated ? PackedFile.COMPRESSION_DEFLATE : PackedFile.COMPRESSION_NONE)
+                    .encrypted(encrypted)
+                    .crc32c(crc.getValue())
+                    .lastModified(lastModified)
+                    .build();
+        }
+
+        /**
+         * Append an entry of another pack as it is stored (compaction)
+         * @param source Channel of the pack the entry is in
+         * @return Its index entry in this pack (not saved)
+         * @throws IOException Also if the stored bytes do not match their CRC
+         */
+        PackedFile copy(PackedFile entry, FileChannel source) throws IOException {
+            byte[] path = entry.getPath().getBytes(StandardCharsets.UTF_8);
+            long entryStart = position;
+            long dataStart = entryStart + ENTRY_HEADER_LENGTH + path.length;
+            CRC32C crc = new CRC32C();
+            long written = 0;
+            while (written < entry.getStoredLength()) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), entry.getStoredLength() - written));
+                if (source.read(buffer, entry.getOffset() + written) < 0) {
+                    throw new IOException("Pack " + entry.getPack() + " is truncated");
+                }
+                buffer.flip();
+                crc.update(buffer.duplicate());
+                written += writeFully(buffer, dataStart + written);
+            }
+            if (crc.getValue() != entry.getCrc32c()) {
+                throw new IOException("Packed entry " + entry.getPath() + " in " + entry.getPack() + " fails its CRC");
+            }
+            boolean deflated = PackedFile.COMPRESSION_DEFLATE.equals(entry.getCompression());
+            writeHeader(entryStart, path, (deflated ? FLAG_DEFLATE : 0) | (entry.getEncrypted() ? FLAG_ENCRYPTED : 0),
+                    entry.getSize(), written, crc.getValue());
+            position = dataStart + written;
+
+            return PackedFile.builder()
+                    .path(entry.getPath())
+                    .pack(name)
+                    .offset(dataStart)
+                    .storedLength(written)
+                    .size(entry.getSize())
+                    .compression(entry.getCompression())
+                    .encrypted(entry.getEncrypted())
+                    .crc32c(crc.getValue())
+                    .lastModified(entry.getLastModified())
+                    .packedAt(entry.getPackedAt())
+                    .build();
+        }
+
+        private void writeHeader(long entryStart, byte[] path, int flags, long size, long stored, long crc)
+                throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_LENGTH + path.length);
+            header.put(ENTRY_MAGIC)
+                    .put((byte) flags)
+                    .putLong(size).putLong(stored).putInt((int) crc)
+                    .putShort((short) path.length).put(path)
+                    .flip();
+            writeFully(header, entryStart);
+        }
+
+        private long writeDeflated(Path source, long start, CRC32C crc) throws IOException {
+            long written = 0;
+            deflater.reset();
+            try (InputStream in = Files.newInputStream(source)) {
+                int read;
+                while ((read = in.read(input)) >= 0) {
+                    deflater.setInput(input, 0, read);
+                    while (!deflater.needsInput()) {
+                        written += drain(start + written, crc);
+                    }
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                written += drain(start + written, crc);
+            }
+            return written;
+        }
+
+        private int drain(long at, CRC32C crc) throws IOException {
+            int count = deflater.deflate(output);
+            if (count > 0) {
+                crc.update(output, 0, count);
+                writeFully(ByteBuffer.wrap(output, 0, count), at);
+            }
+            return count;
+        }
+
+        private long writeRaw(Path source, long start, CRC32C crc) throws IOException {
+            long written = 0;
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+                while (true) {
+                    buffer.clear();
+                    if (in.read(buffer) < 0) {
+                        break;
+                    }
+                    buffer.flip();
+                    crc.update(buffer.duplicate());
+                    written += writeFully(buffer, start + written);
+                }
+            }
+            return written;
+        }
+
+        private int writeFully(ByteBuffer source, long at) throws IOException {
+            int count = source.remaining();
+            while (source.hasRemaining()) {
+                at += channel.write(source, at);
+            }
+            return count;
+        }
+
+        /**
+         * Re-read an appended entry's stored bytes and check them against its CRC
+         */
+        boolean verify(PackedFile entry) throws IOException {
+            CRC32C crc = new CRC32C();
+            long position = entry.getOffset();
+            long end = position + entry.getStoredLength();
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    return false;
+                }
+                buffer.flip();
+                crc.update(buffer);
+                position += read;
+            }
+            return crc.getValue() == entry.getCrc32c();
+        }
+
+        /**
+         * Make appended entries durable before they are indexed
+         */
+        void force() throws IOException {
+            channel.force(true);
+        }
+
+        String name() {
+            return name;
+        }
+
+        long size() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            channel.truncate(position);
+            channel.close();
+        }
+    }
+
+    /**
+     * Stored bytes of one entry, read with positional reads; closes the channel on close
+     */
+    private static final class RegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RegionInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int count = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, end - position)), position);
+            if (count < 0) {
+                throw new IOException("Pack is truncated");
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
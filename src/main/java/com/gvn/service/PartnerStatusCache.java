@@ -0,0 +1,108 @@
+package com.gvn.service;
+
+import com.gvn.entity.PartnerProfile;
+import com.gvn.repository.PartnerProfileRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short-lived cache of partner profile status keyed by user id.
+ *
+ * Entries expire after a TTL so status changes made outside this node (e.g. verification)
+ * become visible without explicit invalidation. Local writes evict after their transaction
+ * commits, and until then nothing that transaction reads for the user is cached: it may be
+ * uncommitted, and an earlier eviction would let a concurrent reader cache the old status.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PartnerStatusCache {
+
+    private final PartnerProfileRepository partnerProfileRepository;
+
+    @Value("${app.partner-status-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${app.partner-status-cache.max-entries:100000}")
+    private int maxEntries;
+
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Profile status for a user, loading it on a miss
+     */
+    public Optional<PartnerProfile.ProfileStatus> getStatus(UUID userId) {
+        Entry entry = entries.get(userId);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.loadedAt < ttlSeconds * 1_000_000_000L) {
+            return Optional.ofNullable(entry.status);
+        }
+        Optional<PartnerProfile.ProfileStatus> status = partnerProfileRepository.findProfileStatusByUserId(userId);
+        put(userId, status.orElse(null));
+        return status;
+    }
+
+    /**
+     * Store a status that was loaded by another query
+     */
+    public void put(UUID userId, PartnerProfile.ProfileStatus status) {
+        if (changedInTransaction(userId)) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            // Crude bound: entries are cheap to reload, so start over rather than track recency
+            log.debug("Partner status cache reached {} entries, clearing", maxEntries);
+            entries.clear();
+        }
+        entries.put(userId, new Entry(status, System.nanoTime()));
+    }
+
+    public void evict(UUID userId) {
+        entries.remove(userId);
+    }
+
+    /**
+     * Evict once the current transaction completes (immediately if none)
+     */
+    @SuppressWarnings("unchecked")
+    public void evictAfterCommit(UUID userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(userId);
+            return;
+        }
+        Set<UUID> changed = (Set<UUID>) TransactionSynchronizationManager.getResource(this);
+        if (changed == null) {
+            Set<UUID> bound = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, bound);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PartnerStatusCache.this);
+                    // After a rollback the cached status is still right, but dropping it is harmless
+                    bound.forEach(PartnerStatusCache.this::evict);
+                }
+            });
+            changed = bound;
+        }
+        changed.add(userId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean changedInTransaction(UUID userId) {
+        Set<UUID> changed = (Set<UUID>) TransactionSynchronizationManager.getResource(this);
+        return changed != null && changed.contains(userId);
+    }
+
+    private record Entry(PartnerProfile.ProfileStatus status, long loadedAt) {
+    }
+}
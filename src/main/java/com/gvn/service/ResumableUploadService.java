@@ -0,0 +1,308 @@
+package com.gvn.service;
+
+import com.gvn.dto.request.CreateUploadRequest;
+import com.gvn.dto.response.UploadSessionResponse;
+import com.gvn.entity.UploadSession;
+import com.gvn.exception.ConflictException;
+import com.gvn.exception.NotFoundException;
+import com.gvn.repository.UploadSessionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable uploads for large documents on unreliable networks.
+ *
+ * A client creates an upload with its total size, sends the bytes in chunks (each at an
+ * explicit offset, so a chunk cut off mid-way is simply re-sent from the last offset the
+ * server reports) and finalizes it. Chunks are written with positional FileChannel writes
+ * into a file preallocated at creation under {@code .uploads/}; the contiguous byte count
+ * is persisted after each chunk. A finalized upload id can then replace a multipart part
+ * in partner registration: consume() hands the file to FileStorageService and the upload
+ * disappears with the transaction that used it.
+ *
+ * There are no monitors. A chunk or a completion first claims its upload on this node
+ * (a set entry: a second claimant is turned away, never kept waiting), so one chunk per
+ * upload is in flight at a time, an upload cannot complete while one is, and a slow
+ * client delays nobody else. The state changes themselves are conditional UPDATEs: the
+ * recorded offset only ever moves forward from a value at or past the chunk's start and
+ * completion requires every byte, which keeps both correct even with several nodes.
+ *
+ * A user may have at most max-open-per-user uploads at once, each preallocated on disk.
+ * The new upload is saved before the user's uploads are counted, so of two racing
+ * creates at the limit both may be refused but never both accepted.
+ * Unfinished or unused uploads expire after app.file.resumable.expiry-hours.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResumableUploadService {
+
+    public static final String UPLOADS_DIR = ".uploads";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Finished uploads are only ever stored as partner documents
+    private static final String QUOTA_AREA = "documents";
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileStorageService fileStorageService;
+    private final StorageUsageService storageUsageService;
+
+    @Value("${app.file.resumable.max-size:10485760}")
+    private long maxSize;
+
+    @Value("${app.file.resumable.expiry-hours:24}")
+    private long expiryHours;
+
+    @Value("${app.file.resumable.max-open-per-user:5}")
+    private int maxOpenPerUser;
+
+    // Uploads with a chunk being received or a completion running on this node
+    private final Set<UUID> receiving = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Start an upload and preallocate its file (rejected up front if it would exceed the user's quota)
+     */
+    public UploadSessionResponse create(UUID userId, CreateUploadRequest request) {
+        if (request.getSize() > maxSize) {
+            throw new RuntimeException("File exceeds maximum size of " + maxSize + " bytes");
+        }
+        storageUsageService.checkQuota(userId, QUOTA_AREA, request.getSize());
+        UploadSession session = uploadSessionRepository.save(UploadSession.builder()
+                .userId(userId)
+                .extension(extensionOf(request.getFile_name()))
+                .contentType(request.getContent_type())
+                .size(request.getSize())
+                .expiresAt(LocalDateTime.now().plusHours(expiryHours))
+                .build());
+        // Counted after saving, so racing creates see each other
+        if (uploadSessionRepository.countByUserIdAndExpiresAtAfter(userId, LocalDateTime.now()) > maxOpenPerUser) {
+            uploadSessionRepository.delete(session);
+            throw new RuntimeException("Too many open uploads: finish or delete one of the " + maxOpenPerUser
+                    + " already started");
+        }
+
+        Path part = partPath(session.getId());
+        try {
+            Files.createDirectories(part.getParent());
+            try (RandomAccessFile file = new RandomAccessFile(part.toFile(), "rw")) {
+                file.setLength(session.getSize());
+            }
+        } catch (IOException e) {
+            uploadSessionRepository.delete(session);
+            log.error("Failed to preallocate upload {}: {}", session.getId(), e.getMessage());
+            throw new RuntimeException("Failed to create upload: " + e.getMessage());
+        }
+        log.info("Resumable upload {} created for user {} ({} bytes)", session.getId(), userId, session.getSize());
+        return UploadSessionResponse.from(session);
+    }
+
+    public UploadSessionResponse getStatus(UUID uploadId, UUID userId) {
+        return UploadSessionResponse.from(findOwned(uploadId, userId));
+    }
+
+    /**
+     * Write a chunk at offset. Offsets up to the received count are accepted (re-sent
+     * chunks overwrite the same bytes); a gap is rejected. Bytes received before the client
+     * disconnects still count.
+     * @return Status with the new offset
+     */
+    public UploadSessionResponse append(UUID uploadId, UUID userId, long offset, InputStream body) {
+        if (!receiving.add(uploadId)) {
+            throw new ConflictException("Chunk in progress: another chunk or the completion of this upload is still running");
+        }
+        try {
+            UploadSession session = findOwned(uploadId, userId);
+            if (session.getCompleted()) {
+                throw new ConflictException("Upload is already complete");
+            }
+            if (offset < 0 || offset > session.getReceivedBytes()) {
+                throw new ConflictException("Offset mismatch: expected at most " + session.getReceivedBytes());
+            }
+
+            long position = offset;
+            IOException failure = null;
+            try (FileChannel channel = FileChannel.open(partPath(uploadId), StandardOpenOption.WRITE)) {
+                byte[] chunk = new byte[BUFFER_SIZE];
+                ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                int bytesRead;
+                try {
+                    while ((bytesRead = body.read(chunk)) != -1) {
+                        if (position + bytesRead > session.getSize()) {
+                            throw new IOException("Chunk exceeds declared size of " + session.getSize() + " bytes");
+                        }
+                        buffer.clear().limit(bytesRead);
+                        while (buffer.hasRemaining()) {
+                            position += channel.write(buffer, position);
+                        }
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                // Persisted offsets must never run ahead of the data on disk
+                channel.force(false);
+            } catch (IOException e) {
+                log.error("Failed to write chunk of upload {}: {}", uploadId, e.getMessage());
+                throw new RuntimeException("Failed to write chunk: " + e.getMessage());
+            }
+
+            if (position > offset) {
+                uploadSessionRepository.advanceReceivedBytes(uploadId, offset, position);
+            }
+            // Also fails if the upload was deleted meanwhile
+            session = findOwned(uploadId, userId);
+            if (failure != null) {
+                log.warn("Chunk of upload {} interrupted at offset {}: {}", uploadId, position, failure.getMessage());
+                throw new RuntimeException("Chunk interrupted at offset " + position + ": " + failure.getMessage());
+            }
+            return UploadSessionResponse.from(session);
+        } finally {
+            receiving.remove(uploadId);
+        }
+    }
+
+    /**
+     * Mark an upload whose bytes have all arrived as ready to be used
+     */
+    public UploadSessionResponse complete(UUID uploadId, UUID userId) {
+        // Claimed like a chunk, so no chunk can start writing into a completed upload
+        if (!receiving.add(uploadId)) {
+            throw new ConflictException("Chunk in progress: wait for the last chunk to finish");
+        }
+        try {
+            UploadSession session = findOwned(uploadId, userId);
+            if (!session.getCompleted()) {
+                uploadSessionRepository.markCompleted(uploadId);
+                // Re-read either way: the update is a no-op for a short upload or one deleted meanwhile
+                session = findOwned(uploadId, userId);
+                if (!session.getCompleted()) {
+                    throw new RuntimeException("Upload is incomplete: received " + session.getReceivedBytes()
+                            + " of " + session.getSize() + " bytes");
+                }
+            }
+            return UploadSessionResponse.from(session);
+        } finally {
+            receiving.remove(uploadId);
+        }
+    }
+
+    /**
+     * Delete an upload; a chunk still being written fails when it records its offset
+     */
+    public void abort(UUID uploadId, UUID userId) {
+        UploadSession session = findOwned(uploadId, userId);
+        uploadSessionRepository.delete(session);
+        deletePart(uploadId);
+    }
+
+    /**
+     * Store a finalized upload under subdirectory, within the caller's transaction.
+     * The upload is removed when that transaction commits and kept if it rolls back.
+     * @return Relative path of the stored file
+     */
+    public String consume(UUID uploadId, UUID userId, String subdirectory) throws IOException {
+        UploadSession session = findOwned(uploadId, userId);
+        if (!session.getCompleted()) {
+            throw new RuntimeException("Upload " + uploadId + " is not complete");
+        }
+        String relativePath = fileStorageService.storeLocalFile(partPath(uploadId), session.getExtension(), subdirectory);
+        uploadSessionRepository.delete(session);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deletePart(uploadId);
+                }
+            });
+        } else {
+            deletePart(uploadId);
+        }
+        return relativePath;
+    }
+
+    /**
+     * Remove expired uploads and any part file without an upload row
+     */
+    @Scheduled(fixedDelayString = "${app.file.resumable.cleanup-ms:3600000}")
+    public void removeExpired() {
+        List<UploadSession> expired;
+        do {
+            expired = uploadSessionRepository.findTop500ByExpiresAtBefore(LocalDateTime.now());
+            for (UploadSession session : expired) {
+                uploadSessionRepository.delete(session);
+                deletePart(session.getId());
+            }
+            if (!expired.isEmpty()) {
+                log.info("Removed {} expired resumable uploads", expired.size());
+            }
+        } while (expired.size() == 500);
+
+        Path directory = fileStorageService.resolvePath(UPLOADS_DIR);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        // Older than any live upload can be: left behind by a crash between row and file deletes
+        Instant cutoff = Instant.now().minus(Duration.ofHours(expiryHours * 2));
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(directory)) {
+            for (Path part : parts) {
+                if (Files.getLastModifiedTime(part).toInstant().isBefore(cutoff)) {
+                    Files.deleteIfExists(part);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to clean stale upload parts: {}", e.getMessage());
+        }
+    }
+
+    private UploadSession findOwned(UUID uploadId, UUID userId) {
+        return uploadSessionRepository.findById(uploadId)
+                .filter(session -> session.getUserId().equals(userId))
+                .filter(session -> session.getExpiresAt().isAfter(LocalDateTime.now()))
+                .orElseThrow(() -> new NotFoundException("Upload not found: " + uploadId));
+    }
+
+    private Path partPath(UUID uploadId) {
+        return fileStorageService.resolvePath(UPLOADS_DIR + "/" + uploadId + ".part");
+    }
+
+    private void deletePart(UUID uploadId) {
+        try {
+            Files.deleteIfExists(partPath(uploadId));
+        } catch (IOException e) {
+            log.warn("Failed to delete upload part {}: {}", uploadId, e.getMessage());
+        }
+    }
+
+    /**
+     * Extension of the client's file name, if it is a plain one (e.g. ".pdf")
+     */
+    private static String extensionOf(String fileName) {
+        if (fileName == null || !fileName.contains(".")) {
+            return "";
+        }
+        String extension = fileName.substring(fileName.lastIndexOf('.'));
+        return extension.length() <= 10 && extension.substring(1).matches("[A-Za-z0-9]+") ? extension : "";
+    }
+}
@@ -0,0 +1,345 @@
+package com.gvn.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores objects in an S3-protocol bucket (AWS S3, MinIO, Ceph RGW, ...).
+ *
+ * Requests are signed with AWS Signature V4 over java.net.http, so no SDK is needed.
+ * Uploads are streamed in part-size chunks: anything smaller than one part is a single
+ * PUT, larger content becomes a multipart upload (aborted on failure). Reads can be
+ * handed to clients as presigned GET URLs so file bytes never pass through the JVM.
+ *
+ * At-rest encryption (FileEncryption) works on local files only, and presigned reads
+ * would hand clients ciphertext, so starting with both enabled is refused rather than
+ * uploading documents in plaintext; use the bucket's server-side encryption instead.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "s3")
+@Slf4j
+public class S3StorageBackend implements StorageBackend {
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final DateTimeFormatter AMZ_DATE =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter DATE_STAMP =
+            DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+    private static final Pattern UPLOAD_ID = Pattern.compile("<UploadId>([^<]+)</UploadId>");
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024; // S3 minimum for all but the last part
+
+    private final HttpClient httpClient;
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final boolean pathStyle;
+    private final int partSize;
+
+    public S3StorageBackend(@Value("${app.storage.s3.endpoint}") String endpoint,
+                            @Value("${app.storage.s3.region:us-east-1}") String region,
+                            @Value("${app.storage.s3.bucket}") String bucket,
+                            @Value("${app.storage.s3.access-key}") String accessKey,
+                            @Value("${app.storage.s3.secret-key}") String secretKey,
+                            @Value("${app.storage.s3.path-style:true}") boolean pathStyle,
+                            @Value("${app.storage.s3.part-size-mb:8}") int partSizeMb,
+                            @Value("${app.file.encryption.enabled:false}") boolean encryptionEnabled) {
+        if (encryptionEnabled) {
+            throw new IllegalStateException("app.file.encryption is not supported with the s3 storage backend "
+                    + "(documents would be uploaded in plaintext); disable it and use bucket-side encryption");
+        }
+        this.endpoint = URI.create(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint);
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.pathStyle = pathStyle;
+        this.partSize = Math.max(MIN_PART_SIZE, partSizeMb * 1024 * 1024);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length, String contentType) throws IOException {
+        byte[] part = content.readNBytes(partSize);
+        if (part.length < partSize) {
+            send("PUT", key, Map.of(), part, contentType);
+            return;
+        }
+
+        String uploadId = createMultipartUpload(key, contentType);
+        try {
+            List<String> etags = new ArrayList<>();
+            int partNumber = 1;
+            while (part.length > 0) {
+                Map<String, String> query = Map.of("partNumber", String.valueOf(partNumber), "uploadId", uploadId);
+                HttpResponse<String> response = send("PUT", key, query, part, null);
+                etags.add(response.headers().firstValue("ETag")
+                        .orElseThrow(() -> new IOException("S3 part upload returned no ETag")));
+                partNumber++;
+                part = content.readNBytes(partSize);
+            }
+            completeMultipartUpload(key, uploadId, etags);
+            log.debug("Stored {} in {} parts", key, etags.size());
+        } catch (IOException | RuntimeException e) {
+            abortMultipartUpload(key, uploadId);
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        URI uri = objectUri(key, Map.of());
+        HttpRequest request = signedRequest("GET", uri, null, null);
+        HttpResponse<InputStream> response = execute(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == 200) {
+            return response.body();
+        }
+        try (InputStream body = response.body()) {
+            body.readAllBytes();
+        }
+        if (response.statusCode() == 404) {
+            throw new NoSuchFileException(key);
+        }
+        throw new IOException("S3 GET " + key + " failed with status " + response.statusCode());
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        // S3 answers 204 whether or not the key existed, so check first to keep the contract
+        HttpRequest head = signedRequest("HEAD", objectUri(key, Map.of()), null, null);
+        if (execute(head, HttpResponse.BodyHandlers.discarding()).statusCode() == 404) {
+            return false;
+        }
+        send("DELETE", key, Map.of(), null, null);
+        return true;
+    }
+
+    @Override
+    public Optional<String> presignedGetUrl(String key, Duration ttl) {
+        return Optional.of(presign("GET", objectUri(key, Map.of()), Instant.now(), ttl));
+    }
+
+    private String createMultipartUpload(String key, String contentType) throws IOException {
+        HttpResponse<String> response = send("POST", key, Map.of("uploads", ""), null, contentType);
+        Matcher matcher = UPLOAD_ID.matcher(response.body());
+        if (!matcher.find()) {
+            throw new IOException("S3 did not return an UploadId for " + key);
+        }
+        return matcher.group(1);
+    }
+
+    private void completeMultipartUpload(String key, String uploadId, List<String> etags) throws IOException {
+        StringBuilder body = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            body.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                    .append(etags.get(i)).append("</ETag></Part>");
+        }
+        body.append("</CompleteMultipartUpload>");
+        HttpResponse<String> response = send("POST", key, Map.of("uploadId", uploadId),
+                body.toString().getBytes(StandardCharsets.UTF_8), "application/xml");
+        // Completion can fail after the 200 status line has been sent
+        if (response.body().contains("<Error>")) {
+            throw new IOException("S3 multipart completion failed for " + key + ": " + response.body());
+        }
+    }
+
+    private void abortMultipartUpload(String key, String uploadId) {
+        try {
+            send("DELETE", key, Map.of("uploadId", uploadId), null, null);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to abort multipart upload {} for {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    private HttpResponse<String> send(String method, String key, Map<String, String> query, byte[] body,
+                                      String contentType) throws IOException {
+        HttpRequest request = signedRequest(method, objectUri(key, query), body, contentType);
+        HttpResponse<String> response = execute(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("S3 " + method + " " + key + " failed with status " + response.statusCode()
+                    + ": " + response.body());
+        }
+        return response;
+    }
+
+    private <T> HttpResponse<T> execute(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return httpClient.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling S3", e);
+        }
+    }
+
+    /**
+     * Build a request signed with SigV4 header authentication
+     */
+    private HttpRequest signedRequest(String method, URI uri, byte[] body, String contentType) {
+        Instant now = Instant.now();
+        String amzDate = AMZ_DATE.format(now);
+        String dateStamp = DATE_STAMP.format(now);
+        String payloadHash = sha256Hex(body != null ? body : new byte[0]);
+
+        String signedHeaders = "host;x-amz-content-sha256;x-amz-date";
+        String canonicalRequest = method + "\n"
+                + uri.getRawPath() + "\n"
+                + (uri.getRawQuery() != null ? uri.getRawQuery() : "") + "\n"
+                + "host:" + hostHeader(uri) + "\n"
+                + "x-amz-content-sha256:" + payloadHash + "\n"
+                + "x-amz-date:" + amzDate + "\n"
+                + "\n"
+                + signedHeaders + "\n"
+                + payloadHash;
+        String scope = dateStamp + "/" + region + "/s3/aws4_request";
+        String signature = sign(dateStamp, stringToSign(amzDate, scope, canonicalRequest));
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(60))
+                .header("x-amz-content-sha256", payloadHash)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", ALGORITHM + " Credential=" + accessKey + "/" + scope
+                        + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature)
+                .method(method, body != null
+                        ? HttpRequest.BodyPublishers.ofByteArray(body)
+                        : HttpRequest.BodyPublishers.noBody());
+        if (contentType != null) {
+            builder.header("Content-Type", contentType);
+        }
+        return builder.build();
+    }
+
+    /**
+     * SigV4 query-string signature (the payload is not signed, as for any presigned GET)
+     */
+    String presign(String method, URI uri, Instant now, Duration ttl) {
+        String amzDate = AMZ_DATE.format(now);
+        String dateStamp = DATE_STAMP.format(now);
+        String scope = dateStamp + "/" + region + "/s3/aws4_request";
+
+        Map<String, String> query = new TreeMap<>();
+        query.put("X-Amz-Algorithm", ALGORITHM);
+        query.put("X-Amz-Credential", accessKey + "/" + scope);
+        query.put("X-Amz-Date", amzDate);
+        query.put("X-Amz-Expires", String.valueOf(ttl.toSeconds()));
+        query.put("X-Amz-SignedHeaders", "host");
+        String canonicalQuery = canonicalQuery(query);
+
+        String canonicalRequest = method + "\n"
+                + uri.getRawPath() + "\n"
+                + canonicalQuery + "\n"
+                + "host:" + hostHeader(uri) + "\n"
+                + "\n"
+                + "host\n"
+                + UNSIGNED_PAYLOAD;
+        String signature = sign(dateStamp, stringToSign(amzDate, scope, canonicalRequest));
+        return uri + "?" + canonicalQuery + "&X-Amz-Signature=" + signature;
+    }
+
+    private URI objectUri(String key, Map<String, String> query) {
+        StringBuilder path = new StringBuilder();
+        for (String segment : key.split("/")) {
+            path.append('/').append(encode(segment));
+        }
+        String base = pathStyle
+                ? endpoint + "/" + encode(bucket) + path
+                : endpoint.getScheme() + "://" + bucket + "." + endpoint.getRawAuthority() + path;
+        return URI.create(query.isEmpty() ? base : base + "?" + canonicalQuery(new TreeMap<>(query)));
+    }
+
+    private String stringToSign(String amzDate, String scope, String canonicalRequest) {
+        return ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+                + sha256Hex(canonicalRequest.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String sign(String dateStamp, String stringToSign) {
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), dateStamp);
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        return HexFormat.of().formatHex(hmac(key, stringToSign));
+    }
+
+    private static String canonicalQuery(Map<String, String> sortedQuery) {
+        StringBuilder query = new StringBuilder();
+        for (Map.Entry<String, String> entry : sortedQuery.entrySet()) {
+            if (!query.isEmpty()) {
+                query.append('&');
+            }
+            query.append(encode(entry.getKey())).append('=').append(encode(entry.getValue()));
+        }
+        return query.toString();
+    }
+
+    private static String hostHeader(URI uri) {
+        int port = uri.getPort();
+        boolean defaultPort = port == -1
+                || ("https".equals(uri.getScheme()) && port == 443)
+                || ("http".equals(uri.getScheme()) && port == 80);
+        return defaultPort ? uri.getHost() : uri.getHost() + ":" + port;
+    }
+
+    /**
+     * RFC 3986 encoding as SigV4 expects (only unreserved characters left as-is)
+     */
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8)
+                .replace("+", "%20")
+                .replace("*", "%2A")
+                .replace("%7E", "~");
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static String sha256Hex(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -5,13 +5,13 @@ import com.gvn.dto.response.CategoryResponse;
 import com.gvn.dto.response.OptionResponse;
 import com.gvn.dto.response.ServiceResponse;
 import com.gvn.entity.Category;
-import com.gvn.entity.PartnerService;
-import com.gvn.entity.ServiceOption;
 import com.gvn.entity.User;
 import com.gvn.repository.CategoryRepository;
 import com.gvn.repository.PartnerServiceRepository;
 import com.gvn.repository.ServiceOptionRepository;
 import com.gvn.repository.ServiceRepository;
+import com.gvn.repository.projection.CategoryView;
+import com.gvn.repository.projection.ServiceView;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -33,6 +33,8 @@ public class ServiceService {
     private final ServiceOptionRepository serviceOptionRepository;
     private final PartnerServiceRepository partnerServiceRepository;
     private final FileStorageService fileStorageService;
+    private final ImageVariantService imageVariantService;
+    private final IconSpriteService iconSpriteService;
     
     /**
      * Get all active categories ordered by display_order
@@ -40,9 +42,9 @@ public class ServiceService {
     @Transactional(readOnly = true)
     public List<CategoryResponse> getAllCategories() {
         try {
-            List<Category> categories = categoryRepository.findByIsActiveTrueOrderByDisplayOrderAsc();
+            List<CategoryView> categories = categoryRepository.findActiveViews();
             return categories.stream()
-                    .map(CategoryResponse::fromCategory)
+                    .map(CategoryResponse::fromView)
                     .collect(Collectors.toList());
         } catch (Exception e) {
             log.error("Error retrieving categories: ", e);
@@ -57,12 +59,13 @@ public class ServiceService {
     public List<ServiceResponse> getServicesByCategory(Integer categoryId) {
         try {
             // Validate category exists
-            categoryRepository.findById(categoryId)
-                    .orElseThrow(() -> new RuntimeException("Category not found with id: " + categoryId));
+            if (!categoryRepository.existsById(categoryId)) {
+                throw new RuntimeException("Category not found with id: " + categoryId);
+            }
             
-            List<com.gvn.entity.Service> services = serviceRepository.findByCategoryIdAndIsActiveTrueOrderByNameAsc(categoryId);
+            List<ServiceView> services = serviceRepository.findActiveViewsByCategoryId(categoryId);
             return services.stream()
-                    .map(ServiceResponse::fromService)
+                    .map(ServiceResponse::fromView)
                     .collect(Collectors.toList());
         } catch (RuntimeException e) {
             throw e;
@@ -79,34 +82,23 @@ public class ServiceService {
     public List<AvailableServiceResponse> getAvailableServicesForPartner(User user) {
         try {
             // Get all active categories
-            List<Category> categories = categoryRepository.findByIsActiveTrueOrderByDisplayOrderAsc();
-            
-            // Get partner's active services
-            List<PartnerService> partnerServices = partnerServiceRepository.findByUserAndIsActiveTrue(user);
-            Map<Integer, Boolean> partnerServiceMap = partnerServices.stream()
-                    .collect(Collectors.toMap(
-                            ps -> ps.getService().getId(),
-                            ps -> true
+            List<CategoryView> categories = categoryRepository.findActiveViews();
+            
+            // Get partner's active services in a single query, grouped by category (name order is kept)
+            Map<Integer, List<ServiceResponse>> servicesByCategory = serviceRepository
+                    .findActiveViewsForPartner(user.getId()).stream()
+                    .collect(Collectors.groupingBy(
+                            ServiceView::categoryId,
+                            Collectors.mapping(ServiceResponse::fromView, Collectors.toList())
                     ));
             
             // Group services by category
             return categories.stream()
-                    .map(category -> {
-                        List<com.gvn.entity.Service> categoryServices = serviceRepository
-                                .findByCategoryIdAndIsActiveTrueOrderByNameAsc(category.getId());
-                        
-                        // Filter only services that partner has
-                        List<ServiceResponse> availableServices = categoryServices.stream()
-                                .filter(service -> partnerServiceMap.containsKey(service.getId()))
-                                .map(ServiceResponse::fromService)
-                                .collect(Collectors.toList());
-                        
-                        return AvailableServiceResponse.builder()
-                                .id(category.getId())
-                                .name(category.getName())
-                                .services(availableServices)
-                                .build();
-                    })
+                    .map(category -> AvailableServiceResponse.builder()
+                            .id(category.id())
+                            .name(category.name())
+                            .services(servicesByCategory.getOrDefault(category.id(), List.of()))
+                            .build())
                     .filter(category -> !category.getServices().isEmpty()) // Only include categories with services
                     .collect(Collectors.toList());
         } catch (Exception e) {
@@ -124,18 +116,15 @@ public class ServiceService {
                                                    String fromDate, String toDate) {
         try {
             // Validate service exists
-            serviceRepository.findById(serviceId)
-                    .orElseThrow(() -> new RuntimeException("Service not found with id: " + serviceId));
+            if (!serviceRepository.existsById(serviceId)) {
+                throw new RuntimeException("Service not found with id: " + serviceId);
+            }
             
             // Get options by source and service
-            List<ServiceOption> options = serviceOptionRepository
-                    .findBySourceAndServiceIdAndIsActiveTrueOrderByDisplayOrderAsc(source, serviceId);
-            
             // Additional filtering logic can be added here based on optional parameters
             // For now, we return all active options for the source and service
-            
-            return options.stream()
-                    .map(OptionResponse::fromServiceOption)
+            return serviceOptionRepository.findActiveViews(source, serviceId).stream()
+                    .map(OptionResponse::fromView)
                     .collect(Collectors.toList());
         } catch (RuntimeException e) {
             throw e;
@@ -151,9 +140,9 @@ public class ServiceService {
     @Transactional(readOnly = true)
     public CategoryResponse getCategoryById(Integer id) {
         try {
-            Category category = categoryRepository.findById(id)
+            CategoryView category = categoryRepository.findViewById(id)
                     .orElseThrow(() -> new RuntimeException("Category not found with id: " + id));
-            return CategoryResponse.fromCategory(category);
+            return CategoryResponse.fromView(category);
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
@@ -175,15 +164,13 @@ public class ServiceService {
             }
             
             // Check if category with same name already exists
-            List<Category> existingCategories = categoryRepository.findAll();
-            for (Category cat : existingCategories) {
-                if (cat.getName().equalsIgnoreCase(name.trim())) {
-                    throw new RuntimeException("Category with name '" + name + "' already exists");
-                }
+            if (categoryRepository.existsByNameIgnoreCase(name.trim())) {
+                throw new RuntimeException("Category with name '" + name + "' already exists");
             }
             
             // Handle icon
             String finalIconUrl = null;
+            String iconPath = null;
             if (iconFile != null && !iconFile.isEmpty()) {
                 // Validate file size (5MB max)
                 long maxFileSize = 5L * 1024 * 1024; // 5MB
@@ -192,7 +179,7 @@ public class ServiceService {
                 }
                 
                 // Store icon file
-                String iconPath = fileStorageService.storeFile(iconFile, "categories");
+                iconPath = fileStorageService.storeFile(iconFile, "categories");
                 finalIconUrl = fileStorageService.getFileUrl(iconPath);
             } else if (iconUrl != null && !iconUrl.trim().isEmpty()) {
                 finalIconUrl = iconUrl.trim();
@@ -207,6 +194,10 @@ public class ServiceService {
                     .build();
             
             Category savedCategory = categoryRepository.save(category);
+            if (iconPath != null) {
+                scheduleCategoryIconVariants(savedCategory.getId(), iconPath, finalIconUrl);
+            }
+            iconSpriteService.rebuildAfterCommit();
             log.info("Category created successfully: {}", savedCategory.getId());
             
             return CategoryResponse.fromCategory(savedCategory);
@@ -231,11 +222,8 @@ public class ServiceService {
             // Update name if provided
             if (name != null && !name.trim().isEmpty()) {
                 // Check if another category with same name exists
-                List<Category> existingCategories = categoryRepository.findAll();
-                for (Category cat : existingCategories) {
-                    if (!cat.getId().equals(id) && cat.getName().equalsIgnoreCase(name.trim())) {
-                        throw new RuntimeException("Category with name '" + name + "' already exists");
-                    }
+                if (categoryRepository.existsByNameIgnoreCaseAndIdNot(name.trim(), id)) {
+                    throw new RuntimeException("Category with name '" + name + "' already exists");
                 }
                 category.setName(name.trim());
             }
@@ -248,26 +236,32 @@ public class ServiceService {
                     throw new RuntimeException("Icon file exceeds maximum size of 5MB");
                 }
                 
-                // Delete old icon if exists
+                // Delete old icon and its variants if exists
                 if (category.getIcon() != null) {
+                    imageVariantService.deleteVariants(category.getIconVariants(), category.getIcon());
                     String oldPath = extractPathFromUrl(category.getIcon());
                     if (oldPath != null) {
                         fileStorageService.deleteFile(oldPath);
                     }
                 }
                 
-                // Store new icon
+                // Store new icon; variants are generated in the background after commit
                 String iconPath = fileStorageService.storeFile(iconFile, "categories");
-                category.setIcon(fileStorageService.getFileUrl(iconPath));
+                String newIconUrl = fileStorageService.getFileUrl(iconPath);
+                category.setIcon(newIconUrl);
+                category.setIconVariants(null);
+                scheduleCategoryIconVariants(category.getId(), iconPath, newIconUrl);
             } else if (iconUrl != null) {
                 // Delete old icon file if switching to URL
                 if (category.getIcon() != null && category.getIcon().startsWith("/api/v1/files/")) {
+                    imageVariantService.deleteVariants(category.getIconVariants(), category.getIcon());
                     String oldPath = extractPathFromUrl(category.getIcon());
                     if (oldPath != null) {
                         fileStorageService.deleteFile(oldPath);
                     }
                 }
                 category.setIcon(iconUrl.trim().isEmpty() ? null : iconUrl.trim());
+                category.setIconVariants(null);
             }
             
             // Update display order if provided
@@ -281,6 +275,7 @@ public class ServiceService {
             }
             
             Category updatedCategory = categoryRepository.save(category);
+            iconSpriteService.rebuildAfterCommit();
             log.info("Category updated successfully: {}", updatedCategory.getId());
             
             return CategoryResponse.fromCategory(updatedCategory);
@@ -302,13 +297,14 @@ public class ServiceService {
                     .orElseThrow(() -> new RuntimeException("Category not found with id: " + id));
             
             // Check if category is being used by any services
-            List<com.gvn.entity.Service> services = serviceRepository.findByCategoryIdAndIsActiveTrueOrderByNameAsc(id);
-            if (!services.isEmpty()) {
-                throw new RuntimeException("Cannot delete category: Category is being used by " + services.size() + " service(s)");
+            long serviceCount = serviceRepository.countByCategoryIdAndIsActiveTrue(id);
+            if (serviceCount > 0) {
+                throw new RuntimeException("Cannot delete category: Category is being used by " + serviceCount + " service(s)");
             }
             
             // Delete icon file if exists
             if (category.getIcon() != null && category.getIcon().startsWith("/api/v1/files/")) {
+                imageVariantService.deleteVariants(category.getIconVariants(), category.getIcon());
                 String iconPath = extractPathFromUrl(category.getIcon());
                 if (iconPath != null) {
                     fileStorageService.deleteFile(iconPath);
@@ -317,6 +313,7 @@ public class ServiceService {
             
             // Delete category
             categoryRepository.delete(category);
+            iconSpriteService.rebuildAfterCommit();
             log.info("Category deleted successfully: {}", id);
         } catch (RuntimeException e) {
             throw e;
@@ -332,9 +329,9 @@ public class ServiceService {
     @Transactional(readOnly = true)
     public ServiceResponse getServiceById(Integer id) {
         try {
-            com.gvn.entity.Service service = serviceRepository.findById(id)
+            ServiceView service = serviceRepository.findViewById(id)
                     .orElseThrow(() -> new RuntimeException("Service not found with id: " + id));
-            return ServiceResponse.fromService(service);
+            return ServiceResponse.fromView(service);
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
@@ -363,16 +360,19 @@ public class ServiceService {
             }
             
             // Check if service code already exists
-            if (serviceRepository.findByCode(code.trim()).isPresent()) {
+            if (serviceRepository.findIdByCode(code.trim()).isPresent()) {
                 throw new RuntimeException("Service with code '" + code.trim() + "' already exists");
             }
             
-            // Validate category exists
-            Category category = categoryRepository.findById(categoryId)
-                    .orElseThrow(() -> new RuntimeException("Category not found with id: " + categoryId));
+            // Validate category exists (only a reference is needed for the FK)
+            if (!categoryRepository.existsById(categoryId)) {
+                throw new RuntimeException("Category not found with id: " + categoryId);
+            }
+            Category category = categoryRepository.getReferenceById(categoryId);
             
             // Handle icon
             String finalIconUrl = null;
+            String iconPath = null;
             if (iconFile != null && !iconFile.isEmpty()) {
                 // Validate file size (5MB max)
                 long maxFileSize = 5L * 1024 * 1024; // 5MB
@@ -381,7 +381,7 @@ public class ServiceService {
                 }
                 
                 // Store icon file
-                String iconPath = fileStorageService.storeFile(iconFile, "services");
+                iconPath = fileStorageService.storeFile(iconFile, "services");
                 finalIconUrl = fileStorageService.getFileUrl(iconPath);
             } else if (iconUrl != null && !iconUrl.trim().isEmpty()) {
                 finalIconUrl = iconUrl.trim();
@@ -398,6 +398,9 @@ public class ServiceService {
                     .build();
             
             com.gvn.entity.Service savedService = serviceRepository.save(service);
+            if (iconPath != null) {
+                scheduleServiceIconVariants(savedService.getId(), iconPath, finalIconUrl);
+            }
             log.info("Service created successfully: {}", savedService.getId());
             
             return ServiceResponse.fromService(savedService);
@@ -423,9 +426,9 @@ public class ServiceService {
             // Update code if provided
             if (code != null && !code.trim().isEmpty()) {
                 // Check if another service with same code exists
-                serviceRepository.findByCode(code.trim())
-                        .ifPresent(existingService -> {
-                            if (!existingService.getId().equals(id)) {
+                serviceRepository.findIdByCode(code.trim())
+                        .ifPresent(existingId -> {
+                            if (!existingId.equals(id)) {
                                 throw new RuntimeException("Service with code '" + code.trim() + "' already exists");
                             }
                         });
@@ -450,33 +453,40 @@ public class ServiceService {
                     throw new RuntimeException("Icon file exceeds maximum size of 5MB");
                 }
                 
-                // Delete old icon if exists
+                // Delete old icon and its variants if exists
                 if (service.getIcon() != null && service.getIcon().startsWith("/api/v1/files/")) {
+                    imageVariantService.deleteVariants(service.getIconVariants(), service.getIcon());
                     String oldPath = extractPathFromUrl(service.getIcon());
                     if (oldPath != null) {
                         fileStorageService.deleteFile(oldPath);
                     }
                 }
                 
-                // Store new icon
+                // Store new icon; variants are generated in the background after commit
                 String iconPath = fileStorageService.storeFile(iconFile, "services");
-                service.setIcon(fileStorageService.getFileUrl(iconPath));
+                String newIconUrl = fileStorageService.getFileUrl(iconPath);
+                service.setIcon(newIconUrl);
+                service.setIconVariants(null);
+                scheduleServiceIconVariants(service.getId(), iconPath, newIconUrl);
             } else if (iconUrl != null) {
                 // Delete old icon file if switching to URL
                 if (service.getIcon() != null && service.getIcon().startsWith("/api/v1/files/")) {
+                    imageVariantService.deleteVariants(service.getIconVariants(), service.getIcon());
                     String oldPath = extractPathFromUrl(service.getIcon());
                     if (oldPath != null) {
                         fileStorageService.deleteFile(oldPath);
                     }
                 }
                 service.setIcon(iconUrl.trim().isEmpty() ? null : iconUrl.trim());
+                service.setIconVariants(null);
             }
             
             // Update category if provided
             if (categoryId != null) {
-                Category category = categoryRepository.findById(categoryId)
-                        .orElseThrow(() -> new RuntimeException("Category not found with id: " + categoryId));
-                service.setCategory(category);
+                if (!categoryRepository.existsById(categoryId)) {
+                    throw new RuntimeException("Category not found with id: " + categoryId);
+                }
+                service.setCategory(categoryRepository.getReferenceById(categoryId));
             }
             
             // Update active status if provided
@@ -506,13 +516,14 @@ public class ServiceService {
                     .orElseThrow(() -> new RuntimeException("Service not found with id: " + id));
             
             // Check if service is being used by any partners
-            List<PartnerService> partnerServices = partnerServiceRepository.findByServiceId(id);
-            if (!partnerServices.isEmpty()) {
-                throw new RuntimeException("Cannot delete service: Service is being used by " + partnerServices.size() + " partner(s)");
+            long partnerCount = partnerServiceRepository.countByServiceId(id);
+            if (partnerCount > 0) {
+                throw new RuntimeException("Cannot delete service: Service is being used by " + partnerCount + " partner(s)");
             }
             
             // Delete icon file if exists
             if (service.getIcon() != null && service.getIcon().startsWith("/api/v1/files/")) {
+                imageVariantService.deleteVariants(service.getIconVariants(), service.getIcon());
                 String iconPath = extractPathFromUrl(service.getIcon());
                 if (iconPath != null) {
                     fileStorageService.deleteFile(iconPath);
@@ -530,6 +541,22 @@ public class ServiceService {
         }
     }
     
+    /**
+     * Generate responsive icon variants after commit and record them on the category
+     */
+    private void scheduleCategoryIconVariants(Integer categoryId, String iconPath, String iconUrl) {
+        imageVariantService.generateAfterCommit(iconPath, ImageVariantService.Kind.ICON,
+                (variants, placeholder) -> categoryRepository.updateIconVariants(categoryId, iconUrl, variants));
+    }
+    
+    /**
+     * Generate responsive icon variants after commit and record them on the service
+     */
+    private void scheduleServiceIconVariants(Integer serviceId, String iconPath, String iconUrl) {
+        imageVariantService.generateAfterCommit(iconPath, ImageVariantService.Kind.ICON,
+                (variants, placeholder) -> serviceRepository.updateIconVariants(serviceId, iconUrl, variants));
+    }
+    
     /**
      * Extract relative path from full URL
      */
@@ -0,0 +1,161 @@
+package com.gvn.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Expiring, HMAC-SHA256 signed URLs for uploads in private areas (identity documents).
+ *
+ * A signed URL is {@code /api/v1/files/<path>?expires=<epoch seconds>&scope=<scope>&sig=<mac>}
+ * where the MAC covers path, expiry and scope. FileServingService checks it with one MAC
+ * computation and no database or session lookup; files in private areas are refused
+ * without a valid signature. URLs are minted when a response containing them is built.
+ */
+@Service
+@Slf4j
+public class SignedUrlService {
+
+    public static final String SCOPE_READ = "read";
+
+    private static final String FILE_URL_PREFIX = "/api/v1/files/";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    private final List<String> privateAreas;
+
+    // Mac instances are not thread-safe; one initialized instance per thread
+    private final ThreadLocal<Mac> macs;
+
+    public SignedUrlService(@Value("${app.file.signed-urls.secret}") String secret,
+                            @Value("${app.file.signed-urls.ttl-seconds:300}") long ttlSeconds,
+                            @Value("${app.file.signed-urls.private-areas:documents}") String[] privateAreas) {
+        if (secret == null || secret.length() < 32) {
+            throw new IllegalStateException("app.file.signed-urls.secret must be at least 32 characters");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.privateAreas = Arrays.stream(privateAreas).map(String::trim).filter(area -> !area.isEmpty())
+                .map(area -> area.endsWith("/") ? area : area + "/").toList();
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * Whether files under this stored path are only served through signed URLs.
+     * Dot segments are resolved first, and a path that climbs out of the upload
+     * directory counts as private.
+     */
+    public boolean isPrivate(String relativePath) {
+        String normalized = normalize(relativePath);
+        if (normalized == null) {
+            return true;
+        }
+        for (String area : privateAreas) {
+            if ((normalized + "/").startsWith(area)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Short-lived URL for a stored file URL; public files and non-upload URLs are returned as is
+     */
+    public String sign(String fileUrl) {
+        if (fileUrl == null || !fileUrl.startsWith(FILE_URL_PREFIX)) {
+            return fileUrl;
+        }
+        String relativePath = fileUrl.substring(FILE_URL_PREFIX.length());
+        if (!isPrivate(relativePath)) {
+            return fileUrl;
+        }
+        long expires = Instant.now().plus(ttl).getEpochSecond();
+        return fileUrl + "?expires=" + expires + "&scope=" + SCOPE_READ
+                + "&sig=" + ENCODER.encodeToString(mac(relativePath, expires, SCOPE_READ));
+    }
+
+    /**
+     * Check the signature parameters of a request for relativePath
+     * @return true if they were minted by this server for this path and scope and have not expired
+     */
+    public boolean verify(String relativePath, String expires, String scope, String signature) {
+        if (expires == null || signature == null || !SCOPE_READ.equals(scope)) {
+            return false;
+        }
+        long expiresAt;
+        byte[] presented;
+        try {
+            expiresAt = Long.parseLong(expires);
+            presented = DECODER.decode(signature);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (expiresAt < Instant.now().getEpochSecond()) {
+            return false;
+        }
+        return MessageDigest.isEqual(presented, mac(relativePath, expiresAt, scope));
+    }
+
+    /**
+     * Seconds until a verified URL expires, for its Cache-Control lifetime
+     */
+    public static long secondsLeft(String expires) {
+        try {
+            return Math.max(0, Long.parseLong(expires) - Instant.now().getEpochSecond());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Path with empty and dot segments resolved, or null if it leaves the upload directory
+     */
+    private static String normalize(String relativePath) {
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : relativePath.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                if (segments.pollLast() == null) {
+                    return null;
+                }
+                continue;
+            }
+            segments.addLast(segment);
+        }
+        return String.join("/", segments);
+    }
+
+    private byte[] mac(String relativePath, long expires, String scope) {
+        Mac mac = macs.get();
+        // Newlines cannot occur in stored paths, so fields cannot be shifted into one another
+        return mac.doFinal((relativePath + "\n" + expires + "\n" + scope).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.gvn.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * File changes made inside one transaction, applied when it completes.
+ *
+ * New uploads wait in the staging area and are moved into place just before commit; a
+ * failed move rolls the transaction back. Deletes of existing files are held until after
+ * commit and then run on the upload executor, so a rolled-back transaction keeps every
+ * file its rows still point at and the request never waits on unlinks.
+ *
+ * Uploads written straight to an object store (nothing to stage) are deleted on rollback.
+ * Stored and deleted files are counted against the user the transaction runs for.
+ * Bound as a transaction resource keyed by the FileStorageService that created it.
+ */
+@Slf4j
+final class StagedFileChanges implements TransactionSynchronization {
+
+    private final FileStorageService fileStorageService;
+    private final UploadExecutor uploadExecutor;
+    private final UUID ownerId;
+
+    // Relative path -> staged file, in upload order
+    private final Map<String, Path> staged = new LinkedHashMap<>();
+    private final List<String> created = new ArrayList<>();
+    private final List<String> deletes = new ArrayList<>();
+    private boolean completed;
+
+    StagedFileChanges(FileStorageService fileStorageService, UploadExecutor uploadExecutor, UUID ownerId) {
+        this.fileStorageService = fileStorageService;
+        this.uploadExecutor = uploadExecutor;
+        this.ownerId = ownerId;
+    }
+
+    /**
+     * Promote stagedFile to relativePath when the transaction commits
+     */
+    synchronized void stage(String relativePath, Path stagedFile) throws IOException {
+        if (completed) {
+            // Async upload finished after the transaction did
+            Files.deleteIfExists(stagedFile);
+            throw new IOException("Transaction already completed, upload discarded: " + relativePath);
+        }
+        staged.put(relativePath, stagedFile);
+    }
+
+    /**
+     * Record a file already written in place, to be removed if the transaction rolls back
+     */
+    synchronized void created(String relativePath) {
+        created.add(relativePath);
+    }
+
+    /**
+     * Drop an upload staged in this transaction (it was never visible, so no need to wait)
+     * @return false if relativePath was not staged here
+     */
+    boolean discard(String relativePath) {
+        Path stagedFile;
+        synchronized (this) {
+            stagedFile = staged.remove(relativePath);
+        }
+        if (stagedFile == null) {
+            return false;
+        }
+        try {
+            Files.deleteIfExists(stagedFile);
+        } catch (IOException e) {
+            log.warn("Failed to delete staged file {}: {}", stagedFile, e.getMessage());
+        }
+        return true;
+    }
+
+    synchronized void deleteAfterCommit(String relativePath) {
+        deletes.add(relativePath);
+    }
+
+    @Override
+    public void suspend() {
+        TransactionSynchronizationManager.unbindResource(fileStorageService);
+    }
+
+    @Override
+    public void resume() {
+        TransactionSynchronizationManager.bindResource(fileStorageService, this);
+    }
+
+    @Override
+    public void beforeCommit(boolean readOnly) {
+        List<Map.Entry<String, Path>> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(staged.entrySet());
+        }
+        for (Map.Entry<String, Path> entry : pending) {
+            try {
+                fileStorageService.promote(entry.getValue(), entry.getKey(), ownerId);
+            } catch (IOException e) {
+                log.error("Failed to promote staged upload {}: {}", entry.getKey(), e.getMessage());
+                throw new RuntimeException("Failed to store file: " + e.getMessage(), e);
+            }
+            synchronized (this) {
+                staged.remove(entry.getKey());
+                created.add(entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+        TransactionSynchronizationManager.unbindResourceIfPossible(fileStorageService);
+        List<Path> stagedFiles;
+        List<String> toDelete;
+        List<String> stored = List.of();
+        synchronized (this) {
+            completed = true;
+            stagedFiles = new ArrayList<>(staged.values());
+            if (status == STATUS_COMMITTED) {
+                toDelete = new ArrayList<>(deletes);
+                stored = new ArrayList<>(created);
+            } else if (status == STATUS_ROLLED_BACK) {
+                toDelete = new ArrayList<>(created);
+            } else {
+                // Outcome unknown: keep everything, the orphan collector sorts it out
+                toDelete = List.of();
+            }
+            staged.clear();
+        }
+        stored.forEach(fileStorageService::precompressLater);
+        if (stagedFiles.isEmpty() && toDelete.isEmpty()) {
+            return;
+        }
+        uploadExecutor.submit(() -> {
+            for (Path stagedFile : stagedFiles) {
+                Files.deleteIfExists(stagedFile);
+            }
+            for (String relativePath : toDelete) {
+                fileStorageService.deleteNow(relativePath, ownerId);
+            }
+            return null;
+        }).exceptionally(e -> {
+            log.warn("Failed to clean up files after transaction: {}", e.getMessage());
+            return null;
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package com.gvn.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Where upload bytes live. Keys are the relative paths handed out by FileStorageService
+ * (e.g. {@code banners/<uuid>.png}); the public URL stays {@code /api/v1/files/<key>}
+ * whatever the backend.
+ *
+ * Selected with app.storage.type: {@code local} (default, the upload directory) or
+ * {@code s3} (any S3-protocol object store).
+ */
+public interface StorageBackend {
+
+    /**
+     * Whether keys map to files under the local upload directory. Filesystem-only
+     * optimizations (multipart rename, deduplication, sendfile) apply only then.
+     */
+    boolean isLocal();
+
+    /**
+     * Store content under key, replacing any existing object
+     * @param length Content length if known, otherwise -1
+     * @param contentType MIME type, or null
+     */
+    void put(String key, InputStream content, long length, String contentType) throws IOException;
+
+    /**
+     * Open the whole object for reading
+     * @throws java.nio.file.NoSuchFileException if it does not exist
+     */
+    InputStream open(String key) throws IOException;
+
+    /**
+     * Delete the object
+     * @return false if it did not exist
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Time-limited URL clients can fetch the object from directly; empty if the backend
+     * cannot hand out such URLs (files are then served by the application)
+     */
+    default Optional<String> presignedGetUrl(String key, Duration ttl) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,468 @@
+package com.gvn.service;
+
+import com.gvn.entity.StorageUsage;
+import com.gvn.entity.User;
+import com.gvn.repository.StorageUsageRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bytes and files stored per area (upload subdirectory without shard directories, e.g.
+ * {@code avatars}, {@code documents/cccd}) and per owning user (user areas only).
+ *
+ * FileStorageService records a delta whenever a file lands in or leaves its final place.
+ * Deltas are merged in memory and drained into storage_usage with one batched upsert per
+ * flush. A nightly reconciliation walks the upload tree (areas) and the rows that
+ * reference user uploads (users), replacing the counters; anything the increments miss
+ * between two runs (generated variants, crashes) is corrected there. Files moved into
+ * packs (see PackStore) keep counting with their original size.
+ *
+ * Upload quotas read the flushed row plus the pending delta, so an oversized upload is
+ * rejected before any of its bytes are written. Local storage backend only.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StorageUsageService {
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO storage_usage (usage_key, scope, bytes, files, updated_at) VALUES (?, ?, ?, ?, now()) " +
+            "ON CONFLICT (usage_key) DO UPDATE SET " +
+            "bytes = storage_usage.bytes + EXCLUDED.bytes, " +
+            "files = storage_usage.files + EXCLUDED.files, " +
+            "updated_at = now()";
+    private static final String INSERT_SQL =
+            "INSERT INTO storage_usage (usage_key, scope, bytes, files, updated_at) VALUES (?, ?, ?, ?, now())";
+    private static final String PACKED_SQL = "SELECT path, size FROM packed_files";
+
+    private static final Pattern FILE_URL = Pattern.compile(Pattern.quote("/api/v1/files/") + "([^\"\\s,\\]}]+)");
+    private static final int FETCH_SIZE = 1000;
+
+    // Rows holding user-owned uploads: owner id first, then URL columns (plain or JSON)
+    private static final List<String> OWNER_QUERIES = List.of(
+            "SELECT id, avatar_url, avatar_variants FROM users",
+            "SELECT user_id, cccd_front_image_url, cccd_back_image_url, health_certificates_urls FROM partner_profiles"
+    );
+
+    private final StorageUsageRepository storageUsageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final StorageBackend storageBackend;
+
+    @Value("${app.file.upload-dir:uploads}")
+    private String uploadDir;
+
+    // Per-user limit over the user areas; 0 disables quotas
+    @Value("${app.file.quota.user-bytes:0}")
+    private long userQuotaBytes;
+
+    @Value("${app.file.quota.user-areas:avatars,documents}")
+    private String[] userAreas;
+
+    // Usage key -> delta not yet flushed
+    private final ConcurrentHashMap<String, Delta> pending = new ConcurrentHashMap<>();
+
+    // Recorders share it; reconcile() takes it alone to switch to a new count
+    private final ReentrantReadWriteLock recordLock = new ReentrantReadWriteLock();
+    // Paths stored since the running reconciliation started (null when none runs)
+    private volatile Set<String> storedDuringReconcile;
+
+    /**
+     * Current user id on this thread, or null (anonymous, background threads)
+     */
+    public static UUID currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User user) {
+            return user.getId();
+        }
+        return null;
+    }
+
+    /**
+     * Count a file that reached its final place
+     * @param ownerId Owning user, or null if not known
+     */
+    public void recordStored(String relativePath, UUID ownerId, long bytes) {
+        record(relativePath, ownerId, bytes, 1);
+    }
+
+    /**
+     * Count a file that was removed
+     * @param ownerId Owning user, or null if not known
+     */
+    public void recordDeleted(String relativePath, UUID ownerId, long bytes) {
+        record(relativePath, ownerId, -bytes, -1);
+    }
+
+    private void record(String relativePath, UUID ownerId, long bytes, long files) {
+        if (!storageBackend.isLocal()) {
+            return;
+        }
+        String area = areaOf(relativePath);
+        recordLock.readLock().lock();
+        try {
+            Set<String> stored = storedDuringReconcile;
+            if (stored != null && files > 0) {
+                stored.add(relativePath);
+            }
+            pending.merge(areaKey(area), new Delta(bytes, files), Delta::plus);
+            if (ownerId != null && isUserArea(area)) {
+                pending.merge(userKey(ownerId), new Delta(bytes, files), Delta::plus);
+            }
+        } finally {
+            recordLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reject an upload that would take its owner past the quota (before anything is written)
+     * @param incomingBytes Declared size of the upload
+     */
+    public void checkQuota(UUID ownerId, String subdirectory, long incomingBytes) {
+        long remaining = remainingQuota(ownerId, subdirectory);
+        if (incomingBytes > remaining) {
+            throw new RuntimeException("Storage quota exceeded: " + incomingBytes + " bytes requested, "
+                    + Math.max(remaining, 0) + " bytes available");
+        }
+    }
+
+    /**
+     * Bytes the owner may still store under subdirectory (Long.MAX_VALUE if no quota applies)
+     */
+    public long remainingQuota(UUID ownerId, String subdirectory) {
+        if (userQuotaBytes <= 0 || ownerId == null || !isUserArea(subdirectory) || !storageBackend.isLocal()) {
+            return Long.MAX_VALUE;
+        }
+        return userQuotaBytes - usedBytes(ownerId);
+    }
+
+    /**
+     * Bytes stored by a user: flushed total plus the pending delta
+     */
+    public long usedBytes(UUID ownerId) {
+        String key = userKey(ownerId);
+        long flushed = storageUsageRepository.findById(key).map(StorageUsage::getBytes).orElse(0L);
+        Delta delta = pending.get(key);
+        return flushed + (delta != null ? delta.bytes() : 0);
+    }
+
+    /**
+     * Area totals and the largest users, flushed counters plus pending deltas
+     */
+    public Map<String, Object> report() {
+        Map<String, Map<String, Long>> areas = new LinkedHashMap<>();
+        for (StorageUsage usage : storageUsageRepository.findByScopeOrderByUsageKey(StorageUsage.SCOPE_AREA)) {
+            areas.put(keyName(usage.getUsageKey()), usageOf(usage.getBytes(), usage.getFiles()));
+        }
+        Map<String, Map<String, Long>> users = new LinkedHashMap<>();
+        for (StorageUsage usage : storageUsageRepository.findTop20ByScopeOrderByBytesDesc(StorageUsage.SCOPE_USER)) {
+            users.put(keyName(usage.getUsageKey()), usageOf(usage.getBytes(), usage.getFiles()));
+        }
+        pending.forEach((key, delta) -> {
+            Map<String, Map<String, Long>> target = key.startsWith(StorageUsage.SCOPE_AREA + ":") ? areas : users;
+            Map<String, Long> usage = target.get(keyName(key));
+            if (usage != null) {
+                usage.merge("bytes", delta.bytes(), Long::sum);
+                usage.merge("files", delta.files(), Long::sum);
+            } else if (target == areas) {
+                areas.put(keyName(key), usageOf(delta.bytes(), delta.files()));
+            }
+        });
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("areas", areas);
+        report.put("top_users", users);
+        report.put("user_quota_bytes", userQuotaBytes);
+        return report;
+    }
+
+    /**
+     * Drain pending deltas into storage_usage with one batched upsert
+     */
+    @Scheduled(fixedDelayString = "${app.file.usage.flush-ms:30000}")
+    public synchronized void flush() {
+        List<String> keys = new ArrayList<>();
+        List<Delta> drained = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (String key : pending.keySet()) {
+            // Recorders merge atomically per key, so the removed delta is complete
+            Delta delta = pending.remove(key);
+            if (delta == null || (delta.bytes() == 0 && delta.files() == 0)) {
+                continue;
+            }
+            keys.add(key);
+            drained.add(delta);
+            rows.add(new Object[] {key, scopeOf(key), delta.bytes(), delta.files()});
+        }
+
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+            log.debug("Flushed storage usage for {} areas/users", rows.size());
+        } catch (Exception e) {
+            log.error("Error flushing storage usage, keeping deltas for retry: ", e);
+            for (int i = 0; i < keys.size(); i++) {
+                pending.merge(keys.get(i), drained.get(i), Delta::plus);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    @Scheduled(cron = "${app.file.usage.reconcile-cron:0 0 4 * * *}")
+    public void scheduledReconcile() {
+        if (storageBackend.isLocal()) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Recount every area from the upload tree and every user from the rows referencing
+     * their uploads, and replace the counters. Deltas recorded before the recount are
+     * dropped (the recount sees their files); files stored while it runs are skipped by it
+     * and keep their deltas. A file deleted during the walk before the walk reached it is
+     * subtracted once too often until the next run.
+     */
+    public synchronized void reconcile() {
+        long start = System.nanoTime();
+        Path basePath = FileStorageService.resolveBasePath(uploadDir);
+        Set<String> stored = ConcurrentHashMap.newKeySet();
+        Map<String, Delta> dropped = new HashMap<>();
+        recordLock.writeLock().lock();
+        try {
+            storedDuringReconcile = stored;
+            dropped.putAll(pending);
+            pending.clear();
+        } finally {
+            recordLock.writeLock().unlock();
+        }
+
+        try {
+            Map<String, long[]> totals = new HashMap<>();
+            Map<String, Long> packed = new HashMap<>();
+            jdbcTemplate.query(PACKED_SQL, resultSet -> {
+                packed.put(resultSet.getString(1), resultSet.getLong(2));
+            });
+            if (Files.isDirectory(basePath)) {
+                countAreas(basePath, stored, totals);
+            }
+            packed.forEach((path, size) -> {
+                // A loose copy left by an interrupted packing run was counted by the walk
+                if (existing(basePath, path) == null) {
+                    add(totals, areaKey(areaOf(path)), size);
+                }
+            });
+            countUsers(basePath, stored, packed, totals);
+
+            List<Object[]> rows = new ArrayList<>();
+            totals.forEach((key, total) -> rows.add(new Object[] {key, scopeOf(key), total[0], total[1]}));
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.executeWithoutResult(status -> {
+                jdbcTemplate.update("DELETE FROM storage_usage");
+                jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            });
+            log.info("Storage usage reconciled: {} areas/users in {} ms",
+                    rows.size(), Duration.ofNanos(System.nanoTime() - start).toMillis());
+        } catch (Exception e) {
+            // Counters stay incremental until the next run
+            log.error("Storage usage reconciliation failed: ", e);
+            dropped.forEach((key, delta) -> pending.merge(key, delta, Delta::plus));
+        } finally {
+            storedDuringReconcile = null;
+        }
+    }
+
+    private void countAreas(Path basePath, Set<String> skipped, Map<String, long[]> totals) throws IOException {
+        Files.walkFileTree(basePath, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                // Staging, blobs, trash, resumable parts: not stored uploads
+                if (!dir.equals(basePath) && dir.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                String relativePath = basePath.relativize(file).toString().replace('\\', '/');
+                if (attributes.isRegularFile()
+                        && !relativePath.endsWith(FileStorageService.GZIP_SUFFIX)
+                        && !skipped.contains(relativePath)) {
+                    add(totals, areaKey(areaOf(relativePath)), attributes.size());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                log.warn("Storage usage walk could not read {}: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void countUsers(Path basePath, Set<String> skipped, Map<String, Long> packed,
+                            Map<String, long[]> totals) {
+        // The driver only streams with a fetch size inside a transaction
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(FETCH_SIZE);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.executeWithoutResult(status -> {
+            for (String query : OWNER_QUERIES) {
+                streaming.query(query, resultSet -> {
+                    Object owner = resultSet.getObject(1);
+                    if (owner == null) {
+                        return;
+                    }
+                    Set<String> paths = new HashSet<>();
+                    int columns = resultSet.getMetaData().getColumnCount();
+                    for (int i = 2; i <= columns; i++) {
+                        String value = resultSet.getString(i);
+                        if (value != null) {
+                            Matcher matcher = FILE_URL.matcher(value);
+                            while (matcher.find()) {
+                                paths.add(matcher.group(1));
+                            }
+                        }
+                    }
+                    String key = userKey(UUID.fromString(owner.toString()));
+                    for (String path : paths) {
+                        if (!isUserArea(areaOf(path)) || skipped.contains(path)) {
+                            continue;
+                        }
+                        Path file = existing(basePath, path);
+                        try {
+                            if (file != null) {
+                                add(totals, key, Files.size(file));
+                            } else if (packed.containsKey(path)) {
+                                add(totals, key, packed.get(path));
+                            } else if (packed.containsKey(FileStorageService.shardedPath(path))) {
+                                add(totals, key, packed.get(FileStorageService.shardedPath(path)));
+                            }
+                        } catch (IOException e) {
+                            // Deleted meanwhile
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * The file a stored path refers to (flat or sharded), or null
+     */
+    private static Path existing(Path basePath, String relativePath) {
+        Path path = basePath.resolve(relativePath).normalize();
+        if (!path.startsWith(basePath)) {
+            return null;
+        }
+        if (Files.isRegularFile(path)) {
+            return path;
+        }
+        Path sharded = basePath.resolve(FileStorageService.shardedPath(relativePath)).normalize();
+        return sharded.startsWith(basePath) && Files.isRegularFile(sharded) ? sharded : null;
+    }
+
+    private static void add(Map<String, long[]> totals, String key, long bytes) {
+        long[] total = totals.computeIfAbsent(key, k -> new long[2]);
+        total[0] += bytes;
+        total[1]++;
+    }
+
+    /**
+     * Upload area of a stored path: its directory without the shard levels
+     * ({@code avatars/ab/cd/x.jpg} -> {@code avatars})
+     */
+    static String areaOf(String relativePath) {
+        String directory = relativePath.contains("/") ? relativePath.substring(0, relativePath.lastIndexOf('/')) : "";
+        String[] segments = directory.split("/");
+        int end = segments.length;
+        if (end >= 3 && isShard(segments[end - 1]) && isShard(segments[end - 2])) {
+            end -= 2;
+        }
+        return directory.isEmpty() ? "" : String.join("/", List.of(segments).subList(0, end));
+    }
+
+    private static boolean isShard(String segment) {
+        return segment.length() == 2
+                && Character.digit(segment.charAt(0), 16) >= 0
+                && Character.digit(segment.charAt(1), 16) >= 0;
+    }
+
+    private boolean isUserArea(String area) {
+        for (String userArea : userAreas) {
+            String prefix = userArea.trim();
+            if (!prefix.isEmpty() && (area.equals(prefix) || area.startsWith(prefix + "/"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String areaKey(String area) {
+        return StorageUsage.SCOPE_AREA + ":" + area;
+    }
+
+    private static String userKey(UUID userId) {
+        return StorageUsage.SCOPE_USER + ":" + userId;
+    }
+
+    private static String scopeOf(String key) {
+        return key.substring(0, key.indexOf(':'));
+    }
+
+    private static String keyName(String key) {
+        return key.substring(key.indexOf(':') + 1);
+    }
+
+    private static Map<String, Long> usageOf(long bytes, long files) {
+        Map<String, Long> usage = new LinkedHashMap<>();
+        usage.put("bytes", bytes);
+        usage.put("files", files);
+        return usage;
+    }
+
+    private record Delta(long bytes, long files) {
+
+        Delta plus(Delta other) {
+            return new Delta(bytes + other.bytes, files + other.files);
+        }
+    }
+}
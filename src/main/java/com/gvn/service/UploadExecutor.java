@@ -0,0 +1,115 @@
+package com.gvn.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs file writes for parallel uploads.
+ *
+ * Each task gets its own virtual thread, so waiting uploads cost no platform threads;
+ * a semaphore caps how many write to disk at once (app.file.upload-concurrency).
+ * Queue depth, active writes, queue wait and write duration are published as
+ * uploads.queued / uploads.active / uploads.wait / uploads.duration. On shutdown,
+ * in-flight writes get a grace period before being interrupted.
+ */
+@Component
+@Slf4j
+public class UploadExecutor {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Timer durationTimer;
+
+    @Value("${app.file.upload-shutdown-seconds:30}")
+    private long shutdownSeconds;
+
+    public UploadExecutor(MeterRegistry meterRegistry,
+                          @Value("${app.file.upload-concurrency:16}") int concurrency) {
+        this.permits = new Semaphore(concurrency);
+        Gauge.builder("uploads.queued", queued, AtomicInteger::get)
+                .description("Upload writes waiting for a disk permit")
+                .register(meterRegistry);
+        Gauge.builder("uploads.active", active, AtomicInteger::get)
+                .description("Upload writes in progress")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("uploads.wait")
+                .description("Time an upload write waited for a disk permit")
+                .register(meterRegistry);
+        this.durationTimer = Timer.builder("uploads.duration")
+                .description("Time spent writing an upload")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a write once a disk permit is available
+     * @return Future completed with the task's result or the exception it threw
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long enqueuedAt = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> run(task, result, enqueuedAt));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            result.completeExceptionally(new IOException("Upload executor is shut down"));
+        }
+        return result;
+    }
+
+    private <T> void run(Callable<T> task, CompletableFuture<T> result, long enqueuedAt) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            queued.decrementAndGet();
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(new IOException("Upload interrupted", e));
+            return;
+        }
+        queued.decrementAndGet();
+        active.incrementAndGet();
+        long startedAt = System.nanoTime();
+        waitTimer.record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+        try {
+            result.complete(task.call());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        } finally {
+            durationTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            active.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(shutdownSeconds, TimeUnit.SECONDS)) {
+                log.warn("Upload writes still running after {}s, interrupting", shutdownSeconds);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.gvn.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Online migration of uploads from the flat layout ({@code avatars/<uuid>.jpg}) to the
+ * sharded one ({@code avatars/ab/cd/<uuid>.jpg}).
+ *
+ * Rows are paged by id; for each row the referenced files are moved first and the row's
+ * URL columns (plain or JSON) are then rewritten with a conditional update, one batch per
+ * page with a pause in between. Until a row is rewritten its old URL still resolves, as
+ * FileStorageService.locate falls back to the sharded location. Already-sharded paths are
+ * skipped, so an interrupted run is simply started again.
+ *
+ * Runs once at startup when app.file.shard-migration.enabled is set (local backend only).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UploadLayoutMigration {
+
+    private static final String FILE_URL_PREFIX = "/api/v1/files/";
+    private static final Pattern FILE_URL = Pattern.compile(Pattern.quote(FILE_URL_PREFIX) + "([^\"\\s,\\]}]+)");
+    private static final String RENAME_STORED_FILE_SQL = "UPDATE stored_files SET path = ? WHERE path = ?";
+
+    // Tables holding upload URLs: name, id column, URL columns (plain or JSON)
+    private static final List<Target> TARGETS = List.of(
+            new Target("users", "id", List.of("avatar_url", "avatar_variants")),
+            new Target("partner_profiles", "id",
+                    List.of("cccd_front_image_url", "cccd_back_image_url", "health_certificates_urls")),
+            new Target("banners", "id", List.of("image_url", "image_variants")),
+            new Target("categories", "id", List.of("icon", "icon_variants")),
+            new Target("services", "id", List.of("icon", "icon_variants"))
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FileStorageService fileStorageService;
+    private final FileIntegrityService fileIntegrityService;
+
+    @Value("${app.file.shard-migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.file.shard-migration.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.file.shard-migration.batch-pause-ms:500}")
+    private long batchPauseMs;
+
+    @Value("${app.file.content-addressed:false}")
+    private boolean contentAddressed;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startIfEnabled() {
+        if (!enabled || !fileStorageService.isLocalStorage()) {
+            return;
+        }
+        Thread thread = new Thread(this::migrate, "upload-layout-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Move every flat upload referenced by a row to its sharded path and rewrite the row
+     */
+    public void migrate() {
+        log.info("Upload layout migration started");
+        long rows = 0;
+        for (Target target : TARGETS) {
+            try {
+                rows += migrate(target);
+            } catch (Exception e) {
+                log.error("Upload layout migration of {} failed: ", target.table(), e);
+            }
+        }
+        log.info("Upload layout migration finished: {} rows rewritten", rows);
+    }
+
+    private long migrate(Target target) {
+        String columns = String.join(", ", target.columns());
+        String firstPage = "SELECT " + target.idColumn() + ", " + columns + " FROM " + target.table()
+                + " ORDER BY " + target.idColumn() + " LIMIT ?";
+        String nextPage = "SELECT " + target.idColumn() + ", " + columns + " FROM " + target.table()
+                + " WHERE " + target.idColumn() + " > ? ORDER BY " + target.idColumn() + " LIMIT ?";
+        long rewritten = 0;
+        Object lastId = null;
+        while (true) {
+            List<Map<String, Object>> page = lastId == null
+                    ? jdbcTemplate.queryForList(firstPage, batchSize)
+                    : jdbcTemplate.queryForList(nextPage, lastId, batchSize);
+            if (page.isEmpty()) {
+                return rewritten;
+            }
+            rewritten += rewritePage(target, page);
+            lastId = page.get(page.size() - 1).get(target.idColumn());
+            if (page.size() < batchSize) {
+                return rewritten;
+            }
+            pause();
+        }
+    }
+
+    private long rewritePage(Target target, List<Map<String, Object>> page) {
+        long rewritten = 0;
+        for (String column : target.columns()) {
+            String sql = "UPDATE " + target.table() + " SET " + column + " = ? WHERE "
+                    + target.idColumn() + " = ? AND " + column + " = ?";
+            List<Object[]> updates = new ArrayList<>();
+            for (Map<String, Object> row : page) {
+                Object value = row.get(column);
+                if (value == null) {
+                    continue;
+                }
+                String current = value.toString();
+                String migrated = migrateUrls(current);
+                if (!migrated.equals(current)) {
+                    updates.add(new Object[] {migrated, row.get(target.idColumn()), current});
+                }
+            }
+            if (!updates.isEmpty()) {
+                // A row changed in the meantime keeps its new value; its files still resolve
+                for (int count : jdbcTemplate.batchUpdate(sql, updates)) {
+                    rewritten += Math.max(count, 0);
+                }
+            }
+        }
+        return rewritten;
+    }
+
+    /**
+     * Replace every upload URL in value (a URL or JSON) by its sharded form, moving the files
+     */
+    private String migrateUrls(String value) {
+        Matcher matcher = FILE_URL.matcher(value);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            String path = matcher.group(1);
+            String target = moveToShard(path) ? FileStorageService.shardedPath(path) : path;
+            matcher.appendReplacement(result, Matcher.quoteReplacement(FILE_URL_PREFIX + target));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * Move a flat file to its sharded path
+     * @return true if the file now lives at the sharded path
+     */
+    private boolean moveToShard(String path) {
+        String sharded = FileStorageService.shardedPath(path);
+        if (sharded.equals(path)) {
+            return false;
+        }
+        try {
+            Path source = fileStorageService.resolvePath(path);
+            Path target = fileStorageService.resolvePath(sharded);
+            if (!Files.exists(source)) {
+                // Moved by an earlier run that stopped before rewriting the row
+                return Files.exists(target);
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            if (contentAddressed) {
+                try {
+                    jdbcTemplate.update(RENAME_STORED_FILE_SQL, sharded, path);
+                } catch (RuntimeException e) {
+                    // Keep path and blob reference in step
+                    Files.move(target, source, StandardCopyOption.ATOMIC_MOVE);
+                    throw e;
+                }
+            }
+            fileIntegrityService.renamed(path, sharded);
+            moveGzipSibling(path, sharded);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not move {} to the sharded layout: {}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    private void moveGzipSibling(String path, String sharded) {
+        try {
+            Path sibling = fileStorageService.resolvePath(path + FileStorageService.GZIP_SUFFIX);
+            if (Files.exists(sibling)) {
+                Files.move(sibling, fileStorageService.resolvePath(sharded + FileStorageService.GZIP_SUFFIX),
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            // Only costs the compressed variant; the orphan collector removes the stray copy
+            log.debug("Could not move gzip sibling of {}: {}", path, e.getMessage());
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(batchPauseMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Target(String table, String idColumn, List<String> columns) {
+    }
+}
@@ -15,19 +15,28 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 @RequiredArgsConstructor
@@ -40,6 +49,19 @@ public class UserProfileService {
     private final PasswordEncoder passwordEncoder;
     private final FileStorageService fileStorageService;
     private final ObjectMapper objectMapper;
+    private final PartnerStatusCache partnerStatusCache;
+    private final ImageVariantService imageVariantService;
+    private final ResumableUploadService resumableUploadService;
+    private final SignedUrlService signedUrlService;
+    private final PlatformTransactionManager transactionManager;
+    
+    private static final long MAX_AVATAR_SIZE = 10L * 1024 * 1024; // Same as the multipart limit
+    
+    @Value("${app.image.avatar-retry-ms:600000}")
+    private long avatarRetryMs;
+    
+    @Value("${app.image.avatar-retry-max-age-hours:24}")
+    private long avatarRetryMaxAgeHours;
     
     @PersistenceContext
     private EntityManager entityManager;
@@ -52,6 +74,14 @@ public class UserProfileService {
         throw new RuntimeException("User not authenticated");
     }
     
+    public User getCurrentUserOrNull() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User) {
+            return (User) authentication.getPrincipal();
+        }
+        return null;
+    }
+    
     public UserResponse getProfile() {
         User user = getCurrentUser();
         return mapToUserResponse(user);
@@ -96,19 +126,48 @@ public class UserProfileService {
     
     @Transactional
     public UserResponse updateAvatar(MultipartFile image) {
+        return replaceAvatar(() -> fileStorageService.storeFile(image, "avatars"));
+    }
+    
+    /**
+     * Replace the avatar with a raw image body streamed straight into storage.
+     * The body is stored before any transaction opens, so a slow client does not hold a
+     * database connection; only the URL swap runs in one.
+     * @param extension File extension including the dot (derived from the content type)
+     */
+    public UserResponse updateAvatar(InputStream body, String extension) {
+        String avatarPath;
+        try {
+            avatarPath = fileStorageService.storeStream(body, extension, "avatars", MAX_AVATAR_SIZE);
+        } catch (IOException e) {
+            log.error("Error updating avatar: ", e);
+            throw new RuntimeException("Failed to update avatar: " + e.getMessage());
+        }
+        
+        try {
+            return new TransactionTemplate(transactionManager).execute(status -> replaceAvatar(() -> avatarPath));
+        } catch (RuntimeException e) {
+            // Nothing references the new file if the swap did not commit
+            fileStorageService.deleteFile(avatarPath);
+            throw e;
+        }
+    }
+    
+    private UserResponse replaceAvatar(StoreOperation storeOperation) {
         User user = getCurrentUser();
         
         try {
             // Delete old avatar if exists
-            if (user.getAvatarUrl() != null) {
-                String oldPath = extractPathFromUrl(user.getAvatarUrl());
-                fileStorageService.deleteFile(oldPath);
-            }
+            deleteAvatarFiles(user);
             
-            // Store new avatar
-            String avatarPath = fileStorageService.storeFile(image, "avatars");
+            // Store new avatar; the original is served until the normalized sizes are ready
+            String avatarPath = storeOperation.store();
             String avatarUrl = fileStorageService.getFileUrl(avatarPath);
             user.setAvatarUrl(avatarUrl);
+            user.setAvatarVariants(null);
+            user.setAvatarPlaceholder(null);
+            user.setAvatarPendingSince(LocalDateTime.now());
+            scheduleAvatarVariants(user.getId(), avatarPath, avatarUrl);
             
             User savedUser = userRepository.save(user);
             log.info("Avatar updated for user: {}", savedUser.getId());
@@ -124,9 +183,11 @@ public class UserProfileService {
         User user = getCurrentUser();
         
         if (user.getAvatarUrl() != null) {
-            String oldPath = extractPathFromUrl(user.getAvatarUrl());
-            fileStorageService.deleteFile(oldPath);
+            deleteAvatarFiles(user);
             user.setAvatarUrl(null);
+            user.setAvatarVariants(null);
+            user.setAvatarPlaceholder(null);
+            user.setAvatarPendingSince(null);
             userRepository.save(user);
             log.info("Avatar deleted for user: {}", user.getId());
         }
@@ -147,8 +208,7 @@ public class UserProfileService {
         
         // Delete avatar if exists
         if (user.getAvatarUrl() != null) {
-            String oldPath = extractPathFromUrl(user.getAvatarUrl());
-            fileStorageService.deleteFile(oldPath);
+            deleteAvatarFiles(user);
             log.info("Deleted avatar file for user: {}", userId);
         }
         
@@ -158,6 +218,7 @@ public class UserProfileService {
             partnerProfileRepository.delete(partnerProfile);
             log.info("Deleted partner profile for user: {}", userId);
         });
+        partnerStatusCache.evictAfterCommit(userId);
         
         // Use native query delete to ensure immediate database deletion
         // This bypasses all JPA caching and ensures direct database operation
@@ -192,6 +253,10 @@ public class UserProfileService {
         log.info("Password changed for user: {}", user.getId());
     }
     
+    /**
+     * Each document comes either as a multipart part or as the id of a finalized resumable
+     * upload (see ResumableUploadService); an upload id takes precedence
+     */
     @Transactional
     public UserResponse registerAsPartner(
             String fullName,
@@ -202,7 +267,10 @@ public class UserProfileService {
             Integer yearsOfExperience,
             MultipartFile cccdFrontImage,
             MultipartFile cccdBackImage,
-            MultipartFile[] healthCertificates
+            MultipartFile[] healthCertificates,
+            UUID cccdFrontUploadId,
+            UUID cccdBackUploadId,
+            List<UUID> healthCertificateUploadIds
     ) {
         User user = getCurrentUser();
         
@@ -221,45 +289,43 @@ public class UserProfileService {
                 throw new RuntimeException("Invalid birthday format. Expected: yyyy/MM/dd");
             }
             
-            // Store images (reduced logging for performance)
-            String cccdFrontPath;
-            try {
-                cccdFrontPath = fileStorageService.storeFile(cccdFrontImage, "documents/cccd");
-            } catch (Exception e) {
-                log.error("Failed to store CCCD front image: ", e);
-                throw new RuntimeException("Failed to store CCCD front image: " + e.getMessage());
-            }
-            
-            String cccdBackPath;
+            // Store CCCD front, back and health certificates concurrently
+            CompletableFuture<String> frontUpload = storeDocument(cccdFrontImage, cccdFrontUploadId, user.getId(), "documents/cccd");
+            CompletableFuture<String> backUpload = storeDocument(cccdBackImage, cccdBackUploadId, user.getId(), "documents/cccd");
+            CompletableFuture<List<String>> certificateUpload =
+                    storeHealthCertificates(healthCertificates, healthCertificateUploadIds, user.getId());
             try {
-                cccdBackPath = fileStorageService.storeFile(cccdBackImage, "documents/cccd");
-            } catch (Exception e) {
-                log.error("Failed to store CCCD back image: ", e);
-                // Clean up front image if back image fails
-                try {
-                    fileStorageService.deleteFile(cccdFrontPath);
-                } catch (Exception cleanupEx) {
-                    log.warn("Failed to cleanup front image after back image failure", cleanupEx);
-                }
-                throw new RuntimeException("Failed to store CCCD back image: " + e.getMessage());
-            }
-            
-            List<String> healthCertUrls = new ArrayList<>();
-            if (healthCertificates != null && healthCertificates.length > 0) {
+                // allOf only completes once every upload has finished, so cleanup sees the final state
+                CompletableFuture.allOf(frontUpload, backUpload, certificateUpload).join();
+            } catch (CompletionException e) {
+                String failed = frontUpload.isCompletedExceptionally() ? "CCCD front image"
+                        : backUpload.isCompletedExceptionally() ? "CCCD back image"
+                        : "health certificates";
+                log.error("Failed to store {}: ", failed, e.getCause());
+                // Clean up whatever was stored
                 try {
-                    healthCertUrls = fileStorageService.storeMultipleFiles(healthCertificates, "documents/health");
-                } catch (Exception e) {
-                    log.error("Failed to store health certificates: ", e);
-                    // Clean up CCCD images if health certs fail
-                    try {
-                        fileStorageService.deleteFile(cccdFrontPath);
-                        fileStorageService.deleteFile(cccdBackPath);
-                    } catch (Exception cleanupEx) {
-                        log.warn("Failed to cleanup CCCD images after health cert failure", cleanupEx);
+                    if (!frontUpload.isCompletedExceptionally()) {
+                        fileStorageService.deleteFile(frontUpload.join());
                     }
-                    throw new RuntimeException("Failed to store health certificates: " + e.getMessage());
+                    if (!backUpload.isCompletedExceptionally()) {
+                        fileStorageService.deleteFile(backUpload.join());
+                    }
+                    if (!certificateUpload.isCompletedExceptionally()) {
+                        for (String url : certificateUpload.join()) {
+                            String path = extractPathFromUrl(url);
+                            if (path != null) {
+                                fileStorageService.deleteFile(path);
+                            }
+                        }
+                    }
+                } catch (Exception cleanupEx) {
+                    log.warn("Failed to cleanup files after {} failure", failed, cleanupEx);
                 }
+                throw new RuntimeException("Failed to store " + failed + ": " + e.getCause().getMessage());
             }
+            String cccdFrontPath = frontUpload.join();
+            String cccdBackPath = backUpload.join();
+            List<String> healthCertUrls = certificateUpload.join();
             
             // Convert health certificates URLs to JSON
             String healthCertificatesJson;
@@ -328,6 +394,7 @@ public class UserProfileService {
                 throw new RuntimeException("Failed to update user: " + e.getMessage());
             }
             
+            partnerStatusCache.evictAfterCommit(user.getId());
             log.info("Partner profile registered successfully for user: {}", user.getId());
             return mapToUserResponse(user);
         } catch (RuntimeException e) {
@@ -354,7 +421,10 @@ public class UserProfileService {
             Integer yearsOfExperience,
             MultipartFile cccdFrontImage,
             MultipartFile cccdBackImage,
-            MultipartFile[] healthCertificates
+            MultipartFile[] healthCertificates,
+            UUID cccdFrontUploadId,
+            UUID cccdBackUploadId,
+            List<UUID> healthCertificateUploadIds
     ) {
         User user = getCurrentUser();
         
@@ -375,29 +445,34 @@ public class UserProfileService {
             if (yearsOfExperience != null) partnerProfile.setYearsOfExperience(yearsOfExperience);
             
             // Update images if provided
-            if (cccdFrontImage != null && !cccdFrontImage.isEmpty()) {
+            if (cccdFrontUploadId != null || (cccdFrontImage != null && !cccdFrontImage.isEmpty())) {
                 if (partnerProfile.getCccdFrontImageUrl() != null) {
                     String oldPath = extractPathFromUrl(partnerProfile.getCccdFrontImageUrl());
                     if (oldPath != null) {
                         fileStorageService.deleteFile(oldPath);
                     }
                 }
-                String newPath = fileStorageService.storeFile(cccdFrontImage, "documents/cccd");
+                String newPath = cccdFrontUploadId != null
+                        ? resumableUploadService.consume(cccdFrontUploadId, user.getId(), "documents/cccd")
+                        : fileStorageService.storeFile(cccdFrontImage, "documents/cccd");
                 partnerProfile.setCccdFrontImageUrl(fileStorageService.getFileUrl(newPath));
             }
             
-            if (cccdBackImage != null && !cccdBackImage.isEmpty()) {
+            if (cccdBackUploadId != null || (cccdBackImage != null && !cccdBackImage.isEmpty())) {
                 if (partnerProfile.getCccdBackImageUrl() != null) {
                     String oldPath = extractPathFromUrl(partnerProfile.getCccdBackImageUrl());
                     if (oldPath != null) {
                         fileStorageService.deleteFile(oldPath);
                     }
                 }
-                String newPath = fileStorageService.storeFile(cccdBackImage, "documents/cccd");
+                String newPath = cccdBackUploadId != null
+                        ? resumableUploadService.consume(cccdBackUploadId, user.getId(), "documents/cccd")
+                        : fileStorageService.storeFile(cccdBackImage, "documents/cccd");
                 partnerProfile.setCccdBackImageUrl(fileStorageService.getFileUrl(newPath));
             }
             
-            if (healthCertificates != null && healthCertificates.length > 0) {
+            boolean hasCertificateUploads = healthCertificateUploadIds != null && !healthCertificateUploadIds.isEmpty();
+            if (hasCertificateUploads || (healthCertificates != null && healthCertificates.length > 0)) {
                 // Delete old health certificates
                 if (partnerProfile.getHealthCertificatesUrls() != null) {
                     try {
@@ -417,7 +492,9 @@ public class UserProfileService {
                 }
                 
                 // Store new health certificates (returns URLs)
-                List<String> newUrls = fileStorageService.storeMultipleFiles(healthCertificates, "documents/health");
+                List<String> newUrls = hasCertificateUploads
+                        ? consumeHealthCertificates(healthCertificateUploadIds, user.getId())
+                        : fileStorageService.storeMultipleFiles(healthCertificates, "documents/health");
                 partnerProfile.setHealthCertificatesUrls(objectMapper.writeValueAsString(newUrls));
             }
             
@@ -425,6 +502,7 @@ public class UserProfileService {
             partnerProfile.setProfileStatus(PartnerProfile.ProfileStatus.PENDING);
             
             partnerProfileRepository.save(partnerProfile);
+            partnerStatusCache.evictAfterCommit(user.getId());
             
             log.info("Partner profile updated for user: {}", user.getId());
             return mapToUserResponse(user);
@@ -434,10 +512,57 @@ public class UserProfileService {
         }
     }
     
+    /**
+     * Store a document from a finalized resumable upload if one is given, else from the multipart part
+     */
+    private CompletableFuture<String> storeDocument(MultipartFile file, UUID uploadId, UUID userId, String subdirectory) {
+        if (uploadId == null) {
+            return fileStorageService.storeFileAsync(file, subdirectory);
+        }
+        try {
+            return CompletableFuture.completedFuture(resumableUploadService.consume(uploadId, userId, subdirectory));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    private CompletableFuture<List<String>> storeHealthCertificates(MultipartFile[] files, List<UUID> uploadIds, UUID userId) {
+        if (uploadIds != null && !uploadIds.isEmpty()) {
+            try {
+                return CompletableFuture.completedFuture(consumeHealthCertificates(uploadIds, userId));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return files != null && files.length > 0
+                ? fileStorageService.storeMultipleFilesAsync(files, "documents/health")
+                : CompletableFuture.completedFuture(new ArrayList<>());
+    }
+    
+    /**
+     * Store finalized resumable uploads as health certificates; all or none
+     * @return File URLs, in input order
+     */
+    private List<String> consumeHealthCertificates(List<UUID> uploadIds, UUID userId) throws IOException {
+        List<String> paths = new ArrayList<>();
+        try {
+            for (UUID uploadId : uploadIds) {
+                paths.add(resumableUploadService.consume(uploadId, userId, "documents/health"));
+            }
+        } catch (IOException | RuntimeException e) {
+            paths.forEach(fileStorageService::deleteFile);
+            throw e;
+        }
+        return paths.stream().map(fileStorageService::getFileUrl).toList();
+    }
+    
     private UserResponse mapToUserResponse(User user) {
         PartnerProfile partnerProfile = null;
         if (user.getHasPartnerProfile()) {
+            // The document URLs are rendered too, so the whole profile is needed here
             partnerProfile = partnerProfileRepository.findByUser(user).orElse(null);
+            // Ignored by the cache when this transaction changed the profile
+            partnerStatusCache.put(user.getId(), partnerProfile != null ? partnerProfile.getProfileStatus() : null);
         }
         
         return UserResponse.builder()
@@ -449,11 +574,92 @@ public class UserProfileService {
                 .address(user.getAddress())
                 .phone(user.getPhoneNumber())
                 .avatar_url(user.getAvatarUrl())
+                .avatar_variants(user.getAvatarVariants())
+                .avatar_placeholder(user.getAvatarPlaceholder())
                 .has_partner_profile(user.getHasPartnerProfile())
-                .partner_profile(UserResponse.fromPartnerProfile(partnerProfile))
+                .partner_profile(mapPartnerProfile(partnerProfile))
                 .build();
     }
     
+    /**
+     * Profile status plus the owner's document URLs, signed afresh for this response
+     */
+    private UserResponse.PartnerProfileResponse mapPartnerProfile(PartnerProfile partnerProfile) {
+        UserResponse.PartnerProfileResponse response = UserResponse.fromPartnerProfile(partnerProfile);
+        if (response == null) {
+            return null;
+        }
+        response.setCccd_front_image_url(signedUrlService.sign(partnerProfile.getCccdFrontImageUrl()));
+        response.setCccd_back_image_url(signedUrlService.sign(partnerProfile.getCccdBackImageUrl()));
+        if (partnerProfile.getHealthCertificatesUrls() != null) {
+            try {
+                List<String> urls = objectMapper.readValue(
+                        partnerProfile.getHealthCertificatesUrls(),
+                        new TypeReference<List<String>>() {}
+                );
+                response.setHealth_certificates_urls(urls.stream().map(signedUrlService::sign).toList());
+            } catch (JsonProcessingException e) {
+                log.warn("Error parsing health certificates URLs of partner profile {}", partnerProfile.getId(), e);
+            }
+        }
+        return response;
+    }
+    
+    /**
+     * Downscale, re-encode and strip the avatar after commit, then point avatar_url at the
+     * largest variant and drop the original (which may carry EXIF location data)
+     */
+    private void scheduleAvatarVariants(UUID userId, String avatarPath, String originalUrl) {
+        imageVariantService.generateAfterCommit(avatarPath, ImageVariantService.Kind.AVATAR, (variants, placeholder) -> {
+            String bestUrl = imageVariantService.largestVariantUrl(variants);
+            if (bestUrl != null
+                    && userRepository.updateAvatarVariants(userId, originalUrl, bestUrl, variants, placeholder) > 0) {
+                fileStorageService.deleteFile(avatarPath);
+            } else if (!variants.equals(currentAvatarVariants(userId))) {
+                // Avatar was replaced or removed while processing (a retry that lost to the
+                // first run wrote the same files, which are now live)
+                imageVariantService.deleteVariants(variants, null);
+            }
+        });
+    }
+    
+    private String currentAvatarVariants(UUID userId) {
+        return userRepository.findById(userId).map(User::getAvatarVariants).orElse(null);
+    }
+    
+    /**
+     * Re-queue avatars whose normalization never finished (variant queue full, restart,
+     * failed run), so the EXIF-carrying original is not served for good. Uploads older
+     * than the max age are given up on: by then their image is most likely undecodable.
+     */
+    @Scheduled(initialDelayString = "${app.image.avatar-retry-ms:600000}",
+               fixedDelayString = "${app.image.avatar-retry-ms:600000}")
+    public void retryPendingAvatars() {
+        LocalDateTime now = LocalDateTime.now();
+        List<User> pending = userRepository.findTop100ByAvatarPendingSinceBetweenOrderByAvatarPendingSinceAsc(
+                now.minusHours(avatarRetryMaxAgeHours), now.minusNanos(avatarRetryMs * 1_000_000L));
+        for (User user : pending) {
+            String avatarPath = extractPathFromUrl(user.getAvatarUrl());
+            if (avatarPath != null) {
+                scheduleAvatarVariants(user.getId(), avatarPath, user.getAvatarUrl());
+            }
+        }
+        if (!pending.isEmpty()) {
+            log.info("Re-queued normalization of {} pending avatars", pending.size());
+        }
+    }
+    
+    private void deleteAvatarFiles(User user) {
+        if (user.getAvatarUrl() == null) {
+            return;
+        }
+        imageVariantService.deleteVariants(user.getAvatarVariants(), null);
+        String oldPath = extractPathFromUrl(user.getAvatarUrl());
+        if (oldPath != null) {
+            fileStorageService.deleteFile(oldPath);
+        }
+    }
+    
     private void deletePartnerProfileFiles(PartnerProfile partnerProfile) {
         if (partnerProfile.getCccdFrontImageUrl() != null) {
             String path = extractPathFromUrl(partnerProfile.getCccdFrontImageUrl());
@@ -494,4 +700,9 @@ public class UserProfileService {
         // If it's already a relative path, return as is
         return url;
     }
+    
+    @FunctionalInterface
+    private interface StoreOperation {
+        String store() throws IOException;
+    }
 }
@@ -3,8 +3,8 @@ package com.gvn.service;
 import com.gvn.dto.response.UserResponse;
 import com.gvn.entity.PartnerProfile;
 import com.gvn.entity.User;
-import com.gvn.repository.PartnerProfileRepository;
 import com.gvn.repository.UserRepository;
+import com.gvn.repository.projection.UserWithPartnerStatus;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -20,12 +20,14 @@ import java.util.UUID;
 public class UserService {
     
     private final UserRepository userRepository;
-    private final PartnerProfileRepository partnerProfileRepository;
+    private final PartnerStatusCache partnerStatusCache;
     private final PasswordEncoder passwordEncoder;
     
     @Transactional
     public Optional<User> authenticate(String phoneNumber, String password) {
-        Optional<User> userOpt = userRepository.findByPhoneNumber(phoneNumber);
+        // Partner status comes along so the login response does not query it again
+        Optional<User> userOpt = userRepository.findWithPartnerStatusByPhoneNumber(phoneNumber)
+                .map(this::cacheStatus);
         
         if (userOpt.isPresent()) {
             User user = userOpt.get();
@@ -52,10 +54,10 @@ public class UserService {
     }
     
     public UserResponse mapToUserResponse(User user) {
-        PartnerProfile partnerProfile = null;
+        // Only the status is rendered; usually cached by the query that loaded the user
+        PartnerProfile.ProfileStatus profileStatus = null;
         if (user.getHasPartnerProfile()) {
-            partnerProfile = partnerProfileRepository.findByUser(user)
-                    .orElse(null);
+            profileStatus = partnerStatusCache.getStatus(user.getId()).orElse(null);
         }
         
         return UserResponse.builder()
@@ -67,13 +69,23 @@ public class UserService {
                 .address(user.getAddress())
                 .phone(user.getPhoneNumber())
                 .avatar_url(user.getAvatarUrl())
+                .avatar_variants(user.getAvatarVariants())
+                .avatar_placeholder(user.getAvatarPlaceholder())
                 .has_partner_profile(user.getHasPartnerProfile())
-                .partner_profile(UserResponse.fromPartnerProfile(partnerProfile))
+                .partner_profile(UserResponse.fromProfileStatus(profileStatus))
                 .build();
     }
     
+    /**
+     * Load a user, caching their partner status from the same statement
+     */
     public Optional<User> findById(UUID userId) {
-        return userRepository.findById(userId);
+        return userRepository.findWithPartnerStatusById(userId).map(this::cacheStatus);
+    }
+    
+    private User cacheStatus(UserWithPartnerStatus row) {
+        partnerStatusCache.put(row.user().getId(), row.partnerStatus());
+        return row.user();
     }
     
     public boolean existsByPhoneNumber(String phoneNumber) {
@@ -0,0 +1,138 @@
+package com.gvn.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gvn.dto.response.BannerResponse;
+import com.gvn.dto.response.BannerStatsResponse;
+import com.gvn.entity.Banner;
+import com.gvn.repository.projection.BannerView;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+/**
+ * Statement counts of the BannerService read paths that used to load managed Banner
+ * entities. Each is one projection query, and no entity is ever materialized.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Import(BannerService.class)
+class BannerServiceQueryCountTest {
+
+    @Autowired
+    private BannerService bannerService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private FileStorageService fileStorageService;
+
+    @MockBean
+    private BannerTimeline bannerTimeline;
+
+    @MockBean
+    private BannerStatsService bannerStatsService;
+
+    @MockBean
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private ImageVariantService imageVariantService;
+
+    private Statistics statistics;
+    private Banner summer;
+
+    @BeforeEach
+    void setUp() {
+        entityManager.persist(banner("Winter", 2, false));
+        summer = entityManager.persist(banner("Summer", 1, true));
+        entityManager.persist(banner("Spring", 3, true));
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void allBannersTakeOneQuery() {
+        List<BannerResponse> banners = bannerService.getAllBanners(false);
+
+        assertEquals(1, statements());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(List.of("Summer", "Winter", "Spring"), banners.stream().map(BannerResponse::getTitle).toList());
+        assertNull(banners.get(0).getStats());
+    }
+
+    @Test
+    void statsAreAttachedWithoutFurtherQueries() {
+        when(bannerStatsService.getTotals()).thenReturn(Map.of(summer.getId(), BannerStatsResponse.of(10, 2)));
+
+        List<BannerResponse> banners = bannerService.getAllBanners(true);
+
+        assertEquals(1, statements());
+        assertEquals(2L, banners.get(0).getStats().getClicks());
+        assertEquals(0L, banners.get(1).getStats().getImpressions());
+    }
+
+    @Test
+    void bannerByIdTakesOneQuery() {
+        BannerResponse banner = bannerService.getBannerById(summer.getId());
+
+        assertEquals(1, statements());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals("Summer", banner.getTitle());
+    }
+
+    @Test
+    void missingBannerStopsAfterOneQuery() {
+        assertThrows(RuntimeException.class, () -> bannerService.getBannerById(UUID.randomUUID()));
+
+        assertEquals(1, statements());
+    }
+
+    @Test
+    void liveBannersDoNotTouchTheDatabase() {
+        BannerView live = new BannerView(summer.getId(), "Summer", summer.getImageUrl(), null, null, null,
+                1, true, null, null, null);
+        when(bannerTimeline.getLiveBanners(null)).thenReturn(List.of(live));
+
+        assertEquals(1, bannerService.getActiveBanners(null).size());
+        assertEquals(0, statements());
+    }
+
+    private long statements() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    private static Banner banner(String title, int displayOrder, boolean active) {
+        return Banner.builder()
+                .title(title)
+                .imageUrl("/api/v1/files/banners/" + title.toLowerCase() + ".jpg")
+                .displayOrder(displayOrder)
+                .isActive(active)
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package com.gvn.service;
+
+import com.gvn.repository.BannerStatsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BannerStatsServiceTest {
+
+    private final UUID bannerId = UUID.randomUUID();
+    private final List<Object[]> upserted = new ArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+    private BannerStatsService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+            upserted.addAll(rows);
+            return new int[rows.size()];
+        });
+        BannerTimeline bannerTimeline = mock(BannerTimeline.class);
+        when(bannerTimeline.isPublished(bannerId)).thenReturn(true);
+        service = new BannerStatsService(mock(BannerStatsRepository.class), bannerTimeline, jdbcTemplate);
+    }
+
+    @Test
+    void countsAreFlushedOnce() {
+        service.recordImpression(bannerId);
+        service.recordImpression(bannerId);
+        service.recordClick(bannerId);
+
+        service.flush();
+        service.flush();
+
+        assertEquals(1, upserted.size());
+        assertEquals(2L, upserted.get(0)[3]);
+        assertEquals(1L, upserted.get(0)[4]);
+    }
+
+    @Test
+    void unpublishedBannersAreNotCounted() {
+        assertFalse(service.recordClick(UUID.randomUUID()));
+
+        service.flush();
+
+        assertTrue(upserted.isEmpty());
+        assertTrue(service.getTotals().isEmpty());
+    }
+
+    @Test
+    void pastBucketKeepsCountingUntilEmptyForAWholeCycle() {
+        LocalDateTime nextHour = LocalDateTime.now().plusHours(1);
+        service.recordClick(bannerId);
+        service.flush(nextHour);
+
+        // Lands on the bucket after it was drained, as a click looked up before the hour turned would
+        service.recordClick(bannerId);
+        service.flush(nextHour);
+        assertEquals(2, clicks());
+
+        service.flush(nextHour); // Empty once: kept
+        assertTrue(service.getTotals().containsKey(bannerId));
+        service.recordClick(bannerId);
+        service.flush(nextHour);
+        assertEquals(3, clicks());
+
+        service.flush(nextHour);
+        service.flush(nextHour); // Empty for a whole cycle: removed
+        assertTrue(service.getTotals().isEmpty());
+        assertEquals(3, clicks());
+    }
+
+    @Test
+    void currentBucketIsNeverRemoved() {
+        service.recordClick(bannerId);
+        for (int i = 0; i < 3; i++) {
+            service.flush();
+        }
+
+        assertTrue(service.getTotals().containsKey(bannerId));
+    }
+
+    @Test
+    void failedFlushKeepsCountsForTheNextOne() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("connection lost"))
+                .thenAnswer(invocation -> {
+                    List<Object[]> rows = invocation.getArgument(1);
+                    upserted.addAll(rows);
+                    return new int[rows.size()];
+                });
+        service.recordClick(bannerId);
+
+        service.flush();
+        assertEquals(1L, service.getTotals().get(bannerId).getClicks());
+        service.recordClick(bannerId);
+        service.flush();
+
+        assertEquals(2, clicks());
+    }
+
+    private long clicks() {
+        return upserted.stream().mapToLong(row -> (Long) row[4]).sum();
+    }
+}
@@ -0,0 +1,191 @@
+package com.gvn.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gvn.entity.PartnerProfile;
+import com.gvn.entity.User;
+import com.gvn.repository.BannerRepository;
+import com.gvn.repository.projection.BannerView;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class BannerTargetingTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void blankRulesTargetEveryone() {
+        assertSame(BannerTargeting.Compiled.ALWAYS, compile(null));
+        assertSame(BannerTargeting.Compiled.ALWAYS, compile("  "));
+    }
+
+    @Test
+    void leafRulesMatchTheirAttribute() {
+        BannerTargeting.Rule partner = compile("{\"user_type\": \"PARTNER\"}").rule();
+        assertTrue(partner.matches(audience("partner", false, null, 0)));
+        assertFalse(partner.matches(audience("customer", false, null, 0)));
+        assertFalse(partner.matches(BannerTargeting.Audience.ANONYMOUS));
+
+        BannerTargeting.Rule types = compile("{\"user_type\": [\"partner\", \"customer\"]}").rule();
+        assertTrue(types.matches(audience("Customer", false, null, 0)));
+
+        BannerTargeting.Rule noProfile = compile("{\"has_partner_profile\": false}").rule();
+        assertTrue(noProfile.matches(BannerTargeting.Audience.ANONYMOUS));
+        assertFalse(noProfile.matches(audience("partner", true, null, 0)));
+
+        BannerTargeting.Compiled verified = compile("{\"profile_status\": \"verified\"}");
+        assertTrue(verified.usesProfileStatus());
+        assertTrue(verified.rule().matches(audience("partner", true, PartnerProfile.ProfileStatus.VERIFIED, 0)));
+        assertFalse(verified.rule().matches(audience("partner", true, null, 0)));
+        assertFalse(compile("{\"user_type\": \"partner\"}").usesProfileStatus());
+    }
+
+    @Test
+    void combinatorsComposeChildren() {
+        BannerTargeting.Rule rule = compile("""
+                {"any": [
+                  {"all": [{"user_type": "partner"}, {"not": {"has_partner_profile": true}}]},
+                  {"account_age_days": {"lt": 7}}
+                ]}
+                """).rule();
+
+        assertTrue(rule.matches(audience("partner", false, null, 100)));
+        assertFalse(rule.matches(audience("partner", true, null, 100)));
+        assertTrue(rule.matches(audience("partner", true, null, 6)));
+        assertFalse(rule.matches(audience("customer", false, null, 7)));
+    }
+
+    @Test
+    void ageRangeIsHalfOpen() {
+        BannerTargeting.Rule rule = compile("{\"account_age_days\": {\"gte\": 7, \"lt\": 30}}").rule();
+
+        assertFalse(rule.matches(audience(null, false, null, 6)));
+        assertTrue(rule.matches(audience(null, false, null, 7)));
+        assertTrue(rule.matches(audience(null, false, null, 29)));
+        assertFalse(rule.matches(audience(null, false, null, 30)));
+    }
+
+    @Test
+    void ageThresholdsAreCollectedFromTheWholeTree() {
+        BannerTargeting.Compiled compiled = compile("""
+                {"any": [
+                  {"account_age_days": {"gte": 30}},
+                  {"not": {"account_age_days": {"gte": 7, "lt": 30}}},
+                  {"account_age_days": {"lt": 365}}
+                ]}
+                """);
+
+        assertEquals(List.of(7L, 30L, 365L), List.copyOf(compiled.ageThresholds()));
+        assertTrue(compile("{\"user_type\": \"partner\"}").ageThresholds().isEmpty());
+    }
+
+    @Test
+    void malformedRulesAreRejected() {
+        for (String json : List.of(
+                "{\"user_type\": ",
+                "[]",
+                "{\"user_type\": \"partner\", \"has_partner_profile\": true}",
+                "{\"all\": []}",
+                "{\"any\": {\"user_type\": \"partner\"}}",
+                "{\"user_type\": 3}",
+                "{\"user_type\": [\"partner\", 3]}",
+                "{\"has_partner_profile\": \"yes\"}",
+                "{\"profile_status\": \"approved-ish\"}",
+                "{\"account_age_days\": {}}",
+                "{\"account_age_days\": {\"gt\": 3}}",
+                "{\"account_age_days\": {\"gte\": \"three\"}}",
+                "{\"region\": \"north\"}")) {
+            assertThrows(IllegalArgumentException.class, () -> compile(json), json);
+        }
+    }
+
+    @Test
+    void malformedRulesAreRejectedAtPublish() throws Exception {
+        BannerRepository bannerRepository = mock(BannerRepository.class);
+        FileStorageService fileStorageService = mock(FileStorageService.class);
+        BannerService bannerService = new BannerService(bannerRepository, fileStorageService,
+                mock(BannerTimeline.class), mock(BannerStatsService.class), objectMapper,
+                mock(ImageVariantService.class));
+        MockMultipartFile image = new MockMultipartFile("image", "banner.jpg", "image/jpeg", new byte[] {1, 2, 3});
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> bannerService.createBanner(
+                "Summer", image, null, 1, true, null, null, "{\"region\": \"north\"}"));
+
+        assertTrue(error.getMessage().contains("Unknown targeting rule: region"), error.getMessage());
+        verify(fileStorageService, never()).storeFile(any(), any());
+        verify(bannerRepository, never()).save(any());
+    }
+
+    @Test
+    void timelineSegmentsTheAudienceByAgeThreshold() {
+        BannerView newcomers = banner(1, "{\"account_age_days\": {\"lt\": 7}}");
+        BannerView regulars = banner(2, "{\"account_age_days\": {\"gte\": 7, \"lt\": 30}}");
+        BannerView everyone = banner(3, null);
+        BannerRepository bannerRepository = mock(BannerRepository.class);
+        when(bannerRepository.findAllViews()).thenReturn(List.of(newcomers, regulars, everyone));
+        PartnerStatusCache partnerStatusCache = mock(PartnerStatusCache.class);
+        BannerTimeline timeline = new BannerTimeline(bannerRepository, partnerStatusCache, objectMapper);
+        timeline.reload();
+
+        // Each age is read after a neighbour in the same or another bucket, so a segment
+        // cached under the wrong key would show up as the neighbour's list
+        assertEquals(List.of(newcomers, everyone), timeline.getLiveBanners(userAged(0)));
+        assertEquals(List.of(newcomers, everyone), timeline.getLiveBanners(userAged(6)));
+        assertEquals(List.of(regulars, everyone), timeline.getLiveBanners(userAged(7)));
+        assertEquals(List.of(regulars, everyone), timeline.getLiveBanners(userAged(29)));
+        assertEquals(List.of(everyone), timeline.getLiveBanners(userAged(30)));
+        assertEquals(List.of(everyone), timeline.getLiveBanners(userAged(400)));
+        assertEquals(List.of(newcomers, everyone), timeline.getLiveBanners(null));
+        verifyNoInteractions(partnerStatusCache);
+    }
+
+    @Test
+    void badStoredRuleHidesTheBanner() {
+        BannerView broken = banner(1, "{\"region\": \"north\"}");
+        BannerView everyone = banner(2, null);
+        BannerRepository bannerRepository = mock(BannerRepository.class);
+        when(bannerRepository.findAllViews()).thenReturn(List.of(broken, everyone));
+        BannerTimeline timeline = new BannerTimeline(bannerRepository, mock(PartnerStatusCache.class), objectMapper);
+        timeline.reload();
+
+        assertEquals(List.of(everyone), timeline.getLiveBanners(userAged(10)));
+        assertTrue(timeline.isPublished(broken.id()));
+    }
+
+    private BannerTargeting.Compiled compile(String json) {
+        return BannerTargeting.compile(json, objectMapper);
+    }
+
+    private static BannerTargeting.Audience audience(String userType, boolean hasPartnerProfile,
+                                                     PartnerProfile.ProfileStatus profileStatus, long accountAgeDays) {
+        return new BannerTargeting.Audience(userType, hasPartnerProfile, profileStatus, accountAgeDays);
+    }
+
+    private static BannerView banner(int displayOrder, String targetingRules) {
+        return new BannerView(UUID.randomUUID(), "Banner " + displayOrder, "/api/v1/files/banners/" + displayOrder + ".jpg",
+                null, null, null, displayOrder, true, null, null, targetingRules);
+    }
+
+    private static User userAged(long days) {
+        return User.builder()
+                .id(UUID.randomUUID())
+                .userType("customer")
+                .createdAt(LocalDateTime.now().minusDays(days).minusHours(1))
+                .build();
+    }
+}
@@ -0,0 +1,116 @@
+package com.gvn.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlurHashTest {
+
+    private static final String ALPHABET =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    @Test
+    void lengthAndSizeFlagFollowTheComponents() {
+        BufferedImage image = solid(40, 30, new Color(10, 120, 200), BufferedImage.TYPE_INT_RGB);
+
+        String banner = BlurHash.encode(image, 4, 3);
+        assertEquals(1 + 1 + 4 + 2 * (4 * 3 - 1), banner.length());
+        assertEquals('L', banner.charAt(0)); // (4 - 1) + (3 - 1) * 9 = 21
+
+        String avatar = BlurHash.encode(image, 4, 4);
+        assertEquals(1 + 1 + 4 + 2 * (4 * 4 - 1), avatar.length());
+        assertEquals('U', avatar.charAt(0)); // 30
+
+        assertEquals(6, BlurHash.encode(image, 1, 1).length());
+    }
+
+    @Test
+    void averageColourOfASolidImageIsExact() {
+        Color colour = new Color(10, 120, 200);
+
+        String hash = BlurHash.encode(solid(64, 48, colour, BufferedImage.TYPE_INT_RGB), 4, 3);
+
+        assertEquals(colour.getRGB() & 0xffffff, decode83(hash.substring(2, 6)));
+    }
+
+    @Test
+    void transparentPixelsAreFlattenedOntoWhite() {
+        BufferedImage transparent = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage white = solid(20, 20, Color.WHITE, BufferedImage.TYPE_INT_RGB);
+
+        assertEquals(BlurHash.encode(white, 4, 4), BlurHash.encode(transparent, 4, 4));
+        assertEquals(0xffffff, decode83(BlurHash.encode(transparent, 4, 4).substring(2, 6)));
+    }
+
+    @Test
+    void largeImagesAreSampledDown() {
+        Color colour = new Color(200, 40, 90);
+
+        String large = BlurHash.encode(solid(2000, 1500, colour, BufferedImage.TYPE_INT_RGB), 4, 3);
+        String small = BlurHash.encode(solid(32, 24, colour, BufferedImage.TYPE_INT_RGB), 4, 3);
+
+        assertEquals(small.substring(0, 6), large.substring(0, 6));
+    }
+
+    @Test
+    void firstHorizontalComponentPointsAtTheBrighterSide() {
+        BufferedImage leftDark = halves(Color.BLACK, Color.WHITE);
+        BufferedImage rightDark = halves(Color.WHITE, Color.BLACK);
+
+        String left = BlurHash.encode(leftDark, 4, 3);
+        String right = BlurHash.encode(rightDark, 4, 3);
+
+        assertEquals(left.substring(0, 6), right.substring(0, 6));
+        assertNotEquals(left, right);
+        // Basis (1, 0) is a half cosine, positive on the left: it goes negative when the left is dark
+        assertTrue(digit(left, 1, 0) < 9);
+        assertTrue(digit(right, 1, 0) > 9);
+    }
+
+    /**
+     * Quantised red value (0-18, 9 is zero) of AC component (x, y) of a 4-wide hash
+     */
+    private static int digit(String hash, int x, int y) {
+        int index = y * 4 + x;
+        int start = 6 + (index - 1) * 2;
+        return decode83(hash.substring(start, start + 2)) / (19 * 19);
+    }
+
+    private static BufferedImage solid(int width, int height, Color colour, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(colour);
+            graphics.fillRect(0, 0, width, height);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static BufferedImage halves(Color left, Color right) {
+        BufferedImage image = solid(32, 16, right, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(left);
+            graphics.fillRect(0, 0, 16, 16);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static int decode83(String value) {
+        int result = 0;
+        for (char c : value.toCharArray()) {
+            result = result * 83 + ALPHABET.indexOf(c);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,319 @@
+package com.gvn.service;
+
+import com.gvn.entity.StoredFile;
+import com.gvn.repository.StoredFileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ContentAddressedStore against an in-memory stored_blobs/stored_files pair whose
+ * transactions roll back like the database's (the store's SQL is PostgreSQL-only).
+ */
+class ContentAddressedStoreTest {
+
+    private static final byte[] CONTENT = "identical upload".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path basePath;
+
+    private final Map<String, Long> refCounts = new HashMap<>();
+    private final Map<String, StoredFile> storedFiles = new HashMap<>();
+    private StoredFileRepository storedFileRepository;
+    private TransactionTemplate transactionTemplate;
+    private ContentAddressedStore store;
+
+    @BeforeEach
+    void setUp() {
+        storedFileRepository = mock(StoredFileRepository.class);
+        when(storedFileRepository.save(any())).thenAnswer(invocation -> {
+            StoredFile file = invocation.getArgument(0);
+            storedFiles.put(file.getPath(), file);
+            return file;
+        });
+        when(storedFileRepository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(storedFiles.get(invocation.<String>getArgument(0))));
+        doAnswer(invocation -> storedFiles.remove(invocation.<String>getArgument(0)))
+                .when(storedFileRepository).deleteById(anyString());
+
+        FakeTransactionManager transactionManager = new FakeTransactionManager();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        store = new ContentAddressedStore(new FakeJdbcTemplate(), storedFileRepository, transactionManager);
+    }
+
+    @Test
+    void identicalUploadsShareOneBlob() throws IOException {
+        Path first = store("icons/a.png", CONTENT);
+        Path second = store("icons/b.png", CONTENT);
+
+        Path blob = blob(CONTENT);
+        assertTrue(Files.isSameFile(blob, first));
+        assertTrue(Files.isSameFile(blob, second));
+        assertEquals(2L, refCounts.get(hash(CONTENT)));
+        assertEquals(hash(CONTENT), storedFiles.get("icons/b.png").getContentHash());
+        assertEquals(CONTENT.length, storedFiles.get("icons/b.png").getSize());
+        assertEquals(0, count(basePath.resolve(ContentAddressedStore.TEMP_DIR)));
+    }
+
+    @Test
+    void stagedFilesAreHashedInPlaceAndConsumed() throws IOException {
+        store("icons/a.png", CONTENT);
+        Path staged = Files.createDirectories(basePath.resolve(ContentAddressedStore.TEMP_DIR)).resolve("part");
+        Files.write(staged, CONTENT);
+        Path target = target("icons/b.png");
+
+        assertEquals(CONTENT.length, store.storeFile(staged, basePath, target, "icons/b.png"));
+
+        assertFalse(Files.exists(staged));
+        assertTrue(Files.isSameFile(blob(CONTENT), target));
+        assertEquals(2L, refCounts.get(hash(CONTENT)));
+    }
+
+    @Test
+    void lastReleaseDeletesTheBlob() throws IOException {
+        Path first = store("icons/a.png", CONTENT);
+        Path second = store("icons/b.png", CONTENT);
+
+        assertTrue(store.release(basePath, first, "icons/a.png"));
+        assertFalse(Files.exists(first));
+        assertTrue(Files.exists(blob(CONTENT)));
+        assertEquals(1L, refCounts.get(hash(CONTENT)));
+        assertArrayEquals(CONTENT, Files.readAllBytes(second));
+
+        assertTrue(store.release(basePath, second, "icons/b.png"));
+        assertFalse(Files.exists(second));
+        assertFalse(Files.exists(blob(CONTENT)));
+        assertNull(refCounts.get(hash(CONTENT)));
+        assertTrue(storedFiles.isEmpty());
+    }
+
+    @Test
+    void untrackedPathsAreNotReleased() throws IOException {
+        Path legacy = Files.write(target("icons/legacy.png"), CONTENT);
+
+        assertFalse(store.release(basePath, legacy, "icons/legacy.png"));
+        assertTrue(Files.exists(legacy));
+    }
+
+    @Test
+    void rollbackRemovesTheNewBlobAndItsCount() throws IOException {
+        storeAndRollBack("icons/a.png", CONTENT);
+
+        assertFalse(Files.exists(blob(CONTENT)));
+        assertNull(refCounts.get(hash(CONTENT)));
+        assertTrue(storedFiles.isEmpty());
+    }
+
+    @Test
+    void rollbackKeepsABlobThatCommittedPathsReference() throws IOException {
+        Path committed = store("icons/a.png", CONTENT);
+
+        storeAndRollBack("icons/b.png", CONTENT);
+
+        assertTrue(Files.isSameFile(blob(CONTENT), committed));
+        assertEquals(1L, refCounts.get(hash(CONTENT)));
+        assertEquals(List.of("icons/a.png"), List.copyOf(storedFiles.keySet()));
+    }
+
+    @Test
+    void failedRecordRemovesTheTargetAndTheNewBlob() {
+        doThrow(new IllegalStateException("connection lost")).when(storedFileRepository).save(any());
+        Path target = basePath.resolve("icons/a.png");
+
+        assertThrows(IOException.class, () -> store("icons/a.png", CONTENT));
+
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(blob(CONTENT)));
+        assertNull(refCounts.get(hash(CONTENT)));
+    }
+
+    @Test
+    void existingTargetIsNeitherReplacedNorCounted() throws IOException {
+        store("icons/a.png", CONTENT);
+        Path existing = Files.write(target("icons/b.png"), new byte[] {1, 2, 3});
+
+        assertThrows(FileAlreadyExistsException.class, () -> store("icons/b.png", CONTENT));
+
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(existing));
+        assertTrue(Files.exists(blob(CONTENT)));
+        assertEquals(1L, refCounts.get(hash(CONTENT)));
+    }
+
+    @Test
+    void missingBlobIsRecreatedByTheNextUpload() throws IOException {
+        Path first = store("icons/a.png", CONTENT);
+        Files.delete(blob(CONTENT));
+
+        Path second = store("icons/b.png", CONTENT);
+
+        assertTrue(Files.isSameFile(blob(CONTENT), second));
+        assertArrayEquals(CONTENT, Files.readAllBytes(first));
+        assertEquals(2L, refCounts.get(hash(CONTENT)));
+    }
+
+    private Path store(String relativePath, byte[] content) throws IOException {
+        Path target = target(relativePath);
+        assertEquals(content.length, store.store(new ByteArrayInputStream(content), basePath, target, relativePath));
+        return target;
+    }
+
+    private void storeAndRollBack(String relativePath, byte[] content) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try {
+                store(relativePath, content);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            assertTrue(storedFiles.containsKey(relativePath));
+            status.setRollbackOnly();
+        });
+    }
+
+    private Path target(String relativePath) throws IOException {
+        Path target = basePath.resolve(relativePath);
+        Files.createDirectories(target.getParent());
+        return target;
+    }
+
+    private Path blob(byte[] content) {
+        String hash = hash(content);
+        return basePath.resolve(ContentAddressedStore.BLOB_DIR).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long count(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Interprets the store's stored_blobs statements against refCounts
+     */
+    private final class FakeJdbcTemplate extends JdbcTemplate {
+
+        @Override
+        public int update(String sql, Object... args) {
+            String hash = (String) args[0];
+            if (sql.startsWith("INSERT INTO stored_blobs")) {
+                refCounts.merge(hash, 1L, Long::sum);
+            } else if (sql.startsWith("DELETE FROM stored_blobs")) {
+                refCounts.computeIfPresent(hash, (key, count) -> count <= 0 ? null : count);
+            } else {
+                throw new IllegalArgumentException(sql);
+            }
+            return 1;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            assertTrue(sql.startsWith("UPDATE stored_blobs SET ref_count = ref_count - 1"), sql);
+            Long count = refCounts.computeIfPresent((String) args[0], (key, value) -> value - 1);
+            return count == null ? List.of() : List.of((T) Integer.valueOf(Math.toIntExact(count)));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+            assertTrue(sql.startsWith("SELECT EXISTS"), sql);
+            Long count = refCounts.get((String) args[0]);
+            return (T) Boolean.valueOf(count != null && count > 0);
+        }
+    }
+
+    /**
+     * Single-threaded transaction manager that snapshots both tables on begin and restores them on rollback
+     */
+    private final class FakeTransactionManager extends AbstractPlatformTransactionManager {
+
+        private Snapshot active;
+
+        private record Snapshot(Map<String, Long> refCounts, Map<String, StoredFile> storedFiles) {
+        }
+
+        private static final class Transaction {
+            private Snapshot snapshot;
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            Transaction transaction = new Transaction();
+            transaction.snapshot = active;
+            return transaction;
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return ((Transaction) transaction).snapshot != null;
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            active = new Snapshot(new HashMap<>(refCounts), new HashMap<>(storedFiles));
+            ((Transaction) transaction).snapshot = active;
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            Snapshot snapshot = ((Transaction) status.getTransaction()).snapshot;
+            refCounts.clear();
+            refCounts.putAll(snapshot.refCounts());
+            storedFiles.clear();
+            storedFiles.putAll(snapshot.storedFiles());
+        }
+
+        @Override
+        protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            active = null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.gvn.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Upload and download overhead of FileEncryption against plain file I/O, on the default
+ * 64 KB segments. Skipped in normal builds; run with
+ * {@code mvn test -Dtest=FileEncryptionBenchmarkTest -Dbenchmark=true}.
+ *
+ * Each case is warmed up before it is timed (so AES-GCM runs on the AES-NI/CLMUL
+ * intrinsics) and reports the best of several rounds. The files go through the page
+ * cache, so this measures CPU overhead, not disk speed.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class FileEncryptionBenchmarkTest {
+
+    private static final int SIZE = 64 * 1024 * 1024;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void encryptionOverhead() throws IOException {
+        byte[] content = new byte[SIZE];
+        new Random(1).nextBytes(content);
+        byte[] key = new byte[32];
+        new Random(2).nextBytes(key);
+        FileEncryption encryption = new FileEncryption(true, Base64.getEncoder().encodeToString(key),
+                new String[] {"documents"}, 65536);
+        Path plain = directory.resolve("plain");
+        Path encrypted = directory.resolve("encrypted");
+
+        double plainWrite = best(() -> {
+            Files.deleteIfExists(plain);
+            try (OutputStream output = Files.newOutputStream(plain)) {
+                new ByteArrayInputStream(content).transferTo(output);
+            }
+        });
+        double encryptedWrite = best(() -> {
+            Files.deleteIfExists(encrypted);
+            encryption.encryptTo(new ByteArrayInputStream(content), encrypted);
+        });
+        double plainRead = best(() -> {
+            try (InputStream input = Files.newInputStream(plain)) {
+                assertEquals(SIZE, input.transferTo(OutputStream.nullOutputStream()));
+            }
+        });
+        double encryptedRead = best(() -> {
+            try (InputStream input = encryption.decrypt(encrypted)) {
+                assertEquals(SIZE, input.transferTo(OutputStream.nullOutputStream()));
+            }
+        });
+        double rangeRead = best(() -> {
+            // A typical viewer request: 1 MB from the middle of the file, 1000 times over
+            for (int i = 0; i < 1000; i++) {
+                long start = SIZE / 2 + i * 4096L;
+                encryption.decryptRange(encrypted, start, start + 1024 * 1024, OutputStream.nullOutputStream());
+            }
+        });
+
+        System.out.printf("upload:   plain %.0f MB/s, encrypted %.0f MB/s (%.0f%% of plain)%n",
+                mbPerSecond(SIZE, plainWrite), mbPerSecond(SIZE, encryptedWrite), 100 * plainWrite / encryptedWrite);
+        System.out.printf("download: plain %.0f MB/s, decrypted %.0f MB/s (%.0f%% of plain)%n",
+                mbPerSecond(SIZE, plainRead), mbPerSecond(SIZE, encryptedRead), 100 * plainRead / encryptedRead);
+        System.out.printf("range:    1 MB ranges decrypted at %.0f MB/s%n", mbPerSecond(1000L * 1024 * 1024, rangeRead));
+        System.out.printf("size:     %d bytes stored for %d (+%d)%n",
+                Files.size(encrypted), SIZE, Files.size(encrypted) - SIZE);
+    }
+
+    private static double best(Case benchmark) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            benchmark.run();
+        }
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            benchmark.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1e9);
+        }
+        return best;
+    }
+
+    private static double mbPerSecond(long bytes, double seconds) {
+        return bytes / (1024.0 * 1024.0) / seconds;
+    }
+
+    private interface Case {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,215 @@
+package com.gvn.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileEncryptionTest {
+
+    private static final int SEGMENT = 4096;
+    private static final int TAG = 16;
+
+    @TempDir
+    Path directory;
+
+    private final FileEncryption encryption = encryption(key(1));
+
+    @Test
+    void headerHoldsMagicSegmentSizeAndNonces() throws IOException {
+        Path file = encrypt("a", content(100));
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file), 0, FileEncryption.HEADER_LENGTH);
+
+        byte[] magic = new byte[4];
+        header.get(magic);
+        assertArrayEquals(new byte[] {'G', 'V', 'E', '1'}, magic);
+        assertEquals(SEGMENT, header.getInt());
+        // Magic, segment size, nonce prefix (7), key nonce (12), wrapped key (32 + tag)
+        assertEquals(4 + 4 + 7 + 12 + 32 + TAG, FileEncryption.HEADER_LENGTH);
+        assertTrue(encryption.isEncryptedFile(file));
+    }
+
+    @Test
+    void everySegmentAddsOneTag() throws IOException {
+        assertEquals(FileEncryption.HEADER_LENGTH + TAG, Files.size(encrypt("empty", new byte[0])));
+        assertEquals(FileEncryption.HEADER_LENGTH + 100 + TAG, Files.size(encrypt("small", content(100))));
+        // A full final segment is sealed as the last one, not followed by an empty segment
+        assertEquals(FileEncryption.HEADER_LENGTH + 2 * SEGMENT + 2 * TAG,
+                Files.size(encrypt("exact", content(2 * SEGMENT))));
+        assertEquals(FileEncryption.HEADER_LENGTH + 2 * SEGMENT + 1 + 3 * TAG,
+                Files.size(encrypt("over", content(2 * SEGMENT + 1))));
+    }
+
+    @Test
+    void filesGetTheirOwnNoncesAndKeys() throws IOException {
+        byte[] plaintext = content(SEGMENT);
+        byte[] first = Files.readAllBytes(encrypt("first", plaintext));
+        byte[] second = Files.readAllBytes(encrypt("second", plaintext));
+
+        int noncePrefix = 8;
+        int keyNonce = noncePrefix + 7;
+        assertFalse(Arrays.equals(Arrays.copyOfRange(first, noncePrefix, keyNonce),
+                Arrays.copyOfRange(second, noncePrefix, keyNonce)));
+        assertFalse(Arrays.equals(Arrays.copyOfRange(first, FileEncryption.HEADER_LENGTH, first.length),
+                Arrays.copyOfRange(second, FileEncryption.HEADER_LENGTH, second.length)));
+    }
+
+    @Test
+    void roundTripsAcrossSegments() throws IOException {
+        for (int length : new int[] {0, 1, SEGMENT - 1, SEGMENT, SEGMENT + 1, 3 * SEGMENT + 17}) {
+            byte[] plaintext = content(length);
+            Path file = encrypt("round-" + length, plaintext);
+
+            assertEquals(length, encryption.plaintextLength(file));
+            try (InputStream input = encryption.decrypt(file)) {
+                assertArrayEquals(plaintext, input.readAllBytes(), "length " + length);
+            }
+        }
+    }
+
+    @Test
+    void rangeReadsSpanSegmentBoundaries() throws IOException {
+        byte[] plaintext = content(3 * SEGMENT + 17);
+        Path file = encrypt("range", plaintext);
+
+        long[][] ranges = {{0, 1}, {SEGMENT - 3, SEGMENT + 3}, {10, 2 * SEGMENT + 5}, {3 * SEGMENT, plaintext.length}};
+        for (long[] range : ranges) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            encryption.decryptRange(file, range[0], range[1], output);
+            assertArrayEquals(Arrays.copyOfRange(plaintext, (int) range[0], (int) range[1]), output.toByteArray());
+        }
+    }
+
+    @Test
+    void readsAnEncryptedFileInsideALargerChannel() throws IOException {
+        byte[] plaintext = content(SEGMENT + 10);
+        byte[] encrypted = Files.readAllBytes(encrypt("inner", plaintext));
+        Path pack = directory.resolve("pack");
+        byte[] prefix = new byte[123];
+        Files.write(pack, prefix);
+        Files.write(pack, encrypted, StandardOpenOption.APPEND);
+        Files.write(pack, new byte[50], StandardOpenOption.APPEND);
+
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.READ)) {
+            assertTrue(encryption.isEncrypted(channel, prefix.length, encrypted.length));
+            assertEquals(plaintext.length, encryption.plaintextLength(channel, prefix.length, encrypted.length));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            encryption.decryptRange(channel, prefix.length, encrypted.length, SEGMENT - 2, SEGMENT + 2, output);
+            assertArrayEquals(Arrays.copyOfRange(plaintext, SEGMENT - 2, SEGMENT + 2), output.toByteArray());
+        }
+    }
+
+    @Test
+    void swappedSegmentsFailAuthentication() throws IOException {
+        Path file = encrypt("swapped", content(3 * SEGMENT));
+        byte[] bytes = Files.readAllBytes(file);
+        int stride = SEGMENT + TAG;
+        int first = FileEncryption.HEADER_LENGTH;
+        byte[] segment = Arrays.copyOfRange(bytes, first, first + stride);
+        System.arraycopy(bytes, first + stride, bytes, first, stride);
+        System.arraycopy(segment, 0, bytes, first + stride, stride);
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> readAll(file));
+    }
+
+    @Test
+    void droppingTheLastSegmentFailsAuthentication() throws IOException {
+        Path file = encrypt("truncated", content(2 * SEGMENT));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(FileEncryption.HEADER_LENGTH + SEGMENT + TAG);
+        }
+
+        // The remaining segment was sealed as not last, so it no longer verifies as the end
+        assertThrows(IOException.class, () -> readAll(file));
+    }
+
+    @Test
+    void flippedCiphertextBitFailsAuthentication() throws IOException {
+        Path file = encrypt("flipped", content(SEGMENT / 2));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[FileEncryption.HEADER_LENGTH + 5] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> readAll(file));
+    }
+
+    @Test
+    void otherMasterKeyCannotOpenTheFile() throws IOException {
+        Path file = encrypt("other-key", content(10));
+
+        IOException error = assertThrows(IOException.class, () -> encryption(key(2)).decrypt(file));
+        assertTrue(error.getMessage().contains("authentication"));
+    }
+
+    @Test
+    void plaintextFilesAreNotMistakenForEncryptedOnes() throws IOException {
+        Path file = directory.resolve("plain");
+        Files.write(file, content(200));
+
+        assertFalse(encryption.isEncryptedFile(file));
+        assertThrows(IOException.class, () -> encryption.plaintextLength(file));
+    }
+
+    @Test
+    void onlyConfiguredAreasAreEncrypted() {
+        assertTrue(encryption.encryptsNewFiles("documents/ab/cd/x.pdf"));
+        assertFalse(encryption.encryptsNewFiles("avatars/ab/cd/x.jpg"));
+        assertFalse(new FileEncryption(false, key(1), new String[] {"documents"}, SEGMENT)
+                .encryptsNewFiles("documents/x.pdf"));
+    }
+
+    @Test
+    void enablingWithoutAMasterKeyFailsAtStartup() {
+        assertThrows(IllegalStateException.class,
+                () -> new FileEncryption(true, "", new String[] {"documents"}, SEGMENT));
+        assertThrows(IllegalStateException.class,
+                () -> new FileEncryption(true, Base64.getEncoder().encodeToString(new byte[16]),
+                        new String[] {"documents"}, SEGMENT));
+    }
+
+    private Path encrypt(String name, byte[] plaintext) throws IOException {
+        Path file = directory.resolve(name);
+        assertEquals(plaintext.length, encryption.encryptTo(new ByteArrayInputStream(plaintext), file));
+        return file;
+    }
+
+    private void readAll(Path file) throws IOException {
+        try (InputStream input = encryption.decrypt(file)) {
+            input.readAllBytes();
+        }
+    }
+
+    private static FileEncryption encryption(String masterKey) {
+        return new FileEncryption(true, masterKey, new String[] {"documents"}, SEGMENT);
+    }
+
+    private static String key(int seed) {
+        byte[] key = new byte[32];
+        new Random(seed).nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+}
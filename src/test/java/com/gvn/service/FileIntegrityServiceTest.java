@@ -0,0 +1,33 @@
+package com.gvn.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileIntegrityServiceTest {
+
+    @Test
+    void unitOfStopsAtTheFirstShardLevel() {
+        assertEquals("avatars/ab", FileIntegrityService.unitOf("avatars/ab/cd/abcd1234.jpg"));
+        assertEquals("documents/health/0f", FileIntegrityService.unitOf("documents/health/0f/9e/0f9e77aa.pdf"));
+    }
+
+    @Test
+    void unitOfUnshardedFilesIsTheirDirectory() {
+        assertEquals("avatars", FileIntegrityService.unitOf("avatars/abcd1234.jpg"));
+        assertEquals("banners/ab", FileIntegrityService.unitOf("banners/ab/x.jpg"));
+        assertEquals("banners/ab/zz", FileIntegrityService.unitOf("banners/ab/zz/x.jpg"));
+        assertEquals("", FileIntegrityService.unitOf("loose.jpg"));
+    }
+
+    @Test
+    void shardsAreTwoHexDigits() {
+        assertTrue(FileIntegrityService.isShard("0f"));
+        assertTrue(FileIntegrityService.isShard("AB"));
+        assertFalse(FileIntegrityService.isShard("0g"));
+        assertFalse(FileIntegrityService.isShard("abc"));
+        assertFalse(FileIntegrityService.isShard("a"));
+    }
+}
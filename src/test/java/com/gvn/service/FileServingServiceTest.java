@@ -0,0 +1,213 @@
+package com.gvn.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FileServingServiceTest {
+
+    private static final String PATH = "icons/a.png";
+    private static final long MODIFIED = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    private final byte[] content = new byte[100];
+    private FileServingService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Path file = Files.createDirectories(directory.resolve("icons")).resolve("a.png");
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(MODIFIED));
+
+        FileStorageService fileStorageService = mock(FileStorageService.class);
+        when(fileStorageService.isLocalStorage()).thenReturn(true);
+        when(fileStorageService.locate(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(fileStorageService.resolvePath(anyString()))
+                .thenAnswer(invocation -> directory.resolve(invocation.<String>getArgument(0)));
+        service = new FileServingService(fileStorageService, mock(HotFileCache.class), mock(SignedUrlService.class),
+                mock(FileEncryption.class), mock(PackStore.class));
+    }
+
+    @Test
+    void rangesAreParsedAgainstTheLength() {
+        assertArrayEquals(new long[] {0, 10}, FileServingService.parseRange("bytes=0-9", 100));
+        assertArrayEquals(new long[] {90, 100}, FileServingService.parseRange("bytes=90-", 100));
+        assertArrayEquals(new long[] {90, 100}, FileServingService.parseRange("bytes=-10", 100));
+        assertArrayEquals(new long[] {0, 100}, FileServingService.parseRange("bytes=-500", 100));
+        assertArrayEquals(new long[] {95, 100}, FileServingService.parseRange("bytes=95-200", 100));
+        assertArrayEquals(new long[] {5, 6}, FileServingService.parseRange("bytes= 5 - 5", 100));
+    }
+
+    @Test
+    void invalidOrUnsupportedRangesServeTheWholeFile() {
+        for (String header : new String[] {"bytes=5-3", "items=0-9", "bytes=0-1,5-6", "bytes=a-b", "bytes=5", "bytes=-x"}) {
+            assertArrayEquals(new long[0], FileServingService.parseRange(header, 100), header);
+        }
+    }
+
+    @Test
+    void rangesPastTheEndAreUnsatisfiable() {
+        assertNull(FileServingService.parseRange("bytes=100-", 100));
+        assertNull(FileServingService.parseRange("bytes=150-200", 100));
+        assertNull(FileServingService.parseRange("bytes=-0", 100));
+    }
+
+    @Test
+    void gzipIsAcceptedUnlessRefused() {
+        assertTrue(FileServingService.acceptsGzip("gzip"));
+        assertTrue(FileServingService.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(FileServingService.acceptsGzip("x-gzip"));
+        assertTrue(FileServingService.acceptsGzip("br, *"));
+        assertTrue(FileServingService.acceptsGzip("gzip;q=oops"));
+
+        assertFalse(FileServingService.acceptsGzip(null));
+        assertFalse(FileServingService.acceptsGzip(""));
+        assertFalse(FileServingService.acceptsGzip("br, deflate"));
+        assertFalse(FileServingService.acceptsGzip("gzip;q=0"));
+        assertFalse(FileServingService.acceptsGzip("gzip; q=0.000"));
+        assertFalse(FileServingService.acceptsGzip("*;q=0"));
+        assertFalse(FileServingService.acceptsGzip("gzip;q=0, *")); // The explicit entry wins over *
+    }
+
+    @Test
+    void entityTagsAreWeak() throws IOException {
+        MockHttpServletResponse response = serve(request());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(FileServingService.etagOf(100, MODIFIED), response.getHeader("ETag"));
+        assertTrue(response.getHeader("ETag").startsWith("W/\""));
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    void ifNoneMatchComparesWeakly() throws IOException {
+        String etag = FileServingService.etagOf(100, MODIFIED);
+
+        assertEquals(304, serve(header(request(), "If-None-Match", etag)).getStatus());
+        assertEquals(304, serve(header(request(), "If-None-Match", etag.substring(2))).getStatus());
+        assertEquals(304, serve(header(request(), "If-None-Match", "\"other\", " + etag)).getStatus());
+        assertEquals(304, serve(header(request(), "If-None-Match", "*")).getStatus());
+
+        MockHttpServletResponse changed = serve(header(request(), "If-None-Match", FileServingService.etagOf(101, MODIFIED)));
+        assertEquals(200, changed.getStatus());
+        assertEquals(100, changed.getContentAsByteArray().length);
+    }
+
+    @Test
+    void ifNoneMatchTakesPrecedenceOverIfModifiedSince() throws IOException {
+        MockHttpServletRequest request = header(request(), "If-None-Match", "\"other\"");
+        request.addHeader("If-Modified-Since", MODIFIED);
+
+        assertEquals(200, serve(request).getStatus());
+        assertEquals(304, serve(header(request(), "If-Modified-Since", MODIFIED + 999)).getStatus());
+    }
+
+    @Test
+    void satisfiableRangesArePartial() throws IOException {
+        MockHttpServletResponse response = serve(header(request(), "Range", "bytes=10-19"));
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 10-19/100", response.getHeader("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 20), response.getContentAsByteArray());
+    }
+
+    @Test
+    void invalidRangeIsIgnored() throws IOException {
+        MockHttpServletResponse response = serve(header(request(), "Range", "bytes=5-3"));
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader("Content-Range"));
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    void unsatisfiableRangeIs416() throws IOException {
+        MockHttpServletResponse response = serve(header(request(), "Range", "bytes=200-"));
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */100", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void ifRangeKeepsTheRangeOnlyForAMatchingDate() throws IOException {
+        MockHttpServletResponse first = serve(request());
+        String lastModified = first.getHeader("Last-Modified");
+
+        MockHttpServletRequest sameDate = header(request(), "Range", "bytes=10-19");
+        sameDate.addHeader("If-Range", lastModified);
+        assertEquals(206, serve(sameDate).getStatus());
+
+        MockHttpServletRequest olderDate = header(request(), "Range", "bytes=10-19");
+        olderDate.addHeader("If-Range", "Mon, 01 Jan 2024 00:00:00 GMT");
+        MockHttpServletResponse full = serve(olderDate);
+        assertEquals(200, full.getStatus());
+        assertArrayEquals(content, full.getContentAsByteArray());
+
+        MockHttpServletRequest garbage = header(request(), "Range", "bytes=10-19");
+        garbage.addHeader("If-Range", "yesterday");
+        assertEquals(200, serve(garbage).getStatus());
+    }
+
+    @Test
+    void ifRangeNeverMatchesAWeakTag() throws IOException {
+        String etag = FileServingService.etagOf(100, MODIFIED);
+
+        for (String ifRange : new String[] {etag, etag.substring(2)}) {
+            MockHttpServletRequest request = header(request(), "Range", "bytes=10-19");
+            request.addHeader("If-Range", ifRange);
+            MockHttpServletResponse response = serve(request);
+
+            assertEquals(200, response.getStatus(), ifRange);
+            assertArrayEquals(content, response.getContentAsByteArray());
+        }
+    }
+
+    @Test
+    void headSendsHeadersOnly() throws IOException {
+        MockHttpServletRequest request = request();
+        request.setMethod("HEAD");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(100, response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.serve(PATH, request, response);
+        return response;
+    }
+
+    private static MockHttpServletRequest request() {
+        return new MockHttpServletRequest("GET", "/api/v1/files/" + PATH);
+    }
+
+    private static MockHttpServletRequest header(MockHttpServletRequest request, String name, Object value) {
+        request.addHeader(name, value);
+        return request;
+    }
+}
@@ -0,0 +1,143 @@
+package com.gvn.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class HotFileCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private MeterRegistry registry;
+    private HotFileCache cache;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new HotFileCache(registry, true, 300, 200, new String[] {"icons", "banners/"});
+        cache.bindTo(registry);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntriesOverBudget() throws IOException {
+        load("icons/a.png", 100);
+        load("icons/b.png", 100);
+        load("icons/c.png", 100);
+        assertNotNull(cache.get("icons/a.png")); // b is now the least recently used
+
+        load("icons/d.png", 100);
+
+        assertNull(cache.get("icons/b.png"));
+        assertNotNull(cache.get("icons/a.png"));
+        assertNotNull(cache.get("icons/c.png"));
+        assertNotNull(cache.get("icons/d.png"));
+        assertEquals(300, size());
+    }
+
+    @Test
+    void evictsAsManyEntriesAsTheNewOneNeeds() throws IOException {
+        load("icons/a.png", 100);
+        load("icons/b.png", 100);
+        load("icons/c.png", 50);
+
+        load("icons/d.png", 200);
+
+        assertNull(cache.get("icons/a.png"));
+        assertNull(cache.get("icons/b.png"));
+        assertNotNull(cache.get("icons/c.png"));
+        assertEquals(250, size());
+    }
+
+    @Test
+    void reloadingAPathReplacesItsBytes() throws IOException {
+        load("icons/a.png", 100);
+        load("icons/a.png", 40);
+
+        assertEquals(40, size());
+        assertEquals(40, cache.get("icons/a.png").length());
+    }
+
+    @Test
+    void invalidateReleasesFlatAndShardedEntries() throws IOException {
+        load("icons/abcd1234.png", 100);
+        load("icons/ab/cd/abcd1234.png", 60);
+        load("icons/other.png", 10);
+
+        cache.invalidate("icons/abcd1234.png");
+
+        assertNull(cache.get("icons/abcd1234.png"));
+        assertNull(cache.get("icons/ab/cd/abcd1234.png"));
+        assertEquals(10, size());
+    }
+
+    @Test
+    void onlySmallFilesInCachedAreasAreLoaded() throws IOException {
+        assertNull(load("avatars/a.jpg", 10));
+        assertNull(load("icons/big.png", 201));
+        assertNull(load("icons/empty.png", 0));
+        assertNotNull(load("banners/b.jpg", 200));
+
+        assertEquals(200, size());
+    }
+
+    @Test
+    void entriesHoldTheFileBytes() throws IOException {
+        HotFileCache.Entry entry = load("icons/a.png", 150);
+
+        ByteBuffer content = entry.content().duplicate();
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        assertArrayEquals(Files.readAllBytes(directory.resolve("icons/a.png")), bytes);
+        assertEquals(FileServingService.etagOf(150, 1234L), entry.etag());
+        assertEquals("image/png", entry.contentType());
+    }
+
+    @Test
+    void countsHitsAndMissesOfCacheablePathsOnly() throws IOException {
+        cache.get("icons/a.png");
+        load("icons/a.png", 10);
+        cache.get("icons/a.png");
+        cache.get("icons/a.png");
+        cache.get("avatars/a.jpg");
+
+        assertEquals(2.0, registry.get("hotfiles.cache.requests").tag("result", "hit").counter().count(), 0);
+        assertEquals(1.0, registry.get("hotfiles.cache.requests").tag("result", "miss").counter().count(), 0);
+        assertEquals(2.0 / 3, registry.get("hotfiles.cache.hit.ratio").gauge().value(), 1e-9);
+    }
+
+    @Test
+    void disabledCacheHoldsNothing() throws IOException {
+        cache = new HotFileCache(new SimpleMeterRegistry(), false, 300, 200, new String[] {"icons"});
+
+        assertNull(load("icons/a.png", 10));
+        assertNull(cache.get("icons/a.png"));
+    }
+
+    private HotFileCache.Entry load(String relativePath, int length) throws IOException {
+        Path path = directory.resolve(relativePath);
+        Files.createDirectories(path.getParent());
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31 + relativePath.length());
+        }
+        Files.write(path, content);
+        return cache.load(relativePath, path, length, 1234L, "image/png");
+    }
+
+    private long size() {
+        return (long) registry.get("hotfiles.cache.size").gauge().value();
+    }
+}
@@ -0,0 +1,230 @@
+package com.gvn.service;
+
+import com.gvn.entity.PackedFile;
+import com.gvn.repository.PackedFileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PackStoreTest {
+
+    private static final String TEXT_PATH = "documents/ab/cd/abcd0001.txt";
+    private static final String RANDOM_PATH = "documents/ef/01/ef010002.jpg";
+    private static final int HEADER_FIELDS = 4 + 1 + 8 + 8 + 4 + 2;
+
+    @TempDir
+    Path directory;
+
+    private PackedFileRepository repository;
+    private PackStore packStore;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(PackedFileRepository.class);
+        FileEncryption encryption = new FileEncryption(false, "", new String[] {"documents"}, 65536);
+        packStore = new PackStore(repository, encryption, new String[] {"documents"}, directory.toString());
+    }
+
+    @Test
+    void entryHeaderDescribesTheStoredBytes() throws IOException {
+        byte[] text = text(20_000);
+        PackedFile entry = pack("a.pack", TEXT_PATH, text, false);
+
+        ByteBuffer pack = ByteBuffer.wrap(Files.readAllBytes(packStore.packPath("a.pack")));
+        byte[] magic = new byte[4];
+        pack.get(magic);
+        assertArrayEquals(new byte[] {'G', 'V', 'P', '1'}, magic);
+        assertEquals(1, pack.get()); // Deflated
+        assertEquals(text.length, pack.getLong());
+        long stored = pack.getLong();
+        int crc = pack.getInt();
+        byte[] path = new byte[pack.getShort()];
+        pack.get(path);
+        assertEquals(TEXT_PATH, new String(path, StandardCharsets.UTF_8));
+
+        assertEquals(HEADER_FIELDS + path.length, entry.getOffset());
+        assertEquals(stored, entry.getStoredLength());
+        assertTrue(stored < text.length);
+        assertEquals(PackedFile.COMPRESSION_DEFLATE, entry.getCompression());
+        CRC32C expected = new CRC32C();
+        expected.update(pack.array(), Math.toIntExact(entry.getOffset()), (int) stored);
+        assertEquals(expected.getValue(), entry.getCrc32c());
+        assertEquals((int) expected.getValue(), crc);
+        assertEquals(entry.getOffset() + stored, pack.capacity());
+    }
+
+    @Test
+    void incompressibleFilesAreStoredAsTheyAre() throws IOException {
+        byte[] random = random(10_000);
+        PackedFile entry = pack("a.pack", RANDOM_PATH, random, false);
+
+        byte[] pack = Files.readAllBytes(packStore.packPath("a.pack"));
+        assertEquals(0, pack[4]);
+        assertEquals(PackedFile.COMPRESSION_NONE, entry.getCompression());
+        assertTrue(packStore.isRaw(entry));
+        assertArrayEquals(random, Arrays.copyOfRange(pack, Math.toIntExact(entry.getOffset()), pack.length));
+    }
+
+    @Test
+    void encryptedFilesAreNeverCompressed() throws IOException {
+        PackedFile entry = pack("a.pack", TEXT_PATH, text(5_000), true);
+
+        assertEquals(2, Files.readAllBytes(packStore.packPath("a.pack"))[4]);
+        assertEquals(PackedFile.COMPRESSION_NONE, entry.getCompression());
+        assertEquals(5_000, entry.getStoredLength());
+        assertFalse(packStore.isRaw(entry));
+    }
+
+    @Test
+    void entriesReadBackWholeAndByRange() throws IOException {
+        byte[] text = text(200_000);
+        byte[] random = random(100_000);
+        List<PackedFile> entries = packAll("a.pack", List.of(TEXT_PATH, RANDOM_PATH), List.of(text, random));
+
+        assertContent(text, entries.get(0));
+        assertContent(random, entries.get(1));
+        assertEquals(entries.get(0).getOffset() + entries.get(0).getStoredLength() + HEADER_FIELDS
+                + RANDOM_PATH.length(), entries.get(1).getOffset());
+    }
+
+    @Test
+    void verifyCatchesCorruptedEntries() throws IOException {
+        Path source = file("source", random(1_000));
+        try (PackStore.Writer writer = packStore.create("a.pack")) {
+            PackedFile entry = writer.append(RANDOM_PATH, source, 1L, false);
+            assertTrue(writer.verify(entry));
+            try (FileChannel channel = FileChannel.open(packStore.packPath("a.pack"), StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {0x55}), entry.getOffset() + 10);
+            }
+            assertFalse(writer.verify(entry));
+        }
+    }
+
+    @Test
+    void copyMovesTheStoredBytesIntoAnotherPack() throws IOException {
+        byte[] text = text(50_000);
+        List<PackedFile> entries = packAll("old.pack", List.of(RANDOM_PATH, TEXT_PATH), List.of(random(3_000), text));
+        PackedFile original = entries.get(1);
+
+        PackedFile copy;
+        try (PackStore.Writer writer = packStore.create("new.pack");
+             FileChannel source = FileChannel.open(packStore.packPath(original), StandardOpenOption.READ)) {
+            copy = writer.copy(original, source);
+            assertTrue(writer.verify(copy));
+        }
+
+        assertEquals("new.pack", copy.getPack());
+        assertEquals(HEADER_FIELDS + TEXT_PATH.length(), copy.getOffset());
+        assertEquals(original.getStoredLength(), copy.getStoredLength());
+        assertEquals(original.getCrc32c(), copy.getCrc32c());
+        assertEquals(original.getCompression(), copy.getCompression());
+        assertContent(text, copy);
+    }
+
+    @Test
+    void copyRefusesBytesThatFailTheirChecksum() throws IOException {
+        PackedFile entry = pack("old.pack", TEXT_PATH, text(10_000), false);
+        try (FileChannel channel = FileChannel.open(packStore.packPath(entry), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0x55}), entry.getOffset() + 3);
+        }
+
+        try (PackStore.Writer writer = packStore.create("new.pack");
+             FileChannel source = FileChannel.open(packStore.packPath(entry), StandardOpenOption.READ)) {
+            assertThrows(IOException.class, () -> writer.copy(entry, source));
+        }
+    }
+
+    @Test
+    void removeZeroesTheWholeEntry() throws IOException {
+        byte[] random = random(4_000);
+        List<PackedFile> entries = packAll("a.pack", List.of(TEXT_PATH, RANDOM_PATH), List.of(text(30_000), random));
+        PackedFile removed = entries.get(0);
+        when(repository.findById(TEXT_PATH)).thenReturn(Optional.of(removed));
+
+        assertEquals(Optional.of(removed), packStore.remove(TEXT_PATH));
+
+        byte[] pack = Files.readAllBytes(packStore.packPath("a.pack"));
+        long end = removed.getOffset() + removed.getStoredLength();
+        for (int i = 0; i < end; i++) {
+            assertEquals(0, pack[i], "byte " + i);
+        }
+        assertContent(random, entries.get(1));
+    }
+
+    @Test
+    void liveBytesCountHeadersAndStoredBytes() throws IOException {
+        List<PackedFile> entries = packAll("a.pack", List.of(TEXT_PATH, RANDOM_PATH), List.of(text(9_000), random(7_000)));
+
+        assertEquals(Files.size(packStore.packPath("a.pack")), PackStore.liveBytes(entries));
+        assertEquals(HEADER_FIELDS + RANDOM_PATH.length() + 7_000, PackStore.liveBytes(entries.subList(1, 2)));
+    }
+
+    private void assertContent(byte[] expected, PackedFile entry) throws IOException {
+        assertEquals(expected.length, packStore.contentLength(entry));
+        try (InputStream input = packStore.open(entry)) {
+            assertArrayEquals(expected, input.readAllBytes());
+        }
+        ByteArrayOutputStream range = new ByteArrayOutputStream();
+        packStore.copyRange(entry, 100, expected.length - 100, range);
+        assertArrayEquals(Arrays.copyOfRange(expected, 100, expected.length - 100), range.toByteArray());
+    }
+
+    private PackedFile pack(String name, String relativePath, byte[] content, boolean encrypted) throws IOException {
+        try (PackStore.Writer writer = packStore.create(name)) {
+            PackedFile entry = writer.append(relativePath, file(relativePath.replace('/', '_'), content), 1L, encrypted);
+            writer.force();
+            return entry;
+        }
+    }
+
+    private List<PackedFile> packAll(String name, List<String> paths, List<byte[]> contents) throws IOException {
+        try (PackStore.Writer writer = packStore.create(name)) {
+            PackedFile first = writer.append(paths.get(0), file("first", contents.get(0)), 1L, false);
+            PackedFile second = writer.append(paths.get(1), file("second", contents.get(1)), 2L, false);
+            writer.force();
+            return List.of(first, second);
+        }
+    }
+
+    private Path file(String name, byte[] content) throws IOException {
+        Path sources = Files.createDirectories(directory.resolve("sources"));
+        return Files.write(sources.resolve(name), content);
+    }
+
+    private static byte[] text(int length) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append("Giay chung nhan suc khoe so ").append(text.length()).append('\n');
+        }
+        return text.substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] random(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,254 @@
+package com.gvn.service;
+
+import com.gvn.dto.request.CreateUploadRequest;
+import com.gvn.dto.response.UploadSessionResponse;
+import com.gvn.exception.ConflictException;
+import com.gvn.exception.NotFoundException;
+import com.gvn.repository.UploadSessionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Upload state transitions against real conditional UPDATEs. Not transactional, so a
+ * chunk received on another thread sees the committed upload like a second request would.
+ */
+@DataJpaTest(properties = "app.file.resumable.max-open-per-user=2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(ResumableUploadService.class)
+class ResumableUploadServiceTest {
+
+    private static final int SIZE = 100_000;
+
+    @TempDir
+    Path directory;
+
+    @Autowired
+    private ResumableUploadService service;
+
+    @Autowired
+    private UploadSessionRepository repository;
+
+    @MockBean
+    private FileStorageService fileStorageService;
+
+    @MockBean
+    private StorageUsageService storageUsageService;
+
+    private final UUID userId = UUID.randomUUID();
+    private final byte[] content = content(SIZE);
+
+    @BeforeEach
+    void setUp() {
+        when(fileStorageService.resolvePath(anyString()))
+                .thenAnswer(invocation -> directory.resolve(invocation.<String>getArgument(0)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void resumesAtTheOffsetReportedAfterADroppedChunk() throws IOException {
+        UUID id = create();
+
+        RuntimeException dropped = assertThrows(RuntimeException.class,
+                () -> service.append(id, userId, 0, droppedAfter(range(0, 60_000), 40_000)));
+        assertTrue(dropped.getMessage().startsWith("Chunk interrupted at offset 40000"), dropped.getMessage());
+        assertEquals(40_000, service.getStatus(id, userId).getOffset());
+
+        assertEquals(SIZE, service.append(id, userId, 40_000, range(40_000, SIZE)).getOffset());
+        // A re-sent chunk that overlaps received bytes is accepted and moves nothing back
+        assertEquals(SIZE, service.append(id, userId, 10_000, range(10_000, 20_000)).getOffset());
+
+        assertTrue(service.complete(id, userId).getCompleted());
+        assertArrayEquals(content, Files.readAllBytes(part(id)));
+    }
+
+    @Test
+    void gapsAreRejectedWithoutWriting() {
+        UUID id = create();
+        service.append(id, userId, 0, range(0, 1_000));
+
+        assertThrows(ConflictException.class, () -> service.append(id, userId, 1_001, range(1_001, 2_000)));
+        assertThrows(ConflictException.class, () -> service.append(id, userId, -1, range(0, 10)));
+
+        assertEquals(1_000, service.getStatus(id, userId).getOffset());
+        assertEquals(SIZE, part(id).toFile().length());
+    }
+
+    @Test
+    void secondChunkOrCompletionIsTurnedAwayWhileOneIsInFlight() throws Exception {
+        UUID id = create();
+        service.append(id, userId, 0, range(0, SIZE - 10));
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream slow = new InputStream() {
+            private final InputStream bytes = range(SIZE - 10, SIZE);
+
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return bytes.read();
+            }
+        };
+
+        CompletableFuture<UploadSessionResponse> first =
+                CompletableFuture.supplyAsync(() -> service.append(id, userId, SIZE - 10, slow));
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+        assertThrows(ConflictException.class, () -> service.append(id, userId, SIZE - 10, range(SIZE - 10, SIZE)));
+        assertThrows(ConflictException.class, () -> service.complete(id, userId));
+
+        release.countDown();
+        assertEquals(SIZE, first.get(10, TimeUnit.SECONDS).getOffset());
+        assertTrue(service.complete(id, userId).getCompleted());
+    }
+
+    @Test
+    void completionNeedsEveryByte() {
+        UUID id = create();
+        service.append(id, userId, 0, range(0, SIZE - 1));
+
+        RuntimeException incomplete = assertThrows(RuntimeException.class, () -> service.complete(id, userId));
+        assertFalse(incomplete instanceof ConflictException);
+        assertEquals("Upload is incomplete: received 99999 of 100000 bytes", incomplete.getMessage());
+        assertFalse(service.getStatus(id, userId).getCompleted());
+
+        service.append(id, userId, SIZE - 1, range(SIZE - 1, SIZE));
+        assertTrue(service.complete(id, userId).getCompleted());
+        assertTrue(service.complete(id, userId).getCompleted());
+        assertThrows(ConflictException.class, () -> service.append(id, userId, 0, range(0, 10)));
+    }
+
+    @Test
+    void chunksPastTheDeclaredSizeStopAtIt() {
+        UUID id = create();
+        byte[] tooLong = Arrays.copyOf(content, SIZE + 10);
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> service.append(id, userId, 0, new ByteArrayInputStream(tooLong)));
+
+        assertTrue(error.getMessage().contains("exceeds declared size"), error.getMessage());
+        assertTrue(service.getStatus(id, userId).getOffset() <= SIZE);
+    }
+
+    @Test
+    void uploadsOfOtherUsersAreNotFound() {
+        UUID id = create();
+        UUID stranger = UUID.randomUUID();
+
+        assertThrows(NotFoundException.class, () -> service.getStatus(id, stranger));
+        assertThrows(NotFoundException.class, () -> service.append(id, stranger, 0, range(0, 10)));
+        assertThrows(NotFoundException.class, () -> service.complete(id, stranger));
+        assertThrows(NotFoundException.class, () -> service.abort(id, stranger));
+        assertThrows(NotFoundException.class, () -> service.getStatus(UUID.randomUUID(), userId));
+    }
+
+    @Test
+    void openUploadsPerUserAreCapped() {
+        create();
+        UUID second = create();
+
+        RuntimeException error = assertThrows(RuntimeException.class, this::create);
+        assertTrue(error.getMessage().startsWith("Too many open uploads"), error.getMessage());
+        assertEquals(2, repository.count());
+
+        service.abort(second, userId);
+        create();
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    void abortRemovesTheUploadAndItsFile() {
+        UUID id = create();
+        service.append(id, userId, 0, range(0, 10));
+
+        service.abort(id, userId);
+
+        assertFalse(Files.exists(part(id)));
+        assertEquals(0, repository.count());
+        assertInstanceOf(NotFoundException.class,
+                assertThrows(RuntimeException.class, () -> service.append(id, userId, 10, range(10, 20))));
+    }
+
+    private UUID create() {
+        CreateUploadRequest request = CreateUploadRequest.builder()
+                .size((long) SIZE)
+                .file_name("cccd.pdf")
+                .content_type("application/pdf")
+                .build();
+        return service.create(userId, request).getUpload_id();
+    }
+
+    private Path part(UUID id) {
+        return directory.resolve(ResumableUploadService.UPLOADS_DIR).resolve(id + ".part");
+    }
+
+    private InputStream range(int from, int to) {
+        return new ByteArrayInputStream(content, from, to - from);
+    }
+
+    /**
+     * A body that delivers its first bytes and then loses the connection
+     */
+    private static InputStream droppedAfter(InputStream body, int bytes) {
+        return new InputStream() {
+            private int delivered;
+
+            @Override
+            public int read() throws IOException {
+                if (delivered == bytes) {
+                    throw new IOException("Connection reset");
+                }
+                delivered++;
+                return body.read();
+            }
+        };
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 7 + i / 251);
+        }
+        return content;
+    }
+}
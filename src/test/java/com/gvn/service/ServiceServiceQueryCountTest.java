@@ -0,0 +1,167 @@
+package com.gvn.service;
+
+import com.gvn.dto.response.AvailableServiceResponse;
+import com.gvn.entity.Category;
+import com.gvn.entity.PartnerService;
+import com.gvn.entity.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Statement counts of the ServiceService paths that used to load whole tables or run
+ * one query per row. Counts come from Hibernate statistics, so a regression back to
+ * per-row loading fails here before it reaches production.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Import(ServiceService.class)
+class ServiceServiceQueryCountTest {
+
+    @Autowired
+    private ServiceService serviceService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private FileStorageService fileStorageService;
+
+    @MockBean
+    private ImageVariantService imageVariantService;
+
+    @MockBean
+    private IconSpriteService iconSpriteService;
+
+    private Statistics statistics;
+    private Category cleaning;
+    private Category cooking;
+    private com.gvn.entity.Service houseCleaning;
+    private com.gvn.entity.Service laundry;
+    private com.gvn.entity.Service dinner;
+    private User partner;
+
+    @BeforeEach
+    void setUp() {
+        cleaning = entityManager.persist(Category.builder().name("Cleaning").displayOrder(1).build());
+        cooking = entityManager.persist(Category.builder().name("Cooking").displayOrder(2).build());
+        entityManager.persist(Category.builder().name("Gardening").displayOrder(3).build());
+        houseCleaning = entityManager.persist(service("HOUSE_CLEANING", "House cleaning", cleaning));
+        laundry = entityManager.persist(service("LAUNDRY", "Laundry", cleaning));
+        dinner = entityManager.persist(service("DINNER", "Family dinner", cooking));
+        partner = entityManager.persist(User.builder().phoneNumber("0900000001").password("secret").build());
+        for (com.gvn.entity.Service service : List.of(houseCleaning, laundry, dinner)) {
+            entityManager.persist(PartnerService.builder().user(partner).service(service).build());
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void availableServicesForPartnerTakeTwoQueries() {
+        List<AvailableServiceResponse> available = serviceService.getAvailableServicesForPartner(partner);
+
+        assertEquals(2, statements());
+        assertEquals(2, available.size());
+        assertEquals(2, available.get(0).getServices().size());
+        assertEquals(1, available.get(1).getServices().size());
+    }
+
+    @Test
+    void deleteServiceCountsPartnersWithoutLoadingThem() {
+        com.gvn.entity.Service unused = entityManager.persistFlushFind(service("IRONING", "Ironing", cleaning));
+        entityManager.clear();
+        statistics.clear();
+
+        serviceService.deleteService(unused.getId());
+        entityManager.flush();
+
+        assertEquals(3, statements()); // select service, count partners, delete
+    }
+
+    @Test
+    void deleteServiceInUseStopsAfterTheCount() {
+        assertThrows(RuntimeException.class, () -> serviceService.deleteService(houseCleaning.getId()));
+
+        assertEquals(2, statements());
+    }
+
+    @Test
+    void deleteCategoryCountsServicesWithoutLoadingThem() {
+        Category unused = entityManager.persistFlushFind(Category.builder().name("Moving").build());
+        entityManager.clear();
+        statistics.clear();
+
+        serviceService.deleteCategory(unused.getId());
+        entityManager.flush();
+
+        assertEquals(3, statements()); // select category, count services, delete
+    }
+
+    @Test
+    void deleteCategoryInUseStopsAfterTheCount() {
+        assertThrows(RuntimeException.class, () -> serviceService.deleteCategory(cleaning.getId()));
+
+        assertEquals(2, statements());
+    }
+
+    @Test
+    void createCategoryChecksTheNameInOneQuery() {
+        serviceService.createCategory("Pet care", null, null, 4, true);
+
+        assertEquals(2, statements()); // name check, insert
+    }
+
+    @Test
+    void createCategoryRejectsDuplicateNamesIgnoringCase() {
+        assertThrows(RuntimeException.class,
+                () -> serviceService.createCategory(" COOKING ", null, null, 4, true));
+
+        assertEquals(1, statements());
+    }
+
+    @Test
+    void updateCategoryChecksTheNameInOneQuery() {
+        serviceService.updateCategory(cooking.getId(), "Meals", null, null, null, null);
+        entityManager.flush();
+
+        assertEquals(3, statements()); // select category, name check, update
+    }
+
+    @Test
+    void updateCategoryRejectsAnotherCategorysName() {
+        assertThrows(RuntimeException.class,
+                () -> serviceService.updateCategory(cooking.getId(), "cleaning", null, null, null, null));
+
+        assertEquals(2, statements());
+    }
+
+    private long statements() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    private static com.gvn.entity.Service service(String code, String name, Category category) {
+        return com.gvn.entity.Service.builder().code(code).name(name).category(category).build();
+    }
+}
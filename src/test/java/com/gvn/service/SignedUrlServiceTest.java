@@ -0,0 +1,153 @@
+package com.gvn.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SignedUrlServiceTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    private static final String PATH = "documents/ab/cd/abcd1234.pdf";
+    private static final String URL = "/api/v1/files/" + PATH;
+
+    private final SignedUrlService service = new SignedUrlService(SECRET, 300, new String[] {"documents", " contracts/ "});
+
+    @Test
+    void signedUrlsVerifyForTheirPath() {
+        long before = Instant.now().getEpochSecond();
+        Map<String, String> query = query(service.sign(URL));
+
+        assertTrue(service.sign(URL).startsWith(URL + "?expires="));
+        assertEquals(SignedUrlService.SCOPE_READ, query.get("scope"));
+        long expires = Long.parseLong(query.get("expires"));
+        assertTrue(expires >= before + 300 && expires <= Instant.now().getEpochSecond() + 300);
+        assertTrue(verify(service, PATH, query));
+        assertTrue(SignedUrlService.secondsLeft(query.get("expires")) > 290);
+    }
+
+    @Test
+    void publicAndForeignUrlsAreLeftAlone() {
+        assertEquals("/api/v1/files/icons/a.png", service.sign("/api/v1/files/icons/a.png"));
+        assertEquals("https://cdn.example.com/documents/a.pdf", service.sign("https://cdn.example.com/documents/a.pdf"));
+        assertNull(service.sign(null));
+    }
+
+    @Test
+    void expiredUrlsAreRefused() {
+        SignedUrlService expired = new SignedUrlService(SECRET, -1, new String[] {"documents"});
+        Map<String, String> query = query(expired.sign(URL));
+
+        assertFalse(verify(expired, PATH, query));
+        assertEquals(0, SignedUrlService.secondsLeft(query.get("expires")));
+    }
+
+    @Test
+    void tamperedFieldsAreRefused() {
+        Map<String, String> query = query(service.sign(URL));
+
+        assertFalse(verify(service, "documents/ab/cd/abcd1235.pdf", query));
+        assertFalse(service.verify(PATH, query.get("expires"), "write", query.get("sig")));
+        assertFalse(service.verify(PATH, String.valueOf(Long.parseLong(query.get("expires")) + 3600),
+                query.get("scope"), query.get("sig")));
+        String signature = query.get("sig");
+        String flipped = (signature.charAt(0) == 'A' ? 'B' : 'A') + signature.substring(1);
+        assertFalse(service.verify(PATH, query.get("expires"), query.get("scope"), flipped));
+    }
+
+    @Test
+    void urlsFromAnotherSecretAreRefused() {
+        SignedUrlService other = new SignedUrlService("fedcba9876543210fedcba9876543210", 300, new String[] {"documents"});
+
+        assertFalse(verify(service, PATH, query(other.sign(URL))));
+    }
+
+    @Test
+    void malformedParametersAreRefused() {
+        Map<String, String> query = query(service.sign(URL));
+        String scope = query.get("scope");
+        String signature = query.get("sig");
+
+        for (String expires : new String[] {null, "", "soon", "1e12", "99999999999999999999", " 1"}) {
+            assertFalse(service.verify(PATH, expires, scope, signature), String.valueOf(expires));
+        }
+        assertFalse(service.verify(PATH, query.get("expires"), null, signature));
+        assertFalse(service.verify(PATH, query.get("expires"), scope, null));
+        assertFalse(service.verify(PATH, query.get("expires"), scope, "not base64!"));
+        assertFalse(service.verify(PATH, query.get("expires"), scope, ""));
+        assertEquals(0, SignedUrlService.secondsLeft("soon"));
+    }
+
+    @Test
+    void privateAreasAreClassifiedByTheirFirstSegments() {
+        assertTrue(service.isPrivate("documents/ab/cd/abcd1234.pdf"));
+        assertTrue(service.isPrivate("documents/legacy.pdf"));
+        assertTrue(service.isPrivate("contracts/2026/a.pdf"));
+        assertTrue(service.isPrivate("documents"));
+
+        assertFalse(service.isPrivate("icons/a.png"));
+        assertFalse(service.isPrivate("banners/ab/cd/abcd1234.jpg"));
+        assertFalse(service.isPrivate("avatars/a.jpg"));
+        assertFalse(service.isPrivate("documentsx/a.pdf"));
+        assertFalse(service.isPrivate("icons/documents/a.png"));
+    }
+
+    @Test
+    void dotSegmentsCannotStepAroundAPrivateArea() {
+        assertTrue(service.isPrivate("icons/../documents/a.pdf"));
+        assertTrue(service.isPrivate("./documents/a.pdf"));
+        assertTrue(service.isPrivate("/documents/a.pdf"));
+        assertTrue(service.isPrivate("icons//../documents/a.pdf"));
+        assertTrue(service.isPrivate("../documents/a.pdf"));
+        assertTrue(service.isPrivate("icons/../../a.png"));
+
+        assertFalse(service.isPrivate("documents/../icons/a.png"));
+        assertFalse(service.isPrivate("./icons/a.png"));
+    }
+
+    @Test
+    void shortSecretsAreRejected() {
+        assertThrows(IllegalStateException.class, () -> new SignedUrlService("too short", 300, new String[] {"documents"}));
+        assertThrows(IllegalStateException.class, () -> new SignedUrlService(null, 300, new String[] {"documents"}));
+    }
+
+    @Test
+    void signingIsThreadSafe() throws InterruptedException {
+        Thread[] threads = new Thread[8];
+        boolean[] failed = new boolean[1];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 500; j++) {
+                    if (!verify(service, PATH, query(service.sign(URL)))) {
+                        failed[0] = true;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(failed[0]);
+    }
+
+    private static boolean verify(SignedUrlService service, String relativePath, Map<String, String> query) {
+        return service.verify(relativePath, query.get("expires"), query.get("scope"), query.get("sig"));
+    }
+
+    private static Map<String, String> query(String url) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : url.substring(url.indexOf('?') + 1).split("&")) {
+            int separator = parameter.indexOf('=');
+            parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,205 @@
+package com.gvn.service;
+
+import com.gvn.entity.Category;
+import com.gvn.repository.CategoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Uploads and deletes made through FileStorageService inside real (H2) transactions,
+ * with the upload executor running its cleanup inline.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StagedFileChangesTest {
+
+    private static final byte[] CONTENT = "cccd front".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path basePath;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private TransactionTemplate transactionTemplate;
+    private StorageUsageService storageUsageService;
+    private FileStorageService fileStorageService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        UploadExecutor uploadExecutor = mock(UploadExecutor.class);
+        when(uploadExecutor.submit(any())).thenAnswer(invocation -> {
+            try {
+                return CompletableFuture.completedFuture(invocation.<Callable<Object>>getArgument(0).call());
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+        StorageBackend storageBackend = mock(StorageBackend.class);
+        when(storageBackend.isLocal()).thenReturn(true);
+        storageUsageService = mock(StorageUsageService.class);
+
+        fileStorageService = new FileStorageService(mock(ContentAddressedStore.class), uploadExecutor, storageBackend,
+                mock(HotFileCache.class), storageUsageService, mock(FileEncryption.class),
+                mock(FileIntegrityService.class), mock(PackStore.class));
+        ReflectionTestUtils.setField(fileStorageService, "uploadDir", basePath.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        categoryRepository.deleteAll();
+    }
+
+    @Test
+    void stagedUploadsAppearOnlyOnCommit() throws IOException {
+        String relativePath = transactionTemplate.execute(status -> {
+            String path = store();
+            assertFalse(Files.exists(basePath.resolve(path)));
+            assertEquals(1, staged().size());
+            return path;
+        });
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(basePath.resolve(relativePath)));
+        assertTrue(staged().isEmpty());
+        verify(storageUsageService).recordStored(eq(relativePath), isNull(), eq((long) CONTENT.length));
+    }
+
+    @Test
+    void rollbackRemovesStagedUploads() throws IOException {
+        String relativePath = transactionTemplate.execute(status -> {
+            String path = store();
+            status.setRollbackOnly();
+            return path;
+        });
+
+        assertFalse(Files.exists(basePath.resolve(relativePath)));
+        assertTrue(staged().isEmpty());
+        verify(storageUsageService, never()).recordStored(any(), any(), anyLong());
+    }
+
+    @Test
+    void failedPromotionRollsTheTransactionBack() throws IOException {
+        String[] paths = new String[2];
+        RuntimeException error = assertThrows(RuntimeException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            categoryRepository.save(Category.builder().name("Cleaning").build());
+            paths[0] = store();
+            List<Path> first = staged();
+            paths[1] = store();
+            // The second upload's staged file vanishes before commit, so its promotion fails
+            for (Path stagedFile : staged()) {
+                if (!first.contains(stagedFile)) {
+                    delete(stagedFile);
+                }
+            }
+        }));
+
+        assertTrue(error.getMessage().startsWith("Failed to store file"), error.getMessage());
+        assertEquals(0, categoryRepository.count());
+        // The upload promoted before the failure is removed with the rest
+        assertFalse(Files.exists(basePath.resolve(paths[0])));
+        assertFalse(Files.exists(basePath.resolve(paths[1])));
+        assertTrue(staged().isEmpty());
+    }
+
+    @Test
+    void deletesWaitForCommitAndAreDroppedOnRollback() throws IOException {
+        String relativePath = transactionTemplate.execute(status -> store());
+        Path file = basePath.resolve(relativePath);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            assertTrue(fileStorageService.deleteFile(relativePath));
+            status.setRollbackOnly();
+        });
+        assertTrue(Files.exists(file));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            assertTrue(fileStorageService.deleteFile(relativePath));
+            assertTrue(Files.exists(file));
+        });
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void uploadDeletedInItsOwnTransactionIsDiscardedAtOnce() throws IOException {
+        String relativePath = transactionTemplate.execute(status -> {
+            String path = store();
+            assertTrue(fileStorageService.deleteFile(path));
+            assertTrue(staged().isEmpty());
+            return path;
+        });
+
+        assertFalse(Files.exists(basePath.resolve(relativePath)));
+        verify(storageUsageService, never()).recordStored(any(), any(), anyLong());
+    }
+
+    private String store() {
+        try {
+            return fileStorageService.storeFile(new MockMultipartFile("file", "front.jpg", "image/jpeg", CONTENT), "documents");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Path> staged() {
+        Path staging = basePath.resolve(FileStorageService.STAGING_DIR);
+        if (!Files.isDirectory(staging)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(staging)) {
+            return files.toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.delete(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.gvn.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StorageUsageServiceTest {
+
+    @Test
+    void areaOfDropsTheShardLevels() {
+        assertEquals("avatars", StorageUsageService.areaOf("avatars/ab/cd/abcd1234.jpg"));
+        assertEquals("documents/health", StorageUsageService.areaOf("documents/health/0f/9e/0f9e77aa.pdf"));
+    }
+
+    @Test
+    void areaOfKeepsUnshardedDirectories() {
+        assertEquals("avatars", StorageUsageService.areaOf("avatars/abcd1234.jpg"));
+        assertEquals("documents/health", StorageUsageService.areaOf("documents/health/0f9e77aa.pdf"));
+        assertEquals("", StorageUsageService.areaOf("loose.jpg"));
+    }
+
+    @Test
+    void areaOfOnlyStripsTwoHexLevels() {
+        // One hex-looking level is a real directory, not a shard
+        assertEquals("banners/ab", StorageUsageService.areaOf("banners/ab/x.jpg"));
+        assertEquals("banners/ab/zz", StorageUsageService.areaOf("banners/ab/zz/x.jpg"));
+        assertEquals("banners/abc/de", StorageUsageService.areaOf("banners/abc/de/x.jpg"));
+        // An area is never stripped down to nothing
+        assertEquals("ab/cd", StorageUsageService.areaOf("ab/cd/x.jpg"));
+    }
+}